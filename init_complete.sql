@@ -23,6 +23,10 @@ USE library_db;
 -- ============================================
 -- 删除已存在的表（如果存在）
 -- ============================================
+DROP TABLE IF EXISTS user_borrow_counts;
+DROP TABLE IF EXISTS book_borrow_counts;
+DROP TABLE IF EXISTS borrow_daily_rollup;
+DROP TABLE IF EXISTS borrow_records_archive;
 DROP TABLE IF EXISTS borrow_records;
 DROP TABLE IF EXISTS books;
 DROP TABLE IF EXISTS users;
@@ -80,7 +84,51 @@ CREATE TABLE borrow_records (
     INDEX idx_user_id (user_id),
     INDEX idx_book_id (book_id),
     INDEX idx_status (status),
-    INDEX idx_borrow_date (borrow_date)
+    INDEX idx_borrow_date (borrow_date),
+    INDEX idx_status_due_date (status, due_date),
+    INDEX idx_user_borrow_date (user_id, borrow_date),
+    INDEX idx_status_return_date (status, return_date)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 4. 借阅记录归档表 (borrow_records_archive)
+-- 已归还且超过保留期的记录由后台任务从 borrow_records 迁移至此，主键沿用原记录ID
+CREATE TABLE borrow_records_archive (
+    id BIGINT PRIMARY KEY,
+    user_id BIGINT NOT NULL,
+    book_id BIGINT NOT NULL,
+    borrow_date DATETIME NOT NULL,
+    return_date DATETIME,
+    due_date DATETIME NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    created_at DATETIME,
+    updated_at DATETIME,
+    archived_at DATETIME,
+    INDEX idx_archive_user_borrow_date (user_id, borrow_date),
+    INDEX idx_archive_book_id (book_id),
+    INDEX idx_archive_borrow_date (borrow_date)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 5. 借阅统计汇总表
+-- 借阅、归还、逾期时在同一事务中增量维护，统计报表只读这三张表；
+-- 本脚本的测试数据由应用启动时按原始记录自动回填
+CREATE TABLE borrow_daily_rollup (
+    day DATE NOT NULL,
+    category VARCHAR(50) NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    borrow_count BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (day, category, status)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+CREATE TABLE book_borrow_counts (
+    book_id BIGINT PRIMARY KEY,
+    borrow_count BIGINT NOT NULL DEFAULT 0,
+    INDEX idx_book_borrow_count (borrow_count)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+CREATE TABLE user_borrow_counts (
+    user_id BIGINT PRIMARY KEY,
+    borrow_count BIGINT NOT NULL DEFAULT 0,
+    INDEX idx_user_borrow_count (borrow_count)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
 -- ============================================
@@ -0,0 +1,26 @@
+-- ============================================
+-- 借阅记录冷热分离迁移脚本（已有数据库执行一次）
+-- 新建库直接使用 init_complete.sql 即可
+-- ============================================
+
+-- 热表：支持归档任务按 (status, return_date) 挑选待迁移记录
+ALTER TABLE borrow_records ADD INDEX idx_status_return_date (status, return_date);
+
+-- 冷表：结构与 borrow_records 相同，主键沿用原记录ID，不自增
+CREATE TABLE IF NOT EXISTS borrow_records_archive (
+    id BIGINT PRIMARY KEY,
+    user_id BIGINT NOT NULL,
+    book_id BIGINT NOT NULL,
+    borrow_date DATETIME NOT NULL,
+    return_date DATETIME,
+    due_date DATETIME NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    created_at DATETIME,
+    updated_at DATETIME,
+    archived_at DATETIME,
+    INDEX idx_archive_user_borrow_date (user_id, borrow_date),
+    INDEX idx_archive_book_id (book_id),
+    INDEX idx_archive_borrow_date (borrow_date)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 历史数据由应用的归档任务（library.borrow.archive）分批迁移，无需在此一次性搬迁
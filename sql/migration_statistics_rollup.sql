@@ -0,0 +1,30 @@
+-- ============================================
+-- 借阅统计汇总表迁移脚本（已有数据库执行一次）
+-- 新建库直接使用 init_complete.sql 即可
+-- ============================================
+
+-- 按 (借阅日期, 图书分类, 当前状态) 汇总的借阅数，统计报表的日/月/分类/状态分布都从这里读取
+CREATE TABLE IF NOT EXISTS borrow_daily_rollup (
+    day DATE NOT NULL,
+    category VARCHAR(50) NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    borrow_count BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (day, category, status)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 每本图书的累计借阅次数（含归档记录）
+CREATE TABLE IF NOT EXISTS book_borrow_counts (
+    book_id BIGINT PRIMARY KEY,
+    borrow_count BIGINT NOT NULL DEFAULT 0,
+    INDEX idx_book_borrow_count (borrow_count)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 每个用户的累计借阅次数（含归档记录）
+CREATE TABLE IF NOT EXISTS user_borrow_counts (
+    user_id BIGINT PRIMARY KEY,
+    borrow_count BIGINT NOT NULL DEFAULT 0,
+    INDEX idx_user_borrow_count (borrow_count)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 历史数据由应用启动时自动回填（library.statistics.rollup.backfill-on-startup），
+-- 也可由管理员调用 POST /statistics/admin/rollup/backfill 手动重算
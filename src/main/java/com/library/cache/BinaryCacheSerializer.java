@@ -0,0 +1,88 @@
+package com.library.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * 缓存值的二进制序列化，用于指定的缓存（library.cache.binary-caches）
+ * 格式：魔数(1) + 格式版本(2) + 标志(1) + [过期时刻(8) + 加载耗时(8)] + 编解码器写入的字段。
+ * 编解码器类型以外的值，以及不以魔数开头的数据（切换前写入的 JSON）交给回退序列化器处理；
+ * 版本号高于本节点支持版本的数据（滚动升级期间新节点写入）按缓存未命中处理，由本节点重新加载覆盖
+ */
+public class BinaryCacheSerializer<T> implements RedisSerializer<Object> {
+
+    private static final Logger logger = LoggerFactory.getLogger(BinaryCacheSerializer.class);
+
+    // JSON 数据以 '{' '[' '"' 等可见字符开头，不会与魔数冲突
+    private static final byte MAGIC = (byte) 0xB7;
+    private static final byte FLAG_CACHED_VALUE = 1;
+
+    private final BinaryCodec<T> codec;
+    private final RedisSerializer<Object> fallback;
+
+    public BinaryCacheSerializer(BinaryCodec<T> codec, RedisSerializer<Object> fallback) {
+        this.codec = codec;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        Object payload = value instanceof CachedValue cachedValue ? cachedValue.getValue() : value;
+        if (!codec.type().isInstance(payload)) {
+            return fallback.serialize(value);
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(MAGIC);
+            out.writeShort(codec.version());
+            if (value instanceof CachedValue cachedValue) {
+                out.writeByte(FLAG_CACHED_VALUE);
+                out.writeLong(cachedValue.getExpiresAt());
+                out.writeLong(cachedValue.getComputeMillis());
+            } else {
+                out.writeByte(0);
+            }
+            codec.write(codec.type().cast(payload), out);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new SerializationException("二进制序列化失败: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] != MAGIC) {
+            return fallback.deserialize(bytes);
+        }
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1));
+            int version = in.readUnsignedShort();
+            if (version > codec.version()) {
+                logger.debug("缓存数据版本 {} 高于当前支持的版本 {}，按未命中处理", version, codec.version());
+                return null;
+            }
+            byte flags = in.readByte();
+            if ((flags & FLAG_CACHED_VALUE) != 0) {
+                long expiresAt = in.readLong();
+                long computeMillis = in.readLong();
+                return new CachedValue(codec.read(in, version), expiresAt, computeMillis);
+            }
+            return codec.read(in, version);
+        } catch (IOException e) {
+            throw new SerializationException("二进制反序列化失败: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.library.cache;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * 缓存值的二进制编解码（按字段顺序写入，不含类型和字段名）
+ * 字段变化时递增 version，并在 read 中按写入时的版本解码；
+ * 无法识别的更高版本由 {@link BinaryCacheSerializer} 视为缓存未命中
+ */
+public interface BinaryCodec<T> {
+
+    Class<T> type();
+
+    /**
+     * 当前写入使用的格式版本
+     */
+    int version();
+
+    void write(T value, DataOutput out) throws IOException;
+
+    /**
+     * @param version 写入时的格式版本（不大于 {@link #version()}）
+     */
+    T read(DataInput in, int version) throws IOException;
+}
@@ -0,0 +1,123 @@
+package com.library.cache;
+
+import com.library.entity.Book;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * 图书的二进制格式
+ * 版本 1：id, title, author, isbn, publisher, publishDate, description,
+ * totalCopies, availableCopies, category, createdAt, updatedAt；
+ * 每个可空字段前有一个字节表示是否为 null，字符串为 UTF-8 字节长度 + 内容，
+ * 时间为 UTC 秒数 + 纳秒（LocalDateTime 不带时区，按原值无损还原）
+ */
+public class BookBinaryCodec implements BinaryCodec<Book> {
+
+    private static final int VERSION = 1;
+
+    @Override
+    public Class<Book> type() {
+        return Book.class;
+    }
+
+    @Override
+    public int version() {
+        return VERSION;
+    }
+
+    @Override
+    public void write(Book book, DataOutput out) throws IOException {
+        writeLong(out, book.getId());
+        writeString(out, book.getTitle());
+        writeString(out, book.getAuthor());
+        writeString(out, book.getIsbn());
+        writeString(out, book.getPublisher());
+        writeDateTime(out, book.getPublishDate());
+        writeString(out, book.getDescription());
+        writeInt(out, book.getTotalCopies());
+        writeInt(out, book.getAvailableCopies());
+        writeString(out, book.getCategory());
+        writeDateTime(out, book.getCreatedAt());
+        writeDateTime(out, book.getUpdatedAt());
+    }
+
+    @Override
+    public Book read(DataInput in, int version) throws IOException {
+        Book book = new Book();
+        book.setId(readLong(in));
+        book.setTitle(readString(in));
+        book.setAuthor(readString(in));
+        book.setIsbn(readString(in));
+        book.setPublisher(readString(in));
+        book.setPublishDate(readDateTime(in));
+        book.setDescription(readString(in));
+        book.setTotalCopies(readInt(in));
+        book.setAvailableCopies(readInt(in));
+        book.setCategory(readString(in));
+        book.setCreatedAt(readDateTime(in));
+        book.setUpdatedAt(readDateTime(in));
+        return book;
+    }
+
+    private static void writeLong(DataOutput out, Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+
+    private static Long readLong(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+
+    private static void writeInt(DataOutput out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    private static Integer readInt(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readInt() : null;
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeDateTime(DataOutput out, LocalDateTime value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(value.getNano());
+        }
+    }
+
+    private static LocalDateTime readDateTime(DataInput in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        long seconds = in.readLong();
+        int nanos = in.readInt();
+        return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,34 @@
+package com.library.cache;
+
+/**
+ * 缓存条目：值 + 过期时间 + 加载耗时
+ * 过期时间和加载耗时用于概率性提前刷新；expiresAt 为 0 表示未知（不做提前刷新）
+ * L2 中由 JSON 或二进制缓存序列化器编码，不使用 Java 序列化
+ */
+public class CachedValue {
+
+    private Object value;
+    private long expiresAt;
+    private long computeMillis;
+
+    private CachedValue() {
+    }
+
+    public CachedValue(Object value, long expiresAt, long computeMillis) {
+        this.value = value;
+        this.expiresAt = expiresAt;
+        this.computeMillis = computeMillis;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public long getComputeMillis() {
+        return computeMillis;
+    }
+}
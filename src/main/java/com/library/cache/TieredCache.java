@@ -0,0 +1,434 @@
+package com.library.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.util.ByteUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 两级缓存：进程内 Caffeine（L1）+ Redis（L2）
+ * 读取先查 L1，未命中再查 L2 并回填 L1；写入同时写两级；删除和清空在本地执行后
+ * 通过 {@link TieredCacheManager} 广播给其他节点，各节点清除自己的 L1 条目。
+ * L1 的过期时间短于 L2，即使广播丢失，节点间的不一致也只持续到 L1 过期。
+ * L1 中的对象在请求之间共享，调用方不应修改缓存返回的对象
+ * <p>
+ * 带加载函数的读取（@Cacheable(sync = true)）按键合并并发加载：同一键同一时刻只有一个调用方执行加载，
+ * 其余调用方等待同一个结果；条目临近过期时按 XFetch 算法以一定概率提前刷新
+ * （越接近过期、加载越慢，提前刷新的概率越大），刷新期间其他请求继续返回旧值。
+ * 加载结果为 null 时不缓存
+ */
+public class TieredCache implements Cache {
+
+    // 等待其他调用方加载的最长时间
+    private static final long LOAD_WAIT_SECONDS = 30;
+
+    private final String name;
+    private final com.github.benmanes.caffeine.cache.Cache<Object, CachedValue> local;
+    private final Cache remote;
+    private final TieredCacheManager manager;
+    private final Duration ttl;
+    private final double beta;
+
+    private final Map<Object, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final List<EvictionTracker> trackers = new CopyOnWriteArrayList<>();
+
+    private final LongAdder l1Hits = new LongAdder();
+    private final LongAdder l2Hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder earlyRefreshes = new LongAdder();
+
+    /**
+     * @param local L1 缓存，为 null 时只使用 L2
+     * @param ttl L2 过期时间，用于计算条目的过期时刻
+     * @param beta 提前刷新系数，0 表示不提前刷新
+     */
+    TieredCache(String name, Cache remote, com.github.benmanes.caffeine.cache.Cache<Object, CachedValue> local,
+                Duration ttl, double beta, TieredCacheManager manager) {
+        this.name = name;
+        this.remote = remote;
+        this.local = local;
+        this.ttl = ttl;
+        this.beta = beta;
+        this.manager = manager;
+    }
+
+    static com.github.benmanes.caffeine.cache.Cache<Object, CachedValue> newLocal(long maximumSize,
+                                                                              Duration expireAfterWrite) {
+        return Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return remote.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        CachedValue entry = lookup(key);
+        return entry == null ? null : new SimpleValueWrapper(entry.getValue());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        CachedValue entry = lookup(key);
+        Object value = entry == null ? null : entry.getValue();
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("缓存值类型不匹配: " + type.getName());
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        CachedValue entry = lookup(key);
+        if (entry != null) {
+            if (shouldRefreshEarly(entry)) {
+                CompletableFuture<Object> future = new CompletableFuture<>();
+                if (inFlight.putIfAbsent(localKey(key), future) == null) {
+                    earlyRefreshes.increment();
+                    try {
+                        return (T) load(key, valueLoader, future);
+                    } catch (ValueRetrievalException e) {
+                        // 提前刷新失败时旧值仍然有效
+                        return (T) entry.getValue();
+                    }
+                }
+            }
+            return (T) entry.getValue();
+        }
+
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(localKey(key), future);
+        if (existing != null) {
+            coalesced.increment();
+            return (T) await(key, valueLoader, existing);
+        }
+        // 成为加载者之前，上一个加载者可能刚写入缓存
+        CachedValue loaded = peekRemote(key);
+        if (loaded != null) {
+            inFlight.remove(localKey(key), future);
+            future.complete(loaded.getValue());
+            return (T) loaded.getValue();
+        }
+        return (T) load(key, valueLoader, future);
+    }
+
+    private Object load(Object key, Callable<?> valueLoader, CompletableFuture<Object> future) {
+        loads.increment();
+        long start = System.currentTimeMillis();
+        try {
+            Object value = valueLoader.call();
+            // 先回写再移出 inFlight：移出之后才未命中的调用方一定能读到回写的值，不会再次加载。
+            // 加载期间条目被删除时 inFlight 已被清除，此时不回写，避免覆盖更新后的数据；
+            // 回写与删除交错时（移出失败）撤销刚写入的条目
+            if (value != null && inFlight.get(localKey(key)) == future) {
+                store(key, value, System.currentTimeMillis() - start);
+                if (!inFlight.remove(localKey(key), future)) {
+                    remote.evict(key);
+                    if (local != null) {
+                        local.invalidate(localKey(key));
+                    }
+                }
+            } else {
+                inFlight.remove(localKey(key), future);
+            }
+            future.complete(value);
+            return value;
+        } catch (Throwable e) {
+            inFlight.remove(localKey(key), future);
+            future.completeExceptionally(e);
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+    }
+
+    private Object await(Object key, Callable<?> valueLoader, CompletableFuture<Object> future) {
+        try {
+            return future.get(LOAD_WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            throw new ValueRetrievalException(key, valueLoader, e.getCause());
+        } catch (TimeoutException e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+    }
+
+    /**
+     * XFetch：now + 加载耗时 × beta × (-ln(rand)) 超过过期时刻时提前刷新
+     */
+    private boolean shouldRefreshEarly(CachedValue entry) {
+        if (beta <= 0 || entry.getExpiresAt() <= 0) {
+            return false;
+        }
+        double random = ThreadLocalRandom.current().nextDouble();
+        if (random == 0) {
+            return false;
+        }
+        double gap = Math.max(1, entry.getComputeMillis()) * beta * -Math.log(random);
+        return System.currentTimeMillis() + gap >= entry.getExpiresAt();
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        store(key, value, 0);
+    }
+
+    private void store(Object key, Object value, long computeMillis) {
+        // 不缓存 null（与 Redis 缓存的 disableCachingNullValues 一致）；值包装后 Redis 缓存不再能识别 null，需在此拒绝
+        if (value == null) {
+            throw new IllegalArgumentException("缓存 " + name + " 不允许存储 null 值");
+        }
+        CachedValue entry = new CachedValue(value, System.currentTimeMillis() + ttl.toMillis(), computeMillis);
+        remote.put(key, entry);
+        if (local != null) {
+            local.put(localKey(key), entry);
+        }
+    }
+
+    /**
+     * 批量写入期间被删除的键：在读取数据库之前开始记录，写入时跳过这些键，
+     * 避免把删除之前读到的旧值写回缓存
+     */
+    public static final class EvictionTracker {
+        private final Set<String> keys = ConcurrentHashMap.newKeySet();
+        private volatile boolean cleared;
+
+        boolean isEvicted(Object key) {
+            return cleared || keys.contains(String.valueOf(key));
+        }
+    }
+
+    /**
+     * 开始记录删除的键，调用方读取数据库之前调用，写入后调用 {@link #stopTracking}
+     */
+    public EvictionTracker trackEvictions() {
+        EvictionTracker tracker = new EvictionTracker();
+        trackers.add(tracker);
+        return tracker;
+    }
+
+    public void stopTracking(EvictionTracker tracker) {
+        trackers.remove(tracker);
+    }
+
+    /**
+     * 批量写入（启动预热等场景）：L2 的全部 SET NX 通过一次管道提交，L1 只写入 L2 写入成功的条目。
+     * 已有条目（请求已加载的更新值）不覆盖；开始记录之后被删除的键跳过，
+     * 写入过程中才被删除的键在写入后撤销
+     * @return 写入条目数
+     */
+    public int putAll(Map<?, ?> values, EvictionTracker tracker) {
+        Map<Object, CachedValue> entries = new LinkedHashMap<>();
+        long expiresAt = System.currentTimeMillis() + ttl.toMillis();
+        values.forEach((key, value) -> {
+            if (value != null && !tracker.isEvicted(key)) {
+                entries.put(key, new CachedValue(value, expiresAt, 0));
+            }
+        });
+        if (entries.isEmpty()) {
+            return 0;
+        }
+
+        List<Object> written = new ArrayList<>(entries.size());
+        if (remote instanceof RedisCache redisCache) {
+            RedisCacheConfiguration config = redisCache.getCacheConfiguration();
+            List<byte[][]> commands = new ArrayList<>(entries.size());
+            entries.forEach((key, entry) -> {
+                String redisKey = config.getKeyPrefixFor(name) + localKey(key);
+                commands.add(new byte[][]{
+                        ByteUtils.getBytes(config.getKeySerializationPair().write(redisKey)),
+                        ByteUtils.getBytes(config.getValueSerializationPair().write(entry))});
+            });
+            Expiration expiration = Expiration.from(ttl);
+            List<Object> results = manager.getRedisTemplate().executePipelined((RedisCallback<Object>) connection -> {
+                for (byte[][] command : commands) {
+                    connection.stringCommands().set(command[0], command[1], expiration,
+                            RedisStringCommands.SetOption.ifAbsent());
+                }
+                return null;
+            });
+            int index = 0;
+            for (Object key : entries.keySet()) {
+                if (index < results.size() && Boolean.TRUE.equals(results.get(index))) {
+                    written.add(key);
+                }
+                index++;
+            }
+        } else {
+            entries.forEach((key, entry) -> {
+                if (remote.putIfAbsent(key, entry) == null) {
+                    written.add(key);
+                }
+            });
+        }
+
+        int count = 0;
+        for (Object key : written) {
+            if (tracker.isEvicted(key)) {
+                remote.evict(key);
+                continue;
+            }
+            if (local != null) {
+                local.asMap().putIfAbsent(localKey(key), entries.get(key));
+            }
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public void evict(Object key) {
+        recordEviction(key);
+        inFlight.remove(localKey(key));
+        remote.evict(key);
+        if (local != null) {
+            local.invalidate(localKey(key));
+        }
+        manager.publishEvict(name, localKey(key).toString());
+    }
+
+    @Override
+    public void clear() {
+        recordClear();
+        inFlight.clear();
+        remote.clear();
+        if (local != null) {
+            local.invalidateAll();
+        }
+        manager.publishClear(name);
+    }
+
+    /**
+     * 收到其他节点的删除广播，只清除本地 L1
+     */
+    void evictLocal(String key) {
+        recordEviction(key);
+        if (local != null) {
+            local.invalidate(key);
+        }
+    }
+
+    void clearLocal() {
+        recordClear();
+        if (local != null) {
+            local.invalidateAll();
+        }
+    }
+
+    private void recordEviction(Object key) {
+        for (EvictionTracker tracker : trackers) {
+            tracker.keys.add(String.valueOf(key));
+        }
+    }
+
+    private void recordClear() {
+        for (EvictionTracker tracker : trackers) {
+            tracker.cleared = true;
+        }
+    }
+
+    private CachedValue lookup(Object key) {
+        Object localKey = localKey(key);
+        if (local != null) {
+            CachedValue entry = local.getIfPresent(localKey);
+            if (entry != null) {
+                l1Hits.increment();
+                return entry;
+            }
+        }
+        CachedValue entry = peekRemote(key);
+        if (entry != null) {
+            l2Hits.increment();
+            if (local != null) {
+                local.put(localKey, entry);
+            }
+            return entry;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * 读取 L2；升级前写入的条目不带过期信息，按未知处理
+     */
+    private CachedValue peekRemote(Object key) {
+        ValueWrapper wrapper = remote.get(key);
+        Object value = wrapper == null ? null : wrapper.get();
+        if (value == null) {
+            return null;
+        }
+        return value instanceof CachedValue cachedValue ? cachedValue : new CachedValue(value, 0, 0);
+    }
+
+    /**
+     * L1 键统一转为字符串，与 L2（Redis 键）及广播消息中的键一致
+     */
+    private static Object localKey(Object key) {
+        return String.valueOf(key);
+    }
+
+    /**
+     * 命中统计：L1 命中、L2 命中、两级都未命中的次数及命中率，加载、合并等待、提前刷新次数
+     */
+    public Map<String, Object> getStats() {
+        long hitsL1 = l1Hits.sum();
+        long hitsL2 = l2Hits.sum();
+        long missed = misses.sum();
+        long total = hitsL1 + hitsL2 + missed;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("requests", total);
+        stats.put("l1Enabled", local != null);
+        stats.put("l1Hits", hitsL1);
+        stats.put("l2Hits", hitsL2);
+        stats.put("misses", missed);
+        stats.put("l1HitRatio", total == 0 ? 0.0 : (double) hitsL1 / total);
+        // L2 命中率按到达 L2 的请求计算
+        stats.put("l2HitRatio", hitsL2 + missed == 0 ? 0.0 : (double) hitsL2 / (hitsL2 + missed));
+        stats.put("overallHitRatio", total == 0 ? 0.0 : (double) (hitsL1 + hitsL2) / total);
+        stats.put("loads", loads.sum());
+        stats.put("coalescedWaits", coalesced.sum());
+        stats.put("earlyRefreshes", earlyRefreshes.sum());
+        stats.put("inFlight", inFlight.size());
+        if (local != null) {
+            stats.put("l1Size", local.estimatedSize());
+            stats.put("l1Evictions", local.stats().evictionCount());
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,127 @@
+package com.library.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 两级缓存管理器：每个缓存由 Caffeine L1 和底层 Redis 缓存管理器提供的 L2 组成
+ * 删除/清空通过 Redis 发布订阅广播到 {@link #CHANNEL}，消息格式为 "节点ID|缓存名|键"，
+ * 清空时键为空；节点忽略自己发出的消息（本地已处理）
+ */
+public class TieredCacheManager implements CacheManager, MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(TieredCacheManager.class);
+
+    public static final String CHANNEL = "cache:invalidation";
+
+    private static final String SEPARATOR = "|";
+
+    private final CacheManager remoteManager;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final boolean l1Enabled;
+    private final long maximumSize;
+    private final Duration expireAfterWrite;
+    private final Map<String, Duration> ttls;
+    private final Duration defaultTtl;
+    private final double beta;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final Map<String, TieredCache> caches = new ConcurrentHashMap<>();
+
+    /**
+     * @param l1Enabled 是否启用 L1，关闭时只使用 Redis（仍保留加载合并与提前刷新）
+     * @param ttls 各缓存的 L2 过期时间，未配置的使用 defaultTtl，需与 Redis 缓存配置一致
+     * @param beta 提前刷新系数，0 表示关闭提前刷新
+     */
+    public TieredCacheManager(CacheManager remoteManager, RedisTemplate<String, String> redisTemplate,
+                              boolean l1Enabled, long maximumSize, Duration expireAfterWrite,
+                              Map<String, Duration> ttls, Duration defaultTtl, double beta) {
+        this.remoteManager = remoteManager;
+        this.redisTemplate = redisTemplate;
+        this.l1Enabled = l1Enabled;
+        this.maximumSize = maximumSize;
+        this.expireAfterWrite = expireAfterWrite;
+        this.ttls = ttls;
+        this.defaultTtl = defaultTtl;
+        this.beta = beta;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, cacheName -> {
+            Cache remote = remoteManager.getCache(cacheName);
+            if (remote == null) {
+                return null;
+            }
+            return new TieredCache(cacheName, remote,
+                    l1Enabled ? TieredCache.newLocal(maximumSize, expireAfterWrite) : null,
+                    ttls.getOrDefault(cacheName, defaultTtl), beta, this);
+        });
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return remoteManager.getCacheNames();
+    }
+
+    RedisTemplate<String, String> getRedisTemplate() {
+        return redisTemplate;
+    }
+
+    void publishEvict(String cacheName, String key) {
+        publish(nodeId + SEPARATOR + cacheName + SEPARATOR + key);
+    }
+
+    void publishClear(String cacheName) {
+        publish(nodeId + SEPARATOR + cacheName + SEPARATOR);
+    }
+
+    private void publish(String message) {
+        try {
+            redisTemplate.convertAndSend(CHANNEL, message);
+        } catch (Exception e) {
+            // 广播失败时其他节点的 L1 在过期后自然失效
+            logger.warn("缓存失效广播失败: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        String[] parts = body.split("\\|", 3);
+        if (parts.length < 3 || nodeId.equals(parts[0])) {
+            return;
+        }
+        TieredCache cache = caches.get(parts[1]);
+        if (cache == null) {
+            return;
+        }
+        if (parts[2].isEmpty()) {
+            cache.clearLocal();
+        } else {
+            cache.evictLocal(parts[2]);
+        }
+    }
+
+    /**
+     * 各缓存的分级命中统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        caches.forEach((name, cache) -> stats.put(name, cache.getStats()));
+        return stats;
+    }
+}
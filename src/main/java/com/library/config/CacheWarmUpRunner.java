@@ -0,0 +1,122 @@
+package com.library.config;
+
+import com.library.cache.TieredCache;
+import com.library.entity.Book;
+import com.library.repository.BookRepository;
+import com.library.repository.BorrowRecordRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 启动缓存预热
+ * 按借阅次数取最热门的 N 本图书，一次 findAllById 批量加载后通过管道写入 books 缓存（只写入缓存中还没有的条目），
+ * 避免刚启动的节点接入流量时大量请求同时穿透到数据库。
+ * Spring Boot 在全部 Runner 执行完毕后才发布 ApplicationReadyEvent 并将就绪状态置为 ACCEPTING_TRAFFIC，
+ * 因此预热完成（或超过时间预算）之前节点不会报告就绪；超过预算时启动继续，预热在后台完成
+ */
+@Component
+public class CacheWarmUpRunner implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheWarmUpRunner.class);
+
+    private static final String CACHE_NAME = "books";
+
+    @Autowired
+    private BorrowRecordRepository borrowRecordRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Value("${library.cache.warm-up.enabled:true}")
+    private boolean enabled;
+
+    @Value("${library.cache.warm-up.top-n:500}")
+    private int topN;
+
+    @Value("${library.cache.warm-up.time-budget:10s}")
+    private Duration timeBudget;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled || topN <= 0) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        CompletableFuture<Integer> task = CompletableFuture.supplyAsync(this::warmUp);
+        try {
+            int count = task.get(timeBudget.toMillis(), TimeUnit.MILLISECONDS);
+            logger.info("缓存预热完成：写入 {} 本图书，耗时 {} ms", count, System.currentTimeMillis() - start);
+        } catch (TimeoutException e) {
+            logger.warn("缓存预热超过时间预算 {} ms，继续启动，预热在后台完成", timeBudget.toMillis());
+            task.whenComplete((count, error) -> {
+                if (error == null) {
+                    logger.info("缓存预热完成（后台）：写入 {} 本图书，耗时 {} ms",
+                            count, System.currentTimeMillis() - start);
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // 预热失败不影响启动，缓存按请求正常加载
+            logger.warn("缓存预热失败，耗时 {} ms: {}", System.currentTimeMillis() - start, e.getMessage());
+        }
+    }
+
+    private int warmUp() {
+        List<Object[]> rows = borrowRecordRepository.findTopBorrowedBooks(topN);
+        List<Long> ids = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            ids.add(((Number) row[0]).longValue());
+        }
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        Cache cache = cacheManager.getCache(CACHE_NAME);
+        if (cache == null) {
+            return 0;
+        }
+        if (cache instanceof TieredCache tieredCache) {
+            // 读取数据库之前开始记录删除：预热超过时间预算在后台完成时，期间被编辑的图书不会被写回旧值
+            TieredCache.EvictionTracker tracker = tieredCache.trackEvictions();
+            try {
+                return tieredCache.putAll(load(ids), tracker);
+            } finally {
+                tieredCache.stopTracking(tracker);
+            }
+        }
+        int count = 0;
+        for (Map.Entry<Object, Object> entry : load(ids).entrySet()) {
+            if (cache.putIfAbsent(entry.getKey(), entry.getValue()) == null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private Map<Object, Object> load(List<Long> ids) {
+        Map<Object, Object> values = new HashMap<>();
+        for (Book book : bookRepository.findAllById(ids)) {
+            values.put(book.getId(), book);
+        }
+        return values;
+    }
+}
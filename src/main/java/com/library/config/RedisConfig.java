@@ -4,8 +4,14 @@ import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.library.cache.BinaryCacheSerializer;
+import com.library.cache.BookBinaryCodec;
+import com.library.cache.TieredCacheManager;
+import com.library.entity.Book;
+import com.library.service.BookExistenceFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.CacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -16,10 +22,13 @@ import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 import java.time.Duration;
+import java.util.Map;
 
 @Configuration
 public class RedisConfig {
@@ -71,8 +80,19 @@ public class RedisConfig {
         return template;
     }
     
+    /**
+     * 缓存管理器：默认为 Caffeine 本地缓存（L1）+ Redis（L2）两级缓存，
+     * library.cache.l1.enabled=false 时只使用 Redis；两种模式下同一键的并发加载都会被合并
+     */
     @Bean
-    public CacheManager cacheManager(RedisConnectionFactory connectionFactory) {
+    public CacheManager cacheManager(RedisConnectionFactory connectionFactory,
+                                     RedisTemplate<String, String> redisTemplate,
+                                     @Value("${library.cache.l1.enabled:true}") boolean l1Enabled,
+                                     @Value("${library.cache.l1.maximum-size:10000}") long l1MaximumSize,
+                                     @Value("${library.cache.l1.expire-after-write:60s}") Duration l1ExpireAfterWrite,
+                                     @Value("${library.cache.statistics-ttl:300s}") Duration statisticsTtl,
+                                     @Value("${library.cache.early-refresh-beta:1.0}") double earlyRefreshBeta,
+                                     @Value("${library.cache.binary-caches:books,booksByIsbn}") String[] binaryCaches) {
         // 配置 ObjectMapper 以支持 Java 8 时间类型
         ObjectMapper objectMapper = new ObjectMapper();
         objectMapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
@@ -95,15 +115,45 @@ public class RedisConfig {
             new org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer(objectMapper);
         
         // 配置 Redis 缓存
+        Duration defaultTtl = Duration.ofHours(1);
         RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig()
-                .entryTtl(Duration.ofHours(1)) // 缓存过期时间 1 小时
+                .entryTtl(defaultTtl) // 缓存过期时间 1 小时
                 .serializeKeysWith(RedisSerializationContext.SerializationPair.fromSerializer(new StringRedisSerializer()))
                 .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(serializer))
                 .disableCachingNullValues(); // 不缓存 null 值
         
-        return RedisCacheManager.builder(connectionFactory)
+        // 统计报表缓存时间较短
+        Map<String, Duration> ttls = Map.of("statistics", statisticsTtl);
+        RedisCacheManager.RedisCacheManagerBuilder builder = RedisCacheManager.builder(connectionFactory)
                 .cacheDefaults(config)
-                .build();
+                .withCacheConfiguration("statistics", config.entryTtl(statisticsTtl));
+        
+        // 图书缓存使用二进制格式（无类型元数据、按字段顺序编码），其他类型的值及旧的 JSON 数据仍由 JSON 序列化器处理
+        BinaryCacheSerializer<Book> bookSerializer = new BinaryCacheSerializer<>(new BookBinaryCodec(), serializer);
+        for (String cacheName : binaryCaches) {
+            if (!cacheName.isBlank()) {
+                builder.withCacheConfiguration(cacheName.trim(), config.serializeValuesWith(
+                        RedisSerializationContext.SerializationPair.fromSerializer(bookSerializer)));
+            }
+        }
+        RedisCacheManager redisCacheManager = builder.build();
+        redisCacheManager.afterPropertiesSet();
+        return new TieredCacheManager(redisCacheManager, redisTemplate, l1Enabled, l1MaximumSize,
+                l1ExpireAfterWrite, ttls, defaultTtl, earlyRefreshBeta);
+    }
+    
+    /**
+     * 订阅缓存失效广播，清除本节点的 L1 条目；订阅图书存在性过滤器广播，登记其他节点新增的键
+     */
+    @Bean
+    public RedisMessageListenerContainer cacheInvalidationListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                            CacheManager cacheManager,
+                                                                            BookExistenceFilter bookExistenceFilter) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener((TieredCacheManager) cacheManager, new ChannelTopic(TieredCacheManager.CHANNEL));
+        container.addMessageListener(bookExistenceFilter, new ChannelTopic(BookExistenceFilter.CHANNEL));
+        return container;
     }
     
     /**
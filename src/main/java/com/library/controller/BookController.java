@@ -1,7 +1,10 @@
 package com.library.controller;
 
+import com.library.dto.CappedPage;
+import com.library.dto.KeysetPage;
 import com.library.entity.Book;
 import com.library.entity.User;
+import com.library.service.BookImportService;
 import com.library.service.BookService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
@@ -10,6 +13,7 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
 import jakarta.servlet.http.HttpSession;
 import java.util.HashMap;
@@ -22,35 +26,63 @@ public class BookController {
     @Autowired
     private BookService bookService;
 
+    @Autowired
+    private BookImportService bookImportService;
+
     @GetMapping
     public String listBooks(@RequestParam(required = false) String keyword,
                            @RequestParam(required = false) String category,
                            @RequestParam(defaultValue = "0") int page,
                            @RequestParam(defaultValue = "10") int size,
                            Model model) {
-        Pageable pageable = PageRequest.of(page, size);
-        Page<Book> bookPage;
+        size = Math.max(1, Math.min(size, 100));
+        Pageable pageable = PageRequest.of(Math.max(page, 0), size);
         
         if (keyword != null && !keyword.isEmpty()) {
-            List<Book> books = bookService.searchBooks(keyword);
-            model.addAttribute("books", books);
+            CappedPage<Book> resultPage = bookService.searchBooks(keyword, pageable);
+            model.addAttribute("books", resultPage.getContent());
+            model.addAttribute("resultPage", resultPage);
+            model.addAttribute("keyword", keyword);
         } else if (category != null && !category.isEmpty()) {
-            List<Book> books = bookService.findByCategory(category);
-            model.addAttribute("books", books);
+            CappedPage<Book> resultPage = bookService.findByCategory(category, pageable);
+            model.addAttribute("books", resultPage.getContent());
+            model.addAttribute("resultPage", resultPage);
+            model.addAttribute("category", category);
         } else {
-            bookPage = bookService.findAll(pageable);
+            Page<Book> bookPage = bookService.findAll(pageable);
             model.addAttribute("books", bookPage.getContent());
             model.addAttribute("totalPages", bookPage.getTotalPages());
             model.addAttribute("currentPage", page);
         }
+        model.addAttribute("pageSize", size);
+        model.addAttribute("facets", bookService.getCategoryFacets());
         
         return "books/list";
     }
 
+    /**
+     * 分类分面统计：各分类的图书种数、总册数、可借册数
+     */
+    @GetMapping("/facets")
+    @ResponseBody
+    public List<Map<String, Object>> facets() {
+        return bookService.getCategoryFacets();
+    }
+
+    /**
+     * 搜索框联想：返回书名/作者前缀匹配的候选，按借阅热度排序
+     */
+    @GetMapping("/suggest")
+    @ResponseBody
+    public List<Map<String, Object>> suggest(@RequestParam("q") String prefix,
+                                             @RequestParam(defaultValue = "10") int limit) {
+        return bookService.suggest(prefix, Math.max(1, Math.min(limit, 10)));
+    }
+
     @GetMapping("/{id}")
     public String viewBook(@PathVariable Long id, Model model) {
-        // 使用带缓存的方法
-        Book book = bookService.getBookById(id);
+        // 图书信息来自缓存，可借册数读取时单独获取
+        Book book = bookService.withCurrentAvailability(bookService.getBookById(id));
         if (book == null) {
             model.addAttribute("error", "图书不存在");
             model.addAttribute("message", "您访问的图书ID为 " + id + " 的图书不存在，可能已被删除或ID错误。");
@@ -60,20 +92,48 @@ public class BookController {
         return "books/detail";
     }
 
+    /**
+     * 借过这本书的读者还借过（详情页异步加载）
+     */
+    @GetMapping("/{id}/also-borrowed")
+    @ResponseBody
+    public List<Map<String, Object>> alsoBorrowed(@PathVariable Long id,
+                                                  @RequestParam(defaultValue = "6") int limit) {
+        return bookService.getAlsoBorrowed(id, Math.max(1, Math.min(limit, 20)));
+    }
+
+    /**
+     * 按 ISBN 查看图书
+     */
+    @GetMapping("/isbn/{isbn}")
+    public String viewBookByIsbn(@PathVariable String isbn, Model model) {
+        Book book = bookService.getBookByIsbn(isbn);
+        if (book == null) {
+            model.addAttribute("error", "图书不存在");
+            model.addAttribute("message", "未找到 ISBN 为 " + isbn + " 的图书。");
+            return "error";
+        }
+        return "redirect:/books/" + book.getId();
+    }
+
+    /**
+     * 图书管理列表（键集分页，after/before 为翻页游标）
+     */
     @GetMapping("/admin")
-    public String adminListBooks(@RequestParam(defaultValue = "0") int page,
+    public String adminListBooks(@RequestParam(required = false) String after,
+                                  @RequestParam(required = false) String before,
                                   @RequestParam(defaultValue = "10") int size,
                                   HttpSession session, Model model) {
         User user = (User) session.getAttribute("user");
         if (user == null || user.getRole() != User.Role.ADMIN) {
             return "redirect:/dashboard";
         }
-        Pageable pageable = PageRequest.of(page, size);
-        Page<Book> bookPage = bookService.findAll(pageable);
+        size = Math.max(1, Math.min(size, 100));
+        KeysetPage<Book> bookPage = bookService.findPage(after, before, size);
         model.addAttribute("books", bookPage.getContent());
-        model.addAttribute("totalPages", bookPage.getTotalPages());
+        model.addAttribute("nextCursor", bookPage.getNextCursor());
+        model.addAttribute("prevCursor", bookPage.getPrevCursor());
         model.addAttribute("totalElements", bookPage.getTotalElements());
-        model.addAttribute("currentPage", page);
         model.addAttribute("pageSize", size);
         return "books/admin-list";
     }
@@ -109,6 +169,64 @@ public class BookController {
         return result;
     }
 
+    @GetMapping("/admin/import")
+    public String importPage(HttpSession session) {
+        User user = (User) session.getAttribute("user");
+        if (user == null || user.getRole() != User.Role.ADMIN) {
+            return "redirect:/dashboard";
+        }
+        return "books/import";
+    }
+
+    /**
+     * 批量导入 CSV，后台执行，返回任务ID
+     */
+    @PostMapping("/admin/import")
+    @ResponseBody
+    public Map<String, Object> importBooks(@RequestParam("file") MultipartFile file, HttpSession session) {
+        Map<String, Object> result = new HashMap<>();
+        User user = (User) session.getAttribute("user");
+        if (user == null || user.getRole() != User.Role.ADMIN) {
+            result.put("success", false);
+            result.put("message", "无权限");
+            return result;
+        }
+        try {
+            String jobId = bookImportService.submit(file);
+            result.put("success", true);
+            result.put("message", "导入任务已提交");
+            result.put("jobId", jobId);
+        } catch (Exception e) {
+            result.put("success", false);
+            result.put("message", "导入失败：" + e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * 导入进度：已处理行数、新增/更新/失败数、每行错误
+     */
+    @GetMapping("/admin/import/{jobId}")
+    @ResponseBody
+    public Map<String, Object> importProgress(@PathVariable String jobId, HttpSession session) {
+        Map<String, Object> result = new HashMap<>();
+        User user = (User) session.getAttribute("user");
+        if (user == null || user.getRole() != User.Role.ADMIN) {
+            result.put("success", false);
+            result.put("message", "无权限");
+            return result;
+        }
+        Map<String, Object> progress = bookImportService.getProgress(jobId);
+        if (progress == null) {
+            result.put("success", false);
+            result.put("message", "导入任务不存在");
+            return result;
+        }
+        result.put("success", true);
+        result.put("progress", progress);
+        return result;
+    }
+
     @GetMapping("/admin/edit/{id}")
     public String editBookPage(@PathVariable Long id, HttpSession session, Model model) {
         User user = (User) session.getAttribute("user");
@@ -163,5 +281,43 @@ public class BookController {
         }
         return result;
     }
-}
 
+    /**
+     * 搜索索引、联想索引与存在性过滤器状态（规模、内存占用估算、误判率与拦截次数）
+     */
+    @GetMapping("/admin/index-stats")
+    @ResponseBody
+    public Map<String, Object> indexStats(HttpSession session) {
+        Map<String, Object> result = new HashMap<>();
+        User user = (User) session.getAttribute("user");
+        if (user == null || user.getRole() != User.Role.ADMIN) {
+            result.put("success", false);
+            result.put("message", "无权限");
+            return result;
+        }
+        result.put("search", bookService.getSearchIndexStats());
+        result.put("suggest", bookService.getSuggestIndexStats());
+        result.put("existenceFilter", bookService.getExistenceFilterStats());
+        result.put("recommendations", bookService.getRecommendationStats());
+        return result;
+    }
+
+    /**
+     * 两级缓存命中统计（L1 本地 / L2 Redis）及可借册数读取来源
+     */
+    @GetMapping("/admin/cache-stats")
+    @ResponseBody
+    public Map<String, Object> cacheStats(HttpSession session) {
+        Map<String, Object> result = new HashMap<>();
+        User user = (User) session.getAttribute("user");
+        if (user == null || user.getRole() != User.Role.ADMIN) {
+            result.put("success", false);
+            result.put("message", "无权限");
+            return result;
+        }
+        result.put("success", true);
+        result.put("caches", bookService.getCacheStats());
+        result.put("availability", bookService.getAvailabilityStats());
+        return result;
+    }
+}
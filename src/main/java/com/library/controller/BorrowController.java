@@ -1,18 +1,22 @@
 package com.library.controller;
 
-import com.library.entity.BorrowRecord;
+import com.library.dto.BorrowRecordView;
+import com.library.dto.KeysetPage;
 import com.library.entity.User;
+import com.library.service.BorrowArchiveService;
 import com.library.service.BorrowService;
+import com.library.service.HotInventoryService;
+import com.library.service.IdempotencyService;
+import com.library.service.OverdueSweepService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 
 import jakarta.servlet.http.HttpSession;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @Controller
@@ -21,8 +25,30 @@ public class BorrowController {
     @Autowired
     private BorrowService borrowService;
 
+    @Autowired
+    private HotInventoryService hotInventoryService;
+
+    @Autowired
+    private OverdueSweepService overdueSweepService;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private BorrowArchiveService borrowArchiveService;
+
+    @Value("${library.borrow.max-books:5}")
+    private int maxBooks;
+
+    @Value("${library.borrow.desk-batch-limit:100}")
+    private int deskBatchLimit;
+
+    /**
+     * 我的借阅记录（键集分页，after/before 为翻页游标）
+     */
     @GetMapping
-    public String myBorrowRecords(@RequestParam(defaultValue = "0") int page,
+    public String myBorrowRecords(@RequestParam(required = false) String after,
+                                  @RequestParam(required = false) String before,
                                   @RequestParam(defaultValue = "10") int size,
                                   HttpSession session, Model model) {
         User user = (User) session.getAttribute("user");
@@ -30,19 +56,25 @@ public class BorrowController {
             return "redirect:/login";
         }
         
-        Pageable pageable = PageRequest.of(page, size);
-        Page<BorrowRecord> recordPage = borrowService.getUserBorrowRecords(user.getId(), pageable);
+        size = Math.max(1, Math.min(size, 100));
+        KeysetPage<BorrowRecordView> recordPage = borrowService.getUserBorrowRecords(user.getId(), after, before, size);
         model.addAttribute("records", recordPage.getContent());
-        model.addAttribute("totalPages", recordPage.getTotalPages());
+        model.addAttribute("nextCursor", recordPage.getNextCursor());
+        model.addAttribute("prevCursor", recordPage.getPrevCursor());
         model.addAttribute("totalElements", recordPage.getTotalElements());
-        model.addAttribute("currentPage", page);
         model.addAttribute("pageSize", size);
         return "borrow/my-records";
     }
 
+    /**
+     * 借阅图书，支持通过 Idempotency-Key 请求头或 idempotencyKey 参数传入幂等键，重复提交回放首次结果
+     */
     @PostMapping("/borrow")
     @ResponseBody
-    public Map<String, Object> borrowBook(@RequestParam Long bookId, HttpSession session) {
+    public Map<String, Object> borrowBook(@RequestParam Long bookId,
+                                          @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyHeader,
+                                          @RequestParam(required = false) String idempotencyKey,
+                                          HttpSession session) {
         User user = (User) session.getAttribute("user");
         if (user == null || user.getRole() == User.Role.GUEST) {
             Map<String, Object> result = new HashMap<>();
@@ -51,49 +83,199 @@ public class BorrowController {
             return result;
         }
         
-        return borrowService.borrowBook(user.getId(), bookId);
+        return idempotencyService.execute("borrow:" + user.getId() + ":" + bookId,
+                idempotencyHeader != null ? idempotencyHeader : idempotencyKey,
+                () -> borrowService.borrowBook(user.getId(), bookId));
     }
 
-    @PostMapping("/return/{id}")
+    /**
+     * 批量借阅（借书车结算），返回每本书的借阅结果
+     * 整批在一个加锁事务中处理，超过最大借阅数量的请求直接拒绝
+     */
+    @PostMapping("/checkout")
     @ResponseBody
-    public Map<String, Object> returnBook(@PathVariable Long id, HttpSession session) {
+    public Map<String, Object> checkout(@RequestParam List<Long> bookIds, HttpSession session) {
         User user = (User) session.getAttribute("user");
-        if (user == null) {
+        if (user == null || user.getRole() == User.Role.GUEST) {
             Map<String, Object> result = new HashMap<>();
             result.put("success", false);
             result.put("message", "请先登录");
             return result;
         }
+        if (bookIds.size() > maxBooks) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", false);
+            result.put("message", "一次最多借阅 " + maxBooks + " 本");
+            return result;
+        }
         
-        // 检查权限：用户只能归还自己的书，管理员可以归还任何书
-        BorrowRecord record = borrowService.findById(id)
-                .orElseThrow(() -> new RuntimeException("借阅记录不存在"));
-        if (user.getRole() != User.Role.ADMIN && !record.getUserId().equals(user.getId())) {
+        return borrowService.borrowBooks(user.getId(), bookIds);
+    }
+
+    /**
+     * 归还图书，幂等键用法同借阅
+     */
+    @PostMapping("/return/{id}")
+    @ResponseBody
+    public Map<String, Object> returnBook(@PathVariable Long id,
+                                          @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyHeader,
+                                          @RequestParam(required = false) String idempotencyKey,
+                                          HttpSession session) {
+        User user = (User) session.getAttribute("user");
+        if (user == null) {
             Map<String, Object> result = new HashMap<>();
             result.put("success", false);
-            result.put("message", "无权限");
+            result.put("message", "请先登录");
             return result;
         }
         
-        return borrowService.returnBook(id);
+        return idempotencyService.execute("return:" + user.getId() + ":" + id,
+                idempotencyHeader != null ? idempotencyHeader : idempotencyKey,
+                // 用户只能归还自己的书，管理员可以归还任何书；归属校验在条件更新中完成
+                () -> borrowService.returnBook(id, user.getRole() == User.Role.ADMIN ? null : user.getId()));
     }
 
+    /**
+     * 借阅管理（键集分页，after/before 为翻页游标）
+     */
     @GetMapping("/admin")
-    public String adminBorrowRecords(@RequestParam(defaultValue = "0") int page,
+    public String adminBorrowRecords(@RequestParam(required = false) String after,
+                                     @RequestParam(required = false) String before,
                                      @RequestParam(defaultValue = "10") int size,
                                      HttpSession session, Model model) {
         User user = (User) session.getAttribute("user");
         if (user == null || user.getRole() != User.Role.ADMIN) {
             return "redirect:/dashboard";
         }
-        Pageable pageable = PageRequest.of(page, size);
-        Page<BorrowRecord> recordPage = borrowService.getAllBorrowRecords(pageable);
+        size = Math.max(1, Math.min(size, 100));
+        KeysetPage<BorrowRecordView> recordPage = borrowService.getAllBorrowRecords(after, before, size);
         model.addAttribute("records", recordPage.getContent());
-        model.addAttribute("totalPages", recordPage.getTotalPages());
+        model.addAttribute("nextCursor", recordPage.getNextCursor());
+        model.addAttribute("prevCursor", recordPage.getPrevCursor());
         model.addAttribute("totalElements", recordPage.getTotalElements());
-        model.addAttribute("currentPage", page);
         model.addAttribute("pageSize", size);
         return "borrow/admin-records";
     }
-}
 
+    /**
+     * 批量归还（管理员前台扫码），返回每条记录的归还结果
+     * 整批在一个加锁事务中处理，每批最多 library.borrow.desk-batch-limit 条
+     */
+    @PostMapping("/admin/return-batch")
+    @ResponseBody
+    public Map<String, Object> returnBooks(@RequestParam List<Long> recordIds, HttpSession session) {
+        User user = (User) session.getAttribute("user");
+        if (user == null || user.getRole() != User.Role.ADMIN) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", false);
+            result.put("message", "无权限");
+            return result;
+        }
+        if (recordIds.size() > deskBatchLimit) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", false);
+            result.put("message", "每批最多归还 " + deskBatchLimit + " 条，请分批提交");
+            return result;
+        }
+        
+        return borrowService.returnBooks(recordIds, null);
+    }
+
+    /**
+     * 热门库存模式指标（管理员）
+     */
+    @GetMapping("/admin/hot-inventory")
+    @ResponseBody
+    public Map<String, Object> hotInventoryMetrics(HttpSession session) {
+        User user = (User) session.getAttribute("user");
+        if (user == null || user.getRole() != User.Role.ADMIN) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", false);
+            result.put("message", "无权限");
+            return result;
+        }
+        return hotInventoryService.getMetrics();
+    }
+
+    /**
+     * 手动核对热门库存日志（管理员）
+     */
+    @PostMapping("/admin/hot-inventory/reconcile")
+    @ResponseBody
+    public Map<String, Object> reconcileHotInventory(HttpSession session) {
+        User user = (User) session.getAttribute("user");
+        if (user == null || user.getRole() != User.Role.ADMIN) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", false);
+            result.put("message", "无权限");
+            return result;
+        }
+        return hotInventoryService.reconcileJournal();
+    }
+
+    /**
+     * 最近一次逾期扫描结果（管理员）
+     */
+    @GetMapping("/admin/overdue")
+    @ResponseBody
+    public Map<String, Object> overdueSweepStatus(HttpSession session) {
+        User user = (User) session.getAttribute("user");
+        if (user == null || user.getRole() != User.Role.ADMIN) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", false);
+            result.put("message", "无权限");
+            return result;
+        }
+        return overdueSweepService.getLastRun();
+    }
+
+    /**
+     * 立即执行逾期扫描（管理员）
+     */
+    @PostMapping("/admin/overdue/sweep")
+    @ResponseBody
+    public Map<String, Object> sweepOverdue(HttpSession session) {
+        User user = (User) session.getAttribute("user");
+        if (user == null || user.getRole() != User.Role.ADMIN) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", false);
+            result.put("message", "无权限");
+            return result;
+        }
+        return overdueSweepService.sweep();
+    }
+
+    /**
+     * 冷热表行数及最近一次归档结果（管理员）
+     */
+    @GetMapping("/admin/archive")
+    @ResponseBody
+    public Map<String, Object> archiveStatus(HttpSession session) {
+        User user = (User) session.getAttribute("user");
+        if (user == null || user.getRole() != User.Role.ADMIN) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", false);
+            result.put("message", "无权限");
+            return result;
+        }
+        Map<String, Object> result = new HashMap<>(borrowArchiveService.getTierSizes());
+        result.put("lastRun", borrowArchiveService.getLastRun());
+        return result;
+    }
+
+    /**
+     * 立即执行一次归档（管理员）
+     */
+    @PostMapping("/admin/archive/run")
+    @ResponseBody
+    public Map<String, Object> runArchive(HttpSession session) {
+        User user = (User) session.getAttribute("user");
+        if (user == null || user.getRole() != User.Role.ADMIN) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", false);
+            result.put("message", "无权限");
+            return result;
+        }
+        return borrowArchiveService.archive();
+    }
+}
@@ -1,6 +1,8 @@
 package com.library.controller;
 
 import com.library.entity.User;
+import com.library.service.TrendingService;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -9,10 +11,16 @@ import jakarta.servlet.http.HttpSession;
 
 @Controller
 public class DashboardController {
+    @Autowired
+    private TrendingService trendingService;
+
     @GetMapping("/dashboard")
     public String dashboard(HttpSession session, Model model) {
         User user = (User) session.getAttribute("user");
         model.addAttribute("user", user);
+        // 近期热门（内存快照，不查询数据库）
+        model.addAttribute("trendingDay", trendingService.getTrending(TrendingService.DAY, 5));
+        model.addAttribute("trendingWeek", trendingService.getTrending(TrendingService.WEEK, 5));
         return "dashboard";
     }
 }
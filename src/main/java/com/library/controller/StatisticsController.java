@@ -2,15 +2,18 @@ package com.library.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.library.entity.User;
+import com.library.service.BorrowRollupService;
 import com.library.service.StatisticsService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 import jakarta.servlet.http.HttpSession;
+import java.util.HashMap;
 import java.util.Map;
 
 @Controller
@@ -20,9 +23,14 @@ public class StatisticsController {
     @Autowired
     private StatisticsService statisticsService;
     
+    @Autowired
+    private BorrowRollupService borrowRollupService;
+    
     @Autowired
     private ObjectMapper objectMapper;
     
+    private final Object reportRefreshLock = new Object();
+    
     /**
      * 显示统计报表页面（管理员）
      */
@@ -34,7 +42,7 @@ public class StatisticsController {
         }
         
         // 获取所有统计数据
-        Map<String, Object> report = statisticsService.getFullStatisticsReport();
+        Map<String, Object> report = loadReport();
         model.addAttribute("report", report);
         
         // 将数据序列化为 JSON 字符串，方便前端使用
@@ -58,6 +66,61 @@ public class StatisticsController {
             return Map.of("success", false, "message", "无权限");
         }
         
-        return statisticsService.getFullStatisticsReport();
+        return loadReport();
+    }
+    
+    /**
+     * 读取统计报表；部分查询超时或失败时照常返回已有结果，部分结果在缓存中保留 library.cache.statistics-partial-ttl，
+     * 期间的请求直接使用，避免数据库变慢时每个请求都重新发起全部查询。
+     * 过期后在锁内复查再移出缓存：同一节点并发发现过期时只移出一次，不会把其他请求刚算好的新报表移出
+     */
+    private Map<String, Object> loadReport() {
+        Map<String, Object> report = statisticsService.getFullStatisticsReport();
+        if (!statisticsService.isStalePartial(report)) {
+            return report;
+        }
+        synchronized (reportRefreshLock) {
+            report = statisticsService.getFullStatisticsReport();
+            if (statisticsService.isStalePartial(report)) {
+                statisticsService.evictReport();
+                report = statisticsService.getFullStatisticsReport();
+            }
+        }
+        return report;
+    }
+    
+    /**
+     * 最近一次统计汇总回填结果（管理员）
+     */
+    @GetMapping("/admin/rollup")
+    @ResponseBody
+    public Map<String, Object> rollupStatus(HttpSession session) {
+        User user = (User) session.getAttribute("user");
+        if (user == null || user.getRole() != User.Role.ADMIN) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", false);
+            result.put("message", "无权限");
+            return result;
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("lastRun", borrowRollupService.getLastRun());
+        result.put("lastReconcile", borrowRollupService.getLastReconcile());
+        return result;
+    }
+    
+    /**
+     * 按原始借阅记录重新计算统计汇总（管理员，用于数据导入或人工修正之后）
+     */
+    @PostMapping("/admin/rollup/backfill")
+    @ResponseBody
+    public Map<String, Object> backfillRollup(HttpSession session) {
+        User user = (User) session.getAttribute("user");
+        if (user == null || user.getRole() != User.Role.ADMIN) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", false);
+            result.put("message", "无权限");
+            return result;
+        }
+        return borrowRollupService.backfill();
     }
 }
@@ -0,0 +1,28 @@
+package com.library.dto;
+
+import com.library.entity.BorrowRecord;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+/**
+ * 借阅记录列表视图（只读投影）
+ * 通过一次连接查询直接构造，只包含列表页展示的字段，不加载 User 密码、Book 简介等大字段，
+ * 也不进入持久化上下文
+ */
+@Getter
+@AllArgsConstructor
+public class BorrowRecordView {
+    private final Long id;
+    private final Long userId;
+    private final String username;
+    private final String realName;
+    private final Long bookId;
+    private final String bookTitle;
+    private final String bookAuthor;
+    private final LocalDateTime borrowDate;
+    private final LocalDateTime dueDate;
+    private final LocalDateTime returnDate;
+    private final BorrowRecord.Status status;
+}
@@ -0,0 +1,37 @@
+package com.library.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * 总数封顶的分页结果
+ * 当前页按 OFFSET 取 size + 1 条判断是否有下一页，总数只统计到上限 + 1（超过上限显示为 "上限+"），
+ * 避免筛选结果很多时为精确总数扫描全部匹配行
+ */
+@Getter
+@AllArgsConstructor
+public class CappedPage<T> {
+    private final List<T> content;
+    private final int page;             // 当前页码（从 0 开始）
+    private final int size;
+    private final boolean hasNext;
+    private final long total;           // 匹配总数，最多统计到 cap + 1
+    private final long cap;
+
+    public boolean isHasPrevious() {
+        return page > 0;
+    }
+
+    public boolean isTotalCapped() {
+        return total > cap;
+    }
+
+    /**
+     * 总数展示文本，例如 "37" 或 "1000+"
+     */
+    public String getTotalLabel() {
+        return isTotalCapped() ? cap + "+" : String.valueOf(total);
+    }
+}
@@ -0,0 +1,43 @@
+package com.library.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 键集（游标）分页结果
+ * 不使用 OFFSET，而是以当前页首尾记录的排序键作为翻页起点，深翻页时查询代价保持不变
+ */
+@Getter
+@AllArgsConstructor
+public class KeysetPage<T> {
+    private final List<T> content;
+    private final String nextCursor;    // 下一页游标，没有下一页时为 null
+    private final String prevCursor;    // 上一页游标，没有上一页时为 null
+    private final Long totalElements;   // 总记录数（来自短时缓存），为 null 表示未统计
+
+    /**
+     * 由多查一条的查询结果构造分页
+     * @param rows 按查询方向排序的结果，最多 size + 1 条
+     * @param backward 是否向前翻页（查询方向与展示方向相反，需要反转）
+     * @param hasCursor 本次请求是否携带游标
+     * @param cursorOf 由记录生成游标
+     */
+    public static <T> KeysetPage<T> of(List<T> rows, int size, boolean backward, boolean hasCursor,
+                                       Function<T, String> cursorOf, Long totalElements) {
+        boolean hasMore = rows.size() > size;
+        List<T> content = new ArrayList<>(hasMore ? rows.subList(0, size) : rows);
+        if (backward) {
+            Collections.reverse(content);
+        }
+        boolean hasNext = backward || hasMore;
+        boolean hasPrevious = backward ? hasMore : hasCursor;
+        String next = hasNext && !content.isEmpty() ? cursorOf.apply(content.get(content.size() - 1)) : null;
+        String prev = hasPrevious && !content.isEmpty() ? cursorOf.apply(content.get(0)) : null;
+        return new KeysetPage<>(content, next, prev, totalElements);
+    }
+}
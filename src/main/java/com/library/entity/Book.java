@@ -30,10 +30,12 @@ public class Book {
     @Column(columnDefinition = "TEXT")
     private String description;
 
-    @Column(nullable = false)
+    // 册数只在新增时随实体写入，之后只通过 BookRepository 的条件/增量更新修改，
+    // 保存实体时不会用读取时的旧值覆盖并发借还已提交的扣减
+    @Column(nullable = false, updatable = false)
     private Integer totalCopies = 0;  // 总册数
 
-    @Column(nullable = false)
+    @Column(nullable = false, updatable = false)
     private Integer availableCopies = 0;  // 可借册数
 
     @Column(length = 50)
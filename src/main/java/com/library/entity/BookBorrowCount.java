@@ -0,0 +1,21 @@
+package com.library.entity;
+
+import lombok.Data;
+import jakarta.persistence.*;
+
+/**
+ * 图书累计借阅次数（含归档记录），借阅时在同一事务中累加，供最受欢迎图书排行使用
+ */
+@Entity
+@Table(name = "book_borrow_counts", indexes = {
+        @Index(name = "idx_book_borrow_count", columnList = "borrow_count")
+})
+@Data
+public class BookBorrowCount {
+    @Id
+    @Column(name = "book_id")
+    private Long bookId;
+
+    @Column(name = "borrow_count", nullable = false)
+    private Long borrowCount;
+}
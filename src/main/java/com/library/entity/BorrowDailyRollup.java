@@ -0,0 +1,43 @@
+package com.library.entity;
+
+import lombok.Data;
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * 借阅日汇总（统计报表用）
+ * 按 (借阅日期, 图书分类, 当前状态) 统计借阅记录数，包含热表和归档表中的记录；
+ * 借阅、归还、逾期在同一事务中由 BorrowRollupRepository 增减，全量数据由 BorrowRollupService 回填
+ */
+@Entity
+@Table(name = "borrow_daily_rollup")
+@IdClass(BorrowDailyRollup.Key.class)
+@Data
+public class BorrowDailyRollup {
+    @Id
+    @Column(name = "day", nullable = false)
+    private LocalDate day;
+
+    // 无分类的图书记为空字符串
+    @Id
+    @Column(name = "category", nullable = false, length = 50)
+    private String category;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private BorrowRecord.Status status;
+
+    @Column(name = "borrow_count", nullable = false)
+    private Long borrowCount;
+
+    @Data
+    public static class Key implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private LocalDate day;
+        private String category;
+        private BorrowRecord.Status status;
+    }
+}
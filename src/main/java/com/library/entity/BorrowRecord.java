@@ -5,7 +5,11 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "borrow_records")
+@Table(name = "borrow_records", indexes = {
+        @Index(name = "idx_status_due_date", columnList = "status, due_date"),
+        @Index(name = "idx_user_borrow_date", columnList = "user_id, borrow_date"),
+        @Index(name = "idx_status_return_date", columnList = "status, return_date")
+})
 @Data
 public class BorrowRecord {
     @Id
@@ -0,0 +1,49 @@
+package com.library.entity;
+
+import lombok.Data;
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 归档借阅记录（冷数据）
+ * 已归还且超过保留期的记录由 BorrowArchiveService 从 borrow_records 批量迁移至此，主键沿用原记录ID
+ */
+@Entity
+@Table(name = "borrow_records_archive", indexes = {
+        @Index(name = "idx_archive_user_borrow_date", columnList = "user_id, borrow_date"),
+        @Index(name = "idx_archive_book_id", columnList = "book_id"),
+        @Index(name = "idx_archive_borrow_date", columnList = "borrow_date")
+})
+@Data
+public class BorrowRecordArchive {
+    @Id
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "book_id", nullable = false)
+    private Long bookId;
+
+    @Column(name = "borrow_date", nullable = false)
+    private LocalDateTime borrowDate;
+
+    @Column(name = "return_date")
+    private LocalDateTime returnDate;
+
+    @Column(name = "due_date", nullable = false)
+    private LocalDateTime dueDate;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private BorrowRecord.Status status;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @Column(name = "archived_at")
+    private LocalDateTime archivedAt;
+}
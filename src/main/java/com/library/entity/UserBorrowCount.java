@@ -0,0 +1,21 @@
+package com.library.entity;
+
+import lombok.Data;
+import jakarta.persistence.*;
+
+/**
+ * 用户累计借阅次数（含归档记录），借阅时在同一事务中累加，供最活跃用户排行使用
+ */
+@Entity
+@Table(name = "user_borrow_counts", indexes = {
+        @Index(name = "idx_user_borrow_count", columnList = "borrow_count")
+})
+@Data
+public class UserBorrowCount {
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "borrow_count", nullable = false)
+    private Long borrowCount;
+}
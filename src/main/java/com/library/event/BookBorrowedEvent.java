@@ -0,0 +1,10 @@
+package com.library.event;
+
+/**
+ * 借阅成功事件
+ * 单本借阅、批量借阅成功以及热门库存预占落库后发布（落库时被作废的预占不发布），监听方在事务提交后处理（无事务时立即处理）
+ * @param userId 用户ID
+ * @param bookId 图书ID
+ */
+public record BookBorrowedEvent(Long userId, Long bookId) {
+}
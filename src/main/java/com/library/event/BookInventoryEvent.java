@@ -0,0 +1,10 @@
+package com.library.event;
+
+/**
+ * 图书可借库存变更事件
+ * 借阅、归还以及热门库存批量落库在数据库库存变更后发布，监听方在事务提交后处理
+ * @param bookId 图书ID
+ * @param availableDelta 可借册数变化量（借出为负，归还为正）
+ */
+public record BookInventoryEvent(Long bookId, int availableDelta) {
+}
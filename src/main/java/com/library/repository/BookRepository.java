@@ -1,10 +1,14 @@
 package com.library.repository;
 
 import com.library.entity.Book;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
@@ -14,7 +18,96 @@ public interface BookRepository extends JpaRepository<Book, Long> {
     List<Book> findByIsbn(String isbn);
     List<Book> findByCategory(String category);
     
+    // 键集分页：按 id 排序，以游标位置为起点
+    List<Book> findAllByOrderByIdAsc(Pageable pageable);
+    List<Book> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+    List<Book> findByIdLessThanOrderByIdDesc(Long id, Pageable pageable);
+    
     @Query("SELECT b FROM Book b WHERE b.title LIKE %:keyword% OR b.author LIKE %:keyword% OR b.isbn LIKE %:keyword%")
     List<Book> searchBooks(@Param("keyword") String keyword);
+    
+    // 筛选分页：只取当前页（多取一条判断是否有下一页），不做精确计数
+    
+    @Query("SELECT b FROM Book b WHERE b.title LIKE %:keyword% OR b.author LIKE %:keyword% OR b.isbn LIKE %:keyword%")
+    Slice<Book> searchBooks(@Param("keyword") String keyword, Pageable pageable);
+    
+    Slice<Book> findByCategory(String category, Pageable pageable);
+    Slice<Book> findByTitleContaining(String title, Pageable pageable);
+    Slice<Book> findByAuthorContaining(String author, Pageable pageable);
+    
+    // 封顶计数：最多数到 cap 行即停止（调用方传入 上限+1，数满即表示超过上限）
+    
+    @Query(value = "SELECT COUNT(*) FROM (SELECT 1 FROM books WHERE title LIKE CONCAT('%', :keyword, '%') OR author LIKE CONCAT('%', :keyword, '%') OR isbn LIKE CONCAT('%', :keyword, '%') LIMIT :cap) t", nativeQuery = true)
+    long countSearchBooksCapped(@Param("keyword") String keyword, @Param("cap") int cap);
+    
+    @Query(value = "SELECT COUNT(*) FROM (SELECT 1 FROM books WHERE category = :category LIMIT :cap) t", nativeQuery = true)
+    long countByCategoryCapped(@Param("category") String category, @Param("cap") int cap);
+    
+    @Query(value = "SELECT COUNT(*) FROM (SELECT 1 FROM books WHERE title LIKE CONCAT('%', :title, '%') LIMIT :cap) t", nativeQuery = true)
+    long countByTitleContainingCapped(@Param("title") String title, @Param("cap") int cap);
+    
+    @Query(value = "SELECT COUNT(*) FROM (SELECT 1 FROM books WHERE author LIKE CONCAT('%', :author, '%') LIMIT :cap) t", nativeQuery = true)
+    long countByAuthorContainingCapped(@Param("author") String author, @Param("cap") int cap);
+    
+    // 分类分面统计：只读取分类与库存列
+    
+    @Query("SELECT b.id, b.category, b.totalCopies, b.availableCopies FROM Book b WHERE b.id > :afterId ORDER BY b.id")
+    List<Object[]> findFacetRowsAfter(@Param("afterId") Long afterId, Pageable pageable);
+    
+    @Query("SELECT b.category, COUNT(b), SUM(b.totalCopies), SUM(b.availableCopies) FROM Book b GROUP BY b.category")
+    List<Object[]> aggregateByCategory();
+    
+    // 存在性过滤器：只读取 ID 与 ISBN 列
+    
+    @Query("SELECT b.id, b.isbn FROM Book b WHERE b.id > :afterId ORDER BY b.id")
+    List<Object[]> findKeyRowsAfter(@Param("afterId") Long afterId, Pageable pageable);
+    
+    // 库存变更：条件更新，一条语句完成检查与扣减，返回受影响行数
+    
+    /**
+     * 扣减一册可借库存，仅当仍有库存时生效
+     * @return 1 表示扣减成功，0 表示库存不足或图书不存在
+     */
+    @Modifying
+    @Query("UPDATE Book b SET b.availableCopies = b.availableCopies - 1, b.updatedAt = :now WHERE b.id = :id AND b.availableCopies > 0")
+    int decrementAvailableCopies(@Param("id") Long id, @Param("now") LocalDateTime now);
+    
+    /**
+     * 归还一册库存
+     * @return 1 表示成功，0 表示图书不存在
+     */
+    @Modifying
+    @Query("UPDATE Book b SET b.availableCopies = b.availableCopies + 1, b.updatedAt = :now WHERE b.id = :id")
+    int incrementAvailableCopies(@Param("id") Long id, @Param("now") LocalDateTime now);
+    
+    /**
+     * 批量扣减库存（热门库存模式落库），仅当库存足够时生效
+     */
+    @Modifying
+    @Query("UPDATE Book b SET b.availableCopies = b.availableCopies - :count, b.updatedAt = :now WHERE b.id = :id AND b.availableCopies >= :count")
+    int decrementAvailableCopiesBy(@Param("id") Long id, @Param("count") int count, @Param("now") LocalDateTime now);
+    
+    /**
+     * 批量归还时按图书汇总增加库存
+     */
+    @Modifying
+    @Query("UPDATE Book b SET b.availableCopies = b.availableCopies + :count, b.updatedAt = :now WHERE b.id = :id")
+    int incrementAvailableCopiesBy(@Param("id") Long id, @Param("count") int count, @Param("now") LocalDateTime now);
+    
+    /**
+     * 修改总册数：可借册数按总册数的差值增减，在数据库当前值上计算，不覆盖并发借还的扣减
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Book b SET b.availableCopies = b.availableCopies + (:total - b.totalCopies), b.totalCopies = :total, " +
+           "b.updatedAt = :now WHERE b.id = :id")
+    int updateTotalCopies(@Param("id") Long id, @Param("total") int total, @Param("now") LocalDateTime now);
+    
+    @Query("SELECT b.availableCopies FROM Book b WHERE b.id = :id")
+    Integer findAvailableCopiesById(@Param("id") Long id);
+    
+    /**
+     * 读取可借册数并锁定该行至事务结束（热门库存升级时读取初始值、落库时核对库存）
+     */
+    @Query(value = "SELECT available_copies FROM books WHERE id = :id FOR UPDATE", nativeQuery = true)
+    Integer lockAvailableCopiesById(@Param("id") Long id);
 }
-
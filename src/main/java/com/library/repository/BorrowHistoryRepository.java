@@ -0,0 +1,102 @@
+package com.library.repository;
+
+import com.library.dto.BorrowRecordView;
+import com.library.entity.BorrowRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 借阅历史查询（热表 + 归档表）
+ * 两张表各自按索引取前 limit 行后合并排序，供查询范围跨过归档分界时间的历史列表使用
+ */
+@Repository
+public class BorrowHistoryRepository {
+
+    private static final String COLUMNS = "id, user_id, book_id, borrow_date, due_date, return_date, status";
+
+    private static final RowMapper<BorrowRecordView> VIEW_MAPPER = (rs, rowNum) -> {
+        Timestamp returnDate = rs.getTimestamp("return_date");
+        return new BorrowRecordView(
+                rs.getLong("id"),
+                rs.getLong("user_id"),
+                rs.getString("username"),
+                rs.getString("real_name"),
+                rs.getLong("book_id"),
+                rs.getString("title"),
+                rs.getString("author"),
+                rs.getTimestamp("borrow_date").toLocalDateTime(),
+                rs.getTimestamp("due_date").toLocalDateTime(),
+                returnDate != null ? returnDate.toLocalDateTime() : null,
+                BorrowRecord.Status.valueOf(rs.getString("status")));
+    };
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * 键集分页查询借阅记录视图
+     * @param userId 用户ID，为 null 时查询全部用户
+     * @param borrowDate 游标借阅时间，为 null 时从最新记录开始
+     * @param newer true 取游标之后（更新）的记录并按时间正序返回，false 取游标之前的记录并按时间倒序返回
+     */
+    public List<BorrowRecordView> findViews(Long userId, LocalDateTime borrowDate, Long id, boolean newer, int limit) {
+        StringBuilder where = new StringBuilder(" WHERE 1 = 1");
+        List<Object> branchArgs = new ArrayList<>();
+        if (userId != null) {
+            where.append(" AND user_id = ?");
+            branchArgs.add(userId);
+        }
+        if (borrowDate != null) {
+            String op = newer ? ">" : "<";
+            where.append(" AND (borrow_date ").append(op).append(" ? OR (borrow_date = ? AND id ").append(op).append(" ?))");
+            Timestamp cursor = Timestamp.valueOf(borrowDate);
+            branchArgs.add(cursor);
+            branchArgs.add(cursor);
+            branchArgs.add(id);
+        }
+        String order = newer ? " ORDER BY borrow_date ASC, id ASC" : " ORDER BY borrow_date DESC, id DESC";
+        String outerOrder = newer ? " ORDER BY t.borrow_date ASC, t.id ASC" : " ORDER BY t.borrow_date DESC, t.id DESC";
+
+        String sql = "SELECT t.id, t.user_id, u.username, u.real_name, t.book_id, b.title, b.author, "
+                + "t.borrow_date, t.due_date, t.return_date, t.status FROM ("
+                + "(SELECT " + COLUMNS + " FROM borrow_records" + where + order + " LIMIT ?)"
+                + " UNION ALL "
+                + "(SELECT " + COLUMNS + " FROM borrow_records_archive" + where + order + " LIMIT ?)"
+                + ") t LEFT JOIN users u ON u.id = t.user_id LEFT JOIN books b ON b.id = t.book_id"
+                + outerOrder + " LIMIT ?";
+
+        List<Object> args = new ArrayList<>(branchArgs);
+        args.add(limit);
+        args.addAll(branchArgs);
+        args.add(limit);
+        args.add(limit);
+        return jdbcTemplate.query(sql, VIEW_MAPPER, args.toArray());
+    }
+
+    /**
+     * 按主键分批读取 (id, user_id, book_id)，供借阅共现矩阵全量构建使用
+     * @param archive true 读取归档表，false 读取热表
+     */
+    public List<long[]> findUserBookPairsAfter(boolean archive, long afterId, int limit) {
+        String table = archive ? "borrow_records_archive" : "borrow_records";
+        return jdbcTemplate.query("SELECT id, user_id, book_id FROM " + table + " WHERE id > ? ORDER BY id LIMIT ?",
+                (rs, rowNum) -> new long[]{rs.getLong(1), rs.getLong(2), rs.getLong(3)}, afterId, limit);
+    }
+
+    /**
+     * 按主键分批读取热表中 since 之后的 (id, book_id, 借阅时间毫秒数)，供近期热门排行预填使用
+     */
+    public List<long[]> findBookBorrowTimesAfter(LocalDateTime since, long afterId, int limit) {
+        return jdbcTemplate.query("SELECT id, book_id, borrow_date FROM borrow_records "
+                        + "WHERE borrow_date >= ? AND id > ? ORDER BY id LIMIT ?",
+                (rs, rowNum) -> new long[]{rs.getLong(1), rs.getLong(2), rs.getTimestamp(3).getTime()},
+                Timestamp.valueOf(since), afterId, limit);
+    }
+}
@@ -0,0 +1,10 @@
+package com.library.repository;
+
+import com.library.entity.BorrowRecordArchive;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface BorrowRecordArchiveRepository extends JpaRepository<BorrowRecordArchive, Long> {
+    long countByUserId(Long userId);
+}
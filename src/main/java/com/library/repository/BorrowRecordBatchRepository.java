@@ -0,0 +1,51 @@
+package com.library.repository;
+
+import com.library.entity.BorrowRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 借阅记录批量写入
+ * BorrowRecord 使用 IDENTITY 主键，Hibernate 无法合并插入语句，这里直接使用 JDBC 批处理
+ * （配合连接参数 rewriteBatchedStatements=true，MySQL 驱动会改写为多值 INSERT）
+ */
+@Repository
+public class BorrowRecordBatchRepository {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO borrow_records (user_id, book_id, borrow_date, due_date, status, created_at, updated_at) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public int[] batchInsert(List<BorrowRecord> records) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        return jdbcTemplate.batchUpdate(INSERT_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                BorrowRecord record = records.get(i);
+                ps.setLong(1, record.getUserId());
+                ps.setLong(2, record.getBookId());
+                ps.setTimestamp(3, Timestamp.valueOf(record.getBorrowDate()));
+                ps.setTimestamp(4, Timestamp.valueOf(record.getDueDate()));
+                ps.setString(5, record.getStatus().name());
+                ps.setTimestamp(6, now);
+                ps.setTimestamp(7, now);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return records.size();
+            }
+        });
+    }
+}
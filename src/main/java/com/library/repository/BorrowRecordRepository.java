@@ -1,12 +1,17 @@
 package com.library.repository;
 
+import com.library.dto.BorrowRecordView;
 import com.library.entity.BorrowRecord;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import jakarta.persistence.LockModeType;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,12 +21,92 @@ public interface BorrowRecordRepository extends JpaRepository<BorrowRecord, Long
     Page<BorrowRecord> findByUserId(Long userId, Pageable pageable);
     List<BorrowRecord> findByBookId(Long bookId);
     List<BorrowRecord> findByUserIdAndStatus(Long userId, BorrowRecord.Status status);
+    long countByUserId(Long userId);
+    
+    // 列表页投影：一次连接查询只取展示字段
+    String VIEW_SELECT = "SELECT new com.library.dto.BorrowRecordView(br.id, br.userId, u.username, u.realName, "
+            + "br.bookId, b.title, b.author, br.borrowDate, br.dueDate, br.returnDate, br.status) "
+            + "FROM BorrowRecord br LEFT JOIN User u ON u.id = br.userId LEFT JOIN Book b ON b.id = br.bookId ";
+    
+    // 键集分页：按 (borrow_date, id) 倒序，以游标位置为起点，不使用 OFFSET 和 COUNT
+    
+    @Query(VIEW_SELECT + "ORDER BY br.borrowDate DESC, br.id DESC")
+    List<BorrowRecordView> findLatestViews(Pageable pageable);
+    
+    @Query(VIEW_SELECT + "WHERE br.borrowDate < :borrowDate OR (br.borrowDate = :borrowDate AND br.id < :id) ORDER BY br.borrowDate DESC, br.id DESC")
+    List<BorrowRecordView> findViewsOlderThan(@Param("borrowDate") LocalDateTime borrowDate, @Param("id") Long id, Pageable pageable);
+    
+    @Query(VIEW_SELECT + "WHERE br.borrowDate > :borrowDate OR (br.borrowDate = :borrowDate AND br.id > :id) ORDER BY br.borrowDate ASC, br.id ASC")
+    List<BorrowRecordView> findViewsNewerThan(@Param("borrowDate") LocalDateTime borrowDate, @Param("id") Long id, Pageable pageable);
+    
+    @Query(VIEW_SELECT + "WHERE br.userId = :userId ORDER BY br.borrowDate DESC, br.id DESC")
+    List<BorrowRecordView> findLatestViewsByUserId(@Param("userId") Long userId, Pageable pageable);
+    
+    @Query(VIEW_SELECT + "WHERE br.userId = :userId AND (br.borrowDate < :borrowDate OR (br.borrowDate = :borrowDate AND br.id < :id)) ORDER BY br.borrowDate DESC, br.id DESC")
+    List<BorrowRecordView> findViewsOlderThanByUserId(@Param("userId") Long userId, @Param("borrowDate") LocalDateTime borrowDate, @Param("id") Long id, Pageable pageable);
+    
+    @Query(VIEW_SELECT + "WHERE br.userId = :userId AND (br.borrowDate > :borrowDate OR (br.borrowDate = :borrowDate AND br.id > :id)) ORDER BY br.borrowDate ASC, br.id ASC")
+    List<BorrowRecordView> findViewsNewerThanByUserId(@Param("userId") Long userId, @Param("borrowDate") LocalDateTime borrowDate, @Param("id") Long id, Pageable pageable);
     
     @Query("SELECT COUNT(br) FROM BorrowRecord br WHERE br.userId = :userId AND br.status = 'BORROWED'")
     Long countBorrowedBooksByUserId(@Param("userId") Long userId);
     
     Optional<BorrowRecord> findByUserIdAndBookIdAndStatus(Long userId, Long bookId, BorrowRecord.Status status);
     
+    boolean existsByUserIdAndBookIdAndBorrowDate(Long userId, Long bookId, LocalDateTime borrowDate);
+    
+    @Query("SELECT br.bookId FROM BorrowRecord br WHERE br.userId = :userId AND br.status = :status")
+    List<Long> findBookIdsByUserIdAndStatus(@Param("userId") Long userId, @Param("status") BorrowRecord.Status status);
+    
+    /**
+     * 批量归还前锁定借阅记录，避免并发归还重复增加库存
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT br FROM BorrowRecord br WHERE br.id IN :ids ORDER BY br.id")
+    List<BorrowRecord> findAllByIdForUpdate(@Param("ids") List<Long> ids);
+    
+    /**
+     * 单本归还前锁定借阅记录，同时取得归属、图书和当前状态
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT br FROM BorrowRecord br WHERE br.id = :id")
+    Optional<BorrowRecord> findByIdForUpdate(@Param("id") Long id);
+    
+    @Modifying
+    @Query("UPDATE BorrowRecord br SET br.status = :returned, br.returnDate = :now, br.updatedAt = :now WHERE br.id IN :ids AND br.status <> :returned")
+    int markReturnedBatch(@Param("ids") List<Long> ids,
+                          @Param("returned") BorrowRecord.Status returned,
+                          @Param("now") LocalDateTime now);
+    
+    /**
+     * 将指定状态的借阅记录标记为已归还，仅当记录当前为 from 状态且属于指定用户时生效
+     * from 取自 findByIdForUpdate 锁定读取的状态
+     * @param userId 记录所属用户，为 null 时不校验归属（管理员）
+     * @return 1 表示状态已变更，0 表示记录不存在、不属于该用户或不是 from 状态
+     */
+    @Modifying
+    @Query("UPDATE BorrowRecord br SET br.status = :returned, br.returnDate = :now, br.updatedAt = :now " +
+           "WHERE br.id = :id AND br.status = :from AND (:userId IS NULL OR br.userId = :userId)")
+    int markReturned(@Param("id") Long id,
+                     @Param("userId") Long userId,
+                     @Param("from") BorrowRecord.Status from,
+                     @Param("returned") BorrowRecord.Status returned,
+                     @Param("now") LocalDateTime now);
+    
+    /**
+     * 锁定一批到期未还的记录，最多 limit 行
+     * 条件走 (status, due_date) 联合索引，需在调用方事务中执行
+     */
+    @Query(value = "SELECT id FROM borrow_records WHERE status = 'BORROWED' AND due_date < :now ORDER BY due_date LIMIT :limit FOR UPDATE", nativeQuery = true)
+    List<Long> findOverdueIdsForUpdate(@Param("now") LocalDateTime now, @Param("limit") int limit);
+    
+    /**
+     * 将已锁定的记录标记为逾期
+     */
+    @Modifying
+    @Query(value = "UPDATE borrow_records SET status = 'OVERDUE', updated_at = :now WHERE id IN :ids AND status = 'BORROWED'", nativeQuery = true)
+    int markOverdue(@Param("ids") List<Long> ids, @Param("now") LocalDateTime now);
+    
     // 统计查询
     @Query("SELECT COUNT(br) FROM BorrowRecord br WHERE br.status = :status")
     Long countByStatus(@Param("status") BorrowRecord.Status status);
@@ -0,0 +1,312 @@
+package com.library.repository;
+
+import com.library.entity.BorrowRecord;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 借阅统计汇总表的维护与查询
+ * borrow_daily_rollup：按 (借阅日期, 分类, 当前状态) 的记录数；book_borrow_counts / user_borrow_counts：累计借阅次数。
+ * 增减方法必须在变更借阅记录的同一事务中、变更记录之后调用（先锁记录再锁汇总行，与回填的加锁顺序一致）。
+ * 状态变更时分类取图书的当前分类：借阅后图书改了分类，(日期, 分类, 状态) 单元格会出现正负抵消的偏差，
+ * 但按日期、按分类、按状态的各项合计仍然准确，报表只使用这些合计
+ */
+@Repository
+public class BorrowRollupRepository {
+
+    private static final String CATEGORY_OF_BOOK = "COALESCE((SELECT category FROM books WHERE id = ?), '')";
+
+    private static final String ADD_DAILY_SQL =
+            "INSERT INTO borrow_daily_rollup (day, category, status, borrow_count) "
+                    + "SELECT ?, " + CATEGORY_OF_BOOK + ", ?, ? "
+                    + "ON DUPLICATE KEY UPDATE borrow_count = borrow_count + VALUES(borrow_count)";
+
+    private static final String ADD_BOOK_SQL =
+            "INSERT INTO book_borrow_counts (book_id, borrow_count) VALUES (?, ?) "
+                    + "ON DUPLICATE KEY UPDATE borrow_count = borrow_count + VALUES(borrow_count)";
+
+    private static final String ADD_USER_SQL =
+            "INSERT INTO user_borrow_counts (user_id, borrow_count) VALUES (?, ?) "
+                    + "ON DUPLICATE KEY UPDATE borrow_count = borrow_count + VALUES(borrow_count)";
+
+    // 一条语句同时写入原状态（-1）和新状态（+1）两行，两行的状态不同，不会更新同一单元格
+    private static final String MOVE_STATUS_SQL =
+            "INSERT INTO borrow_daily_rollup (day, category, status, borrow_count) "
+                    + "SELECT DATE(r.borrow_date), COALESCE(b.category, ''), s.status, s.sign * COUNT(*) "
+                    + "FROM borrow_records r LEFT JOIN books b ON b.id = r.book_id "
+                    + "CROSS JOIN (SELECT ? AS status, -1 AS sign UNION ALL SELECT ?, 1) s WHERE r.id IN (%s) "
+                    + "GROUP BY DATE(r.borrow_date), COALESCE(b.category, ''), s.status, s.sign "
+                    + "ON DUPLICATE KEY UPDATE borrow_count = borrow_count + VALUES(borrow_count)";
+
+    // 回填：两张记录表按 UNION ALL 合并后聚合
+    private static final String BACKFILL_DAY_SQL =
+            "INSERT INTO borrow_daily_rollup (day, category, status, borrow_count) "
+                    + "SELECT DATE(t.borrow_date), COALESCE(b.category, ''), t.status, COUNT(*) FROM ("
+                    + "SELECT book_id, borrow_date, status FROM borrow_records WHERE borrow_date >= ? AND borrow_date < ? "
+                    + "UNION ALL SELECT book_id, borrow_date, status FROM borrow_records_archive WHERE borrow_date >= ? AND borrow_date < ?"
+                    + ") t LEFT JOIN books b ON b.id = t.book_id "
+                    + "GROUP BY DATE(t.borrow_date), COALESCE(b.category, ''), t.status";
+
+    private static final String BACKFILL_COUNTS_SQL =
+            "INSERT INTO %1$s (%2$s, borrow_count) SELECT %2$s, COUNT(*) FROM ("
+                    + "SELECT %2$s FROM borrow_records WHERE %2$s BETWEEN ? AND ? "
+                    + "UNION ALL SELECT %2$s FROM borrow_records_archive WHERE %2$s BETWEEN ? AND ?"
+                    + ") t GROUP BY %2$s "
+                    + "ON DUPLICATE KEY UPDATE borrow_count = VALUES(borrow_count)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${library.statistics.section-timeout:5s}")
+    private Duration reportQueryTimeout;
+
+    // 报表查询专用：带语句超时，报表放弃等待的查询由数据库终止，不会继续占用连接和数据库资源
+    private JdbcTemplate reportJdbcTemplate;
+
+    @PostConstruct
+    void initReportJdbcTemplate() {
+        reportJdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        // JDBC 语句超时以秒为单位，向上取整且至少 1 秒
+        reportJdbcTemplate.setQueryTimeout((int) Math.max(1, (reportQueryTimeout.toMillis() + 999) / 1000));
+    }
+
+    /**
+     * 新增借阅记录：按 (日期, 图书) 累加 BORROWED 计数，并累加图书、用户的借阅次数
+     */
+    public void addBorrows(List<BorrowRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        Map<List<Object>, Long> daily = new HashMap<>();
+        Map<Long, Long> byBook = new HashMap<>();
+        Map<Long, Long> byUser = new HashMap<>();
+        for (BorrowRecord record : records) {
+            daily.merge(List.of(record.getBorrowDate().toLocalDate(), record.getBookId()), 1L, Long::sum);
+            byBook.merge(record.getBookId(), 1L, Long::sum);
+            byUser.merge(record.getUserId(), 1L, Long::sum);
+        }
+
+        List<Object[]> dailyArgs = new ArrayList<>(daily.size());
+        daily.forEach((key, count) -> dailyArgs.add(new Object[]{
+                Date.valueOf((LocalDate) key.get(0)), key.get(1), BorrowRecord.Status.BORROWED.name(), count}));
+        jdbcTemplate.batchUpdate(ADD_DAILY_SQL, dailyArgs);
+        jdbcTemplate.batchUpdate(ADD_BOOK_SQL, toArgs(byBook));
+        jdbcTemplate.batchUpdate(ADD_USER_SQL, toArgs(byUser));
+    }
+
+    /**
+     * 记录状态变更（归还、逾期）：原状态计数减少、新状态计数增加，日期和分类取自记录及其图书
+     */
+    public void moveStatus(List<Long> recordIds, BorrowRecord.Status from, BorrowRecord.Status to) {
+        if (recordIds.isEmpty() || from == to) {
+            return;
+        }
+        String sql = String.format(MOVE_STATUS_SQL, String.join(",", Collections.nCopies(recordIds.size(), "?")));
+        List<Object> args = new ArrayList<>(recordIds.size() + 2);
+        args.add(from.name());
+        args.add(to.name());
+        args.addAll(recordIds);
+        jdbcTemplate.update(sql, args.toArray());
+    }
+
+    private static List<Object[]> toArgs(Map<Long, Long> counts) {
+        List<Object[]> args = new ArrayList<>(counts.size());
+        counts.forEach((id, count) -> args.add(new Object[]{id, count}));
+        return args;
+    }
+
+    // ---------------- 回填 ----------------
+
+    /**
+     * 回填前对一天内的原始记录加共享锁：并发的归还/逾期/借阅需等回填提交后再更新汇总，
+     * 且回填先锁记录再锁汇总行，与业务事务的加锁顺序一致，不会互相死锁
+     */
+    public void lockDay(LocalDate day) {
+        Object[] range = dayRange(day);
+        jdbcTemplate.queryForObject("SELECT COUNT(*) FROM borrow_records WHERE borrow_date >= ? AND borrow_date < ? LOCK IN SHARE MODE",
+                Long.class, range);
+        jdbcTemplate.queryForObject("SELECT COUNT(*) FROM borrow_records_archive WHERE borrow_date >= ? AND borrow_date < ? LOCK IN SHARE MODE",
+                Long.class, range);
+    }
+
+    /**
+     * 按原始记录重新计算一天的汇总
+     */
+    public int backfillDay(LocalDate day) {
+        jdbcTemplate.update("DELETE FROM borrow_daily_rollup WHERE day = ?", Date.valueOf(day));
+        Object[] range = dayRange(day);
+        return jdbcTemplate.update(BACKFILL_DAY_SQL, range[0], range[1], range[0], range[1]);
+    }
+
+    private static Object[] dayRange(LocalDate day) {
+        return new Object[]{Timestamp.valueOf(day.atStartOfDay()), Timestamp.valueOf(day.plusDays(1).atStartOfDay())};
+    }
+
+    /**
+     * 对 ID 区间内图书/用户的原始记录加共享锁，加锁顺序同 {@link #lockDay}
+     * @param column book_id 或 user_id
+     */
+    public void lockKeyRange(String column, long fromId, long toId) {
+        String key = keyColumn(column);
+        jdbcTemplate.queryForObject("SELECT COUNT(*) FROM borrow_records WHERE " + key + " BETWEEN ? AND ? LOCK IN SHARE MODE",
+                Long.class, fromId, toId);
+        jdbcTemplate.queryForObject("SELECT COUNT(*) FROM borrow_records_archive WHERE " + key + " BETWEEN ? AND ? LOCK IN SHARE MODE",
+                Long.class, fromId, toId);
+    }
+
+    /**
+     * 按原始记录重新计算 ID 区间内图书/用户的累计借阅次数
+     * @param column book_id 或 user_id
+     */
+    public int backfillCounts(String column, long fromId, long toId) {
+        String key = keyColumn(column);
+        String table = "book_id".equals(key) ? "book_borrow_counts" : "user_borrow_counts";
+        return jdbcTemplate.update(String.format(BACKFILL_COUNTS_SQL, table, key), fromId, toId, fromId, toId);
+    }
+
+    private static String keyColumn(String column) {
+        if (!"book_id".equals(column) && !"user_id".equals(column)) {
+            throw new IllegalArgumentException("不支持的汇总键: " + column);
+        }
+        return column;
+    }
+
+    /**
+     * 原始记录中最早的借阅日期，没有记录时返回 null
+     */
+    public LocalDate findEarliestBorrowDay() {
+        Timestamp earliest = jdbcTemplate.queryForObject(
+                "SELECT MIN(d) FROM (SELECT MIN(borrow_date) d FROM borrow_records "
+                        + "UNION ALL SELECT MIN(borrow_date) d FROM borrow_records_archive) t", Timestamp.class);
+        return earliest == null ? null : earliest.toLocalDateTime().toLocalDate();
+    }
+
+    /**
+     * 原始记录中的最大图书ID或用户ID
+     */
+    public long findMaxKey(String column) {
+        String key = keyColumn(column);
+        Long max = jdbcTemplate.queryForObject("SELECT GREATEST(COALESCE((SELECT MAX(" + key + ") FROM borrow_records), 0), "
+                + "COALESCE((SELECT MAX(" + key + ") FROM borrow_records_archive), 0))", Long.class);
+        return max == null ? 0 : max;
+    }
+
+    /**
+     * 汇总表是否为空（尚未回填）
+     */
+    public boolean isEmpty() {
+        return jdbcTemplate.queryForList("SELECT 1 FROM book_borrow_counts LIMIT 1").isEmpty();
+    }
+
+    /**
+     * 核对用：原始记录（热表 + 归档表）各状态的记录数
+     */
+    public Map<String, Long> countRawByStatus() {
+        Map<String, Long> counts = new HashMap<>();
+        jdbcTemplate.query("SELECT status, SUM(c) FROM ("
+                        + "SELECT status, COUNT(*) c FROM borrow_records GROUP BY status "
+                        + "UNION ALL SELECT status, COUNT(*) c FROM borrow_records_archive GROUP BY status"
+                        + ") t GROUP BY status",
+                rs -> {
+                    counts.put(rs.getString(1), rs.getLong(2));
+                });
+        return counts;
+    }
+
+    /**
+     * 核对用：汇总表各状态的记录数（与 countByStatus 相同，但不受报表语句超时限制）
+     */
+    public Map<String, Long> countRolledByStatus() {
+        return sumByStatus(jdbcTemplate);
+    }
+
+    /**
+     * 核对用：图书、用户累计次数表的合计 [图书合计, 用户合计]，均应等于原始记录总数
+     */
+    public long[] sumCounts() {
+        Long books = jdbcTemplate.queryForObject("SELECT COALESCE(SUM(borrow_count), 0) FROM book_borrow_counts", Long.class);
+        Long users = jdbcTemplate.queryForObject("SELECT COALESCE(SUM(borrow_count), 0) FROM user_borrow_counts", Long.class);
+        return new long[]{books == null ? 0 : books, users == null ? 0 : users};
+    }
+
+    /**
+     * 全部图书的累计借阅次数 (book_id, 次数)，供联想索引重建计算热度
+     */
+    public List<Object[]> findAllBookCounts() {
+        return jdbcTemplate.query("SELECT book_id, borrow_count FROM book_borrow_counts",
+                (rs, rowNum) -> new Object[]{rs.getLong(1), rs.getLong(2)});
+    }
+
+    // ---------------- 报表查询（语句超时为 library.statistics.section-timeout） ----------------
+
+    /**
+     * 各状态的记录总数
+     */
+    public Map<String, Long> countByStatus() {
+        return sumByStatus(reportJdbcTemplate);
+    }
+
+    /**
+     * 各分类的借阅总数，从高到低（不含无分类图书）
+     */
+    public List<Object[]> countByCategory() {
+        return reportJdbcTemplate.query("SELECT category, SUM(borrow_count) AS count FROM borrow_daily_rollup "
+                        + "WHERE category <> '' GROUP BY category HAVING count > 0 ORDER BY count DESC",
+                (rs, rowNum) -> new Object[]{rs.getString(1), rs.getLong(2)});
+    }
+
+    /**
+     * since 当天起每天的借阅数（走主键前缀范围）
+     */
+    public List<Object[]> countByDay(LocalDate since) {
+        return reportJdbcTemplate.query("SELECT day, SUM(borrow_count) FROM borrow_daily_rollup WHERE day >= ? GROUP BY day",
+                (rs, rowNum) -> new Object[]{rs.getDate(1).toLocalDate(), rs.getLong(2)}, Date.valueOf(since));
+    }
+
+    /**
+     * since 当天起每月的借阅数，按年月倒序
+     */
+    public List<Object[]> countByMonth(LocalDate since) {
+        return reportJdbcTemplate.query("SELECT YEAR(day) AS y, MONTH(day) AS m, SUM(borrow_count) FROM borrow_daily_rollup "
+                        + "WHERE day >= ? GROUP BY y, m ORDER BY y DESC, m DESC",
+                (rs, rowNum) -> new Object[]{rs.getInt(1), rs.getInt(2), rs.getLong(3)}, Date.valueOf(since));
+    }
+
+    /**
+     * 借阅次数最多的图书 (book_id, 次数)
+     */
+    public List<Object[]> findTopBooks(int limit) {
+        return reportJdbcTemplate.query("SELECT book_id, borrow_count FROM book_borrow_counts ORDER BY borrow_count DESC LIMIT ?",
+                (rs, rowNum) -> new Object[]{rs.getLong(1), rs.getLong(2)}, limit);
+    }
+
+    /**
+     * 借阅次数最多的用户 (user_id, 次数)
+     */
+    public List<Object[]> findTopUsers(int limit) {
+        return reportJdbcTemplate.query("SELECT user_id, borrow_count FROM user_borrow_counts ORDER BY borrow_count DESC LIMIT ?",
+                (rs, rowNum) -> new Object[]{rs.getLong(1), rs.getLong(2)}, limit);
+    }
+
+    private Map<String, Long> sumByStatus(JdbcTemplate template) {
+        Map<String, Long> counts = new HashMap<>();
+        template.query("SELECT status, SUM(borrow_count) FROM borrow_daily_rollup GROUP BY status",
+                rs -> {
+                    counts.put(rs.getString(1), rs.getLong(2));
+                });
+        return counts;
+    }
+}
@@ -0,0 +1,105 @@
+package com.library.service;
+
+import com.library.entity.Book;
+import com.library.entity.BorrowRecord;
+import com.library.entity.User;
+import com.library.repository.BookRepository;
+import com.library.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * 关联对象批量加载器
+ * 收集一批记录中不重复的用户ID和图书ID，各用一次 findAllById 查询，避免逐条 findById 的 N+1 查询；
+ * 在 Web 请求内按请求缓存已加载的对象，同一请求中重复出现的ID不会再次查询
+ */
+@Component
+public class BatchAssociationLoader {
+
+    private static final String MEMO_ATTRIBUTE = BatchAssociationLoader.class.getName() + ".MEMO";
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    /**
+     * 为借阅记录填充关联的 User 和 Book（最多两条查询）
+     */
+    public void fillBorrowRecords(Collection<BorrowRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        Set<Long> userIds = new HashSet<>();
+        Set<Long> bookIds = new HashSet<>();
+        for (BorrowRecord record : records) {
+            userIds.add(record.getUserId());
+            bookIds.add(record.getBookId());
+        }
+        Map<Long, User> users = loadUsers(userIds);
+        Map<Long, Book> books = loadBooks(bookIds);
+        for (BorrowRecord record : records) {
+            record.setUser(users.get(record.getUserId()));
+            record.setBook(books.get(record.getBookId()));
+        }
+    }
+
+    public Map<Long, User> loadUsers(Collection<Long> ids) {
+        return load(memo().users, ids, userRepository::findAllById, User::getId);
+    }
+
+    public Map<Long, Book> loadBooks(Collection<Long> ids) {
+        return load(memo().books, ids, bookRepository::findAllById, Book::getId);
+    }
+
+    private <T> Map<Long, T> load(Map<Long, T> cache, Collection<Long> ids,
+                                  Function<Iterable<Long>, List<T>> finder, Function<T, Long> idGetter) {
+        Set<Long> missing = new HashSet<>();
+        for (Long id : ids) {
+            if (id != null && !cache.containsKey(id)) {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (T entity : finder.apply(missing)) {
+                cache.put(idGetter.apply(entity), entity);
+            }
+        }
+
+        Map<Long, T> result = new HashMap<>();
+        for (Long id : ids) {
+            T entity = id == null ? null : cache.get(id);
+            if (entity != null) {
+                result.put(id, entity);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 当前请求的缓存；非 Web 线程（如定时任务）每次调用使用新的缓存
+     */
+    private Memo memo() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return new Memo();
+        }
+        Memo memo = (Memo) attributes.getAttribute(MEMO_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (memo == null) {
+            memo = new Memo();
+            attributes.setAttribute(MEMO_ATTRIBUTE, memo, RequestAttributes.SCOPE_REQUEST);
+        }
+        return memo;
+    }
+
+    private static class Memo {
+        private final Map<Long, User> users = new HashMap<>();
+        private final Map<Long, Book> books = new HashMap<>();
+    }
+}
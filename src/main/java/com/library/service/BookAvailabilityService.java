@@ -0,0 +1,201 @@
+package com.library.service;
+
+import com.library.entity.Book;
+import com.library.event.BookInventoryEvent;
+import com.library.repository.BookRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 图书可借册数叠加层
+ * 缓存中的 Book 只作为长期有效的元数据，可借册数在读取时单独获取并覆盖：
+ * 热门库存模式下的图书取内存计数器，其余取 Redis 计数（book:available:{id}），未命中时按主键查询数据库回填。
+ * 借阅/归还的库存事件在事务提交后对已存在的计数执行 INCRBY，不需要清除图书缓存。
+ * <p>
+ * 回填与并发借阅的竞争：事务提交前先写入短时标记（book:available:touched:{id}），
+ * 回填时若存在标记则放弃写入，保证回填的值不会早于已提交但尚未应用到计数上的变更；
+ * Redis 操作失败时删除计数，计数另设过期时间（library.catalog.availability.ttl）作为兜底
+ */
+@Service
+public class BookAvailabilityService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BookAvailabilityService.class);
+
+    private static final String KEY_PREFIX = "book:available:";
+    private static final String TOUCHED_PREFIX = "book:available:touched:";
+
+    // 标记存活时间需覆盖事务从提交前到提交后事件处理完成的时长
+    private static final long TOUCHED_TTL_SECONDS = 10;
+
+    private static final DefaultRedisScript<Long> INCREMENT_IF_EXISTS_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 1 then return redis.call('incrby', KEYS[1], ARGV[1]) else return nil end",
+            Long.class);
+
+    private static final DefaultRedisScript<Long> FILL_IF_UNTOUCHED_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[2]) == 1 then return 0 end "
+                    + "redis.call('set', KEYS[1], ARGV[1], 'EX', ARGV[2], 'NX') return 1",
+            Long.class);
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private HotInventoryService hotInventoryService;
+
+    @Value("${library.catalog.availability.ttl:300}")
+    private long ttlSeconds;
+
+    private final LongAdder hotReads = new LongAdder();
+    private final LongAdder counterReads = new LongAdder();
+    private final LongAdder databaseReads = new LongAdder();
+    private final LongAdder redisFailures = new LongAdder();
+
+    /**
+     * 返回覆盖了当前可借册数的副本（缓存中的对象在请求间共享，不能直接修改）
+     */
+    public Book overlay(Book book) {
+        if (book == null || book.getId() == null) {
+            return book;
+        }
+        Integer available = getAvailableCopies(book.getId());
+        if (available == null) {
+            return book;
+        }
+        Book copy = new Book();
+        BeanUtils.copyProperties(book, copy);
+        copy.setAvailableCopies(available);
+        return copy;
+    }
+
+    /**
+     * 当前可借册数，图书不存在时返回 null
+     */
+    public Integer getAvailableCopies(Long bookId) {
+        Integer hot = hotInventoryService.getHotAvailable(bookId);
+        if (hot != null) {
+            hotReads.increment();
+            return hot;
+        }
+        String key = KEY_PREFIX + bookId;
+        try {
+            String value = redisTemplate.opsForValue().get(key);
+            if (value != null) {
+                counterReads.increment();
+                return Integer.valueOf(value);
+            }
+        } catch (Exception e) {
+            redisFailures.increment();
+            logger.warn("读取可借册数计数失败，改为查询数据库: {}", e.getMessage());
+            databaseReads.increment();
+            return bookRepository.findAvailableCopiesById(bookId);
+        }
+
+        databaseReads.increment();
+        Integer available = bookRepository.findAvailableCopiesById(bookId);
+        if (available != null) {
+            try {
+                redisTemplate.execute(FILL_IF_UNTOUCHED_SCRIPT, Arrays.asList(key, TOUCHED_PREFIX + bookId),
+                        String.valueOf(available), String.valueOf(ttlSeconds));
+            } catch (Exception e) {
+                redisFailures.increment();
+                logger.warn("回填可借册数计数失败: {}", e.getMessage());
+            }
+        }
+        return available;
+    }
+
+    /**
+     * 库存变更提交前：写入标记，阻止期间读取的旧值回填
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void markTouched(BookInventoryEvent event) {
+        touch(event.bookId());
+    }
+
+    /**
+     * 库存变更提交后：计数存在时按变化量调整（无事务时立即执行）
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onInventoryChanged(BookInventoryEvent event) {
+        String key = KEY_PREFIX + event.bookId();
+        try {
+            redisTemplate.execute(INCREMENT_IF_EXISTS_SCRIPT, Arrays.asList(key),
+                    String.valueOf(event.availableDelta()));
+        } catch (Exception e) {
+            redisFailures.increment();
+            logger.warn("更新可借册数计数失败，删除计数: {}", e.getMessage());
+            delete(key);
+        }
+    }
+
+    /**
+     * 图书编辑、删除、批量导入等直接修改库存的操作：提交前写标记，提交后删除计数，下次读取时重新回填
+     */
+    public void invalidate(Long bookId) {
+        if (bookId == null) {
+            return;
+        }
+        touch(bookId);
+        String key = KEY_PREFIX + bookId;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    delete(key);
+                }
+            });
+        } else {
+            delete(key);
+        }
+    }
+
+    private void touch(Long bookId) {
+        try {
+            redisTemplate.opsForValue().set(TOUCHED_PREFIX + bookId, "1", TOUCHED_TTL_SECONDS, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            redisFailures.increment();
+            logger.warn("写入可借册数变更标记失败: {}", e.getMessage());
+        }
+    }
+
+    private void delete(String key) {
+        try {
+            redisTemplate.delete(key);
+        } catch (Exception e) {
+            redisFailures.increment();
+            logger.warn("删除可借册数计数失败，将在 {} 秒内过期: {}", ttlSeconds, e.getMessage());
+        }
+    }
+
+    /**
+     * 读取来源统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("hotReads", hotReads.sum());
+        stats.put("counterReads", counterReads.sum());
+        stats.put("databaseReads", databaseReads.sum());
+        stats.put("redisFailures", redisFailures.sum());
+        stats.put("ttlSeconds", ttlSeconds);
+        return stats;
+    }
+}
@@ -0,0 +1,284 @@
+package com.library.service;
+
+import com.library.repository.BookRepository;
+import com.library.util.BloomFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 图书存在性过滤器（布隆过滤器），防止不存在的图书ID / ISBN 穿透缓存直达数据库
+ * 过滤器判定不存在的键一定不存在，直接返回空结果；判定可能存在的再走缓存和数据库。
+ * 新增或修改图书时在写库之前加入键（宁可多放行，不可漏放行）；布隆过滤器不支持删除，
+ * 已删除图书的键由定时重建清除，重建同时按当前图书数量重新确定容量。
+ * 各节点各自持有过滤器，登记的键通过 Redis 发布订阅广播到 {@link #CHANNEL}（消息格式 "节点ID|图书ID|ISBN"）；
+ * 广播丢失时，大于本节点已知最大ID的图书ID一律放行，避免其他节点新增的图书被判定为不存在
+ */
+@Component
+public class BookExistenceFilter implements MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(BookExistenceFilter.class);
+
+    public static final String CHANNEL = "catalog:existence";
+
+    private static final String SEPARATOR = "|";
+
+    private static final int BUILD_BATCH_SIZE = 5000;
+
+    // 最近登记的键保留时长：重建扫描期间及之前未提交的写入在替换过滤器时补录
+    private static final long RECENT_WINDOW_MS = 10 * 60 * 1000;
+
+    private record RecentKey(String key, long addedAt) {
+    }
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private MaintenanceExecutor maintenanceExecutor;
+
+    @Value("${library.catalog.bloom.fpp:0.01}")
+    private double fpp;
+
+    @Value("${library.catalog.bloom.min-capacity:10000}")
+    private long minCapacity;
+
+    private volatile BloomFilter filter;
+    private volatile LocalDateTime builtAt;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    // 本节点已知的最大图书ID（重建扫描、本地登记与广播），更大的ID可能是尚未同步的新图书
+    private final AtomicLong maxKnownId = new AtomicLong();
+
+    // 登记与替换过滤器互斥，保证每个键要么写入新过滤器，要么在替换时从 recent 补录
+    private final Object swapLock = new Object();
+    private final Deque<RecentKey> recent = new ArrayDeque<>();
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+    private final AtomicLong passedAboveMaxId = new AtomicLong();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        rebuild();
+    }
+
+    @Scheduled(fixedDelayString = "${library.catalog.bloom.rebuild-interval:3600000}",
+               initialDelayString = "${library.catalog.bloom.rebuild-interval:3600000}")
+    public void scheduledRebuild() {
+        maintenanceExecutor.submit("existence-filter-rebuild", this::rebuild);
+    }
+
+    /**
+     * 全量重建：按 ID 分批读取 ID 与 ISBN 列，完成后替换当前过滤器
+     * 扫描期间新登记的键（对应写入可能尚未提交、扫描不可见）在替换时补录
+     */
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        try {
+            // 预留一倍余量给两次重建之间新增的图书
+            long capacity = Math.max(minCapacity, bookRepository.count() * 2);
+            BloomFilter next = BloomFilter.create(capacity, fpp);
+
+            Pageable limit = PageRequest.of(0, BUILD_BATCH_SIZE);
+            long lastId = 0;
+            List<Object[]> rows = bookRepository.findKeyRowsAfter(lastId, limit);
+            while (!rows.isEmpty()) {
+                for (Object[] row : rows) {
+                    lastId = ((Number) row[0]).longValue();
+                    for (String key : keys(lastId, (String) row[1])) {
+                        next.put(key);
+                    }
+                }
+                rows = bookRepository.findKeyRowsAfter(lastId, limit);
+            }
+            maxKnownId.accumulateAndGet(lastId, Math::max);
+
+            synchronized (swapLock) {
+                trimRecent(System.currentTimeMillis());
+                for (RecentKey recentKey : recent) {
+                    next.put(recentKey.key());
+                }
+                filter = next;
+            }
+            builtAt = LocalDateTime.now();
+            logger.info("图书存在性过滤器构建完成：{} 个键，{} 位，{} 个哈希函数，耗时 {} ms",
+                    next.getInsertions(), next.getNumBits(), next.getNumHashes(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            logger.error("图书存在性过滤器构建失败，查询将不经过过滤: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 登记图书的 ID 与 ISBN，应在事务提交之前调用，并广播给其他节点：
+     * 即使事务回滚也只是多一个可能存在的键，不会出现已提交的图书被判定为不存在
+     */
+    public void add(Long id, String isbn) {
+        addLocal(id, isbn);
+        try {
+            redisTemplate.convertAndSend(CHANNEL, nodeId + SEPARATOR + (id == null ? "" : id)
+                    + SEPARATOR + (isbn == null ? "" : isbn));
+        } catch (Exception e) {
+            // 广播失败时其他节点对新ID按最大ID放行，新ISBN在下次重建后可查
+            logger.warn("图书存在性过滤器广播失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 接收其他节点登记的键；忽略自己发出的消息（本地已登记）
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        String[] parts = body.split("\\|", 3);
+        if (parts.length < 3 || nodeId.equals(parts[0])) {
+            return;
+        }
+        try {
+            addLocal(parts[1].isEmpty() ? null : Long.valueOf(parts[1]), parts[2]);
+        } catch (NumberFormatException e) {
+            logger.warn("忽略格式错误的图书存在性过滤器广播: {}", body);
+        }
+    }
+
+    private void addLocal(Long id, String isbn) {
+        if (id != null) {
+            maxKnownId.accumulateAndGet(id, Math::max);
+        }
+        List<String> keys = keys(id, isbn);
+        long now = System.currentTimeMillis();
+        synchronized (swapLock) {
+            BloomFilter current = filter;
+            for (String key : keys) {
+                if (current != null) {
+                    current.put(key);
+                }
+                recent.addLast(new RecentKey(key, now));
+            }
+            trimRecent(now);
+        }
+    }
+
+    private void trimRecent(long now) {
+        while (!recent.isEmpty() && now - recent.peekFirst().addedAt() > RECENT_WINDOW_MS) {
+            recent.pollFirst();
+        }
+    }
+
+    /**
+     * 图书ID是否可能存在；过滤器未就绪时一律放行
+     */
+    public boolean mightContainId(Long id) {
+        if (id != null && filter != null && id > maxKnownId.get()) {
+            passedAboveMaxId.incrementAndGet();
+            return true;
+        }
+        return check(id == null ? null : idKey(id));
+    }
+
+    /**
+     * ISBN 是否可能存在；过滤器未就绪时一律放行
+     */
+    public boolean mightContainIsbn(String isbn) {
+        return check(isbnKey(isbn));
+    }
+
+    /**
+     * 过滤器放行但数据库未查到，记为一次误判（含已删除图书的残留键）
+     */
+    public void recordFalsePositive() {
+        falsePositives.incrementAndGet();
+    }
+
+    private boolean check(String key) {
+        BloomFilter current = filter;
+        if (current == null) {
+            return true;
+        }
+        lookups.incrementAndGet();
+        if (key == null || !current.mightContain(key)) {
+            rejected.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    private static List<String> keys(Long id, String isbn) {
+        List<String> keys = new ArrayList<>(2);
+        if (id != null) {
+            keys.add(idKey(id));
+        }
+        String key = isbnKey(isbn);
+        if (key != null) {
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    private static String idKey(Long id) {
+        return "id:" + id;
+    }
+
+    private static String isbnKey(String isbn) {
+        if (isbn == null || isbn.trim().isEmpty()) {
+            return null;
+        }
+        return "isbn:" + isbn.trim();
+    }
+
+    /**
+     * 过滤器状态：理论误判率、实际观测误判率、拦截（节省的数据库查询）次数
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        BloomFilter current = filter;
+        stats.put("ready", current != null);
+        if (current == null) {
+            return stats;
+        }
+        long total = lookups.get();
+        long blocked = rejected.get();
+        long passed = total - blocked;
+        long fp = falsePositives.get();
+        stats.put("keys", current.getInsertions());
+        stats.put("bits", current.getNumBits());
+        stats.put("hashFunctions", current.getNumHashes());
+        stats.put("memoryBytes", current.getNumBits() / 8);
+        stats.put("expectedFpp", current.expectedFpp());
+        stats.put("lookups", total);
+        stats.put("rejected", blocked);
+        stats.put("dbQueriesSaved", blocked);
+        stats.put("falsePositives", fp);
+        // 观测误判率：放行的查询中数据库实际不存在的比例
+        stats.put("observedFalsePositiveRate", passed == 0 ? 0.0 : (double) fp / passed);
+        stats.put("maxKnownId", maxKnownId.get());
+        stats.put("passedAboveMaxId", passedAboveMaxId.get());
+        stats.put("builtAt", builtAt == null ? null : builtAt.toString());
+        return stats;
+    }
+}
@@ -0,0 +1,527 @@
+package com.library.service;
+
+import com.library.util.CsvReader;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 图书批量导入（CSV）
+ * 上传文件先落到临时文件，由后台线程逐行流式解析、校验，按 ISBN 与已有图书去重：
+ * 已存在的更新（按总册数差值调整可借册数，与单本编辑一致），不存在的新增；
+ * 每批在独立事务中以 JDBC 批量语句写入。搜索索引、联想索引、分类统计、存在性过滤器
+ * 和图书缓存在全部批次完成后统一刷新一次，而不是逐行刷新
+ */
+@Service
+public class BookImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BookImportService.class);
+
+    private static final String INSERT_SQL =
+            "INSERT INTO books (title, author, isbn, publisher, publish_date, description, "
+                    + "total_copies, available_copies, category, created_at, updated_at) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String UPDATE_SQL =
+            "UPDATE books SET title = ?, author = ?, publisher = ?, publish_date = ?, description = ?, category = ?, "
+                    + "available_copies = available_copies + (? - total_copies), total_copies = ?, updated_at = ? "
+                    + "WHERE id = ?";
+
+    private static final String FIND_BY_ISBN_SQL =
+            "SELECT id, isbn, total_copies, available_copies FROM books WHERE isbn IN (%s) ORDER BY id";
+
+    // 表头别名 -> 字段
+    private static final Map<String, String> HEADER_ALIASES = new HashMap<>();
+
+    static {
+        alias("title", "title", "书名");
+        alias("author", "author", "作者");
+        alias("isbn", "isbn", "ISBN");
+        alias("publisher", "publisher", "出版社");
+        alias("publishDate", "publishdate", "publish_date", "出版日期");
+        alias("description", "description", "简介");
+        alias("totalCopies", "totalcopies", "total_copies", "总册数");
+        alias("category", "category", "分类");
+    }
+
+    private static void alias(String field, String... names) {
+        for (String name : names) {
+            HEADER_ALIASES.put(name.toLowerCase(), field);
+        }
+    }
+
+    /**
+     * 一行校验通过的图书数据
+     */
+    private record Row(long line, String title, String author, String isbn, String publisher,
+                       LocalDateTime publishDate, String description, int totalCopies, String category) {
+    }
+
+    /**
+     * 导入任务进度，字段由后台线程写入、查询线程读取
+     */
+    private static final class ImportJob {
+        final String id = UUID.randomUUID().toString();
+        final String fileName;
+        final LocalDateTime startedAt = LocalDateTime.now();
+        volatile String status = "RUNNING";
+        volatile long processedRows;
+        volatile long inserted;
+        volatile long updated;
+        volatile long failed;
+        volatile long duplicates;
+        volatile long durationMs;
+        volatile String message;
+        final List<Map<String, Object>> errors = Collections.synchronizedList(new ArrayList<>());
+
+        ImportJob(String fileName) {
+            this.fileName = fileName;
+        }
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private BookSearchIndex bookSearchIndex;
+
+    @Autowired
+    private BookSuggestIndex bookSuggestIndex;
+
+    @Autowired
+    private CategoryFacetIndex categoryFacetIndex;
+
+    @Autowired
+    private BookExistenceFilter bookExistenceFilter;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private BookAvailabilityService bookAvailabilityService;
+
+    @Autowired
+    private HotInventoryService hotInventoryService;
+
+    @Value("${library.catalog.import.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${library.catalog.import.max-errors:200}")
+    private int maxErrors;
+
+    // 同一时间只执行一个导入任务，避免多个大批量写入互相争用
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "book-import");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 提交导入任务
+     * @return 任务ID，用于查询进度
+     */
+    public String submit(MultipartFile file) {
+        if (file == null || file.isEmpty()) {
+            throw new RuntimeException("请选择要导入的 CSV 文件");
+        }
+        Path tempFile;
+        try {
+            tempFile = Files.createTempFile("book-import-", ".csv");
+            file.transferTo(tempFile);
+        } catch (IOException e) {
+            throw new RuntimeException("保存上传文件失败：" + e.getMessage());
+        }
+        LocalDateTime expired = LocalDateTime.now().minusDays(1);
+        jobs.values().removeIf(old -> !"RUNNING".equals(old.status) && old.startedAt.isBefore(expired));
+        ImportJob job = new ImportJob(file.getOriginalFilename());
+        jobs.put(job.id, job);
+        executor.submit(() -> run(job, tempFile));
+        return job.id;
+    }
+
+    /**
+     * 查询导入进度
+     */
+    public Map<String, Object> getProgress(String jobId) {
+        ImportJob job = jobs.get(jobId);
+        if (job == null) {
+            return null;
+        }
+        Map<String, Object> progress = new HashMap<>();
+        progress.put("jobId", job.id);
+        progress.put("fileName", job.fileName);
+        progress.put("status", job.status);
+        progress.put("startedAt", job.startedAt.toString());
+        progress.put("processedRows", job.processedRows);
+        progress.put("inserted", job.inserted);
+        progress.put("updated", job.updated);
+        progress.put("failed", job.failed);
+        progress.put("duplicates", job.duplicates);
+        long elapsed = job.durationMs > 0 ? job.durationMs
+                : Duration.between(job.startedAt, LocalDateTime.now()).toMillis();
+        progress.put("durationMs", elapsed);
+        progress.put("rowsPerSecond", elapsed == 0 ? 0 : job.processedRows * 1000 / elapsed);
+        progress.put("message", job.message);
+        synchronized (job.errors) {
+            progress.put("errors", new ArrayList<>(job.errors));
+        }
+        return progress;
+    }
+
+    private void run(ImportJob job, Path file) {
+        long start = System.currentTimeMillis();
+        Set<Long> touchedIds = new HashSet<>();
+        Set<String> touchedIsbns = new HashSet<>();
+        try (CsvReader reader = new CsvReader(new BufferedReader(
+                new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8)))) {
+            List<String> header = reader.next();
+            if (header == null) {
+                throw new RuntimeException("文件为空");
+            }
+            Map<String, Integer> columns = mapHeader(header);
+
+            List<Row> batch = new ArrayList<>(batchSize);
+            List<String> record;
+            long line = reader.getLineNumber();
+            while ((record = reader.next()) != null) {
+                if (!(record.size() == 1 && record.get(0).isBlank())) {
+                    try {
+                        batch.add(parseRow(line, record, columns));
+                    } catch (RuntimeException e) {
+                        recordError(job, line, e.getMessage());
+                    }
+                    job.processedRows++;
+                }
+                line = reader.getLineNumber();
+                if (batch.size() >= batchSize) {
+                    writeBatch(job, batch, touchedIds, touchedIsbns);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                writeBatch(job, batch, touchedIds, touchedIsbns);
+            }
+
+            job.message = "正在刷新索引和缓存";
+            refresh(touchedIds, touchedIsbns);
+            job.status = "COMPLETED";
+            job.message = "导入完成";
+        } catch (Exception e) {
+            logger.error("图书导入失败: {}", e.getMessage(), e);
+            job.status = "FAILED";
+            job.message = "导入失败：" + e.getMessage();
+            if (job.inserted + job.updated > 0) {
+                refresh(touchedIds, touchedIsbns);
+            }
+        } finally {
+            job.durationMs = Math.max(1, System.currentTimeMillis() - start);
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                logger.warn("删除导入临时文件失败: {}", file);
+            }
+            logger.info("图书导入 {}：{} 行，新增 {}，更新 {}，失败 {}，耗时 {} ms",
+                    job.fileName, job.processedRows, job.inserted, job.updated, job.failed, job.durationMs);
+        }
+    }
+
+    private Map<String, Integer> mapHeader(List<String> header) {
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            String field = HEADER_ALIASES.get(header.get(i).trim().toLowerCase());
+            if (field != null) {
+                columns.putIfAbsent(field, i);
+            }
+        }
+        if (!columns.containsKey("title") || !columns.containsKey("totalCopies")) {
+            throw new RuntimeException("表头缺少必填列：书名(title)、总册数(totalCopies)");
+        }
+        return columns;
+    }
+
+    private Row parseRow(long line, List<String> record, Map<String, Integer> columns) {
+        String title = required(text(record, columns, "title", 200, "书名"), "书名");
+        String author = text(record, columns, "author", 100, "作者");
+        String isbn = text(record, columns, "isbn", 50, "ISBN");
+        String publisher = text(record, columns, "publisher", 100, "出版社");
+        String category = text(record, columns, "category", 50, "分类");
+        String description = text(record, columns, "description", Integer.MAX_VALUE, "简介");
+
+        int totalCopies;
+        String copies = required(text(record, columns, "totalCopies", 11, "总册数"), "总册数");
+        try {
+            totalCopies = Integer.parseInt(copies);
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("总册数不是整数：" + copies);
+        }
+        if (totalCopies < 0) {
+            throw new RuntimeException("总册数不能为负数");
+        }
+
+        LocalDateTime publishDate = null;
+        String date = text(record, columns, "publishDate", 30, "出版日期");
+        if (date != null) {
+            try {
+                publishDate = date.length() <= 10
+                        ? LocalDate.parse(date).atStartOfDay()
+                        : LocalDateTime.parse(date);
+            } catch (DateTimeParseException e) {
+                throw new RuntimeException("出版日期格式错误（应为 yyyy-MM-dd）：" + date);
+            }
+        }
+        return new Row(line, title, author, isbn, publisher, publishDate, description, totalCopies, category);
+    }
+
+    private String text(List<String> record, Map<String, Integer> columns, String field, int maxLength, String label) {
+        Integer index = columns.get(field);
+        if (index == null || index >= record.size()) {
+            return null;
+        }
+        String value = record.get(index).trim();
+        if (value.isEmpty()) {
+            return null;
+        }
+        if (value.length() > maxLength) {
+            throw new RuntimeException(label + "超过 " + maxLength + " 个字符");
+        }
+        return value;
+    }
+
+    private String required(String value, String label) {
+        if (value == null) {
+            throw new RuntimeException(label + "不能为空");
+        }
+        return value;
+    }
+
+    /**
+     * 写入一批：同一批内相同 ISBN 以最后一行为准；已存在的 ISBN 更新最早的一本，其余新增
+     * 批次失败时整批回滚并逐行记录错误，不影响后续批次
+     */
+    private void writeBatch(ImportJob job, List<Row> rows, Set<Long> touchedIds, Set<String> touchedIsbns) {
+        Map<String, Row> byIsbn = new LinkedHashMap<>();
+        List<Row> unique = new ArrayList<>();
+        for (Row row : rows) {
+            if (row.isbn() == null) {
+                unique.add(row);
+            } else {
+                Row previous = byIsbn.put(row.isbn(), row);
+                if (previous != null) {
+                    job.duplicates++;
+                    addError(job, previous.line(), "ISBN " + row.isbn() + " 在第 " + row.line() + " 行重复出现，以后者为准");
+                }
+            }
+        }
+        unique.addAll(byIsbn.values());
+
+        Map<Row, String> rejected = new LinkedHashMap<>();
+        try {
+            // 返回 [新增数, 更新数]，事务提交成功后才计入任务进度，回滚的批次不会被计为已写入
+            int[] written = transactionTemplate.execute(status -> {
+                rejected.clear();
+                Map<String, long[]> existing = findExisting(byIsbn.keySet());
+                List<Row> inserts = new ArrayList<>();
+                List<Row> updates = new ArrayList<>();
+                List<Long> updateIds = new ArrayList<>();
+                for (Row row : unique) {
+                    long[] current = row.isbn() == null ? null : existing.get(row.isbn());
+                    if (current == null) {
+                        inserts.add(row);
+                    } else if (current[2] + (row.totalCopies() - current[1]) < 0) {
+                        rejected.put(row, "总册数 " + row.totalCopies() + " 小于已借出数量 " + (current[1] - current[2]));
+                    } else {
+                        updates.add(row);
+                        updateIds.add(current[0]);
+                    }
+                }
+
+                Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+                List<Long> insertedIds = insert(inserts, now);
+                update(updates, updateIds, now);
+
+                // 在事务提交前登记新图书，提交后的查询不会被存在性过滤器拦截
+                for (int i = 0; i < inserts.size(); i++) {
+                    bookExistenceFilter.add(i < insertedIds.size() ? insertedIds.get(i) : null, inserts.get(i).isbn());
+                }
+                // 更新会调整可借册数，提交后删除这些图书的可借册数计数，热门图书的内存计数器作废
+                updateIds.forEach(bookAvailabilityService::invalidate);
+                updateIds.forEach(hotInventoryService::onStockChanged);
+                touchedIds.addAll(updateIds);
+                for (Row row : updates) {
+                    touchedIsbns.add(row.isbn());
+                }
+                return new int[]{inserts.size(), updates.size()};
+            });
+            job.inserted += written[0];
+            job.updated += written[1];
+            rejected.forEach((row, message) -> recordError(job, row.line(), message));
+        } catch (Exception e) {
+            logger.warn("图书导入批次写入失败: {}", e.getMessage());
+            for (Row row : unique) {
+                recordError(job, row.line(), "写入失败：" + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 按 ISBN 查询已有图书：ISBN -> [id, 总册数, 可借册数]，同一 ISBN 有多本时取 ID 最小的一本
+     */
+    private Map<String, long[]> findExisting(Set<String> isbns) {
+        Map<String, long[]> existing = new HashMap<>();
+        if (isbns.isEmpty()) {
+            return existing;
+        }
+        String placeholders = String.join(",", Collections.nCopies(isbns.size(), "?"));
+        jdbcTemplate.query(String.format(FIND_BY_ISBN_SQL, placeholders), rs -> {
+            existing.putIfAbsent(rs.getString("isbn"), new long[]{
+                    rs.getLong("id"), rs.getLong("total_copies"), rs.getLong("available_copies")});
+        }, isbns.toArray());
+        return existing;
+    }
+
+    private List<Long> insert(List<Row> rows, Timestamp now) {
+        if (rows.isEmpty()) {
+            return Collections.emptyList();
+        }
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(connection -> connection.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Row row = rows.get(i);
+                        ps.setString(1, row.title());
+                        ps.setString(2, row.author());
+                        ps.setString(3, row.isbn());
+                        ps.setString(4, row.publisher());
+                        ps.setTimestamp(5, row.publishDate() == null ? null : Timestamp.valueOf(row.publishDate()));
+                        ps.setString(6, row.description());
+                        ps.setInt(7, row.totalCopies());
+                        ps.setInt(8, row.totalCopies());
+                        ps.setString(9, row.category());
+                        ps.setTimestamp(10, now);
+                        ps.setTimestamp(11, now);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return rows.size();
+                    }
+                }, keyHolder);
+        List<Long> ids = new ArrayList<>(rows.size());
+        for (Map<String, Object> keys : keyHolder.getKeyList()) {
+            Object key = keys.values().stream().findFirst().orElse(null);
+            if (key instanceof Number number) {
+                ids.add(number.longValue());
+            }
+        }
+        return ids;
+    }
+
+    private void update(List<Row> rows, List<Long> ids, Timestamp now) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(UPDATE_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Row row = rows.get(i);
+                ps.setString(1, row.title());
+                ps.setString(2, row.author());
+                ps.setString(3, row.publisher());
+                ps.setTimestamp(4, row.publishDate() == null ? null : Timestamp.valueOf(row.publishDate()));
+                ps.setString(5, row.description());
+                ps.setString(6, row.category());
+                ps.setInt(7, row.totalCopies());
+                ps.setInt(8, row.totalCopies());
+                ps.setTimestamp(9, now);
+                ps.setLong(10, ids.get(i));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return rows.size();
+            }
+        });
+    }
+
+    /**
+     * 全部批次完成后统一刷新：各内存索引全量重建，清除被更新图书的缓存
+     */
+    private void refresh(Set<Long> touchedIds, Set<String> touchedIsbns) {
+        bookSearchIndex.rebuild();
+        bookSuggestIndex.rebuild();
+        categoryFacetIndex.rebuild();
+        bookExistenceFilter.rebuild();
+
+        Cache books = cacheManager.getCache("books");
+        if (books != null) {
+            touchedIds.forEach(books::evict);
+        }
+        Cache booksByIsbn = cacheManager.getCache("booksByIsbn");
+        if (booksByIsbn != null) {
+            touchedIsbns.forEach(booksByIsbn::evict);
+        }
+    }
+
+    private void recordError(ImportJob job, long line, String message) {
+        job.failed++;
+        addError(job, line, message);
+    }
+
+    private void addError(ImportJob job, long line, String message) {
+        if (job.errors.size() < maxErrors) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("line", line);
+            error.put("message", message);
+            job.errors.add(error);
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package com.library.service;
+
+import com.library.entity.Book;
+import com.library.event.BookBorrowedEvent;
+import com.library.repository.BorrowHistoryRepository;
+import com.library.util.LongIntHashMap;
+import com.library.util.LongObjectHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * “借过这本书的读者还借过”推荐
+ * 维护图书两两之间的共现次数（同一读者借过两本书计一次），以稀疏矩阵保存：每本图书一行，
+ * 行内为 long→int 的基本类型哈希表（{@link LongIntHashMap}），图书行和读者历史的外层索引同样使用 long 键的哈希表，
+ * 没有 Map&lt;Long, Map&lt;Long, Long&gt;&gt; 的装箱与 Entry 对象开销。
+ * 启动时从借阅历史（归档表 + 热表）全量构建一次，之后每次借阅成功在事务提交后增量更新：
+ * 新借的书与该读者历史中的每本书共现次数各加一。同一读者重复借同一本书不重复计数（包括已移出最近窗口的图书），
+ * 因此构建期间到达的借阅事件可以在构建完成后直接重放。
+ * <p>
+ * 相似度为余弦：共现次数 / sqrt(借阅人数A × 借阅人数B)。每本书的前 K 个结果缓存在行上，
+ * 本行变化时失效；其他图书借阅人数变化引起的排序微小偏差不单独失效，在本行下次变化时修正。
+ * 每位读者参与共现计数的历史限制为最近 max-history 本，单次更新为 O(max-history)，也限制了矩阵规模；
+ * 读者借过的全部图书另以基本类型集合记录，只用于去重
+ */
+@Service
+public class BookRecommendationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BookRecommendationService.class);
+
+    private static final int BUILD_BATCH_SIZE = 10000;
+
+    private static final long[] EMPTY = new long[0];
+
+    // 内存估算：对象头与数组头按 16 字节、引用按 4 字节（压缩指针）计
+    private static final long HEADER_BYTES = 16;
+    private static final long REFERENCE_BYTES = 4;
+
+    @Autowired
+    private BorrowHistoryRepository borrowHistoryRepository;
+
+    @Autowired
+    private BatchAssociationLoader batchAssociationLoader;
+
+    @Value("${library.recommend.max-history:100}")
+    private int maxHistory;
+
+    @Value("${library.recommend.top-k:20}")
+    private int topK;
+
+    @Value("${library.recommend.min-support:1}")
+    private int minSupport;
+
+    // 矩阵的读写都在 lock 内进行，单次更新和查询均为微秒级
+    private final Object lock = new Object();
+    private Graph graph = new Graph();
+    // 构建期间到达的借阅事件（用户ID, 图书ID），不在构建时为 null
+    private List<long[]> pending;
+
+    private volatile LocalDateTime builtAt;
+    private volatile long buildMillis;
+
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder queryNanos = new LongAdder();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        rebuild();
+    }
+
+    /**
+     * 全量构建：按主键分批读取归档表和热表的 (用户, 图书)，构建完成后重放期间的借阅事件并替换当前矩阵
+     */
+    public void rebuild() {
+        synchronized (lock) {
+            if (pending != null) {
+                return;
+            }
+            pending = new ArrayList<>();
+        }
+        long start = System.currentTimeMillis();
+        Graph next = new Graph();
+        try {
+            load(next, true);
+            load(next, false);
+        } catch (Exception e) {
+            synchronized (lock) {
+                pending = null;
+            }
+            logger.error("借阅共现矩阵构建失败，推荐仅包含启动后的借阅: {}", e.getMessage(), e);
+            return;
+        }
+        synchronized (lock) {
+            for (long[] event : pending) {
+                next.record(event[0], event[1]);
+            }
+            pending = null;
+            graph = next;
+        }
+        builtAt = LocalDateTime.now();
+        buildMillis = System.currentTimeMillis() - start;
+        logger.info("借阅共现矩阵构建完成：{} 条借阅记录，{} 本图书，{} 个共现条目，约 {} KB，耗时 {} ms",
+                next.records, next.rows.size(), next.entries, next.estimateBytes() / 1024, buildMillis);
+    }
+
+    private void load(Graph next, boolean archive) {
+        long lastId = 0;
+        List<long[]> rows = borrowHistoryRepository.findUserBookPairsAfter(archive, lastId, BUILD_BATCH_SIZE);
+        while (!rows.isEmpty()) {
+            for (long[] row : rows) {
+                lastId = row[0];
+                next.record(row[1], row[2]);
+            }
+            rows = borrowHistoryRepository.findUserBookPairsAfter(archive, lastId, BUILD_BATCH_SIZE);
+        }
+    }
+
+    /**
+     * 借阅提交后增量更新（无事务时立即执行）
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBorrowed(BookBorrowedEvent event) {
+        if (event.userId() == null || event.bookId() == null) {
+            return;
+        }
+        synchronized (lock) {
+            graph.record(event.userId(), event.bookId());
+            if (pending != null) {
+                pending.add(new long[]{event.userId(), event.bookId()});
+            }
+        }
+    }
+
+    /**
+     * 与指定图书共同借阅最多的图书ID，按相似度从高到低
+     */
+    public List<Long> getAlsoBorrowedIds(Long bookId, int limit) {
+        if (bookId == null || limit <= 0) {
+            return new ArrayList<>();
+        }
+        long start = System.nanoTime();
+        long[] top;
+        synchronized (lock) {
+            top = graph.top(bookId);
+        }
+        queries.increment();
+        queryNanos.add(System.nanoTime() - start);
+
+        List<Long> ids = new ArrayList<>(Math.min(limit, top.length));
+        for (int i = 0; i < top.length && i < limit; i++) {
+            ids.add(top[i]);
+        }
+        return ids;
+    }
+
+    /**
+     * 详情页展示用：加载图书基本信息，已删除的图书跳过
+     */
+    public List<Map<String, Object>> getAlsoBorrowed(Long bookId, int limit) {
+        // 多取一些候选，弥补已删除的图书
+        List<Long> ids = getAlsoBorrowedIds(bookId, topK);
+        Map<Long, Book> books = batchAssociationLoader.loadBooks(ids);
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Long id : ids) {
+            Book book = books.get(id);
+            if (book == null) {
+                continue;
+            }
+            Map<String, Object> item = new HashMap<>();
+            item.put("bookId", book.getId());
+            item.put("title", book.getTitle());
+            item.put("author", book.getAuthor());
+            item.put("category", book.getCategory());
+            result.add(item);
+            if (result.size() >= limit) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 矩阵规模、估算内存占用（含每百万借阅记录的占用）及查询耗时
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (lock) {
+            long bytes = graph.estimateBytes();
+            stats.put("ready", builtAt != null);
+            stats.put("building", pending != null);
+            stats.put("records", graph.records);
+            stats.put("users", graph.histories.size());
+            stats.put("books", graph.rows.size());
+            stats.put("coOccurrenceEntries", graph.entries);
+            stats.put("estimatedBytes", bytes);
+            stats.put("bytesPerMillionRecords", graph.records == 0 ? 0 : bytes * 1_000_000 / graph.records);
+        }
+        long count = queries.sum();
+        stats.put("queries", count);
+        stats.put("avgQueryMicros", count == 0 ? 0.0 : queryNanos.sum() / 1000.0 / count);
+        stats.put("maxHistory", maxHistory);
+        stats.put("topK", topK);
+        stats.put("builtAt", builtAt);
+        stats.put("buildMillis", buildMillis);
+        return stats;
+    }
+
+    /**
+     * 图书行：与其他图书的共现次数、借阅人数、缓存的前 K 结果
+     */
+    private static final class Row {
+        final LongIntHashMap counts = new LongIntHashMap();
+        int borrowers;
+        long[] top;
+    }
+
+    /**
+     * 读者借过的图书：最近 max-history 本（按借阅先后）参与共现计数，counted 记录已计数过的全部图书（值恒为 1）
+     */
+    private static final class History {
+        final LongIntHashMap counted = new LongIntHashMap();
+        long[] books = new long[4];
+        int size;
+
+        boolean contains(long bookId) {
+            return counted.containsKey(bookId);
+        }
+
+        void add(long bookId, int max) {
+            counted.addTo(bookId, 1);
+            if (size == max) {
+                // 淘汰最早的一本，已计入的共现次数保留
+                System.arraycopy(books, 1, books, 0, size - 1);
+                size--;
+            } else if (size == books.length) {
+                books = Arrays.copyOf(books, Math.min(max, books.length * 2));
+            }
+            books[size++] = bookId;
+        }
+    }
+
+    /**
+     * 共现矩阵本体，非线程安全，由外层 lock 保护
+     */
+    private final class Graph {
+        final LongObjectHashMap<Row> rows = new LongObjectHashMap<>(1024);
+        final LongObjectHashMap<History> histories = new LongObjectHashMap<>(1024);
+        long records;
+        long entries;
+
+        void record(long userId, long bookId) {
+            History history = histories.computeIfAbsent(userId, id -> new History());
+            if (history.contains(bookId)) {
+                return;
+            }
+            Row row = rows.computeIfAbsent(bookId, id -> new Row());
+            row.borrowers++;
+            row.top = null;
+            for (int i = 0; i < history.size; i++) {
+                long other = history.books[i];
+                Row otherRow = rows.get(other);
+                if (otherRow.counts.addTo(bookId, 1) == 1) {
+                    entries++;
+                }
+                otherRow.top = null;
+                if (row.counts.addTo(other, 1) == 1) {
+                    entries++;
+                }
+            }
+            history.add(bookId, Math.max(1, maxHistory));
+            records++;
+        }
+
+        long[] top(long bookId) {
+            Row row = rows.get(bookId);
+            if (row == null) {
+                return EMPTY;
+            }
+            if (row.top == null) {
+                row.top = computeTop(row);
+            }
+            return row.top;
+        }
+
+        /**
+         * 扫描一行，按相似度保留前 K 个（有序数组插入，K 很小）
+         */
+        private long[] computeTop(Row row) {
+            int capacity = Math.max(1, topK);
+            long[] ids = new long[capacity];
+            double[] scores = new double[capacity];
+            int[] size = {0};
+            row.counts.forEach((other, co) -> {
+                if (co < minSupport) {
+                    return;
+                }
+                Row otherRow = rows.get(other);
+                double score = co / Math.sqrt((double) row.borrowers * otherRow.borrowers);
+                int n = size[0];
+                if (n == capacity && score <= scores[n - 1]) {
+                    return;
+                }
+                int pos = n == capacity ? n - 1 : n;
+                while (pos > 0 && scores[pos - 1] < score) {
+                    ids[pos] = ids[pos - 1];
+                    scores[pos] = scores[pos - 1];
+                    pos--;
+                }
+                ids[pos] = other;
+                scores[pos] = score;
+                if (n < capacity) {
+                    size[0]++;
+                }
+            });
+            return Arrays.copyOf(ids, size[0]);
+        }
+
+        long estimateBytes() {
+            long[] bytes = {outerBytes(rows) + outerBytes(histories)};
+            rows.forEachValue(row -> bytes[0] += HEADER_BYTES + 12 + REFERENCE_BYTES * 2
+                    + HEADER_BYTES + 16 + REFERENCE_BYTES * 2
+                    + 2 * HEADER_BYTES + row.counts.capacity() * 12L
+                    + (row.top == null ? 0 : HEADER_BYTES + row.top.length * 8L));
+            histories.forEachValue(history -> bytes[0] += HEADER_BYTES + 8 + REFERENCE_BYTES * 2
+                    + HEADER_BYTES + history.books.length * 8L
+                    + HEADER_BYTES + 16 + REFERENCE_BYTES * 2
+                    + 2 * HEADER_BYTES + history.counted.capacity() * 12L);
+            return bytes[0];
+        }
+
+        private long outerBytes(LongObjectHashMap<?> map) {
+            return 2 * HEADER_BYTES + map.capacity() * (8 + REFERENCE_BYTES);
+        }
+    }
+}
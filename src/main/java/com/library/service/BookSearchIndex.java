@@ -0,0 +1,299 @@
+package com.library.service;
+
+import com.library.entity.Book;
+import com.library.repository.BookRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 图书关键词搜索的进程内倒排索引
+ * 书名、作者、ISBN 按字符切分为单字和相邻双字（n-gram），中文无需分词即可检索；
+ * 查询时取各 n-gram 倒排列表的交集作为候选，再按子串匹配校验（与 LIKE %kw% 语义一致）并打分排序。
+ * 启动完成后全量构建，之后随 BookService 的新增、修改、删除在事务提交后增量更新；
+ * 构建完成前 isReady() 返回 false，由调用方退回数据库查询
+ */
+@Component
+public class BookSearchIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(BookSearchIndex.class);
+
+    private static final int BUILD_BATCH_SIZE = 1000;
+
+    /**
+     * 索引中的图书文本（已转小写）
+     */
+    private record Doc(String title, String author, String isbn) {
+    }
+
+    /**
+     * 搜索结果：当前页图书ID（按相关度排序）及匹配总数
+     */
+    public record SearchResult(List<Long> ids, int total) {
+    }
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    private final Map<Long, Doc> docs = new ConcurrentHashMap<>();
+    private final Map<String, Set<Long>> postings = new ConcurrentHashMap<>();
+
+    private volatile boolean ready = false;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        return docs.size();
+    }
+
+    /**
+     * 启动完成后按 ID 分批加载全部图书构建索引
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        rebuild();
+    }
+
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        ready = false;
+        docs.clear();
+        postings.clear();
+        try {
+            Pageable limit = PageRequest.of(0, BUILD_BATCH_SIZE);
+            List<Book> batch = bookRepository.findAllByOrderByIdAsc(limit);
+            while (!batch.isEmpty()) {
+                for (Book book : batch) {
+                    add(book);
+                }
+                Long lastId = batch.get(batch.size() - 1).getId();
+                batch = bookRepository.findByIdGreaterThanOrderByIdAsc(lastId, limit);
+            }
+            ready = true;
+            logger.info("图书搜索索引构建完成：{} 本图书，{} 个 n-gram，耗时 {} ms",
+                    docs.size(), postings.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            logger.error("图书搜索索引构建失败，搜索将使用数据库查询: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 新增或更新图书索引；在事务中调用时于提交后生效
+     */
+    public void index(Book book) {
+        if (book == null || book.getId() == null) {
+            return;
+        }
+        Doc doc = toDoc(book);
+        Long id = book.getId();
+        afterCommit(() -> {
+            synchronized (this) {
+                removeInternal(id);
+                addInternal(id, doc);
+            }
+        });
+    }
+
+    /**
+     * 删除图书索引；在事务中调用时于提交后生效
+     */
+    public void remove(Long id) {
+        if (id == null) {
+            return;
+        }
+        afterCommit(() -> {
+            synchronized (this) {
+                removeInternal(id);
+            }
+        });
+    }
+
+    /**
+     * 关键词搜索
+     * @param page 页码（从 0 开始）
+     */
+    public SearchResult search(String keyword, int page, int size) {
+        String query = normalize(keyword);
+        if (query.isEmpty()) {
+            return new SearchResult(Collections.emptyList(), 0);
+        }
+
+        Set<Long> candidates = candidates(query);
+        List<long[]> scored = new ArrayList<>();
+        for (Long id : candidates) {
+            Doc doc = docs.get(id);
+            if (doc == null) {
+                continue;
+            }
+            int score = score(doc, query);
+            if (score > 0) {
+                scored.add(new long[]{id, score});
+            }
+        }
+        scored.sort(Comparator.<long[]>comparingLong(entry -> -entry[1]).thenComparingLong(entry -> entry[0]));
+
+        int from = Math.min(page * size, scored.size());
+        int to = Math.min(from + size, scored.size());
+        List<Long> ids = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            ids.add(scored.get(i)[0]);
+        }
+        return new SearchResult(ids, scored.size());
+    }
+
+    /**
+     * 取查询串所有 n-gram 倒排列表的交集，从最短的列表开始
+     */
+    private Set<Long> candidates(String query) {
+        List<Set<Long>> lists = new ArrayList<>();
+        for (String gram : queryGrams(query)) {
+            Set<Long> ids = postings.get(gram);
+            if (ids == null) {
+                return Collections.emptySet();
+            }
+            lists.add(ids);
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+        Set<Long> result = new LinkedHashSet<>(lists.get(0));
+        for (int i = 1; i < lists.size() && !result.isEmpty(); i++) {
+            result.retainAll(lists.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * 相关度：书名匹配优先于作者，作者优先于 ISBN；完全匹配、前缀匹配额外加分，较短的书名略微靠前
+     */
+    private int score(Doc doc, String query) {
+        int score = 0;
+        if (doc.title().contains(query)) {
+            score += 100;
+            if (doc.title().equals(query)) {
+                score += 100;
+            } else if (doc.title().startsWith(query)) {
+                score += 50;
+            }
+            score += Math.max(0, 20 - (doc.title().length() - query.length()));
+        }
+        if (doc.author().contains(query)) {
+            score += doc.author().equals(query) ? 80 : 60;
+        }
+        if (doc.isbn().contains(query)) {
+            score += doc.isbn().equals(query) ? 90 : 30;
+        }
+        return score;
+    }
+
+    private void add(Book book) {
+        addInternal(book.getId(), toDoc(book));
+    }
+
+    private void addInternal(Long id, Doc doc) {
+        docs.put(id, doc);
+        for (String gram : docGrams(doc)) {
+            postings.computeIfAbsent(gram, key -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+    }
+
+    private void removeInternal(Long id) {
+        Doc old = docs.remove(id);
+        if (old == null) {
+            return;
+        }
+        for (String gram : docGrams(old)) {
+            Set<Long> ids = postings.get(gram);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    postings.remove(gram, ids);
+                }
+            }
+        }
+    }
+
+    private Set<String> docGrams(Doc doc) {
+        Set<String> grams = new LinkedHashSet<>();
+        addGrams(doc.title(), grams);
+        addGrams(doc.author(), grams);
+        addGrams(doc.isbn(), grams);
+        return grams;
+    }
+
+    /**
+     * 文本的单字和相邻双字
+     */
+    private void addGrams(String text, Set<String> grams) {
+        for (int i = 0; i < text.length(); i++) {
+            grams.add(text.substring(i, i + 1));
+            if (i + 1 < text.length()) {
+                grams.add(text.substring(i, i + 2));
+            }
+        }
+    }
+
+    /**
+     * 查询串只需双字（单字查询用单字），子串一定包含查询串的全部相邻双字
+     */
+    private List<String> queryGrams(String query) {
+        if (query.length() == 1) {
+            return List.of(query);
+        }
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + 1 < query.length(); i++) {
+            grams.add(query.substring(i, i + 2));
+        }
+        return new ArrayList<>(grams);
+    }
+
+    private Doc toDoc(Book book) {
+        return new Doc(normalize(book.getTitle()), normalize(book.getAuthor()), normalize(book.getIsbn()));
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * 索引状态
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("ready", ready);
+        stats.put("books", docs.size());
+        stats.put("grams", postings.size());
+        return stats;
+    }
+}
@@ -1,23 +1,72 @@
 package com.library.service;
 
+import com.library.cache.TieredCacheManager;
+import com.library.dto.CappedPage;
+import com.library.dto.KeysetPage;
 import com.library.entity.Book;
 import com.library.repository.BookRepository;
+import com.library.util.CursorUtil;
+import com.library.util.TtlCache;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.LocalDateTime;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Service
 public class BookService {
     @Autowired
     private BookRepository bookRepository;
 
+    @Autowired
+    private BookSearchIndex bookSearchIndex;
+
+    @Autowired
+    private BookSuggestIndex bookSuggestIndex;
+
+    @Autowired
+    private CategoryFacetIndex categoryFacetIndex;
+
+    @Autowired
+    private BookExistenceFilter bookExistenceFilter;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private BookAvailabilityService bookAvailabilityService;
+
+    @Autowired
+    private HotInventoryService hotInventoryService;
+
+    @Autowired
+    private BookRecommendationService bookRecommendationService;
+
+    @Value("${library.search.count-cap:1000}")
+    private int countCap;
+
+    // 图书总数及筛选结果封顶计数缓存（分页展示用，允许短暂不准确）
+    private final TtlCache<String, Long> countCache = new TtlCache<>(60_000);
+
     public Optional<Book> findById(Long id) {
         return bookRepository.findById(id);
     }
@@ -28,10 +77,37 @@ public class BookService {
      * 
      * 注意：如果遇到 "ERR wrong number of arguments for 'set' command" 错误，
      * 可能是 Redis 版本过低（需要 3.0+），请升级 Redis 或暂时禁用缓存
+     * 
+     * 空结果不缓存，不存在的ID由存在性过滤器拦截，不再每次查询数据库；
+     * sync = true：同一ID的并发未命中只有一个请求查询数据库，临近过期时概率性提前刷新
      */
-    @Cacheable(value = "books", key = "#id", unless = "#result == null")
+    @Cacheable(value = "books", key = "#id", sync = true)
     public Book getBookById(Long id) {
-        return bookRepository.findById(id).orElse(null);
+        if (!bookExistenceFilter.mightContainId(id)) {
+            return null;
+        }
+        Book book = bookRepository.findById(id).orElse(null);
+        if (book == null) {
+            bookExistenceFilter.recordFalsePositive();
+        }
+        return book;
+    }
+
+    /**
+     * 按 ISBN 获取图书（带缓存），同一 ISBN 有多本时取第一本
+     * 不存在的 ISBN 由存在性过滤器拦截
+     */
+    @Cacheable(value = "booksByIsbn", key = "#isbn.trim()", unless = "#result == null")
+    public Book getBookByIsbn(String isbn) {
+        if (!bookExistenceFilter.mightContainIsbn(isbn)) {
+            return null;
+        }
+        List<Book> books = bookRepository.findByIsbn(isbn.trim());
+        if (books.isEmpty()) {
+            bookExistenceFilter.recordFalsePositive();
+            return null;
+        }
+        return books.get(0);
     }
 
     public List<Book> findAll() {
@@ -42,10 +118,157 @@ public class BookService {
         return bookRepository.findAll(pageable);
     }
 
+    /**
+     * 键集分页查询图书，按 id 排序
+     * @param after 下一页游标
+     * @param before 上一页游标
+     */
+    public KeysetPage<Book> findPage(String after, String before, int size) {
+        Pageable limit = PageRequest.of(0, size + 1);
+        boolean backward = before != null && !before.isEmpty();
+        Long id = CursorUtil.decode(backward ? before : after, 1, parts -> Long.parseLong(parts[0]));
+        
+        List<Book> rows;
+        if (id == null) {
+            backward = false;
+            rows = bookRepository.findAllByOrderByIdAsc(limit);
+        } else {
+            rows = backward
+                    ? bookRepository.findByIdLessThanOrderByIdDesc(id, limit)
+                    : bookRepository.findByIdGreaterThanOrderByIdAsc(id, limit);
+        }
+        
+        Long total = countCache.get("all", bookRepository::count);
+        return KeysetPage.of(rows, size, backward, id != null,
+                book -> CursorUtil.encode(book.getId()), total);
+    }
+
     public List<Book> searchBooks(String keyword) {
         return bookRepository.searchBooks(keyword);
     }
 
+    /**
+     * 关键词分页搜索（书名、作者、ISBN），结果按相关度排序
+     * 优先使用内存倒排索引，只按ID加载当前页图书；索引未就绪时退回数据库 LIKE 查询（封顶计数）
+     */
+    public CappedPage<Book> searchBooks(String keyword, Pageable pageable) {
+        if (!bookSearchIndex.isReady()) {
+            Slice<Book> slice = bookRepository.searchBooks(keyword, pageable);
+            return toCappedPage(slice, "search:" + keyword,
+                    () -> bookRepository.countSearchBooksCapped(keyword, countCap + 1));
+        }
+        BookSearchIndex.SearchResult result = bookSearchIndex.search(keyword, pageable.getPageNumber(), pageable.getPageSize());
+        Map<Long, Book> books = bookRepository.findAllById(result.ids()).stream()
+                .collect(Collectors.toMap(Book::getId, Function.identity()));
+        List<Book> content = result.ids().stream()
+                .map(books::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        boolean hasNext = (long) (pageable.getPageNumber() + 1) * pageable.getPageSize() < result.total();
+        return new CappedPage<>(content, pageable.getPageNumber(), pageable.getPageSize(), hasNext,
+                Math.min(result.total(), countCap + 1L), countCap);
+    }
+
+    public CappedPage<Book> findByCategory(String category, Pageable pageable) {
+        Slice<Book> slice = bookRepository.findByCategory(category, pageable);
+        return toCappedPage(slice, "category:" + category,
+                () -> bookRepository.countByCategoryCapped(category, countCap + 1));
+    }
+
+    public CappedPage<Book> findByTitle(String title, Pageable pageable) {
+        Slice<Book> slice = bookRepository.findByTitleContaining(title, pageable);
+        return toCappedPage(slice, "title:" + title,
+                () -> bookRepository.countByTitleContainingCapped(title, countCap + 1));
+    }
+
+    public CappedPage<Book> findByAuthor(String author, Pageable pageable) {
+        Slice<Book> slice = bookRepository.findByAuthorContaining(author, pageable);
+        return toCappedPage(slice, "author:" + author,
+                () -> bookRepository.countByAuthorContainingCapped(author, countCap + 1));
+    }
+
+    /**
+     * 第一页即为最后一页时总数就是当前页条数，无需计数；否则执行封顶计数（短时缓存）
+     * 计数多数一行到 上限+1，用以区分“恰好等于上限”与“超过上限”
+     */
+    private CappedPage<Book> toCappedPage(Slice<Book> slice, String countKey, Supplier<Long> counter) {
+        long total = !slice.hasNext() && slice.getNumber() == 0
+                ? slice.getNumberOfElements()
+                : countCache.get(countKey, counter);
+        return new CappedPage<>(slice.getContent(), slice.getNumber(), slice.getSize(), slice.hasNext(), total, countCap);
+    }
+
+    /**
+     * 书名/作者前缀联想
+     */
+    public List<Map<String, Object>> suggest(String prefix, int limit) {
+        return bookSuggestIndex.suggest(prefix, limit);
+    }
+
+    /**
+     * 分类分面统计（内存维护，不查询数据库）
+     */
+    public List<Map<String, Object>> getCategoryFacets() {
+        return categoryFacetIndex.getFacets();
+    }
+
+    public Map<String, Object> getSearchIndexStats() {
+        return bookSearchIndex.getStats();
+    }
+
+    public Map<String, Object> getSuggestIndexStats() {
+        return bookSuggestIndex.getStats();
+    }
+
+    public Map<String, Object> getExistenceFilterStats() {
+        return bookExistenceFilter.getStats();
+    }
+
+    /**
+     * 两级缓存各缓存的命中统计；未启用本地缓存时返回空
+     */
+    public Map<String, Object> getCacheStats() {
+        if (cacheManager instanceof TieredCacheManager tieredCacheManager) {
+            return tieredCacheManager.getStats();
+        }
+        return Collections.emptyMap();
+    }
+
+    /**
+     * 可借册数叠加层的读取来源统计
+     */
+    public Map<String, Object> getAvailabilityStats() {
+        return bookAvailabilityService.getStats();
+    }
+
+    /**
+     * 借过这本书的读者还借过的图书
+     */
+    public List<Map<String, Object>> getAlsoBorrowed(Long bookId, int limit) {
+        return bookRecommendationService.getAlsoBorrowed(bookId, limit);
+    }
+
+    /**
+     * 借阅共现矩阵的规模与内存统计
+     */
+    public Map<String, Object> getRecommendationStats() {
+        return bookRecommendationService.getStats();
+    }
+
+    /**
+     * 用当前可借册数覆盖缓存中的图书（返回副本）
+     */
+    public Book withCurrentAvailability(Book book) {
+        return bookAvailabilityService.overlay(book);
+    }
+
+    private void evictIsbn(String isbn) {
+        Cache cache = cacheManager.getCache("booksByIsbn");
+        if (cache != null && isbn != null && !isbn.trim().isEmpty()) {
+            cache.evict(isbn.trim());
+        }
+    }
+
     public List<Book> findByTitle(String title) {
         return bookRepository.findByTitleContaining(title);
     }
@@ -65,13 +288,25 @@ public class BookService {
             book.setAvailableCopies(book.getTotalCopies());
         }
         Book savedBook = bookRepository.save(book);
+        // 在事务提交之前登记，提交后的查询不会被过滤器误拦
+        bookExistenceFilter.add(savedBook.getId(), savedBook.getIsbn());
+        evictIsbn(savedBook.getIsbn());
+        reindexAfterCommit(savedBook);
         return savedBook;
     }
 
     @CacheEvict(value = "books", key = "#id")
     @Transactional
     public void deleteById(Long id) {
+        bookRepository.findById(id).ifPresent(book -> evictIsbn(book.getIsbn()));
         bookRepository.deleteById(id);
+        bookAvailabilityService.invalidate(id);
+        hotInventoryService.onStockChanged(id);
+        afterCommit(() -> {
+            bookSearchIndex.remove(id);
+            bookSuggestIndex.remove(id);
+            categoryFacetIndex.remove(id);
+        });
     }
 
     @CacheEvict(value = "books", key = "#book.id")
@@ -79,6 +314,7 @@ public class BookService {
     public Book update(Book book) {
         Book existingBook = bookRepository.findById(book.getId())
                 .orElseThrow(() -> new RuntimeException("图书不存在"));
+        String oldIsbn = existingBook.getIsbn();
         
         if (book.getTitle() != null) existingBook.setTitle(book.getTitle());
         if (book.getAuthor() != null) existingBook.setAuthor(book.getAuthor());
@@ -86,14 +322,46 @@ public class BookService {
         if (book.getPublisher() != null) existingBook.setPublisher(book.getPublisher());
         if (book.getPublishDate() != null) existingBook.setPublishDate(book.getPublishDate());
         if (book.getDescription() != null) existingBook.setDescription(book.getDescription());
-        if (book.getTotalCopies() != null) {
-            int diff = book.getTotalCopies() - existingBook.getTotalCopies();
-            existingBook.setTotalCopies(book.getTotalCopies());
-            existingBook.setAvailableCopies(existingBook.getAvailableCopies() + diff);
-        }
         if (book.getCategory() != null) existingBook.setCategory(book.getCategory());
         
-        return bookRepository.save(existingBook);
+        Book savedBook = bookRepository.save(existingBook);
+        if (book.getTotalCopies() != null) {
+            // 册数不随实体保存（见 Book），按差值增量更新后重新读取
+            bookRepository.updateTotalCopies(savedBook.getId(), book.getTotalCopies(), LocalDateTime.now());
+            savedBook = bookRepository.findById(savedBook.getId()).orElse(savedBook);
+        }
+        bookExistenceFilter.add(savedBook.getId(), savedBook.getIsbn());
+        bookAvailabilityService.invalidate(savedBook.getId());
+        hotInventoryService.onStockChanged(savedBook.getId());
+        evictIsbn(oldIsbn);
+        evictIsbn(savedBook.getIsbn());
+        reindexAfterCommit(savedBook);
+        return savedBook;
+    }
+
+    private void reindexAfterCommit(Book book) {
+        afterCommit(() -> {
+            bookSearchIndex.index(book);
+            bookSuggestIndex.index(book);
+            categoryFacetIndex.index(book);
+        });
+    }
+
+    /**
+     * 进程内索引（检索、联想、分类统计）在事务提交后更新，回滚的写入不会在索引中留下条目；
+     * 存在性过滤器仍在提交前登记（见 save）
+     */
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
     }
 }
 
@@ -0,0 +1,646 @@
+package com.library.service;
+
+import com.library.entity.Book;
+import com.library.repository.BookRepository;
+import com.library.repository.BorrowRollupRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 书名/作者前缀联想（输入提示）
+ * 使用基数树（压缩字典树）：只有一个子节点且没有候选结尾的节点链合并为一条带字符串标签的边，
+ * 子节点按边首字符以有序数组存储（二分查找）；每个节点预先保存该前缀下热度最高的若干候选，
+ * 查询只需沿前缀走到节点（前缀可止于边的中间）后直接返回，不需要遍历子树。
+ * 热度取自图书累计借阅次数表（含归档记录），作者热度为其全部图书之和。
+ * 图书新增/修改时在事务提交后增量插入（必要时分裂边，沿路径合并候选列表）；修改/删除的旧书名失效后
+ * 从结尾节点移除，并自底向上重算路径上的候选列表，由子树中排在其后的候选补位，空节点随之摘除或并入父边；
+ * 定时全量重建以刷新热度
+ */
+@Component
+public class BookSuggestIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(BookSuggestIndex.class);
+
+    private static final int BUILD_BATCH_SIZE = 1000;
+    private static final int MAX_PREFIX_LENGTH = 50;
+
+    private static final Suggestion[] EMPTY_SUGGESTIONS = new Suggestion[0];
+
+    /**
+     * 候选项：书名（bookId 为对应图书）或作者（bookId 为 null）
+     */
+    private static final class Suggestion {
+        final String text;
+        final String type;
+        final Long bookId;
+        final long popularity;
+        volatile boolean alive = true;
+
+        Suggestion(String text, String type, Long bookId, long popularity) {
+            this.text = text;
+            this.type = type;
+            this.bookId = bookId;
+            this.popularity = popularity;
+        }
+    }
+
+    /**
+     * 子节点表：边首字符（有序）、边标签与子节点三个数组整体替换，保证读线程看到的三者一致
+     */
+    private record Branch(char[] keys, String[] labels, Node[] children) {
+
+        int find(char c) {
+            return Arrays.binarySearch(keys, c);
+        }
+
+        int indexOf(Node child) {
+            for (int i = 0; i < children.length; i++) {
+                if (children[i] == child) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        Branch insert(int pos, String label, Node child) {
+            int length = keys.length;
+            char[] newKeys = new char[length + 1];
+            String[] newLabels = new String[length + 1];
+            Node[] newChildren = new Node[length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, pos);
+            System.arraycopy(labels, 0, newLabels, 0, pos);
+            System.arraycopy(children, 0, newChildren, 0, pos);
+            newKeys[pos] = label.charAt(0);
+            newLabels[pos] = label;
+            newChildren[pos] = child;
+            System.arraycopy(keys, pos, newKeys, pos + 1, length - pos);
+            System.arraycopy(labels, pos, newLabels, pos + 1, length - pos);
+            System.arraycopy(children, pos, newChildren, pos + 1, length - pos);
+            return new Branch(newKeys, newLabels, newChildren);
+        }
+
+        /**
+         * 替换第 i 条边（标签首字符不变）
+         */
+        Branch replace(int i, String label, Node child) {
+            String[] newLabels = labels.clone();
+            Node[] newChildren = children.clone();
+            newLabels[i] = label;
+            newChildren[i] = child;
+            return new Branch(keys, newLabels, newChildren);
+        }
+
+        Branch remove(int i) {
+            int length = keys.length;
+            char[] newKeys = new char[length - 1];
+            String[] newLabels = new String[length - 1];
+            Node[] newChildren = new Node[length - 1];
+            System.arraycopy(keys, 0, newKeys, 0, i);
+            System.arraycopy(labels, 0, newLabels, 0, i);
+            System.arraycopy(children, 0, newChildren, 0, i);
+            System.arraycopy(keys, i + 1, newKeys, i, length - i - 1);
+            System.arraycopy(labels, i + 1, newLabels, i, length - i - 1);
+            System.arraycopy(children, i + 1, newChildren, i, length - i - 1);
+            return new Branch(newKeys, newLabels, newChildren);
+        }
+    }
+
+    private static final Branch EMPTY_BRANCH = new Branch(new char[0], new String[0], new Node[0]);
+
+    /**
+     * 基数树节点：子节点表、候选列表和结尾候选整体替换（写时复制），读线程无需加锁
+     */
+    private static final class Node {
+        volatile Branch branch = EMPTY_BRANCH;
+        volatile Suggestion[] top = EMPTY_SUGGESTIONS;
+        // 文本恰好在该节点结尾的候选，失效后用于重算候选列表
+        volatile Suggestion[] terminals = EMPTY_SUGGESTIONS;
+    }
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private BorrowRollupRepository borrowRollupRepository;
+
+    @Autowired
+    private MaintenanceExecutor maintenanceExecutor;
+
+    @Value("${library.search.suggest.top-per-node:10}")
+    private int topPerNode;
+
+    private volatile Node root = new Node();
+
+    // 以下映射只在持有本对象锁时访问
+    private Map<Long, Suggestion> titleSuggestions = new HashMap<>();
+    private Map<String, Suggestion> authorSuggestions = new HashMap<>();
+    private Map<Long, Long> bookPopularity = new HashMap<>();
+    // 全量重建期间发生变更的图书，重建完成后补做增量更新
+    private Set<Long> touchedDuringRebuild;
+
+    private final Object rebuildLock = new Object();
+
+    private volatile Map<String, Object> buildStats = new HashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        rebuild();
+    }
+
+    /**
+     * 定时全量重建：刷新借阅热度并清除失效候选
+     */
+    @Scheduled(fixedDelayString = "${library.search.suggest.rebuild-interval:600000}",
+               initialDelayString = "${library.search.suggest.rebuild-interval:600000}")
+    public void scheduledRebuild() {
+        maintenanceExecutor.submit("suggest-rebuild", this::rebuild);
+    }
+
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            doRebuild();
+        }
+    }
+
+    private void doRebuild() {
+        long start = System.currentTimeMillis();
+        synchronized (this) {
+            touchedDuringRebuild = new HashSet<>();
+        }
+        try {
+            Map<Long, Long> popularity = new HashMap<>();
+            for (Object[] row : borrowRollupRepository.findAllBookCounts()) {
+                if (row[0] != null && row[1] != null) {
+                    popularity.put(((Number) row[0]).longValue(), ((Number) row[1]).longValue());
+                }
+            }
+
+            Map<Long, Suggestion> titles = new HashMap<>();
+            Map<String, Long> authorTotals = new HashMap<>();
+            Map<String, String> authorNames = new HashMap<>();
+            Pageable limit = PageRequest.of(0, BUILD_BATCH_SIZE);
+            List<Book> batch = bookRepository.findAllByOrderByIdAsc(limit);
+            while (!batch.isEmpty()) {
+                for (Book book : batch) {
+                    long pop = popularity.getOrDefault(book.getId(), 0L);
+                    if (book.getTitle() != null && !book.getTitle().isBlank()) {
+                        titles.put(book.getId(), new Suggestion(book.getTitle().trim(), "title", book.getId(), pop));
+                    }
+                    String author = normalize(book.getAuthor());
+                    if (!author.isEmpty()) {
+                        authorTotals.merge(author, pop, Long::sum);
+                        authorNames.putIfAbsent(author, book.getAuthor().trim());
+                    }
+                }
+                Long lastId = batch.get(batch.size() - 1).getId();
+                batch = bookRepository.findByIdGreaterThanOrderByIdAsc(lastId, limit);
+            }
+
+            Map<String, Suggestion> authors = new HashMap<>();
+            authorTotals.forEach((key, total) ->
+                    authors.put(key, new Suggestion(authorNames.get(key), "author", null, total)));
+
+            // 先插入全部候选，再自底向上计算每个节点的候选列表
+            Node newRoot = new Node();
+            for (Suggestion s : titles.values()) {
+                addTerminal(newRoot, normalize(s.text), s);
+            }
+            for (Map.Entry<String, Suggestion> e : authors.entrySet()) {
+                addTerminal(newRoot, e.getKey(), e.getValue());
+            }
+            int[] nodeCount = new int[1];
+            computeTop(newRoot, nodeCount);
+
+            Set<Long> touched;
+            synchronized (this) {
+                root = newRoot;
+                titleSuggestions = titles;
+                authorSuggestions = authors;
+                bookPopularity = popularity;
+                touched = touchedDuringRebuild;
+                touchedDuringRebuild = null;
+            }
+            replay(touched);
+
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("titles", titles.size());
+            stats.put("authors", authors.size());
+            stats.put("nodes", nodeCount[0]);
+            stats.put("buildMs", System.currentTimeMillis() - start);
+            stats.put("builtAt", LocalDateTime.now().toString());
+            buildStats = stats;
+            logger.info("联想索引构建完成：{} 个书名，{} 个作者，{} 个节点，耗时 {} ms",
+                    titles.size(), authors.size(), nodeCount[0], stats.get("buildMs"));
+        } catch (Exception e) {
+            logger.error("联想索引构建失败: {}", e.getMessage(), e);
+            synchronized (this) {
+                touchedDuringRebuild = null;
+            }
+        }
+    }
+
+    /**
+     * 对重建期间变更过的图书按数据库当前状态重新索引
+     */
+    private void replay(Set<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return;
+        }
+        Map<Long, Book> books = new HashMap<>();
+        for (Book book : bookRepository.findAllById(ids)) {
+            books.put(book.getId(), book);
+        }
+        for (Long id : ids) {
+            Book book = books.get(id);
+            if (book != null) {
+                index(book);
+            } else {
+                remove(id);
+            }
+        }
+    }
+
+    /**
+     * 新增或修改图书后增量插入候选；在事务中调用时于提交后生效
+     */
+    public void index(Book book) {
+        if (book == null || book.getId() == null) {
+            return;
+        }
+        Long id = book.getId();
+        String title = book.getTitle() == null ? "" : book.getTitle().trim();
+        String authorName = book.getAuthor() == null ? "" : book.getAuthor().trim();
+        afterCommit(() -> {
+            synchronized (this) {
+                if (touchedDuringRebuild != null) {
+                    touchedDuringRebuild.add(id);
+                }
+                long pop = bookPopularity.getOrDefault(id, 0L);
+                Suggestion old = titleSuggestions.get(id);
+                if (old == null || !old.text.equals(title)) {
+                    if (old != null) {
+                        old.alive = false;
+                        titleSuggestions.remove(id);
+                        retire(normalize(old.text));
+                    }
+                    if (!title.isEmpty()) {
+                        Suggestion s = new Suggestion(title, "title", id, pop);
+                        titleSuggestions.put(id, s);
+                        insert(normalize(title), s);
+                    }
+                }
+                String author = normalize(authorName);
+                if (!author.isEmpty() && !authorSuggestions.containsKey(author)) {
+                    Suggestion s = new Suggestion(authorName, "author", null, pop);
+                    authorSuggestions.put(author, s);
+                    insert(author, s);
+                }
+            }
+        });
+    }
+
+    /**
+     * 删除图书后使其书名候选失效；作者候选保留到下次重建
+     */
+    public void remove(Long id) {
+        if (id == null) {
+            return;
+        }
+        afterCommit(() -> {
+            synchronized (this) {
+                if (touchedDuringRebuild != null) {
+                    touchedDuringRebuild.add(id);
+                }
+                Suggestion old = titleSuggestions.remove(id);
+                if (old != null) {
+                    old.alive = false;
+                    retire(normalize(old.text));
+                }
+            }
+        });
+    }
+
+    /**
+     * 前缀联想
+     * @return 按借阅热度排序的候选（text、type、bookId、popularity）
+     */
+    public List<Map<String, Object>> suggest(String prefix, int limit) {
+        String key = normalize(prefix);
+        if (key.isEmpty() || key.length() > MAX_PREFIX_LENGTH) {
+            return Collections.emptyList();
+        }
+        Node node = find(root, key);
+        if (node == null) {
+            return Collections.emptyList();
+        }
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Suggestion s : node.top) {
+            if (result.size() >= limit) {
+                break;
+            }
+            if (!s.alive) {
+                continue;
+            }
+            Map<String, Object> item = new HashMap<>();
+            item.put("text", s.text);
+            item.put("type", s.type);
+            item.put("bookId", s.bookId);
+            item.put("popularity", s.popularity);
+            result.add(item);
+        }
+        return result;
+    }
+
+    /**
+     * 沿前缀查找节点；前缀止于某条边中间时返回该边的子节点（其子树即该前缀的全部候选）
+     */
+    private static Node find(Node root, String key) {
+        Node node = root;
+        int i = 0;
+        while (i < key.length()) {
+            Branch b = node.branch;
+            int pos = b.find(key.charAt(i));
+            if (pos < 0) {
+                return null;
+            }
+            String label = b.labels()[pos];
+            int length = Math.min(label.length(), key.length() - i);
+            if (!key.regionMatches(i, label, 0, length)) {
+                return null;
+            }
+            node = b.children()[pos];
+            i += length;
+        }
+        return node;
+    }
+
+    /**
+     * 沿键建立路径（必要时在边中间分裂），返回从根到键结尾节点的全部节点。
+     * 分裂时新节点先设置好子节点表和候选列表再挂到父节点上，读线程看到的要么是分裂前、要么是分裂后的完整结构
+     */
+    private static List<Node> pathOrCreate(Node root, String key) {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        path.add(node);
+        int i = 0;
+        while (i < key.length()) {
+            Branch b = node.branch;
+            int pos = b.find(key.charAt(i));
+            if (pos < 0) {
+                Node leaf = new Node();
+                node.branch = b.insert(-pos - 1, key.substring(i), leaf);
+                path.add(leaf);
+                return path;
+            }
+            String label = b.labels()[pos];
+            Node child = b.children()[pos];
+            int common = 1;
+            while (common < label.length() && i + common < key.length()
+                    && label.charAt(common) == key.charAt(i + common)) {
+                common++;
+            }
+            if (common < label.length()) {
+                Node middle = new Node();
+                String rest = label.substring(common);
+                middle.branch = new Branch(new char[]{rest.charAt(0)}, new String[]{rest}, new Node[]{child});
+                middle.top = child.top;
+                node.branch = b.replace(pos, label.substring(0, common), middle);
+                child = middle;
+            }
+            node = child;
+            path.add(node);
+            i += common;
+        }
+        return path;
+    }
+
+    private static void addTerminal(Node root, String key, Suggestion s) {
+        List<Node> path = pathOrCreate(root, key);
+        Node node = path.get(path.size() - 1);
+        node.terminals = append(node.terminals, s);
+    }
+
+    /**
+     * 插入候选并沿路径合并进各节点的候选列表（调用方持有本对象锁）
+     */
+    private void insert(String key, Suggestion s) {
+        List<Node> path = pathOrCreate(root, key);
+        Node terminal = path.get(path.size() - 1);
+        terminal.terminals = append(alive(terminal.terminals), s);
+        for (Node node : path) {
+            node.top = merge(node.top, s);
+        }
+    }
+
+    /**
+     * 候选失效后（调用方持有本对象锁）：从结尾节点移除，自底向上重算路径上含失效候选的节点，
+     * 子树中原先排在前 K 之外的候选补入；不再有候选和子节点的节点从父节点摘除，
+     * 只剩一个子节点且没有结尾候选的节点并入父边，保持树的紧凑
+     */
+    private void retire(String key) {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        path.add(node);
+        int i = 0;
+        while (i < key.length()) {
+            Branch b = node.branch;
+            int pos = b.find(key.charAt(i));
+            if (pos < 0 || !key.startsWith(b.labels()[pos], i)) {
+                return;
+            }
+            i += b.labels()[pos].length();
+            node = b.children()[pos];
+            path.add(node);
+        }
+        node.terminals = alive(node.terminals);
+
+        for (int depth = path.size() - 1; depth >= 0; depth--) {
+            Node current = path.get(depth);
+            Branch branch = current.branch;
+            if (depth > 0 && current.terminals.length == 0 && branch.children().length <= 1) {
+                Node parent = path.get(depth - 1);
+                Branch parentBranch = parent.branch;
+                int pos = parentBranch.indexOf(current);
+                if (pos >= 0) {
+                    if (branch.children().length == 0) {
+                        parent.branch = parentBranch.remove(pos);
+                        continue;
+                    }
+                    parent.branch = parentBranch.replace(pos,
+                            parentBranch.labels()[pos] + branch.labels()[0], branch.children()[0]);
+                    continue;
+                }
+            }
+            if (hasDead(current.top)) {
+                current.top = collectTop(current);
+            }
+        }
+    }
+
+    private static boolean hasDead(Suggestion[] top) {
+        for (Suggestion s : top) {
+            if (!s.alive) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Suggestion[] alive(Suggestion[] suggestions) {
+        if (!hasDead(suggestions)) {
+            return suggestions;
+        }
+        return Arrays.stream(suggestions).filter(s -> s.alive).toArray(Suggestion[]::new);
+    }
+
+    private static Suggestion[] append(Suggestion[] suggestions, Suggestion s) {
+        Suggestion[] result = Arrays.copyOf(suggestions, suggestions.length + 1);
+        result[suggestions.length] = s;
+        return result;
+    }
+
+    private Suggestion[] merge(Suggestion[] top, Suggestion s) {
+        List<Suggestion> list = new ArrayList<>(top.length + 1);
+        for (Suggestion existing : top) {
+            if (existing.alive) {
+                list.add(existing);
+            }
+        }
+        int pos = 0;
+        while (pos < list.size() && list.get(pos).popularity >= s.popularity) {
+            pos++;
+        }
+        if (pos >= topPerNode) {
+            return list.size() == top.length ? top : list.toArray(EMPTY_SUGGESTIONS);
+        }
+        list.add(pos, s);
+        if (list.size() > topPerNode) {
+            list.remove(list.size() - 1);
+        }
+        return list.toArray(EMPTY_SUGGESTIONS);
+    }
+
+    /**
+     * 后序遍历计算全部节点的候选列表
+     */
+    private void computeTop(Node node, int[] nodeCount) {
+        nodeCount[0]++;
+        for (Node child : node.branch.children()) {
+            computeTop(child, nodeCount);
+        }
+        node.top = collectTop(node);
+    }
+
+    /**
+     * 节点候选 = 以该节点结尾的候选 + 各子节点候选（子节点已是其子树的前 K 个），取热度最高的 topPerNode 个
+     */
+    private Suggestion[] collectTop(Node node) {
+        List<Suggestion> candidates = new ArrayList<>();
+        for (Suggestion s : node.terminals) {
+            if (s.alive) {
+                candidates.add(s);
+            }
+        }
+        for (Node child : node.branch.children()) {
+            for (Suggestion s : child.top) {
+                if (s.alive) {
+                    candidates.add(s);
+                }
+            }
+        }
+        candidates.sort((a, b) -> Long.compare(b.popularity, a.popularity));
+        return candidates.subList(0, Math.min(topPerNode, candidates.size())).toArray(EMPTY_SUGGESTIONS);
+    }
+
+    private static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        return text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * 索引规模与内存占用估算
+     * 按 64 位 JVM 开启压缩指针估算：节点对象 24 字节，子节点表对象 24 字节，数组头 16 字节，引用 4 字节，char 2 字节，
+     * 边标签按 String 对象 24 字节 + 数组头 16 字节 + 内容计算；
+     * 候选对象 32 字节，文本按 String 对象 24 字节 + 数组头 16 字节 + 内容计算（中文按 UTF-16 计）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>(buildStats);
+        long[] totals = new long[3]; // 节点数、节点字节、候选列表引用数
+        measure(root, totals);
+        long suggestionBytes = 0;
+        int titles;
+        int authors;
+        synchronized (this) {
+            titles = titleSuggestions.size();
+            authors = authorSuggestions.size();
+            for (Suggestion s : titleSuggestions.values()) {
+                suggestionBytes += 32 + 24 + 16 + 2L * s.text.length();
+            }
+            for (Suggestion s : authorSuggestions.values()) {
+                suggestionBytes += 32 + 24 + 16 + 2L * s.text.length();
+            }
+        }
+        stats.put("liveTitles", titles);
+        stats.put("liveAuthors", authors);
+        stats.put("currentNodes", totals[0]);
+        stats.put("topListEntries", totals[2]);
+        stats.put("trieBytes", totals[1]);
+        stats.put("suggestionBytes", suggestionBytes);
+        stats.put("estimatedTotalMb", Math.round((totals[1] + suggestionBytes) / 1024.0 / 1024.0 * 100) / 100.0);
+        return stats;
+    }
+
+    private void measure(Node node, long[] totals) {
+        // 深度受书名长度限制（列定义 200），递归不会过深
+        Branch branch = node.branch;
+        Node[] children = branch.children();
+        Suggestion[] top = node.top;
+        totals[0]++;
+        totals[1] += 24 + 24 + (16 + 2L * branch.keys().length) + (16 + 4L * children.length)
+                + (16 + 4L * children.length) + (16 + 4L * top.length) + (16 + 4L * node.terminals.length);
+        for (String label : branch.labels()) {
+            totals[1] += 24 + 16 + 2L * label.length();
+        }
+        totals[2] += top.length;
+        for (Node child : children) {
+            measure(child, totals);
+        }
+    }
+}
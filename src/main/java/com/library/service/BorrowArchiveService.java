@@ -0,0 +1,215 @@
+package com.library.service;
+
+import com.library.util.RedisLockUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 借阅记录冷热分离
+ * 定时将已归还且超过保留期的记录从 borrow_records 分批迁移到 borrow_records_archive：
+ * 每批在独立短事务中 INSERT ... SELECT 后删除原记录，批次之间暂停以限制对线上请求的影响；
+ * 通过 Redis 锁保证多实例部署时只有一个节点执行
+ */
+@Service
+public class BorrowArchiveService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BorrowArchiveService.class);
+
+    private static final String LOCK_KEY = "lock:borrow_archive";
+
+    private static final String SELECT_IDS_SQL =
+            "SELECT id FROM borrow_records WHERE status = 'RETURNED' AND return_date < ? ORDER BY return_date LIMIT ?";
+
+    private static final String COPY_SQL =
+            "INSERT IGNORE INTO borrow_records_archive "
+                    + "(id, user_id, book_id, borrow_date, return_date, due_date, status, created_at, updated_at, archived_at) "
+                    + "SELECT id, user_id, book_id, borrow_date, return_date, due_date, status, created_at, updated_at, ? "
+                    + "FROM borrow_records WHERE status = 'RETURNED' AND id IN (%s)";
+
+    private static final String DELETE_SQL =
+            "DELETE FROM borrow_records WHERE status = 'RETURNED' AND id IN (%s)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private RedisLockUtil redisLockUtil;
+
+    @Value("${library.borrow.archive.enabled:true}")
+    private boolean enabled;
+
+    @Value("${library.borrow.archive.retention-days:180}")
+    private int retentionDays;
+
+    @Autowired
+    private MaintenanceExecutor maintenanceExecutor;
+
+    @Value("${library.borrow.archive.batch-size:500}")
+    private int batchSize;
+
+    @Value("${library.borrow.archive.max-batches:200}")
+    private int maxBatches;
+
+    @Value("${library.borrow.archive.pause-ms:200}")
+    private long pauseMillis;
+
+    @Value("${library.borrow.archive.lock-ttl:3600}")
+    private long lockTtlSeconds;
+
+    private volatile Map<String, Object> lastRun = new HashMap<>();
+
+    /**
+     * 归档分界时间：借阅时间早于该时间的记录可能已在归档表中
+     * 归档记录满足 borrow_date <= return_date < 分界时间，因此查询范围不早于分界时间时只需查询热表
+     */
+    public LocalDateTime getArchiveCutoff() {
+        return LocalDateTime.now().minusDays(retentionDays);
+    }
+
+    /**
+     * 判断起始时间为 from 的查询是否需要合并归档表，from 为 null 表示不限起始时间
+     */
+    public boolean needsArchive(LocalDateTime from) {
+        return from == null || from.isBefore(getArchiveCutoff());
+    }
+
+    /**
+     * 定时归档：在后台任务线程上执行（最多 max-batches 批，批间暂停），不占用定时任务线程
+     */
+    @Scheduled(cron = "${library.borrow.archive.cron:0 30 3 * * *}")
+    public void scheduledArchive() {
+        if (enabled) {
+            maintenanceExecutor.submit("archive", this::archive);
+        }
+    }
+
+    /**
+     * 执行一次归档
+     * @return 本次执行结果：迁移行数、批次数、耗时、是否因其他节点持有锁而跳过
+     */
+    public Map<String, Object> archive() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("startedAt", LocalDateTime.now().toString());
+
+        String token = null;
+        try {
+            token = redisLockUtil.tryLock(LOCK_KEY, Duration.ofSeconds(lockTtlSeconds));
+            if (token == null) {
+                result.put("skipped", true);
+                result.put("message", "其他节点正在执行归档");
+                return result;
+            }
+        } catch (Exception e) {
+            logger.warn("获取归档锁失败，本节点直接执行: {}", e.getMessage());
+        }
+
+        long start = System.currentTimeMillis();
+        try {
+            LocalDateTime cutoff = getArchiveCutoff();
+            int moved = 0;
+            int batches = 0;
+            while (batches < maxBatches) {
+                int count = archiveBatch(cutoff);
+                if (count == 0) {
+                    break;
+                }
+                moved += count;
+                batches++;
+                if (count < batchSize) {
+                    break;
+                }
+                if (!pause()) {
+                    break;
+                }
+            }
+            long duration = System.currentTimeMillis() - start;
+            result.put("skipped", false);
+            result.put("cutoff", cutoff.toString());
+            result.put("movedRows", moved);
+            result.put("batches", batches);
+            result.put("durationMs", duration);
+            lastRun = result;
+            logger.info("借阅记录归档完成：迁移 {} 条记录（{} 批），耗时 {} ms", moved, batches, duration);
+            return result;
+        } finally {
+            if (token != null) {
+                try {
+                    redisLockUtil.unlock(LOCK_KEY, token);
+                } catch (Exception e) {
+                    logger.warn("释放归档锁失败，锁将在过期后自动释放: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 迁移一批记录：复制到归档表后删除原记录，两步在同一事务中完成
+     * 已归还记录不会再被修改，复制使用 INSERT IGNORE，中断后重跑不会产生重复
+     */
+    private int archiveBatch(LocalDateTime cutoff) {
+        Integer count = transactionTemplate.execute(status -> {
+            List<Long> ids = jdbcTemplate.queryForList(SELECT_IDS_SQL, Long.class,
+                    Timestamp.valueOf(cutoff), batchSize);
+            if (ids.isEmpty()) {
+                return 0;
+            }
+            String placeholders = String.join(",", Collections.nCopies(ids.size(), "?"));
+            Object[] copyArgs = new Object[ids.size() + 1];
+            copyArgs[0] = Timestamp.valueOf(LocalDateTime.now());
+            for (int i = 0; i < ids.size(); i++) {
+                copyArgs[i + 1] = ids.get(i);
+            }
+            jdbcTemplate.update(String.format(COPY_SQL, placeholders), copyArgs);
+            return jdbcTemplate.update(String.format(DELETE_SQL, placeholders), ids.toArray());
+        });
+        return count == null ? 0 : count;
+    }
+
+    private boolean pause() {
+        if (pauseMillis <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(pauseMillis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 冷热表当前行数
+     */
+    public Map<String, Object> getTierSizes() {
+        Map<String, Object> sizes = new HashMap<>();
+        sizes.put("hotRows", jdbcTemplate.queryForObject("SELECT COUNT(*) FROM borrow_records", Long.class));
+        sizes.put("archivedRows", jdbcTemplate.queryForObject("SELECT COUNT(*) FROM borrow_records_archive", Long.class));
+        sizes.put("cutoff", getArchiveCutoff().toString());
+        return sizes;
+    }
+
+    /**
+     * 最近一次本节点执行的归档结果
+     */
+    public Map<String, Object> getLastRun() {
+        return lastRun;
+    }
+}
@@ -0,0 +1,243 @@
+package com.library.service;
+
+import com.library.repository.BorrowRollupRepository;
+import com.library.util.RedisLockUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 借阅统计汇总表回填
+ * 汇总表在借阅、归还、逾期的同一事务中增量维护（见 BorrowRollupRepository），与已提交的借阅记录始终一致；
+ * 回填用于首次部署、数据导入或人工修正后，按原始记录（热表 + 归档表）重新计算：
+ * 日汇总逐天、累计次数按 ID 区间分批，每批一个短事务，先对原始记录加共享锁再重写汇总行，
+ * 期间并发的状态变更在该批提交后再应用到汇总上，不会丢失或重复计数。
+ * 汇总表为空且存在借阅记录时，启动后自动回填一次；通过 Redis 锁保证多实例部署时只有一个节点执行。
+ * <p>
+ * 滚动升级期间旧版本节点写入的借阅记录不会更新汇总，汇总表非空时也会出现偏差。因此启动后和之后定时
+ * （library.statistics.rollup.reconcile-interval）在同一个只读快照中比较汇总合计与原始记录：
+ * 各状态记录数、图书/用户累计次数合计与记录总数，任一不一致即重新回填
+ */
+@Service
+public class BorrowRollupService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BorrowRollupService.class);
+
+    private static final String LOCK_KEY = "lock:borrow_rollup_backfill";
+
+    @Autowired
+    private BorrowRollupRepository borrowRollupRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private RedisLockUtil redisLockUtil;
+
+    @Autowired
+    private MaintenanceExecutor maintenanceExecutor;
+
+    @Value("${library.statistics.rollup.backfill-on-startup:true}")
+    private boolean backfillOnStartup;
+
+    @Value("${library.statistics.rollup.key-batch-size:1000}")
+    private int keyBatchSize;
+
+    @Value("${library.statistics.rollup.lock-ttl:3600}")
+    private long lockTtlSeconds;
+
+    @Value("${library.statistics.rollup.reconcile-enabled:true}")
+    private boolean reconcileEnabled;
+
+    private volatile Map<String, Object> lastRun = new HashMap<>();
+    private volatile Map<String, Object> lastReconcile = new HashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        if (!backfillOnStartup) {
+            return;
+        }
+        try {
+            if (borrowRollupRepository.isEmpty() && borrowRollupRepository.findEarliestBorrowDay() != null) {
+                logger.info("借阅统计汇总表为空，开始回填");
+                backfill();
+                return;
+            }
+        } catch (Exception e) {
+            logger.error("借阅统计汇总表回填失败: {}", e.getMessage(), e);
+            return;
+        }
+        // 非空时核对一次：覆盖滚动升级期间旧版本节点写入、未计入汇总的记录
+        reconcile();
+    }
+
+    /**
+     * 定时核对：在后台任务线程上执行（不一致时的回填可能耗时较长），不占用定时任务线程
+     */
+    @Scheduled(fixedDelayString = "${library.statistics.rollup.reconcile-interval:21600000}",
+               initialDelayString = "${library.statistics.rollup.reconcile-interval:21600000}")
+    public void scheduledReconcile() {
+        if (reconcileEnabled) {
+            maintenanceExecutor.submit("rollup-reconcile", this::reconcile);
+        }
+    }
+
+    /**
+     * 核对汇总与原始记录，不一致时回填（启动后的首次核对由 backfillIfEmpty 执行）
+     */
+    public void reconcile() {
+        if (!reconcileEnabled) {
+            return;
+        }
+        try {
+            Map<String, Object> result = new HashMap<>();
+            result.put("checkedAt", LocalDateTime.now().toString());
+            // 汇总与记录在同一事务中更新，在一个一致性快照（REPEATABLE READ）中读取两边即可精确比较
+            TransactionTemplate snapshot = new TransactionTemplate(transactionTemplate.getTransactionManager());
+            snapshot.setReadOnly(true);
+            snapshot.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+            List<String> drift = snapshot.execute(status -> {
+                Map<String, Long> raw = borrowRollupRepository.countRawByStatus();
+                Map<String, Long> rolled = borrowRollupRepository.countRolledByStatus();
+                long[] sums = borrowRollupRepository.sumCounts();
+                List<String> mismatches = new ArrayList<>();
+                Set<String> statuses = new HashSet<>(raw.keySet());
+                statuses.addAll(rolled.keySet());
+                long total = 0;
+                for (String state : statuses) {
+                    long expected = raw.getOrDefault(state, 0L);
+                    long actual = rolled.getOrDefault(state, 0L);
+                    total += expected;
+                    if (expected != actual) {
+                        mismatches.add(state + "：记录 " + expected + "，汇总 " + actual);
+                    }
+                }
+                if (sums[0] != total) {
+                    mismatches.add("图书累计次数合计 " + sums[0] + "，记录总数 " + total);
+                }
+                if (sums[1] != total) {
+                    mismatches.add("用户累计次数合计 " + sums[1] + "，记录总数 " + total);
+                }
+                return mismatches;
+            });
+            boolean consistent = drift == null || drift.isEmpty();
+            result.put("consistent", consistent);
+            result.put("mismatches", drift);
+            if (!consistent) {
+                logger.warn("借阅统计汇总与原始记录不一致，重新回填: {}", drift);
+                result.put("backfill", backfill());
+            }
+            lastReconcile = result;
+        } catch (Exception e) {
+            logger.error("借阅统计汇总核对失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 按原始记录重新计算全部汇总
+     * @return 执行结果：回填天数、写入的汇总行数、耗时、是否因其他节点持有锁而跳过
+     */
+    public Map<String, Object> backfill() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("startedAt", LocalDateTime.now().toString());
+
+        String token = null;
+        try {
+            token = redisLockUtil.tryLock(LOCK_KEY, Duration.ofSeconds(lockTtlSeconds));
+            if (token == null) {
+                result.put("skipped", true);
+                result.put("message", "其他节点正在回填统计汇总");
+                return result;
+            }
+        } catch (Exception e) {
+            logger.warn("获取汇总回填锁失败，本节点直接执行: {}", e.getMessage());
+        }
+
+        long start = System.currentTimeMillis();
+        try {
+            int days = 0;
+            long dailyRows = 0;
+            LocalDate earliest = borrowRollupRepository.findEarliestBorrowDay();
+            if (earliest != null) {
+                LocalDate today = LocalDate.now();
+                for (LocalDate day = earliest; !day.isAfter(today); day = day.plusDays(1)) {
+                    LocalDate current = day;
+                    Integer rows = transactionTemplate.execute(status -> {
+                        borrowRollupRepository.lockDay(current);
+                        return borrowRollupRepository.backfillDay(current);
+                    });
+                    dailyRows += rows == null ? 0 : rows;
+                    days++;
+                }
+            }
+            long bookRows = backfillCounts("book_id");
+            long userRows = backfillCounts("user_id");
+
+            long duration = System.currentTimeMillis() - start;
+            result.put("skipped", false);
+            result.put("days", days);
+            result.put("dailyRows", dailyRows);
+            result.put("bookRowsAffected", bookRows);
+            result.put("userRowsAffected", userRows);
+            result.put("durationMs", duration);
+            lastRun = result;
+            logger.info("借阅统计汇总回填完成：{} 天，日汇总 {} 行，图书计数影响 {} 行，用户计数影响 {} 行，耗时 {} ms",
+                    days, dailyRows, bookRows, userRows, duration);
+            return result;
+        } finally {
+            if (token != null) {
+                try {
+                    redisLockUtil.unlock(LOCK_KEY, token);
+                } catch (Exception e) {
+                    logger.warn("释放汇总回填锁失败，锁将在过期后自动释放: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private long backfillCounts(String column) {
+        long maxKey = borrowRollupRepository.findMaxKey(column);
+        long rows = 0;
+        for (long from = 1; from <= maxKey; from += keyBatchSize) {
+            long lower = from;
+            long upper = from + keyBatchSize - 1;
+            Integer count = transactionTemplate.execute(status -> {
+                borrowRollupRepository.lockKeyRange(column, lower, upper);
+                return borrowRollupRepository.backfillCounts(column, lower, upper);
+            });
+            rows += count == null ? 0 : count;
+        }
+        return rows;
+    }
+
+    /**
+     * 最近一次本节点执行的回填结果
+     */
+    public Map<String, Object> getLastRun() {
+        return lastRun;
+    }
+
+    /**
+     * 最近一次本节点执行的核对结果
+     */
+    public Map<String, Object> getLastReconcile() {
+        return lastReconcile;
+    }
+}
@@ -1,42 +1,97 @@
 package com.library.service;
 
-import com.library.entity.Book;
+import com.library.dto.BorrowRecordView;
+import com.library.dto.KeysetPage;
 import com.library.entity.BorrowRecord;
 import com.library.entity.User;
+import com.library.event.BookBorrowedEvent;
+import com.library.event.BookInventoryEvent;
 import com.library.repository.BookRepository;
+import com.library.repository.BorrowHistoryRepository;
+import com.library.repository.BorrowRecordArchiveRepository;
+import com.library.repository.BorrowRecordBatchRepository;
 import com.library.repository.BorrowRecordRepository;
+import com.library.repository.BorrowRollupRepository;
 import com.library.repository.UserRepository;
+import com.library.util.CursorUtil;
+import com.library.util.TtlCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 @Service
 public class BorrowService {
     @Autowired
     private BorrowRecordRepository borrowRecordRepository;
 
+    @Autowired
+    private BorrowRecordBatchRepository borrowRecordBatchRepository;
+
     @Autowired
     private BookRepository bookRepository;
 
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private HotInventoryService hotInventoryService;
+
+    @Autowired
+    private BatchAssociationLoader batchAssociationLoader;
+
+    @Autowired
+    private BorrowRecordArchiveRepository borrowRecordArchiveRepository;
+
+    @Autowired
+    private BorrowHistoryRepository borrowHistoryRepository;
+
+    @Autowired
+    private BorrowArchiveService borrowArchiveService;
+
+    @Autowired
+    private BorrowRollupRepository borrowRollupRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     @Value("${library.borrow.max-days:30}")
     private int maxDays;
 
     @Value("${library.borrow.max-books:5}")
     private int maxBooks;
 
+    @Value("${library.borrow.overdue.batch-size:1000}")
+    private int overdueBatchSize;
+
+    // 借阅记录总数缓存（键集分页展示用，允许短暂不准确）
+    private final TtlCache<String, Long> recordCountCache = new TtlCache<>(60_000);
+
+    /**
+     * 借阅图书
+     * 库存通过条件更新扣减（available_copies > 0 时才减一），并发借阅同一本书时不会超借，
+     * 受影响行数为 0 即表示库存不足，无需先查询再保存；返回的借阅记录中的图书在扣减后读取。
+     * 开启热门库存模式时，热门图书先在内存计数器上预占，借阅记录由 HotInventoryService 批量落库
+     */
     @Transactional
     public Map<String, Object> borrowBook(Long userId, Long bookId) {
         Map<String, Object> result = new HashMap<>();
@@ -44,11 +99,9 @@ public class BorrowService {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("用户不存在"));
         
-        Book book = bookRepository.findById(bookId)
-                .orElseThrow(() -> new RuntimeException("图书不存在"));
-        
         // 检查用户借阅数量
-        Long borrowedCount = borrowRecordRepository.countBorrowedBooksByUserId(userId);
+        Long borrowedCount = borrowRecordRepository.countBorrowedBooksByUserId(userId)
+                + hotInventoryService.pendingCount(userId);
         if (borrowedCount >= maxBooks) {
             result.put("success", false);
             result.put("message", "已达到最大借阅数量：" + maxBooks);
@@ -64,28 +117,56 @@ public class BorrowService {
             return result;
         }
         
-        // 检查图书库存
-        if (book.getAvailableCopies() <= 0) {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        
+        // 热门图书：内存预占
+        if (hotInventoryService.isEnabled()) {
+            BorrowRecord record = newBorrowRecord(userId, bookId, now);
+            switch (hotInventoryService.tryReserve(record)) {
+                case RESERVED:
+                    record.setUser(user);  // 设置临时字段用于返回
+                    bookRepository.findById(bookId).ifPresent(record::setBook);
+                    // 借阅事件在预占落库（数据库库存确认）后由 HotInventoryService 发布
+                    result.put("success", true);
+                    result.put("message", "借阅成功");
+                    result.put("record", record);
+                    return result;
+                case SOLD_OUT:
+                    result.put("success", false);
+                    result.put("message", "图书库存不足");
+                    return result;
+                case DUPLICATE:
+                    result.put("success", false);
+                    result.put("message", "您已借阅该书");
+                    return result;
+                case BUSY:
+                    result.put("success", false);
+                    result.put("message", "借阅人数过多，请稍后重试");
+                    return result;
+                default:
+                    break;
+            }
+        }
+        
+        // 条件扣减图书库存
+        if (bookRepository.decrementAvailableCopies(bookId, now) == 0) {
+            if (!bookRepository.existsById(bookId)) {
+                throw new RuntimeException("图书不存在");
+            }
             result.put("success", false);
             result.put("message", "图书库存不足");
             return result;
         }
+        eventPublisher.publishEvent(new BookInventoryEvent(bookId, -1));
         
         // 创建借阅记录
-        BorrowRecord record = new BorrowRecord();
-        record.setUserId(userId);
-        record.setBookId(bookId);
-        record.setUser(user);  // 设置临时字段用于返回
-        record.setBook(book);  // 设置临时字段用于返回
-        record.setBorrowDate(LocalDateTime.now());
-        record.setDueDate(LocalDateTime.now().plusDays(maxDays));
-        record.setStatus(BorrowRecord.Status.BORROWED);
-        
+        BorrowRecord record = newBorrowRecord(userId, bookId, now);
         borrowRecordRepository.save(record);
-        
-        // 更新图书库存
-        book.setAvailableCopies(book.getAvailableCopies() - 1);
-        bookRepository.save(book);
+        record.setUser(user);  // 设置临时字段用于返回
+        bookRepository.findById(bookId).ifPresent(record::setBook);
+        borrowRollupRepository.addBorrows(List.of(record));
+        hotInventoryService.recordJpaBorrow();
+        eventPublisher.publishEvent(new BookBorrowedEvent(userId, bookId));
         
         result.put("success", true);
         result.put("message", "借阅成功");
@@ -93,34 +174,206 @@ public class BorrowService {
         return result;
     }
 
+    /**
+     * 归还图书
+     * 共四条语句：锁定读取记录（同时取得归属、图书和原状态）、按原状态条件更新为已归还、
+     * 移动统计汇总计数、按图书ID增加库存；并发重复归还在行锁上排队，只有一次会增加库存
+     * @param userId 操作用户ID，管理员传 null
+     */
     @Transactional
-    public Map<String, Object> returnBook(Long recordId) {
+    public Map<String, Object> returnBook(Long recordId, Long userId) {
         Map<String, Object> result = new HashMap<>();
         
-        BorrowRecord record = borrowRecordRepository.findById(recordId)
+        BorrowRecord record = borrowRecordRepository.findByIdForUpdate(recordId)
                 .orElseThrow(() -> new RuntimeException("借阅记录不存在"));
-        
-        if (record.getStatus() == BorrowRecord.Status.RETURNED) {
+        if (userId != null && !userId.equals(record.getUserId())) {
+            result.put("success", false);
+            result.put("message", "无权限");
+            return result;
+        }
+        BorrowRecord.Status from = record.getStatus();
+        LocalDateTime now = LocalDateTime.now();
+        if (from == BorrowRecord.Status.RETURNED
+                || borrowRecordRepository.markReturned(recordId, userId, from, BorrowRecord.Status.RETURNED, now) == 0) {
             result.put("success", false);
             result.put("message", "该图书已归还");
             return result;
         }
-        
-        record.setReturnDate(LocalDateTime.now());
-        record.setStatus(BorrowRecord.Status.RETURNED);
-        borrowRecordRepository.save(record);
+        borrowRollupRepository.moveStatus(List.of(recordId), from, BorrowRecord.Status.RETURNED);
         
         // 更新图书库存
-        Book book = bookRepository.findById(record.getBookId())
-                .orElseThrow(() -> new RuntimeException("图书不存在"));
-        book.setAvailableCopies(book.getAvailableCopies() + 1);
-        bookRepository.save(book);
+        Long bookId = record.getBookId();
+        if (bookRepository.incrementAvailableCopies(bookId, now) == 0) {
+            throw new RuntimeException("图书不存在");
+        }
+        eventPublisher.publishEvent(new BookInventoryEvent(bookId, 1));
+        hotInventoryService.onReturn(bookId);
         
         result.put("success", true);
         result.put("message", "归还成功");
         return result;
     }
 
+    /**
+     * 批量借阅（借书车结算）
+     * 借阅数量只检查一次；所有图书在同一事务中按ID顺序条件扣减库存（固定加锁顺序，避免并发结算死锁），
+     * 借阅记录以 JDBC 批量插入。每本书单独返回结果，部分失败不影响其余图书
+     */
+    @Transactional
+    public Map<String, Object> borrowBooks(Long userId, List<Long> bookIds) {
+        Map<String, Object> result = new HashMap<>();
+        List<Long> distinctIds = bookIds == null ? new ArrayList<>() : bookIds.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .sorted()
+                .toList();
+        if (distinctIds.isEmpty()) {
+            result.put("success", false);
+            result.put("message", "请选择要借阅的图书");
+            return result;
+        }
+        
+        long remaining = maxBooks - borrowRecordRepository.countBorrowedBooksByUserId(userId)
+                - hotInventoryService.pendingCount(userId);
+        Set<Long> borrowedBookIds = new HashSet<>(borrowRecordRepository
+                .findBookIdsByUserIdAndStatus(userId, BorrowRecord.Status.BORROWED));
+        
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        List<BorrowRecord> newRecords = new ArrayList<>();
+        List<Map<String, Object>> items = new ArrayList<>();
+        int successCount = 0;
+        
+        for (Long bookId : distinctIds) {
+            String failure = null;
+            if (borrowedBookIds.contains(bookId)) {
+                failure = "您已借阅该书";
+            } else if (remaining <= 0) {
+                failure = "已达到最大借阅数量：" + maxBooks;
+            } else {
+                BorrowRecord record = newBorrowRecord(userId, bookId, now);
+                HotInventoryService.Reservation reservation = hotInventoryService.isEnabled()
+                        ? hotInventoryService.tryReserve(record)
+                        : HotInventoryService.Reservation.NOT_HOT;
+                if (reservation == HotInventoryService.Reservation.SOLD_OUT) {
+                    failure = "图书库存不足";
+                } else if (reservation == HotInventoryService.Reservation.DUPLICATE) {
+                    failure = "您已借阅该书";
+                } else if (reservation == HotInventoryService.Reservation.BUSY) {
+                    failure = "借阅人数过多，请稍后重试";
+                } else if (reservation == HotInventoryService.Reservation.NOT_HOT) {
+                    if (bookRepository.decrementAvailableCopies(bookId, now) == 0) {
+                        failure = bookRepository.existsById(bookId) ? "图书库存不足" : "图书不存在";
+                    } else {
+                        newRecords.add(record);
+                        eventPublisher.publishEvent(new BookInventoryEvent(bookId, -1));
+                        eventPublisher.publishEvent(new BookBorrowedEvent(userId, bookId));
+                    }
+                }
+            }
+            
+            Map<String, Object> item = new HashMap<>();
+            item.put("bookId", bookId);
+            item.put("success", failure == null);
+            item.put("message", failure == null ? "借阅成功" : failure);
+            items.add(item);
+            if (failure == null) {
+                remaining--;
+                successCount++;
+            }
+        }
+        
+        if (!newRecords.isEmpty()) {
+            borrowRecordBatchRepository.batchInsert(newRecords);
+            borrowRollupRepository.addBorrows(newRecords);
+            newRecords.forEach(record -> hotInventoryService.recordJpaBorrow());
+        }
+        
+        result.put("success", successCount > 0);
+        result.put("message", "成功借阅 " + successCount + " 本，失败 " + (distinctIds.size() - successCount) + " 本");
+        result.put("items", items);
+        return result;
+    }
+
+    /**
+     * 批量归还（前台扫码归还）
+     * 锁定全部记录后一次性更新状态，并按图书汇总增加库存
+     * @param userId 非空时只允许归还该用户自己的记录；管理员传 null
+     */
+    @Transactional
+    public Map<String, Object> returnBooks(List<Long> recordIds, Long userId) {
+        Map<String, Object> result = new HashMap<>();
+        List<Long> distinctIds = recordIds == null ? new ArrayList<>() : recordIds.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .sorted()
+                .toList();
+        if (distinctIds.isEmpty()) {
+            result.put("success", false);
+            result.put("message", "请选择要归还的借阅记录");
+            return result;
+        }
+        
+        Map<Long, BorrowRecord> recordMap = new HashMap<>();
+        for (BorrowRecord record : borrowRecordRepository.findAllByIdForUpdate(distinctIds)) {
+            recordMap.put(record.getId(), record);
+        }
+        
+        List<Long> returnIds = new ArrayList<>();
+        Map<BorrowRecord.Status, List<Long>> returnIdsByStatus = new HashMap<>();
+        Map<Long, Integer> countByBook = new HashMap<>();
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (Long recordId : distinctIds) {
+            BorrowRecord record = recordMap.get(recordId);
+            String failure = null;
+            if (record == null) {
+                failure = "借阅记录不存在";
+            } else if (userId != null && !record.getUserId().equals(userId)) {
+                failure = "无权限";
+            } else if (record.getStatus() == BorrowRecord.Status.RETURNED) {
+                failure = "该图书已归还";
+            } else {
+                returnIds.add(recordId);
+                returnIdsByStatus.computeIfAbsent(record.getStatus(), status -> new ArrayList<>()).add(recordId);
+                countByBook.merge(record.getBookId(), 1, Integer::sum);
+            }
+            
+            Map<String, Object> item = new HashMap<>();
+            item.put("recordId", recordId);
+            item.put("success", failure == null);
+            item.put("message", failure == null ? "归还成功" : failure);
+            items.add(item);
+        }
+        
+        if (!returnIds.isEmpty()) {
+            LocalDateTime now = LocalDateTime.now();
+            borrowRecordRepository.markReturnedBatch(returnIds, BorrowRecord.Status.RETURNED, now);
+            returnIdsByStatus.forEach((status, ids) ->
+                    borrowRollupRepository.moveStatus(ids, status, BorrowRecord.Status.RETURNED));
+            countByBook.forEach((bookId, count) -> {
+                bookRepository.incrementAvailableCopiesBy(bookId, count, now);
+                eventPublisher.publishEvent(new BookInventoryEvent(bookId, count));
+                for (int i = 0; i < count; i++) {
+                    hotInventoryService.onReturn(bookId);
+                }
+            });
+        }
+        
+        result.put("success", !returnIds.isEmpty());
+        result.put("message", "成功归还 " + returnIds.size() + " 本，失败 " + (distinctIds.size() - returnIds.size()) + " 本");
+        result.put("items", items);
+        return result;
+    }
+
+    private BorrowRecord newBorrowRecord(Long userId, Long bookId, LocalDateTime borrowDate) {
+        BorrowRecord record = new BorrowRecord();
+        record.setUserId(userId);
+        record.setBookId(bookId);
+        record.setBorrowDate(borrowDate);
+        record.setDueDate(borrowDate.plusDays(maxDays));
+        record.setStatus(BorrowRecord.Status.BORROWED);
+        return record;
+    }
+
     public List<BorrowRecord> getUserBorrowRecords(Long userId) {
         List<BorrowRecord> records = borrowRecordRepository.findByUserId(userId);
         // 填充关联对象信息
@@ -157,47 +410,113 @@ public class BorrowService {
     }
 
     /**
-     * 填充借阅记录的关联对象信息（User和Book）
+     * 键集分页查询全部借阅记录（列表视图投影），按借阅时间倒序
+     * @param after 下一页游标（取比该位置更早的记录）
+     * @param before 上一页游标（取比该位置更新的记录）
      */
-    private void fillAssociatedData(List<BorrowRecord> records) {
-        for (BorrowRecord record : records) {
-            if (record.getUserId() != null) {
-                userRepository.findById(record.getUserId()).ifPresent(record::setUser);
-            }
-            if (record.getBookId() != null) {
-                bookRepository.findById(record.getBookId()).ifPresent(record::setBook);
+    public KeysetPage<BorrowRecordView> getAllBorrowRecords(String after, String before, int size) {
+        return findBorrowRecordPage(null, after, before, size);
+    }
+
+    /**
+     * 键集分页查询用户的借阅记录（列表视图投影），按借阅时间倒序
+     */
+    public KeysetPage<BorrowRecordView> getUserBorrowRecords(Long userId, String after, String before, int size) {
+        return findBorrowRecordPage(userId, after, before, size);
+    }
+
+    private KeysetPage<BorrowRecordView> findBorrowRecordPage(Long userId, String after, String before, int size) {
+        Pageable limit = PageRequest.of(0, size + 1);
+        boolean backward = before != null && !before.isEmpty();
+        RecordCursor cursor = CursorUtil.decode(backward ? before : after, 2,
+                parts -> new RecordCursor(LocalDateTime.parse(parts[0]), Long.parseLong(parts[1])));
+        
+        LocalDateTime borrowDate = null;
+        Long id = null;
+        List<BorrowRecordView> rows;
+        if (cursor == null) {
+            backward = false;
+            rows = userId == null
+                    ? borrowRecordRepository.findLatestViews(limit)
+                    : borrowRecordRepository.findLatestViewsByUserId(userId, limit);
+        } else {
+            borrowDate = cursor.borrowDate();
+            id = cursor.id();
+            if (backward) {
+                rows = userId == null
+                        ? borrowRecordRepository.findViewsNewerThan(borrowDate, id, limit)
+                        : borrowRecordRepository.findViewsNewerThanByUserId(userId, borrowDate, id, limit);
+            } else {
+                rows = userId == null
+                        ? borrowRecordRepository.findViewsOlderThan(borrowDate, id, limit)
+                        : borrowRecordRepository.findViewsOlderThanByUserId(userId, borrowDate, id, limit);
             }
         }
+        
+        // 归档记录的借阅时间都早于归档分界时间：热表结果完全落在分界时间之后时无需查询归档表
+        LocalDateTime cutoff = borrowArchiveService.getArchiveCutoff();
+        boolean hotOnly = backward
+                ? !borrowDate.isBefore(cutoff)
+                : rows.size() > size && !rows.get(rows.size() - 1).getBorrowDate().isBefore(cutoff);
+        if (!hotOnly) {
+            rows = borrowHistoryRepository.findViews(userId, borrowDate, id, backward, size + 1);
+        }
+        
+        Long total = recordCountCache.get(userId == null ? "all" : "user:" + userId,
+                () -> userId == null
+                        ? borrowRecordRepository.count() + borrowRecordArchiveRepository.count()
+                        : borrowRecordRepository.countByUserId(userId) + borrowRecordArchiveRepository.countByUserId(userId));
+        return KeysetPage.of(rows, size, backward, cursor != null,
+                view -> CursorUtil.encode(view.getBorrowDate(), view.getId()), total);
+    }
+
+    /**
+     * 填充借阅记录的关联对象信息（User和Book），批量加载
+     */
+    private void fillAssociatedData(List<BorrowRecord> records) {
+        batchAssociationLoader.fillBorrowRecords(records);
     }
 
     public Optional<BorrowRecord> findById(Long id) {
         Optional<BorrowRecord> recordOpt = borrowRecordRepository.findById(id);
-        if (recordOpt.isPresent()) {
-            BorrowRecord record = recordOpt.get();
-            // 填充关联对象信息
-            if (record.getUserId() != null) {
-                userRepository.findById(record.getUserId()).ifPresent(record::setUser);
-            }
-            if (record.getBookId() != null) {
-                bookRepository.findById(record.getBookId()).ifPresent(record::setBook);
-            }
-        }
+        // 填充关联对象信息
+        recordOpt.ifPresent(record -> batchAssociationLoader.fillBorrowRecords(List.of(record)));
         return recordOpt;
     }
 
-    @Transactional
-    public void checkOverdueRecords() {
-        List<BorrowRecord> borrowedRecords = borrowRecordRepository
-                .findAll()
-                .stream()
-                .filter(r -> r.getStatus() == BorrowRecord.Status.BORROWED)
-                .filter(r -> r.getDueDate().isBefore(LocalDateTime.now()))
-                .collect(Collectors.toList());
-        
-        for (BorrowRecord record : borrowedRecords) {
-            record.setStatus(BorrowRecord.Status.OVERDUE);
-            borrowRecordRepository.save(record);
+    /**
+     * 逾期检查：分批把到期未还的记录更新为 OVERDUE，每批一个短事务，
+     * 不会把历史借阅记录加载到内存
+     * @return 本次更新的记录数
+     */
+    public int checkOverdueRecords() {
+        LocalDateTime now = LocalDateTime.now();
+        int total = 0;
+        int updated;
+        do {
+            Integer count = transactionTemplate.execute(status -> markOverdueBatch(now));
+            updated = count == null ? 0 : count;
+            total += updated;
+        } while (updated == overdueBatchSize);
+        return total;
+    }
+
+    /**
+     * 一批逾期标记：锁定记录、更新状态、调整统计汇总，在同一个短事务中完成
+     */
+    private int markOverdueBatch(LocalDateTime now) {
+        List<Long> ids = borrowRecordRepository.findOverdueIdsForUpdate(now, overdueBatchSize);
+        if (ids.isEmpty()) {
+            return 0;
         }
+        int updated = borrowRecordRepository.markOverdue(ids, now);
+        borrowRollupRepository.moveStatus(ids, BorrowRecord.Status.BORROWED, BorrowRecord.Status.OVERDUE);
+        return updated;
     }
-}
 
+    /**
+     * 借阅记录分页游标：借阅时间 + 记录ID
+     */
+    private record RecordCursor(LocalDateTime borrowDate, Long id) {
+    }
+}
@@ -0,0 +1,319 @@
+package com.library.service;
+
+import com.library.entity.Book;
+import com.library.event.BookInventoryEvent;
+import com.library.repository.BookRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * 图书分类分面统计（分类 -> 图书种数、总册数、可借册数）
+ * 启动时全量构建，之后由 BookService 的增删改和借阅/归还的库存事件在事务提交后增量维护，
+ * 列表页侧栏和 /books/facets 直接读取内存，不再对 books 做 GROUP BY。
+ * 定时与数据库聚合结果核对，连续两次不一致（排除提交中的短暂偏差）时全量重建
+ */
+@Component
+public class CategoryFacetIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(CategoryFacetIndex.class);
+
+    private static final int BUILD_BATCH_SIZE = 1000;
+    private static final String UNCATEGORIZED = "";
+
+    private static final class Facet {
+        long titles;
+        long totalCopies;
+        long availableCopies;
+    }
+
+    private static final class BookEntry {
+        String category;
+        int totalCopies;
+        int availableCopies;
+
+        BookEntry(String category, int totalCopies, int availableCopies) {
+            this.category = category;
+            this.totalCopies = totalCopies;
+            this.availableCopies = availableCopies;
+        }
+    }
+
+    /**
+     * 分面统计与各图书当前计入的值；只在持有外部类对象锁时访问，每次变更只涉及常数次加减
+     */
+    private static final class State {
+        final Map<String, Facet> facets = new HashMap<>();
+        final Map<Long, BookEntry> books = new HashMap<>();
+
+        void put(Long id, BookEntry entry) {
+            subtract(books.remove(id));
+            books.put(id, entry);
+            Facet facet = facets.computeIfAbsent(entry.category, key -> new Facet());
+            facet.titles++;
+            facet.totalCopies += entry.totalCopies;
+            facet.availableCopies += entry.availableCopies;
+        }
+
+        void remove(Long id) {
+            subtract(books.remove(id));
+        }
+
+        void addAvailable(Long id, int delta) {
+            BookEntry entry = books.get(id);
+            if (entry == null) {
+                return;
+            }
+            entry.availableCopies += delta;
+            Facet facet = facets.get(entry.category);
+            if (facet != null) {
+                facet.availableCopies += delta;
+            }
+        }
+
+        private void subtract(BookEntry entry) {
+            if (entry == null) {
+                return;
+            }
+            Facet facet = facets.get(entry.category);
+            if (facet == null) {
+                return;
+            }
+            facet.titles--;
+            facet.totalCopies -= entry.totalCopies;
+            facet.availableCopies -= entry.availableCopies;
+            if (facet.titles <= 0) {
+                facets.remove(entry.category);
+            }
+        }
+    }
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    private State state = new State();
+
+    // 重建期间到达、且对应图书行已被扫描过的变更，扫描结束后重放到新统计上；不在重建时为 null
+    private List<Consumer<State>> pending;
+    // 重建扫描已读取到的最大图书ID，ID 更大的变更会被后续扫描直接读到，无需重放
+    private long scannedUpTo;
+
+    // 串行化重建（启动、导入后与定时核对都可能触发）
+    private final Object rebuildLock = new Object();
+
+    private volatile boolean ready = false;
+    private Set<String> lastMismatch = new HashSet<>();
+    private volatile Map<String, Object> lastReconcile = new HashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        rebuild();
+    }
+
+    /**
+     * 全量重建：按 ID 分批读取图书的分类与库存列，构建期间仍由旧统计提供查询。
+     * 变更事件在事务提交后才到达：到达时该行尚未扫描的，扫描会读到提交后的值；
+     * 已扫描的先缓冲，扫描结束后重放，避免同一变更被计入两次或漏掉
+     */
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            long start = System.currentTimeMillis();
+            State next = new State();
+            synchronized (this) {
+                pending = new ArrayList<>();
+                scannedUpTo = 0;
+            }
+            try {
+                Pageable limit = PageRequest.of(0, BUILD_BATCH_SIZE);
+                long lastId = 0;
+                List<Object[]> rows = bookRepository.findFacetRowsAfter(lastId, limit);
+                while (!rows.isEmpty()) {
+                    for (Object[] row : rows) {
+                        Long id = ((Number) row[0]).longValue();
+                        next.put(id, new BookEntry(key((String) row[1]), toInt(row[2]), toInt(row[3])));
+                        lastId = id;
+                    }
+                    synchronized (this) {
+                        scannedUpTo = lastId;
+                    }
+                    rows = bookRepository.findFacetRowsAfter(lastId, limit);
+                }
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    pending = null;
+                }
+                throw e;
+            }
+            int replayed;
+            synchronized (this) {
+                replayed = pending.size();
+                pending.forEach(change -> change.accept(next));
+                pending = null;
+                state = next;
+                ready = true;
+            }
+            logger.info("分类分面统计构建完成：{} 个分类，{} 本图书，重放 {} 个构建期间的变更，耗时 {} ms",
+                    next.facets.size(), next.books.size(), replayed, System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * 新增或修改图书；在事务中调用时于提交后生效
+     */
+    public void index(Book book) {
+        if (book == null || book.getId() == null) {
+            return;
+        }
+        Long id = book.getId();
+        BookEntry entry = new BookEntry(key(book.getCategory()),
+                toInt(book.getTotalCopies()), toInt(book.getAvailableCopies()));
+        afterCommit(() -> apply(id, target -> target.put(id,
+                new BookEntry(entry.category, entry.totalCopies, entry.availableCopies))));
+    }
+
+    /**
+     * 删除图书；在事务中调用时于提交后生效
+     */
+    public void remove(Long id) {
+        afterCommit(() -> apply(id, target -> target.remove(id)));
+    }
+
+    /**
+     * 借阅/归还引起的可借库存变化，事务提交后处理（无事务时立即处理）
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onInventoryChanged(BookInventoryEvent event) {
+        apply(event.bookId(), target -> target.addAvailable(event.bookId(), event.availableDelta()));
+    }
+
+    private synchronized void apply(Long bookId, Consumer<State> change) {
+        change.accept(state);
+        if (pending != null && bookId != null && bookId <= scannedUpTo) {
+            pending.add(change);
+        }
+    }
+
+    /**
+     * 各分类统计，按图书种数倒序
+     */
+    public synchronized List<Map<String, Object>> getFacets() {
+        List<Map<String, Object>> result = new ArrayList<>();
+        state.facets.forEach((category, facet) -> {
+            Map<String, Object> item = new HashMap<>();
+            item.put("category", category);
+            item.put("label", category.isEmpty() ? "未分类" : category);
+            item.put("titles", facet.titles);
+            item.put("totalCopies", facet.totalCopies);
+            item.put("availableCopies", facet.availableCopies);
+            result.add(item);
+        });
+        result.sort((a, b) -> Long.compare((Long) b.get("titles"), (Long) a.get("titles")));
+        return result;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 与数据库聚合结果核对
+     */
+    @Scheduled(fixedDelayString = "${library.catalog.facet.reconcile-interval:300000}",
+               initialDelayString = "${library.catalog.facet.reconcile-interval:300000}")
+    public void reconcile() {
+        if (!ready) {
+            return;
+        }
+        Map<String, long[]> expected = new HashMap<>();
+        for (Object[] row : bookRepository.aggregateByCategory()) {
+            // NULL 与空字符串都归入"未分类"
+            expected.merge(key((String) row[0]), new long[]{toLong(row[1]), toLong(row[2]), toLong(row[3])},
+                    (a, b) -> new long[]{a[0] + b[0], a[1] + b[1], a[2] + b[2]});
+        }
+
+        Set<String> mismatch = new HashSet<>();
+        synchronized (this) {
+            Set<String> categories = new HashSet<>(expected.keySet());
+            categories.addAll(state.facets.keySet());
+            for (String category : categories) {
+                long[] db = expected.get(category);
+                Facet facet = state.facets.get(category);
+                long[] mem = facet == null ? null : new long[]{facet.titles, facet.totalCopies, facet.availableCopies};
+                boolean dbEmpty = db == null || db[0] == 0;
+                boolean memEmpty = mem == null || mem[0] == 0;
+                if (dbEmpty && memEmpty) {
+                    continue;
+                }
+                if (db == null || mem == null || db[0] != mem[0] || db[1] != mem[1] || db[2] != mem[2]) {
+                    mismatch.add(category);
+                }
+            }
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("checkedAt", LocalDateTime.now().toString());
+        result.put("categories", expected.size());
+        result.put("mismatched", mismatch);
+
+        // 只有连续两次都不一致的分类才视为真实偏差（单次不一致可能是事务已提交、事件尚未处理）
+        Set<String> persistent = new HashSet<>(mismatch);
+        persistent.retainAll(lastMismatch);
+        lastMismatch = mismatch;
+        if (!persistent.isEmpty()) {
+            logger.warn("分类分面统计与数据库不一致，重新构建: {}", persistent);
+            rebuild();
+            lastMismatch = new HashSet<>();
+            result.put("rebuilt", true);
+        } else {
+            result.put("rebuilt", false);
+        }
+        lastReconcile = result;
+    }
+
+    public Map<String, Object> getLastReconcile() {
+        return lastReconcile;
+    }
+
+    private static String key(String category) {
+        return category == null ? UNCATEGORIZED : category;
+    }
+
+    private static int toInt(Object value) {
+        return value == null ? 0 : ((Number) value).intValue();
+    }
+
+    private static long toLong(Object value) {
+        return value == null ? 0L : ((Number) value).longValue();
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
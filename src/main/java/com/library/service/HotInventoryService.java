@@ -0,0 +1,755 @@
+package com.library.service;
+
+import com.library.entity.BorrowRecord;
+import com.library.event.BookBorrowedEvent;
+import com.library.event.BookInventoryEvent;
+import com.library.repository.BookRepository;
+import com.library.repository.BorrowRecordBatchRepository;
+import com.library.repository.BorrowRecordRepository;
+import com.library.repository.BorrowRollupRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 热门图书内存库存（借阅高峰模式）
+ *
+ * 统计窗口内借阅次数达到阈值的图书，其可借册数由内存中的原子计数器接管：
+ * 借阅请求先在计数器上预占库存，借阅记录的插入和库存扣减由定时任务在同一事务中批量落库。
+ * 每次预占同时写入 Redis 日志（hot_inventory:journal），落库成功后删除；
+ * 应用异常退出后，启动时根据日志补录尚未落库的借阅记录。
+ *
+ * 计数器与数据库路径的切换：
+ * 升级时先登记为“切换中”，等待已走数据库路径、尚未结束的借阅事务完成，再锁定图书行读取初始可借册数；
+ * 降级时先停止预占，把该书的预占全部落库后再移除计数器。切换期间到达的借阅短暂等待，
+ * 超过 library.borrow.hot-inventory.transition-wait-ms 返回 BUSY。
+ * 图书编辑、导入修改库存后计数器作废，提交后降级，之后按新的数据库库存重新升级。
+ * 落库时若数据库库存不足以覆盖预占（计数器与数据库出现偏差），只落库能覆盖的部分，其余借阅作废并记入指标，
+ * 该书计数器清零并在下一个窗口重新读取，不会超借。
+ *
+ * 注意：计数器保存在本实例内存中，多实例部署时请只在一个实例上开启该模式
+ */
+@Service
+public class HotInventoryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(HotInventoryService.class);
+
+    private static final String JOURNAL_KEY = "hot_inventory:journal";
+
+    public enum Reservation {
+        NOT_HOT,    // 非热门图书，走数据库路径
+        RESERVED,   // 预占成功
+        SOLD_OUT,   // 库存不足
+        DUPLICATE,  // 该用户已有同一本书的待落库借阅
+        BUSY        // 该书正在切换内存/数据库路径，请稍后重试
+    }
+
+    /**
+     * 一本热门图书的内存库存
+     */
+    private static final class HotBook {
+        // 内存可借册数
+        final AtomicInteger available = new AtomicInteger();
+        // 已预占但尚未落库（或作废）的借阅数，降级前必须归零
+        final AtomicInteger outstanding = new AtomicInteger();
+        // 初始值读取完成且未在降级中时为 true，只有此时接受预占
+        volatile boolean active;
+        // 数据库库存已被其他操作修改，计数器不再可信，等待降级
+        volatile boolean stale;
+    }
+
+    private record PendingBorrow(String token, BorrowRecord record, HotBook hot) {
+    }
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private BorrowRecordRepository borrowRecordRepository;
+
+    @Autowired
+    private BorrowRecordBatchRepository borrowRecordBatchRepository;
+
+    @Autowired
+    private BorrowRollupRepository borrowRollupRepository;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${library.borrow.hot-inventory.enabled:false}")
+    private boolean enabled;
+
+    @Value("${library.borrow.hot-inventory.threshold:20}")
+    private int threshold;
+
+    @Value("${library.borrow.hot-inventory.window-ms:10000}")
+    private long windowMs;
+
+    @Value("${library.borrow.hot-inventory.batch-size:500}")
+    private int batchSize;
+
+    @Value("${library.borrow.hot-inventory.transition-wait-ms:2000}")
+    private long transitionWaitMs;
+
+    // 热门图书ID -> 内存库存
+    private final Map<Long, HotBook> hotBooks = new ConcurrentHashMap<>();
+
+    // 已决定走数据库路径、事务尚未结束的借阅数（按图书），升级前需等待归零
+    private final Map<Long, Integer> databaseInFlight = new ConcurrentHashMap<>();
+
+    // 当前统计窗口内各图书的借阅请求数
+    private final Map<Long, AtomicInteger> windowBorrows = new ConcurrentHashMap<>();
+
+    // 待落库的借阅
+    private final Queue<PendingBorrow> pending = new ConcurrentLinkedQueue<>();
+    private final Map<String, PendingBorrow> pendingByUserBook = new ConcurrentHashMap<>();
+    private final Map<Long, AtomicInteger> pendingCountByUser = new ConcurrentHashMap<>();
+    // 已预占、调用方事务尚未结束的借阅（按日志 token）
+    private final Map<String, PendingBorrow> uncommitted = new ConcurrentHashMap<>();
+
+    private final Object flushLock = new Object();
+
+    // 升级与降级互斥（定时任务与图书编辑提交后的降级可能并发）
+    private final Object transitionLock = new Object();
+
+    // 指标
+    private final LongAdder hotReservations = new LongAdder();
+    private final LongAdder jpaBorrows = new LongAdder();
+    private final LongAdder flushedRecords = new LongAdder();
+    private final LongAdder rejectedRecords = new LongAdder();
+    private long lastHotTotal;
+    private long lastJpaTotal;
+    private volatile double hotReservationsPerSecond;
+    private volatile double jpaBorrowsPerSecond;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 在内存计数器上预占库存并登记待落库的借阅记录
+     * 只有返回 RESERVED 且调用方事务提交后记录才会被落库，事务回滚时预占自动撤销；
+     * 返回 NOT_HOT 时调用方应在当前事务中走数据库路径，
+     * 该书在事务结束前不会升级为热门
+     */
+    public Reservation tryReserve(BorrowRecord record) {
+        Long bookId = record.getBookId();
+        windowBorrows.computeIfAbsent(bookId, id -> new AtomicInteger()).incrementAndGet();
+
+        long deadline = System.currentTimeMillis() + transitionWaitMs;
+        HotBook hot;
+        while (true) {
+            hot = hotBooks.get(bookId);
+            if (hot == null) {
+                // 先登记再确认仍非热门，与升级时“先登记热门、再等待数据库路径归零”配对，二者不会同时错过对方
+                enterDatabasePath(bookId);
+                if (hotBooks.get(bookId) == null) {
+                    leaveDatabasePathOnCompletion(bookId);
+                    return Reservation.NOT_HOT;
+                }
+                leaveDatabasePath(bookId);
+                continue;
+            }
+            if (hot.active) {
+                // 同理：先计入未落库数再确认仍在接受预占，降级时不会漏掉这次预占
+                hot.outstanding.incrementAndGet();
+                if (hot.active) {
+                    break;
+                }
+                hot.outstanding.decrementAndGet();
+            }
+            if (System.currentTimeMillis() >= deadline || !pause(1)) {
+                return Reservation.BUSY;
+            }
+        }
+
+        String userBookKey = userBookKey(record.getUserId(), bookId);
+        PendingBorrow pendingBorrow = new PendingBorrow(UUID.randomUUID().toString(), record, hot);
+        if (pendingByUserBook.putIfAbsent(userBookKey, pendingBorrow) != null) {
+            hot.outstanding.decrementAndGet();
+            return Reservation.DUPLICATE;
+        }
+
+        if (!decrementIfPositive(hot.available)) {
+            pendingByUserBook.remove(userBookKey, pendingBorrow);
+            hot.outstanding.decrementAndGet();
+            return Reservation.SOLD_OUT;
+        }
+
+        try {
+            redisTemplate.opsForHash().put(JOURNAL_KEY, pendingBorrow.token(), encode(record));
+        } catch (Exception e) {
+            // 预占的一册不退回计数器，由调用方在数据库中扣减，计数器与数据库保持一致
+            logger.warn("写入热门库存日志失败，改走数据库路径: {}", e.getMessage());
+            pendingByUserBook.remove(userBookKey, pendingBorrow);
+            hot.outstanding.decrementAndGet();
+            return Reservation.NOT_HOT;
+        }
+
+        pendingCountByUser.computeIfAbsent(record.getUserId(), id -> new AtomicInteger()).incrementAndGet();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // 调用方事务提交后才进入落库队列；回滚时撤销预占，避免落库一条已回滚的借阅
+            uncommitted.put(pendingBorrow.token(), pendingBorrow);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED) {
+                        enqueue(pendingBorrow);
+                    } else {
+                        cancel(pendingBorrow);
+                    }
+                }
+            });
+        } else {
+            enqueue(pendingBorrow);
+        }
+        return Reservation.RESERVED;
+    }
+
+    private void enqueue(PendingBorrow pendingBorrow) {
+        // 先入队再移出未提交集合，日志核对先读未提交集合、再读队列，不会两边都错过
+        pending.add(pendingBorrow);
+        uncommitted.remove(pendingBorrow.token());
+        hotReservations.increment();
+    }
+
+    /**
+     * 撤销未提交的预占：退回计数器、删除日志。与日志核对互斥，
+     * 避免核对读到日志后、又看不到这条预占而将其补录
+     */
+    private void cancel(PendingBorrow pendingBorrow) {
+        synchronized (flushLock) {
+            pendingBorrow.hot().available.incrementAndGet();
+            try {
+                redisTemplate.opsForHash().delete(JOURNAL_KEY, pendingBorrow.token());
+            } catch (Exception e) {
+                logger.warn("删除热门库存日志失败，重启时将按日志核对: {}", e.getMessage());
+            }
+            uncommitted.remove(pendingBorrow.token());
+            release(pendingBorrow);
+        }
+    }
+
+    /**
+     * 预占结束（落库、作废或撤销）后清理按用户的登记并减少该书的未落库数
+     */
+    private void release(PendingBorrow pendingBorrow) {
+        BorrowRecord record = pendingBorrow.record();
+        pendingByUserBook.remove(userBookKey(record.getUserId(), record.getBookId()), pendingBorrow);
+        AtomicInteger userCount = pendingCountByUser.get(record.getUserId());
+        if (userCount != null && userCount.decrementAndGet() <= 0) {
+            pendingCountByUser.remove(record.getUserId(), userCount);
+        }
+        pendingBorrow.hot().outstanding.decrementAndGet();
+    }
+
+    /**
+     * 热门图书的内存可借册数（比数据库更新）；非热门图书、切换中或未开启该模式时返回 null
+     */
+    public Integer getHotAvailable(Long bookId) {
+        if (!enabled) {
+            return null;
+        }
+        HotBook hot = hotBooks.get(bookId);
+        return hot == null || !hot.active ? null : hot.available.get();
+    }
+
+    /**
+     * 用户尚未落库的借阅数量，借阅数量检查时需要计入
+     */
+    public int pendingCount(Long userId) {
+        AtomicInteger count = pendingCountByUser.get(userId);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * 记录一次经数据库路径完成的借阅，用于与内存路径对比吞吐
+     */
+    public void recordJpaBorrow() {
+        jpaBorrows.increment();
+    }
+
+    /**
+     * 归还后同步内存计数器（在数据库库存增加之后调用，事务提交后生效）
+     * 调用时计数器尚未启用的，升级时锁定图书行读取的初始值会包含这次归还，不再重复计入
+     */
+    public void onReturn(Long bookId) {
+        if (!enabled) {
+            return;
+        }
+        HotBook hot = hotBooks.get(bookId);
+        if (hot == null || !hot.active) {
+            return;
+        }
+        Runnable release = () -> hot.available.incrementAndGet();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    release.run();
+                }
+            });
+        } else {
+            release.run();
+        }
+    }
+
+    /**
+     * 图书编辑、删除、导入等直接修改库存后调用：停止该书的内存预占，事务结束后降级，
+     * 之后的借阅按新的数据库库存重新统计是否升级
+     */
+    public void onStockChanged(Long bookId) {
+        if (!enabled || bookId == null) {
+            return;
+        }
+        HotBook hot = hotBooks.get(bookId);
+        if (hot == null) {
+            return;
+        }
+        hot.stale = true;
+        hot.active = false;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    demote(bookId);
+                }
+            });
+        } else {
+            demote(bookId);
+        }
+    }
+
+    /**
+     * 定时批量落库：插入借阅记录并按图书汇总扣减数据库库存
+     */
+    @Scheduled(fixedDelayString = "${library.borrow.hot-inventory.flush-interval:500}")
+    public void flush() {
+        if (!enabled) {
+            return;
+        }
+        while (!pending.isEmpty()) {
+            if (!flushBatch()) {
+                return;
+            }
+        }
+    }
+
+    private boolean flushBatch() {
+        synchronized (flushLock) {
+            List<PendingBorrow> batch = new ArrayList<>();
+            PendingBorrow next;
+            while (batch.size() < batchSize && (next = pending.poll()) != null) {
+                batch.add(next);
+            }
+            if (batch.isEmpty()) {
+                return true;
+            }
+
+            List<PendingBorrow> rejected;
+            try {
+                rejected = newTransaction().execute(status -> persist(batch));
+            } catch (Exception e) {
+                logger.error("热门库存批量落库失败，{} 条借阅将在下次重试: {}", batch.size(), e.getMessage(), e);
+                pending.addAll(batch);
+                return false;
+            }
+
+            batch.forEach(this::release);
+            for (PendingBorrow pendingBorrow : rejected) {
+                BorrowRecord record = pendingBorrow.record();
+                logger.warn("图书 {} 数据库库存不足，作废用户 {} 的预占借阅（借阅时间 {}）",
+                        record.getBookId(), record.getUserId(), record.getBorrowDate());
+                HotBook hot = pendingBorrow.hot();
+                if (hotBooks.get(record.getBookId()) == hot) {
+                    hot.available.set(0);
+                    hot.stale = true;
+                }
+            }
+            try {
+                redisTemplate.opsForHash().delete(JOURNAL_KEY,
+                        batch.stream().map(PendingBorrow::token).toArray());
+            } catch (Exception e) {
+                logger.warn("删除热门库存日志失败，重启时将按日志核对: {}", e.getMessage());
+            }
+            flushedRecords.add(batch.size() - rejected.size());
+            rejectedRecords.add(rejected.size());
+            return true;
+        }
+    }
+
+    /**
+     * 按图书ID顺序扣减库存（与批量借阅的加锁顺序一致），再插入库存覆盖得到的借阅记录
+     * @return 数据库库存不足而作废的预占
+     */
+    private List<PendingBorrow> persist(List<PendingBorrow> batch) {
+        Map<Long, List<PendingBorrow>> byBook = new TreeMap<>();
+        for (PendingBorrow pendingBorrow : batch) {
+            byBook.computeIfAbsent(pendingBorrow.record().getBookId(), id -> new ArrayList<>()).add(pendingBorrow);
+        }
+
+        List<BorrowRecord> records = new ArrayList<>(batch.size());
+        List<PendingBorrow> rejected = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        byBook.forEach((bookId, borrows) -> {
+            int count = borrows.size();
+            int accepted = count;
+            if (bookRepository.decrementAvailableCopiesBy(bookId, count, now) == 0) {
+                // 先到先得：只接受当前库存能覆盖的预占
+                Integer available = bookRepository.lockAvailableCopiesById(bookId);
+                accepted = available == null ? 0 : Math.min(Math.max(available, 0), count);
+                if (accepted > 0 && bookRepository.decrementAvailableCopiesBy(bookId, accepted, now) == 0) {
+                    throw new RuntimeException("图书 " + bookId + " 扣减库存失败");
+                }
+                rejected.addAll(borrows.subList(accepted, count));
+            }
+            for (int i = 0; i < accepted; i++) {
+                BorrowRecord record = borrows.get(i).record();
+                records.add(record);
+                // 热门借阅排行、推荐在落库事务提交后计入，被作废的预占不计入
+                eventPublisher.publishEvent(new BookBorrowedEvent(record.getUserId(), bookId));
+            }
+            if (accepted > 0) {
+                eventPublisher.publishEvent(new BookInventoryEvent(bookId, -accepted));
+            }
+        });
+        if (!records.isEmpty()) {
+            borrowRecordBatchRepository.batchInsert(records);
+            borrowRollupRepository.addBorrows(records);
+        }
+        return rejected;
+    }
+
+    /**
+     * 滚动统计窗口：计算吞吐指标，升级/降级热门图书
+     */
+    @Scheduled(fixedRateString = "${library.borrow.hot-inventory.window-ms:10000}")
+    public void rotateWindow() {
+        if (!enabled) {
+            return;
+        }
+        double seconds = windowMs / 1000.0;
+        long hotTotal = hotReservations.sum();
+        long jpaTotal = jpaBorrows.sum();
+        hotReservationsPerSecond = (hotTotal - lastHotTotal) / seconds;
+        jpaBorrowsPerSecond = (jpaTotal - lastJpaTotal) / seconds;
+        lastHotTotal = hotTotal;
+        lastJpaTotal = jpaTotal;
+
+        Map<Long, Integer> snapshot = new HashMap<>();
+        Iterator<Map.Entry<Long, AtomicInteger>> iterator = windowBorrows.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, AtomicInteger> entry = iterator.next();
+            int count = entry.getValue().getAndSet(0);
+            if (count == 0) {
+                iterator.remove();
+            } else {
+                snapshot.put(entry.getKey(), count);
+            }
+        }
+
+        snapshot.forEach((bookId, count) -> {
+            if (count >= threshold && !hotBooks.containsKey(bookId)) {
+                promote(bookId, count);
+            }
+        });
+        for (Map.Entry<Long, HotBook> entry : new ArrayList<>(hotBooks.entrySet())) {
+            if (entry.getValue().stale || snapshot.getOrDefault(entry.getKey(), 0) < threshold / 2) {
+                demote(entry.getKey());
+            }
+        }
+    }
+
+    private void promote(Long bookId, int windowCount) {
+        synchronized (transitionLock) {
+            HotBook hot = new HotBook();
+            if (hotBooks.putIfAbsent(bookId, hot) != null) {
+                return;
+            }
+            // 此后新的借阅不再走数据库路径，等待已在途的数据库路径借阅结束
+            if (!awaitDatabasePathIdle(bookId)) {
+                hotBooks.remove(bookId, hot);
+                logger.info("图书 {} 仍有数据库路径借阅未结束，暂不进入热门库存模式", bookId);
+                return;
+            }
+            Integer available;
+            try {
+                available = newTransaction().execute(status -> {
+                    Integer copies = bookRepository.lockAvailableCopiesById(bookId);
+                    if (copies != null) {
+                        hot.available.set(copies);
+                        // 在行锁释放前启用：此后提交的归还由 onReturn 计入计数器，此前的已包含在 copies 中
+                        hot.active = true;
+                    }
+                    return copies;
+                });
+            } catch (Exception e) {
+                logger.error("图书 {} 读取初始库存失败，不进入热门库存模式: {}", bookId, e.getMessage(), e);
+                hot.stale = true;
+                demote(bookId);
+                return;
+            }
+            if (available == null) {
+                hotBooks.remove(bookId, hot);
+                return;
+            }
+            logger.info("图书 {} 进入热门库存模式（窗口内借阅 {} 次，可借 {} 册）", bookId, windowCount, available);
+        }
+    }
+
+    private void demote(Long bookId) {
+        synchronized (transitionLock) {
+            HotBook hot = hotBooks.get(bookId);
+            if (hot == null) {
+                return;
+            }
+            hot.active = false;
+            // 回到数据库路径前先把该书的预占全部写入数据库
+            long deadline = System.currentTimeMillis() + transitionWaitMs;
+            while (true) {
+                flush();
+                if (hot.outstanding.get() == 0) {
+                    break;
+                }
+                if (System.currentTimeMillis() >= deadline || !pause(10)) {
+                    // 落库失败时保留计数器，下一个窗口重试；库存已被修改的图书保持停止预占
+                    hot.active = !hot.stale;
+                    logger.warn("图书 {} 仍有 {} 条预占未落库，暂不退出热门库存模式", bookId, hot.outstanding.get());
+                    return;
+                }
+            }
+            hotBooks.remove(bookId, hot);
+            logger.info("图书 {} 退出热门库存模式", bookId);
+        }
+    }
+
+    /**
+     * 启动时核对 Redis 日志，补录异常退出前未落库的借阅
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverAfterRestart() {
+        if (!enabled) {
+            return;
+        }
+        Map<String, Object> result = reconcileJournal();
+        logger.info("热门库存日志核对完成: {}", result);
+    }
+
+    /**
+     * 核对 Redis 日志中残留的预占：
+     * 已落库的直接删除日志；未落库的补录借阅记录并扣减库存；库存不足的记为冲突。
+     * 与批量落库互斥，已取出但尚未提交的批次不会被当作残留重复补录
+     */
+    public Map<String, Object> reconcileJournal() {
+        synchronized (flushLock) {
+            Map<String, Object> result = new HashMap<>();
+            Map<Object, Object> entries;
+            try {
+                entries = redisTemplate.opsForHash().entries(JOURNAL_KEY);
+            } catch (Exception e) {
+                logger.error("读取热门库存日志失败: {}", e.getMessage(), e);
+                result.put("success", false);
+                result.put("message", "读取日志失败：" + e.getMessage());
+                return result;
+            }
+
+            Set<String> liveTokens = new HashSet<>(uncommitted.keySet());
+            for (PendingBorrow pendingBorrow : pending) {
+                liveTokens.add(pendingBorrow.token());
+            }
+
+            int alreadyPersisted = 0;
+            int recovered = 0;
+            int conflicts = 0;
+            TransactionTemplate transactionTemplate = newTransaction();
+            for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+                String token = entry.getKey().toString();
+                if (liveTokens.contains(token)) {
+                    continue;
+                }
+                BorrowRecord record = decode(entry.getValue().toString());
+                Integer outcome = transactionTemplate.execute(status -> {
+                    if (borrowRecordRepository.existsByUserIdAndBookIdAndBorrowDate(
+                            record.getUserId(), record.getBookId(), record.getBorrowDate())) {
+                        return 0;
+                    }
+                    if (bookRepository.decrementAvailableCopies(record.getBookId(), LocalDateTime.now()) == 0) {
+                        return 2;
+                    }
+                    eventPublisher.publishEvent(new BookInventoryEvent(record.getBookId(), -1));
+                    eventPublisher.publishEvent(new BookBorrowedEvent(record.getUserId(), record.getBookId()));
+                    borrowRecordRepository.save(record);
+                    borrowRollupRepository.addBorrows(List.of(record));
+                    // 该书正在内存计数时同步扣减一册，与归还的处理相同
+                    HotBook hot = hotBooks.get(record.getBookId());
+                    if (hot != null && hot.active) {
+                        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                            @Override
+                            public void afterCommit() {
+                                decrementIfPositive(hot.available);
+                            }
+                        });
+                    }
+                    return 1;
+                });
+                if (outcome != null && outcome == 0) {
+                    alreadyPersisted++;
+                } else if (outcome != null && outcome == 1) {
+                    recovered++;
+                } else {
+                    conflicts++;
+                    logger.warn("补录借阅失败（库存不足）：用户 {}，图书 {}，借阅时间 {}",
+                            record.getUserId(), record.getBookId(), record.getBorrowDate());
+                }
+                redisTemplate.opsForHash().delete(JOURNAL_KEY, token);
+            }
+
+            result.put("success", true);
+            result.put("alreadyPersisted", alreadyPersisted);
+            result.put("recovered", recovered);
+            result.put("conflicts", conflicts);
+            return result;
+        }
+    }
+
+    /**
+     * 热门库存模式指标：内存预占与数据库路径的每秒吞吐、待落库数量、各热门图书计数器
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("enabled", enabled);
+        metrics.put("hotReservationsPerSecond", hotReservationsPerSecond);
+        metrics.put("jpaBorrowsPerSecond", jpaBorrowsPerSecond);
+        metrics.put("totalHotReservations", hotReservations.sum());
+        metrics.put("totalJpaBorrows", jpaBorrows.sum());
+        metrics.put("pendingRecords", pending.size());
+        metrics.put("flushedRecords", flushedRecords.sum());
+        metrics.put("rejectedRecords", rejectedRecords.sum());
+
+        Map<Long, Integer> pendingByBook = new HashMap<>();
+        for (PendingBorrow pendingBorrow : pending) {
+            pendingByBook.merge(pendingBorrow.record().getBookId(), 1, Integer::sum);
+        }
+        List<Map<String, Object>> books = new ArrayList<>();
+        hotBooks.forEach((bookId, hot) -> {
+            Map<String, Object> book = new HashMap<>();
+            book.put("bookId", bookId);
+            book.put("available", hot.available.get());
+            book.put("active", hot.active);
+            book.put("pending", pendingByBook.getOrDefault(bookId, 0));
+            books.add(book);
+        });
+        metrics.put("hotBooks", books);
+        return metrics;
+    }
+
+    private static boolean decrementIfPositive(AtomicInteger counter) {
+        while (true) {
+            int current = counter.get();
+            if (current <= 0) {
+                return false;
+            }
+            if (counter.compareAndSet(current, current - 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void enterDatabasePath(Long bookId) {
+        databaseInFlight.merge(bookId, 1, Integer::sum);
+    }
+
+    private void leaveDatabasePath(Long bookId) {
+        databaseInFlight.computeIfPresent(bookId, (id, count) -> count == 1 ? null : count - 1);
+    }
+
+    /**
+     * 调用方事务结束（提交或回滚）时才解除登记；无事务时立即解除
+     */
+    private void leaveDatabasePathOnCompletion(Long bookId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    leaveDatabasePath(bookId);
+                }
+            });
+        } else {
+            leaveDatabasePath(bookId);
+        }
+    }
+
+    private boolean awaitDatabasePathIdle(Long bookId) {
+        long deadline = System.currentTimeMillis() + transitionWaitMs;
+        while (databaseInFlight.containsKey(bookId)) {
+            if (System.currentTimeMillis() >= deadline || !pause(5)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 落库与升级使用独立事务：降级可能在图书编辑事务提交后的回调中执行
+     */
+    private TransactionTemplate newTransaction() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return transactionTemplate;
+    }
+
+    private static boolean pause(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static String userBookKey(Long userId, Long bookId) {
+        return userId + ":" + bookId;
+    }
+
+    private static String encode(BorrowRecord record) {
+        return record.getUserId() + "|" + record.getBookId() + "|"
+                + record.getBorrowDate() + "|" + record.getDueDate();
+    }
+
+    private static BorrowRecord decode(String value) {
+        String[] parts = value.split("\\|");
+        BorrowRecord record = new BorrowRecord();
+        record.setUserId(Long.parseLong(parts[0]));
+        record.setBookId(Long.parseLong(parts[1]));
+        record.setBorrowDate(LocalDateTime.parse(parts[2]));
+        record.setDueDate(LocalDateTime.parse(parts[3]));
+        record.setStatus(BorrowRecord.Status.BORROWED);
+        return record;
+    }
+}
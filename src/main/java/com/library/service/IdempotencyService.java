@@ -0,0 +1,202 @@
+package com.library.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.library.entity.BorrowRecord;
+import com.library.util.TtlCache;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * 幂等请求处理
+ * 同一幂等键的首次执行结果保存在 Redis（不可用时退回进程内缓存）中，短时间内的重复提交直接回放结果，不再访问数据库；
+ * 同一实例内并发到达的重复请求合并为一次执行，跨实例并发通过 Redis 处理中标记互斥。
+ * 保存的结果只含简单值（success、message 等）和借阅记录的ID，不保存实体：实体关联的用户含密码哈希等字段，
+ * 不能写入 Redis 或回放给客户端；首次请求返回与回放相同的内容
+ */
+@Service
+public class IdempotencyService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyService.class);
+    private static final String RESULT_PREFIX = "idempotency:result:";
+    private static final String PROCESSING_PREFIX = "idempotency:processing:";
+    private static final int MAX_KEY_LENGTH = 64;
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${library.idempotency.ttl:600}")
+    private long ttlSeconds;
+
+    @Value("${library.idempotency.wait-timeout:10000}")
+    private long waitTimeoutMillis;
+
+    private TtlCache<String, Map<String, Object>> localResults;
+
+    private final Map<String, CompletableFuture<Map<String, Object>>> inFlight = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        localResults = new TtlCache<>(TimeUnit.SECONDS.toMillis(ttlSeconds));
+    }
+
+    /**
+     * 按幂等键执行操作
+     * @param scope 作用域（操作类型 + 用户 + 目标），避免不同用户或不同操作的键互相冲突
+     * @param key 客户端生成的幂等键，为空时直接执行
+     */
+    public Map<String, Object> execute(String scope, String key, Supplier<Map<String, Object>> action) {
+        if (key == null || key.isBlank()) {
+            return action.get();
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", false);
+            result.put("message", "幂等键无效");
+            return result;
+        }
+
+        String storeKey = scope + ":" + key;
+        Map<String, Object> stored = loadResult(storeKey);
+        if (stored != null) {
+            return replayed(stored);
+        }
+
+        CompletableFuture<Map<String, Object>> future = new CompletableFuture<>();
+        CompletableFuture<Map<String, Object>> existing = inFlight.putIfAbsent(storeKey, future);
+        if (existing != null) {
+            // 同一实例内的并发重复请求：等待首个请求的结果
+            return replayed(await(existing));
+        }
+
+        try {
+            Map<String, Object> result = executeOnce(storeKey, action);
+            future.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(storeKey, future);
+        }
+    }
+
+    private Map<String, Object> executeOnce(String storeKey, Supplier<Map<String, Object>> action) {
+        // 合并等待期间首个请求可能已经完成
+        Map<String, Object> stored = loadResult(storeKey);
+        if (stored != null) {
+            return replayed(stored);
+        }
+
+        String processingKey = PROCESSING_PREFIX + storeKey;
+        boolean marked = false;
+        try {
+            Boolean acquired = redisTemplate.opsForValue()
+                    .setIfAbsent(processingKey, "1", waitTimeoutMillis, TimeUnit.MILLISECONDS);
+            if (!Boolean.TRUE.equals(acquired)) {
+                // 其他实例正在处理同一请求
+                Map<String, Object> result = new HashMap<>();
+                result.put("success", false);
+                result.put("message", "请求正在处理中，请稍后刷新页面查看结果");
+                return result;
+            }
+            marked = true;
+        } catch (Exception e) {
+            logger.warn("Redis 不可用，幂等控制退回进程内: {}", e.getMessage());
+        }
+
+        try {
+            Map<String, Object> result = snapshot(action.get());
+            saveResult(storeKey, result);
+            return result;
+        } finally {
+            if (marked) {
+                try {
+                    redisTemplate.delete(processingKey);
+                } catch (Exception e) {
+                    logger.warn("清除幂等处理标记失败: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private Map<String, Object> await(CompletableFuture<Map<String, Object>> future) {
+        try {
+            return future.get(waitTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException("请求处理失败", cause);
+        } catch (TimeoutException e) {
+            throw new RuntimeException("请求处理超时，请稍后刷新页面查看结果");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("请求处理被中断");
+        }
+    }
+
+    private Map<String, Object> loadResult(String storeKey) {
+        try {
+            String json = redisTemplate.opsForValue().get(RESULT_PREFIX + storeKey);
+            if (json != null) {
+                return objectMapper.readValue(json, new TypeReference<Map<String, Object>>() {});
+            }
+        } catch (Exception e) {
+            logger.warn("读取幂等结果失败，使用进程内缓存: {}", e.getMessage());
+        }
+        return localResults.getIfPresent(storeKey);
+    }
+
+    private void saveResult(String storeKey, Map<String, Object> result) {
+        localResults.put(storeKey, result);
+        try {
+            String json = objectMapper.writeValueAsString(result);
+            redisTemplate.opsForValue().set(RESULT_PREFIX + storeKey, json, ttlSeconds, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            logger.warn("保存幂等结果到 Redis 失败，仅保留进程内缓存: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 结果中可保存的部分：简单值原样保留，借阅记录只保留ID，其他对象（实体、集合等）丢弃
+     */
+    static Map<String, Object> snapshot(Map<String, Object> result) {
+        Map<String, Object> stored = new HashMap<>();
+        for (Map.Entry<String, Object> entry : result.entrySet()) {
+            Object value = entry.getValue();
+            if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean) {
+                stored.put(entry.getKey(), value);
+            } else if (value instanceof BorrowRecord record) {
+                stored.put("recordId", record.getId());
+                stored.put("bookId", record.getBookId());
+            }
+        }
+        return stored;
+    }
+
+    private Map<String, Object> replayed(Map<String, Object> stored) {
+        Map<String, Object> result = new HashMap<>(stored);
+        result.put("replayed", true);
+        return result;
+    }
+}
@@ -0,0 +1,61 @@
+package com.library.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 耗时后台任务（归档、汇总核对、索引与过滤器重建）的执行线程
+ * 定时方法只负责提交，不占用定时任务线程；任务在单个线程上依次执行，避免多个大批量读写同时争用数据库。
+ * 同名任务尚在排队或执行时不重复提交
+ */
+@Component
+public class MaintenanceExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(MaintenanceExecutor.class);
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "maintenance");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Set<String> queued = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 提交任务
+     * @return 是否已提交；同名任务尚未完成时返回 false
+     */
+    public boolean submit(String name, Runnable task) {
+        if (!queued.add(name)) {
+            logger.info("后台任务 {} 尚未完成，跳过本次执行", name);
+            return false;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    logger.error("后台任务 {} 执行失败: {}", name, e.getMessage(), e);
+                } finally {
+                    queued.remove(name);
+                }
+            });
+            return true;
+        } catch (RuntimeException e) {
+            queued.remove(name);
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
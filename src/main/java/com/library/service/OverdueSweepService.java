@@ -0,0 +1,91 @@
+package com.library.service;
+
+import com.library.util.RedisLockUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 逾期扫描定时任务
+ * 通过 Redis 锁保证多实例部署时同一时刻只有一个节点执行；
+ * Redis 不可用时退化为本节点直接执行（批量更新本身是幂等的）
+ */
+@Service
+public class OverdueSweepService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OverdueSweepService.class);
+
+    private static final String LOCK_KEY = "lock:overdue_sweep";
+
+    @Autowired
+    private BorrowService borrowService;
+
+    @Autowired
+    private RedisLockUtil redisLockUtil;
+
+    @Value("${library.borrow.overdue.lock-ttl:600}")
+    private long lockTtlSeconds;
+
+    private volatile Map<String, Object> lastRun = new HashMap<>();
+
+    @Scheduled(cron = "${library.borrow.overdue.cron:0 */10 * * * *}")
+    public void scheduledSweep() {
+        sweep();
+    }
+
+    /**
+     * 执行一次逾期扫描
+     * @return 本次执行结果：更新行数、耗时、是否因其他节点持有锁而跳过
+     */
+    public Map<String, Object> sweep() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("startedAt", LocalDateTime.now().toString());
+
+        String token = null;
+        try {
+            token = redisLockUtil.tryLock(LOCK_KEY, Duration.ofSeconds(lockTtlSeconds));
+            if (token == null) {
+                result.put("skipped", true);
+                result.put("message", "其他节点正在执行逾期扫描");
+                return result;
+            }
+        } catch (Exception e) {
+            logger.warn("获取逾期扫描锁失败，本节点直接执行: {}", e.getMessage());
+        }
+
+        long start = System.currentTimeMillis();
+        try {
+            int updated = borrowService.checkOverdueRecords();
+            long duration = System.currentTimeMillis() - start;
+            result.put("skipped", false);
+            result.put("updatedRows", updated);
+            result.put("durationMs", duration);
+            lastRun = result;
+            logger.info("逾期扫描完成：更新 {} 条记录，耗时 {} ms", updated, duration);
+            return result;
+        } finally {
+            if (token != null) {
+                try {
+                    redisLockUtil.unlock(LOCK_KEY, token);
+                } catch (Exception e) {
+                    logger.warn("释放逾期扫描锁失败，锁将在过期后自动释放: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 最近一次本节点执行的扫描结果
+     */
+    public Map<String, Object> getLastRun() {
+        return lastRun;
+    }
+}
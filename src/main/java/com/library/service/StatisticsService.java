@@ -3,48 +3,76 @@ package com.library.service;
 import com.library.entity.Book;
 import com.library.entity.BorrowRecord;
 import com.library.entity.User;
-import com.library.repository.BookRepository;
-import com.library.repository.BorrowRecordRepository;
-import com.library.repository.UserRepository;
+import com.library.repository.BorrowRollupRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDateTime;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Service
 public class StatisticsService {
     
+    private static final Logger logger = LoggerFactory.getLogger(StatisticsService.class);
+    
     @Autowired
-    private BorrowRecordRepository borrowRecordRepository;
+    private BorrowRollupRepository borrowRollupRepository;
     
     @Autowired
-    private BookRepository bookRepository;
+    private BatchAssociationLoader batchAssociationLoader;
     
     @Autowired
-    private UserRepository userRepository;
+    private TrendingService trendingService;
+    
+    @Value("${library.statistics.section-timeout:5s}")
+    private Duration sectionTimeout;
+    
+    @Value("${library.cache.statistics-partial-ttl:30s}")
+    private Duration partialTtl;
+    
+    // 报表各部分的查询主要在等待数据库返回，每个任务一个虚拟线程
+    private final ExecutorService reportExecutor = Executors.newVirtualThreadPerTaskExecutor();
     
     /**
-     * 获取总体统计信息
+     * 获取总体统计信息（来自日汇总表，含归档记录）
      */
     public Map<String, Object> getOverallStatistics() {
+        return buildOverallStatistics(getBorrowStatisticsByStatus());
+    }
+    
+    private Map<String, Object> buildOverallStatistics(Map<String, Long> byStatus) {
         Map<String, Object> stats = new HashMap<>();
+        long borrowedCount = byStatus.get("BORROWED");
+        long returnedCount = byStatus.get("RETURNED");
+        long overdueCount = byStatus.get("OVERDUE");
         
         // 总借阅数量
-        long totalBorrows = borrowRecordRepository.count();
+        long totalBorrows = borrowedCount + returnedCount + overdueCount;
         stats.put("totalBorrows", totalBorrows);
         
         // 当前借阅中数量
-        long borrowedCount = borrowRecordRepository.countByStatus(BorrowRecord.Status.BORROWED);
         stats.put("borrowedCount", borrowedCount);
         
         // 已归还数量
-        long returnedCount = borrowRecordRepository.countByStatus(BorrowRecord.Status.RETURNED);
         stats.put("returnedCount", returnedCount);
         
         // 逾期数量
-        long overdueCount = borrowRecordRepository.countByStatus(BorrowRecord.Status.OVERDUE);
         stats.put("overdueCount", overdueCount);
         
         // 归还率
@@ -55,43 +83,27 @@ public class StatisticsService {
     }
     
     /**
-     * 获取最受欢迎的图书（借阅次数最多）
+     * 获取最受欢迎的图书（借阅次数最多，来自图书累计借阅次数表）
      */
     public List<Map<String, Object>> getTopBorrowedBooks(int limit) {
-        List<Object[]> results = borrowRecordRepository.findTopBorrowedBooks(limit);
-        List<Map<String, Object>> topBooks = new ArrayList<>();
+        List<Object[]> results = borrowRollupRepository.findTopBooks(limit);
+        List<Long[]> idCounts = parseIdCounts(results);
         
-        for (Object[] result : results) {
-            Object bookIdObj = result[0];
-            Object countObj = result[1];
-            
-            Long bookId = null;
-            Long count = null;
-            
-            if (bookIdObj instanceof Number) {
-                bookId = ((Number) bookIdObj).longValue();
-            } else if (bookIdObj != null) {
-                bookId = Long.parseLong(bookIdObj.toString());
-            }
-            
-            if (countObj instanceof Number) {
-                count = ((Number) countObj).longValue();
-            } else if (countObj != null) {
-                count = Long.parseLong(countObj.toString());
-            }
-            
-            if (bookId != null && count != null) {
-                Optional<Book> bookOpt = bookRepository.findById(bookId);
-                if (bookOpt.isPresent()) {
-                    Book book = bookOpt.get();
-                    Map<String, Object> bookStat = new HashMap<>();
-                    bookStat.put("bookId", bookId);
-                    bookStat.put("title", book.getTitle());
-                    bookStat.put("author", book.getAuthor());
-                    bookStat.put("category", book.getCategory());
-                    bookStat.put("borrowCount", count);
-                    topBooks.add(bookStat);
-                }
+        // 一次查询加载全部图书
+        List<Long> bookIds = idCounts.stream().map(idCount -> idCount[0]).collect(Collectors.toList());
+        Map<Long, Book> books = batchAssociationLoader.loadBooks(bookIds);
+        
+        List<Map<String, Object>> topBooks = new ArrayList<>();
+        for (Long[] idCount : idCounts) {
+            Book book = books.get(idCount[0]);
+            if (book != null) {
+                Map<String, Object> bookStat = new HashMap<>();
+                bookStat.put("bookId", idCount[0]);
+                bookStat.put("title", book.getTitle());
+                bookStat.put("author", book.getAuthor());
+                bookStat.put("category", book.getCategory());
+                bookStat.put("borrowCount", idCount[1]);
+                topBooks.add(bookStat);
             }
         }
         
@@ -99,23 +111,49 @@ public class StatisticsService {
     }
     
     /**
-     * 获取最活跃的用户（借阅次数最多）
+     * 获取最活跃的用户（借阅次数最多，来自用户累计借阅次数表）
      */
     public List<Map<String, Object>> getTopActiveUsers(int limit) {
-        List<Object[]> results = borrowRecordRepository.findTopActiveUsers(limit);
+        List<Object[]> results = borrowRollupRepository.findTopUsers(limit);
+        List<Long[]> idCounts = parseIdCounts(results);
+        
+        // 一次查询加载全部用户
+        List<Long> userIds = idCounts.stream().map(idCount -> idCount[0]).collect(Collectors.toList());
+        Map<Long, User> users = batchAssociationLoader.loadUsers(userIds);
+        
         List<Map<String, Object>> topUsers = new ArrayList<>();
+        for (Long[] idCount : idCounts) {
+            User user = users.get(idCount[0]);
+            if (user != null) {
+                Map<String, Object> userStat = new HashMap<>();
+                userStat.put("userId", idCount[0]);
+                userStat.put("username", user.getUsername());
+                userStat.put("realName", user.getRealName());
+                userStat.put("email", user.getEmail());
+                userStat.put("borrowCount", idCount[1]);
+                topUsers.add(userStat);
+            }
+        }
         
+        return topUsers;
+    }
+    
+    /**
+     * 解析 (id, count) 形式的原生查询结果，跳过无法解析的行
+     */
+    private List<Long[]> parseIdCounts(List<Object[]> results) {
+        List<Long[]> idCounts = new ArrayList<>();
         for (Object[] result : results) {
-            Object userIdObj = result[0];
+            Object idObj = result[0];
             Object countObj = result[1];
             
-            Long userId = null;
+            Long id = null;
             Long count = null;
             
-            if (userIdObj instanceof Number) {
-                userId = ((Number) userIdObj).longValue();
-            } else if (userIdObj != null) {
-                userId = Long.parseLong(userIdObj.toString());
+            if (idObj instanceof Number) {
+                id = ((Number) idObj).longValue();
+            } else if (idObj != null) {
+                id = Long.parseLong(idObj.toString());
             }
             
             if (countObj instanceof Number) {
@@ -124,125 +162,54 @@ public class StatisticsService {
                 count = Long.parseLong(countObj.toString());
             }
             
-            if (userId != null && count != null) {
-                Optional<User> userOpt = userRepository.findById(userId);
-                if (userOpt.isPresent()) {
-                    User user = userOpt.get();
-                    Map<String, Object> userStat = new HashMap<>();
-                    userStat.put("userId", userId);
-                    userStat.put("username", user.getUsername());
-                    userStat.put("realName", user.getRealName());
-                    userStat.put("email", user.getEmail());
-                    userStat.put("borrowCount", count);
-                    topUsers.add(userStat);
-                }
+            if (id != null && count != null) {
+                idCounts.add(new Long[]{id, count});
             }
         }
-        
-        return topUsers;
+        return idCounts;
     }
     
     /**
-     * 按日期统计借阅数量（最近30天）
+     * 按日期统计借阅数量（最近 days 天，含今天，来自日汇总表）
      */
     public List<Map<String, Object>> getBorrowStatisticsByDate(int days) {
-        LocalDateTime startDate = LocalDateTime.now().minusDays(days);
-        List<Object[]> results = borrowRecordRepository.findBorrowCountByDate(startDate);
+        LocalDate startDate = LocalDate.now().minusDays(days - 1);
         
         // 创建日期到数量的映射
         Map<String, Long> dateCountMap = new HashMap<>();
-        for (Object[] result : results) {
-            String dateStr = null;
-            Long count = 0L;
-            
-            if (result[0] != null) {
-                // 处理日期格式，确保是 YYYY-MM-DD 格式
-                Object dateObj = result[0];
-                if (dateObj instanceof java.sql.Date) {
-                    dateStr = dateObj.toString();
-                } else if (dateObj instanceof java.util.Date) {
-                    java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("yyyy-MM-dd");
-                    dateStr = sdf.format((java.util.Date) dateObj);
-                } else {
-                    dateStr = dateObj.toString();
-                    // 如果包含时间部分，只取日期部分
-                    if (dateStr.contains(" ")) {
-                        dateStr = dateStr.split(" ")[0];
-                    }
-                    if (dateStr.contains("T")) {
-                        dateStr = dateStr.split("T")[0];
-                    }
-                }
-            }
-            
-            if (result[1] instanceof Number) {
-                count = ((Number) result[1]).longValue();
-            } else if (result[1] != null) {
-                try {
-                    count = Long.parseLong(result[1].toString());
-                } catch (NumberFormatException e) {
-                    count = 0L;
-                }
-            }
-            
-            if (dateStr != null && !dateStr.isEmpty()) {
-                dateCountMap.put(dateStr, count);
-            }
+        for (Object[] result : borrowRollupRepository.countByDay(startDate)) {
+            dateCountMap.put(result[0].toString(), (Long) result[1]);
         }
         
         // 填充所有日期（包括没有借阅记录的日期）
         List<Map<String, Object>> dateStats = new ArrayList<>();
-        LocalDateTime current = LocalDateTime.now().minusDays(days - 1);
-        LocalDateTime end = LocalDateTime.now();
-        
-        while (!current.isAfter(end)) {
-            String dateKey = current.toLocalDate().toString();
+        LocalDate end = LocalDate.now();
+        for (LocalDate current = startDate; !current.isAfter(end); current = current.plusDays(1)) {
+            String dateKey = current.toString();
             Map<String, Object> stat = new HashMap<>();
             stat.put("date", dateKey);
             stat.put("count", dateCountMap.getOrDefault(dateKey, 0L));
             dateStats.add(stat);
-            current = current.plusDays(1);
         }
         
         return dateStats;
     }
     
     /**
-     * 按月份统计借阅数量（最近12个月）
+     * 按月份统计借阅数量（最近 months 个月，来自日汇总表）
      */
     public List<Map<String, Object>> getBorrowStatisticsByMonth(int months) {
-        LocalDateTime startDate = LocalDateTime.now().minusMonths(months);
-        List<Object[]> results = borrowRecordRepository.findBorrowCountByMonth(startDate);
+        LocalDate startDate = LocalDate.now().minusMonths(months);
         List<Map<String, Object>> monthStats = new ArrayList<>();
         
-        for (Object[] result : results) {
+        for (Object[] result : borrowRollupRepository.countByMonth(startDate)) {
+            int year = (Integer) result[0];
+            int month = (Integer) result[1];
             Map<String, Object> stat = new HashMap<>();
-            int year = 0;
-            int month = 0;
-            long count = 0;
-            
-            if (result[0] instanceof Number) {
-                year = ((Number) result[0]).intValue();
-            } else if (result[0] != null) {
-                year = Integer.parseInt(result[0].toString());
-            }
-            
-            if (result[1] instanceof Number) {
-                month = ((Number) result[1]).intValue();
-            } else if (result[1] != null) {
-                month = Integer.parseInt(result[1].toString());
-            }
-            
-            if (result[2] instanceof Number) {
-                count = ((Number) result[2]).longValue();
-            } else if (result[2] != null) {
-                count = Long.parseLong(result[2].toString());
-            }
-            
             stat.put("year", year);
             stat.put("month", month);
             stat.put("monthLabel", year + "-" + String.format("%02d", month));
-            stat.put("count", count);
+            stat.put("count", result[2]);
             monthStats.add(stat);
         }
         
@@ -250,73 +217,152 @@ public class StatisticsService {
     }
     
     /**
-     * 按状态统计借阅分布
+     * 按状态统计借阅分布（来自日汇总表，归档记录计入已归还）
      */
     public Map<String, Long> getBorrowStatisticsByStatus() {
+        Map<String, Long> counts = borrowRollupRepository.countByStatus();
         Map<String, Long> statusStats = new HashMap<>();
-        statusStats.put("BORROWED", borrowRecordRepository.countByStatus(BorrowRecord.Status.BORROWED));
-        statusStats.put("RETURNED", borrowRecordRepository.countByStatus(BorrowRecord.Status.RETURNED));
-        statusStats.put("OVERDUE", borrowRecordRepository.countByStatus(BorrowRecord.Status.OVERDUE));
+        for (BorrowRecord.Status status : BorrowRecord.Status.values()) {
+            statusStats.put(status.name(), counts.getOrDefault(status.name(), 0L));
+        }
         return statusStats;
     }
     
     /**
-     * 按图书分类统计借阅数量
+     * 按图书分类统计借阅数量（来自日汇总表，含归档记录）
      */
     public List<Map<String, Object>> getBorrowStatisticsByCategory() {
-        List<BorrowRecord> allRecords = borrowRecordRepository.findAll();
-        Map<String, Long> categoryCount = new HashMap<>();
-        
-        for (BorrowRecord record : allRecords) {
-            Optional<Book> bookOpt = bookRepository.findById(record.getBookId());
-            if (bookOpt.isPresent()) {
-                String category = bookOpt.get().getCategory();
-                if (category != null && !category.isEmpty()) {
-                    categoryCount.put(category, categoryCount.getOrDefault(category, 0L) + 1);
-                }
+        List<Object[]> results = borrowRollupRepository.countByCategory();
+        List<Map<String, Object>> categoryStats = new ArrayList<>();
+        for (Object[] result : results) {
+            if (result[0] == null) {
+                continue;
             }
+            Map<String, Object> stat = new HashMap<>();
+            stat.put("category", result[0].toString());
+            stat.put("count", result[1] instanceof Number ? ((Number) result[1]).longValue() : Long.parseLong(result[1].toString()));
+            categoryStats.add(stat);
         }
         
-        List<Map<String, Object>> categoryStats = new ArrayList<>();
-        categoryCount.entrySet().stream()
-                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
-                .forEach(entry -> {
-                    Map<String, Object> stat = new HashMap<>();
-                    stat.put("category", entry.getKey());
-                    stat.put("count", entry.getValue());
-                    categoryStats.add(stat);
-                });
-        
         return categoryStats;
     }
     
     /**
      * 获取完整的统计报表数据
+     * 各部分在虚拟线程上并发查询，整体耗时约等于最慢的一部分；每部分最多等待 library.statistics.section-timeout，
+     * 超时或失败的部分以空结果代替并列入 failedSections（partial 为 true），其余部分照常返回。
+     * 总体统计由按状态统计推导，状态汇总只查询一次。sectionTimings 为各部分耗时（毫秒），用于排查慢查询。
+     * 报表缓存 library.cache.statistics-ttl（默认 5 分钟），过期时只有一个请求重新计算；
+     * 部分结果同样缓存，但只在 library.cache.statistics-partial-ttl 内有效，由调用方通过 isStalePartial 判断后重新计算
      */
+    @Cacheable(value = "statistics", key = "'report'", sync = true)
     public Map<String, Object> getFullStatisticsReport() {
-        Map<String, Object> report = new HashMap<>();
+        Map<String, Long> timings = new ConcurrentHashMap<>();
+        Map<String, Section> sections = new LinkedHashMap<>();
         
-        // 总体统计
-        report.put("overall", getOverallStatistics());
+        // 按状态统计（同时用于总体统计）
+        sections.put("byStatus", submit("byStatus", this::getBorrowStatisticsByStatus, new HashMap<String, Long>(), timings));
         
         // 最受欢迎的图书（前10）
-        report.put("topBooks", getTopBorrowedBooks(10));
+        sections.put("topBooks", submit("topBooks", () -> getTopBorrowedBooks(10), new ArrayList<>(), timings));
         
         // 最活跃的用户（前10）
-        report.put("topUsers", getTopActiveUsers(10));
+        sections.put("topUsers", submit("topUsers", () -> getTopActiveUsers(10), new ArrayList<>(), timings));
         
-        // 按状态统计
-        report.put("byStatus", getBorrowStatisticsByStatus());
+        // 近期热门（最近一小时 / 一天 / 一周，来自内存草图）
+        sections.put("trending", submit("trending", trendingService::getAllTrending, null, timings));
         
         // 按分类统计
-        report.put("byCategory", getBorrowStatisticsByCategory());
+        sections.put("byCategory", submit("byCategory", this::getBorrowStatisticsByCategory, new ArrayList<>(), timings));
         
         // 按日期统计（最近30天）
-        report.put("byDate", getBorrowStatisticsByDate(30));
+        sections.put("byDate", submit("byDate", () -> getBorrowStatisticsByDate(30), new ArrayList<>(), timings));
         
         // 按月份统计（最近12个月）
-        report.put("byMonth", getBorrowStatisticsByMonth(12));
+        sections.put("byMonth", submit("byMonth", () -> getBorrowStatisticsByMonth(12), new ArrayList<>(), timings));
+        
+        // 各部分同时开始，共用同一个截止时间即为每部分的超时时间
+        long deadline = System.nanoTime() + sectionTimeout.toNanos();
+        Map<String, Object> report = new HashMap<>();
+        List<String> failedSections = new ArrayList<>();
+        for (Map.Entry<String, Section> entry : sections.entrySet()) {
+            String name = entry.getKey();
+            Section section = entry.getValue();
+            try {
+                report.put(name, section.future().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                section.future().cancel(true);
+                logger.warn("统计报表 {} 超过 {} ms 未完成，返回部分结果", name, sectionTimeout.toMillis());
+                timings.putIfAbsent(name, sectionTimeout.toMillis());
+                failedSections.add(name);
+                report.put(name, section.fallback());
+            } catch (ExecutionException e) {
+                logger.error("统计报表 {} 查询失败，返回部分结果: {}", name, e.getCause().getMessage(), e.getCause());
+                failedSections.add(name);
+                report.put(name, section.fallback());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                section.future().cancel(true);
+                failedSections.add(name);
+                report.put(name, section.fallback());
+            }
+        }
         
+        // 总体统计（由按状态统计推导，状态查询失败时不显示）
+        @SuppressWarnings("unchecked")
+        Map<String, Long> byStatus = (Map<String, Long>) report.get("byStatus");
+        report.put("overall", failedSections.contains("byStatus") ? null : buildOverallStatistics(byStatus));
+        
+        Map<String, Long> sectionTimings = new LinkedHashMap<>();
+        for (String name : sections.keySet()) {
+            sectionTimings.put(name, timings.get(name));
+        }
+        report.put("sectionTimings", sectionTimings);
+        report.put("failedSections", failedSections);
+        report.put("partial", !failedSections.isEmpty());
+        report.put("generatedAt", System.currentTimeMillis());
         return report;
     }
+    
+    /**
+     * 报表是否为超过 library.cache.statistics-partial-ttl 的部分结果（需要移出缓存重新计算）
+     */
+    public boolean isStalePartial(Map<String, Object> report) {
+        if (!Boolean.TRUE.equals(report.get("partial"))) {
+            return false;
+        }
+        Object generatedAt = report.get("generatedAt");
+        return !(generatedAt instanceof Number number)
+                || System.currentTimeMillis() - number.longValue() >= partialTtl.toMillis();
+    }
+    
+    /**
+     * 把过期的部分结果移出缓存，下一次请求重新计算
+     */
+    @CacheEvict(value = "statistics", key = "'report'")
+    public void evictReport() {
+    }
+    
+    /**
+     * 报表的一个部分：查询任务及其失败时的替代结果
+     */
+    private record Section(Future<?> future, Object fallback) {
+    }
+    
+    private Section submit(String name, Supplier<?> query, Object fallback, Map<String, Long> timings) {
+        Future<?> future = reportExecutor.submit(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                return query.get();
+            } finally {
+                timings.put(name, System.currentTimeMillis() - start);
+            }
+        });
+        return new Section(future, fallback);
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        reportExecutor.shutdownNow();
+    }
 }
@@ -0,0 +1,244 @@
+package com.library.service;
+
+import com.library.entity.Book;
+import com.library.event.BookBorrowedEvent;
+import com.library.repository.BookRepository;
+import com.library.repository.BorrowHistoryRepository;
+import com.library.util.SpaceSavingSketch;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * “近期热门”图书排行（最近一小时 / 一天 / 一周）
+ * 借阅事件写入三组轮转时间桶：小时窗口为 12 个 5 分钟桶，天窗口为 24 个 1 小时桶，周窗口为 7 个 1 天桶；
+ * 每个桶是一个 Space-Saving 草图（library.trending.capacity 个计数器），过期的桶在下次写入时清空复用。
+ * 定时任务把窗口内的桶合并后取前 K 名，连同书名一起生成快照；查询直接返回快照，不访问数据库。
+ * 窗口包含当前未满的桶，因此实际覆盖的时长在 (窗口 - 一个桶, 窗口] 之间。
+ * 启动时用热表中最近一周的借阅记录预填，之后的借阅由事件实时计入
+ */
+@Service
+public class TrendingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrendingService.class);
+
+    private static final int SEED_BATCH_SIZE = 5000;
+
+    // 没有新借阅时，快照至少按该间隔刷新一次，让过期的桶移出窗口
+    private static final long IDLE_REFRESH_MS = 60_000;
+
+    public static final String HOUR = "hour";
+    public static final String DAY = "day";
+    public static final String WEEK = "week";
+
+    @Autowired
+    private BorrowHistoryRepository borrowHistoryRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Value("${library.trending.capacity:500}")
+    private int capacity;
+
+    @Value("${library.trending.top-k:10}")
+    private int topK;
+
+    // 在 init 中创建后不再修改
+    private final Map<String, Window> windows = new LinkedHashMap<>();
+
+    // 快照发布后不再修改，对外返回副本（报表结果会序列化进缓存）
+    private volatile Map<String, List<Map<String, Object>>> snapshot = Collections.emptyMap();
+    private volatile LocalDateTime snapshotAt;
+
+    private final AtomicLong events = new AtomicLong();
+    private long eventsAtSnapshot = -1;
+    private long lastRefresh;
+
+    /**
+     * 一个时间窗口：bucketCount 个长度为 bucketMillis 的桶组成的环
+     */
+    private final class Window {
+        final long bucketMillis;
+        final SpaceSavingSketch[] buckets;
+        // 每个槽位当前保存的桶编号（时间戳 / bucketMillis），-1 表示空
+        final long[] epochs;
+
+        Window(long bucketMillis, int bucketCount) {
+            this.bucketMillis = bucketMillis;
+            this.buckets = new SpaceSavingSketch[bucketCount];
+            this.epochs = new long[bucketCount];
+            for (int i = 0; i < bucketCount; i++) {
+                buckets[i] = new SpaceSavingSketch(capacity);
+                epochs[i] = -1;
+            }
+        }
+
+        synchronized void offer(long bookId, long timestamp, long now) {
+            long epoch = timestamp / bucketMillis;
+            long current = now / bucketMillis;
+            if (epoch > current || epoch <= current - buckets.length) {
+                return;
+            }
+            int slot = (int) (epoch % buckets.length);
+            if (epochs[slot] != epoch) {
+                if (epochs[slot] > epoch) {
+                    return;
+                }
+                buckets[slot].clear();
+                epochs[slot] = epoch;
+            }
+            buckets[slot].offer(bookId);
+        }
+
+        synchronized SpaceSavingSketch merged(long now) {
+            long current = now / bucketMillis;
+            SpaceSavingSketch merged = new SpaceSavingSketch(capacity);
+            for (int i = 0; i < buckets.length; i++) {
+                if (epochs[i] > current - buckets.length && epochs[i] <= current) {
+                    merged.merge(buckets[i]);
+                }
+            }
+            return merged;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        windows.put(HOUR, new Window(5 * 60_000L, 12));
+        windows.put(DAY, new Window(60 * 60_000L, 24));
+        windows.put(WEEK, new Window(24 * 60 * 60_000L, 7));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void seedOnStartup() {
+        long start = System.currentTimeMillis();
+        LocalDateTime since = LocalDateTime.now().minusDays(7);
+        long seeded = 0;
+        try {
+            long lastId = 0;
+            List<long[]> rows = borrowHistoryRepository.findBookBorrowTimesAfter(since, lastId, SEED_BATCH_SIZE);
+            while (!rows.isEmpty()) {
+                for (long[] row : rows) {
+                    lastId = row[0];
+                    offer(row[1], row[2], start);
+                    seeded++;
+                }
+                rows = borrowHistoryRepository.findBookBorrowTimesAfter(since, lastId, SEED_BATCH_SIZE);
+            }
+            logger.info("近期热门排行预填完成：{} 条借阅记录，耗时 {} ms", seeded, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            logger.error("近期热门排行预填失败，只统计启动后的借阅: {}", e.getMessage(), e);
+        }
+        refresh();
+    }
+
+    /**
+     * 借阅提交后计入（无事务时立即计入）
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBorrowed(BookBorrowedEvent event) {
+        if (event.bookId() == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        offer(event.bookId(), now, now);
+        events.incrementAndGet();
+    }
+
+    private void offer(long bookId, long timestamp, long now) {
+        for (Window window : windows.values()) {
+            window.offer(bookId, timestamp, now);
+        }
+    }
+
+    /**
+     * 重新合并各窗口并生成快照；没有新借阅时按 IDLE_REFRESH_MS 间隔刷新
+     */
+    @Scheduled(fixedDelayString = "${library.trending.refresh-interval:5000}")
+    public synchronized void scheduledRefresh() {
+        long now = System.currentTimeMillis();
+        if (events.get() == eventsAtSnapshot && now - lastRefresh < IDLE_REFRESH_MS) {
+            return;
+        }
+        refresh();
+    }
+
+    private synchronized void refresh() {
+        long now = System.currentTimeMillis();
+        eventsAtSnapshot = events.get();
+        lastRefresh = now;
+
+        Map<String, List<SpaceSavingSketch.Entry>> tops = new LinkedHashMap<>();
+        List<Long> ids = new ArrayList<>();
+        for (Map.Entry<String, Window> entry : windows.entrySet()) {
+            List<SpaceSavingSketch.Entry> top = entry.getValue().merged(now).top(topK);
+            tops.put(entry.getKey(), top);
+            top.forEach(item -> ids.add(item.item()));
+        }
+
+        // 书名在生成快照时一次性加载，查询时不再访问数据库
+        Map<Long, Book> books = new HashMap<>();
+        if (!ids.isEmpty()) {
+            for (Book book : bookRepository.findAllById(ids.stream().distinct().toList())) {
+                books.put(book.getId(), book);
+            }
+        }
+
+        Map<String, List<Map<String, Object>>> next = new LinkedHashMap<>();
+        tops.forEach((name, top) -> {
+            List<Map<String, Object>> items = new ArrayList<>();
+            for (SpaceSavingSketch.Entry item : top) {
+                Book book = books.get(item.item());
+                if (book == null) {
+                    continue;
+                }
+                Map<String, Object> stat = new HashMap<>();
+                stat.put("bookId", book.getId());
+                stat.put("title", book.getTitle());
+                stat.put("author", book.getAuthor());
+                stat.put("category", book.getCategory());
+                stat.put("borrowCount", item.count());
+                // 草图估计值可能偏高，count - error 为真实次数下界
+                stat.put("error", item.error());
+                items.add(stat);
+            }
+            next.put(name, items);
+        });
+        snapshot = next;
+        snapshotAt = LocalDateTime.now();
+    }
+
+    /**
+     * 指定窗口（hour / day / week）的热门图书，按借阅次数从高到低
+     */
+    public List<Map<String, Object>> getTrending(String window, int limit) {
+        List<Map<String, Object>> items = snapshot.getOrDefault(window, Collections.emptyList());
+        return new ArrayList<>(items.subList(0, Math.min(limit, items.size())));
+    }
+
+    /**
+     * 全部窗口的热门图书及快照时间
+     */
+    public Map<String, Object> getAllTrending() {
+        Map<String, Object> result = new HashMap<>();
+        snapshot.forEach((name, items) -> result.put(name, new ArrayList<>(items)));
+        result.put("updatedAt", snapshotAt);
+        return result;
+    }
+}
@@ -0,0 +1,47 @@
+package com.library.util;
+
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.function.Function;
+
+/**
+ * 分页游标编解码
+ * 游标对前端是不透明的字符串，内部为以 | 分隔的排序键经 Base64 URL 编码
+ */
+public final class CursorUtil {
+
+    private CursorUtil() {
+    }
+
+    public static String encode(Object... parts) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                sb.append('|');
+            }
+            sb.append(parts[i]);
+        }
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解码游标并解析排序键
+     * @param parser 将各部分解析为排序键，如 Long.parseLong、LocalDateTime.parse
+     * @return 解析结果；游标为空、被篡改或排序键无法解析时返回 null，调用方按首页处理
+     */
+    public static <T> T decode(String cursor, int expectedParts, Function<String[], T> parser) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", -1);
+            return parts.length == expectedParts ? parser.apply(parts) : null;
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            // NumberFormatException 是 IllegalArgumentException 的子类
+            return null;
+        }
+    }
+}
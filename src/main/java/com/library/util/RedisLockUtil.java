@@ -0,0 +1,40 @@
+package com.library.util;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于 Redis 的简单分布式锁，用于保证定时任务在多实例部署时只在一个节点执行
+ * 加锁使用 SET NX PX，解锁时校验持有者令牌，避免误删其他节点的锁
+ */
+@Component
+public class RedisLockUtil {
+
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    @Autowired
+    private RedisTemplate<String, String> redisTemplate;
+
+    /**
+     * 尝试加锁
+     * @return 加锁成功返回持有者令牌，锁已被占用返回 null；Redis 不可用时抛出异常
+     */
+    public String tryLock(String key, Duration ttl) {
+        String token = UUID.randomUUID().toString();
+        Boolean locked = redisTemplate.opsForValue().setIfAbsent(key, token, ttl.toMillis(), TimeUnit.MILLISECONDS);
+        return Boolean.TRUE.equals(locked) ? token : null;
+    }
+
+    public void unlock(String key, String token) {
+        redisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(key), token);
+    }
+}
@@ -0,0 +1,198 @@
+package com.library.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving 频繁项草图（Metwally 等，2005）
+ * 只保留 capacity 个计数器：新元素在计数器已满时替换计数最小的元素，继承其计数并记为误差。
+ * 保证：任一元素的估计值不低于真实值，且高估不超过 总数/capacity；
+ * 真实次数超过 总数/capacity 的元素一定在草图中。
+ * 计数器按计数组织为最小堆，单次计数 O(log capacity)。非线程安全
+ */
+public class SpaceSavingSketch {
+
+    /**
+     * @param count 估计次数（上界）
+     * @param error 可能的高估量，count - error 为真实次数的下界
+     */
+    public record Entry(long item, long count, long error) {
+    }
+
+    private final int capacity;
+    private final long[] items;
+    private final long[] counts;
+    private final long[] errors;
+    private final Map<Long, Integer> positions;
+    private int size;
+    private long total;
+
+    public SpaceSavingSketch(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.items = new long[this.capacity];
+        this.counts = new long[this.capacity];
+        this.errors = new long[this.capacity];
+        this.positions = new HashMap<>(this.capacity * 2);
+    }
+
+    public void offer(long item) {
+        offer(item, 1, 0);
+    }
+
+    /**
+     * 计入 count 次；error 为该次数本身携带的误差（合并其他草图时使用）
+     */
+    public void offer(long item, long count, long error) {
+        total += count;
+        Integer position = positions.get(item);
+        if (position != null) {
+            counts[position] += count;
+            errors[position] += error;
+            siftDown(position);
+            return;
+        }
+        if (size < capacity) {
+            int i = size++;
+            items[i] = item;
+            counts[i] = count;
+            errors[i] = error;
+            positions.put(item, i);
+            siftUp(i);
+            return;
+        }
+        // 替换计数最小的元素（堆顶），新元素继承其计数作为误差
+        long min = counts[0];
+        positions.remove(items[0]);
+        items[0] = item;
+        counts[0] = min + count;
+        errors[0] = min + error;
+        positions.put(item, 0);
+        siftDown(0);
+    }
+
+    /**
+     * 合并另一个草图（用于把多个时间桶合成一个窗口），按 Agarwal 等（2012）的可合并摘要方法：
+     * 一方未记录的元素，其在该方的真实次数不超过该方的最小计数（未满时为 0），
+     * 因此以该最小计数补入估计值和误差，合并后保留估计值最高的 capacity 个元素。
+     * 合并结果仍满足：估计值不低于真实值，高估不超过 合并总数/capacity
+     */
+    public void merge(SpaceSavingSketch other) {
+        long thisMin = minCount();
+        long otherMin = other.minCount();
+        Map<Long, long[]> combined = new HashMap<>((size + other.size) * 2);
+        for (int i = 0; i < size; i++) {
+            combined.put(items[i], new long[]{counts[i] + otherMin, errors[i] + otherMin});
+        }
+        for (int i = 0; i < other.size; i++) {
+            long[] entry = combined.get(other.items[i]);
+            if (entry == null) {
+                combined.put(other.items[i], new long[]{other.counts[i] + thisMin, other.errors[i] + thisMin});
+            } else {
+                // 己方计数已补入对方的最小计数，换成对方的实际计数
+                entry[0] += other.counts[i] - otherMin;
+                entry[1] += other.errors[i] - otherMin;
+            }
+        }
+
+        List<Map.Entry<Long, long[]>> entries = new ArrayList<>(combined.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+        positions.clear();
+        size = 0;
+        for (Map.Entry<Long, long[]> entry : entries) {
+            if (size == capacity) {
+                break;
+            }
+            items[size] = entry.getKey();
+            counts[size] = entry.getValue()[0];
+            errors[size] = entry.getValue()[1];
+            positions.put(entry.getKey(), size);
+            siftUp(size++);
+        }
+        total += other.total;
+    }
+
+    /**
+     * 未记录元素真实次数的上界：计数器已满时为最小计数，未满时为 0
+     */
+    private long minCount() {
+        return size < capacity ? 0 : counts[0];
+    }
+
+    /**
+     * 估计次数最高的 k 个元素，按估计次数从高到低
+     */
+    public List<Entry> top(int k) {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(counts[b], counts[a]));
+        List<Entry> result = new ArrayList<>(Math.min(k, size));
+        for (int i = 0; i < size && i < k; i++) {
+            int j = order[i];
+            result.add(new Entry(items[j], counts[j], errors[j]));
+        }
+        return result;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void clear() {
+        positions.clear();
+        size = 0;
+        total = 0;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (counts[parent] <= counts[i]) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) {
+                break;
+            }
+            int smallest = left + 1 < size && counts[left + 1] < counts[left] ? left + 1 : left;
+            if (counts[i] <= counts[smallest]) {
+                break;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        long item = items[a];
+        long count = counts[a];
+        long error = errors[a];
+        items[a] = items[b];
+        counts[a] = counts[b];
+        errors[a] = errors[b];
+        items[b] = item;
+        counts[b] = count;
+        errors[b] = error;
+        positions.put(items[a], a);
+        positions.put(items[b], b);
+    }
+}
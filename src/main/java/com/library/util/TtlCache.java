@@ -0,0 +1,65 @@
+package com.library.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 进程内定时过期缓存
+ * 用于缓存计算代价较高、允许短暂不准确的值（如列表总数）
+ */
+public class TtlCache<K, V> {
+
+    private static final int CLEANUP_THRESHOLD = 10000;
+
+    private record Entry<V>(V value, long expiresAt) {
+    }
+
+    private final long ttlMillis;
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+
+    public TtlCache(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    public V get(K key, Supplier<V> loader) {
+        long now = System.currentTimeMillis();
+        Entry<V> entry = entries.get(key);
+        if (entry != null && entry.expiresAt() > now) {
+            return entry.value();
+        }
+        V value = loader.get();
+        if (entries.size() >= CLEANUP_THRESHOLD) {
+            entries.values().removeIf(e -> e.expiresAt() <= now);
+        }
+        entries.put(key, new Entry<>(value, now + ttlMillis));
+        return value;
+    }
+
+    /**
+     * 读取未过期的缓存值，不存在或已过期返回 null
+     */
+    public V getIfPresent(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt() <= System.currentTimeMillis()) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.value();
+    }
+
+    public void put(K key, V value) {
+        long now = System.currentTimeMillis();
+        if (entries.size() >= CLEANUP_THRESHOLD) {
+            entries.values().removeIf(e -> e.expiresAt() <= now);
+        }
+        entries.put(key, new Entry<>(value, now + ttlMillis));
+    }
+
+    public void invalidate(K key) {
+        entries.remove(key);
+    }
+}
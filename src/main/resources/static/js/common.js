@@ -46,6 +46,22 @@ function ajaxRequest(url, method, data, callback) {
     }
 }
 
+// 幂等键：同一页面内对同一操作目标复用同一个键，双击或重试时服务端只执行一次
+const idempotencyKeys = {};
+function idempotencyKeyFor(target) {
+    if (!idempotencyKeys[target]) {
+        idempotencyKeys[target] = (window.crypto && crypto.randomUUID)
+            ? crypto.randomUUID()
+            : Date.now().toString(36) + Math.random().toString(36).substring(2);
+    }
+    return idempotencyKeys[target];
+}
+
+// 业务失败后丢弃幂等键，用户再次操作时按新请求处理
+function clearIdempotencyKey(target) {
+    delete idempotencyKeys[target];
+}
+
 // 表单序列化
 function serializeForm(form) {
     const formData = new FormData(form);
@@ -0,0 +1,129 @@
+package com.library.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 加载合并：同一键大量并发未命中时只加载一次
+ * L2 以进程内 ConcurrentMapCache 代替 Redis
+ */
+class TieredCacheTest {
+
+    private static final int CALLERS = 500;
+
+    private TieredCache cache;
+    private final ConcurrentHashMap<Object, AtomicInteger> loadsByKey = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        cache = new TieredCache("books", new ConcurrentMapCache("books"),
+                TieredCache.newLocal(1000, Duration.ofMinutes(1)),
+                Duration.ofMinutes(10), 0, mock(TieredCacheManager.class));
+    }
+
+    @Test
+    void concurrentMissesLoadOncePerKey() throws Exception {
+        List<String> results = getConcurrently(i -> "book:1");
+
+        assertThat(loadsByKey.get("book:1")).hasValue(1);
+        assertThat(results).hasSize(CALLERS).containsOnly("loaded book:1");
+    }
+
+    @Test
+    void concurrentMissesOnManyKeysLoadEachKeyOnce() throws Exception {
+        List<String> results = getConcurrently(i -> "book:" + (i % 10));
+
+        assertThat(loadsByKey).hasSize(10);
+        assertThat(loadsByKey.values()).allSatisfy(count -> assertThat(count).hasValue(1));
+        assertThat(results).hasSize(CALLERS);
+        assertThat(cache.getStats().get("loads")).isEqualTo(10L);
+    }
+
+    @Test
+    void putAllKeepsFresherEntriesAndSkipsEvictedKeys() {
+        TieredCache.EvictionTracker tracker = cache.trackEvictions();
+        // 预热读取数据库之后：book:1 被请求加载了新值，book:2 被编辑删除
+        cache.put("book:1", "fresh book:1");
+        cache.evict("book:2");
+
+        int written = cache.putAll(Map.of("book:1", "stale book:1", "book:2", "stale book:2",
+                "book:3", "warm book:3"), tracker);
+        cache.stopTracking(tracker);
+
+        assertThat(written).isEqualTo(1);
+        assertThat(cache.get("book:1", String.class)).isEqualTo("fresh book:1");
+        assertThat(cache.get("book:2")).isNull();
+        assertThat(cache.get("book:3", String.class)).isEqualTo("warm book:3");
+    }
+
+    @Test
+    void stoppedTrackerNoLongerRecordsEvictions() {
+        TieredCache.EvictionTracker tracker = cache.trackEvictions();
+        cache.stopTracking(tracker);
+        cache.evict("book:4");
+
+        assertThat(cache.putAll(Map.of("book:4", "warm book:4"), tracker)).isEqualTo(1);
+    }
+
+    @Test
+    void nullValuesAreRejectedInsteadOfCached() {
+        assertThatThrownBy(() -> cache.put("book:5", null)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(cache.get("book:5")).isNull();
+
+        // 加载结果为 null 时不缓存，下次仍会加载
+        String missing = cache.get("book:6", () -> null);
+        String loaded = cache.get("book:6", () -> "loaded");
+        assertThat(missing).isNull();
+        assertThat(loaded).isEqualTo("loaded");
+    }
+
+    private interface KeyFor {
+        String key(int index);
+    }
+
+    private List<String> getConcurrently(KeyFor keyFor) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(64);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                String key = keyFor.key(i);
+                Callable<String> loader = () -> {
+                    loadsByKey.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+                    // 模拟数据库查询耗时，放大并发窗口
+                    Thread.sleep(20);
+                    return "loaded " + key;
+                };
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return cache.get(key, loader);
+                }));
+            }
+            start.countDown();
+            List<String> results = new ArrayList<>();
+            for (Future<String> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.library.controller;
+
+import com.library.entity.User;
+import com.library.service.BorrowService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * 批量借阅/归还的数量上限在进入加锁事务之前检查
+ */
+class BorrowControllerTest {
+
+    private BorrowController controller;
+    private BorrowService borrowService;
+
+    @BeforeEach
+    void setUp() {
+        borrowService = mock(BorrowService.class);
+        controller = new BorrowController();
+        ReflectionTestUtils.setField(controller, "borrowService", borrowService);
+        ReflectionTestUtils.setField(controller, "maxBooks", 5);
+        ReflectionTestUtils.setField(controller, "deskBatchLimit", 100);
+    }
+
+    @Test
+    void checkoutLongerThanMaxBooksIsRejected() {
+        Map<String, Object> result = controller.checkout(ids(6), session(User.Role.USER));
+
+        assertThat(result.get("success")).isEqualTo(false);
+        verify(borrowService, never()).borrowBooks(anyLong(), anyList());
+    }
+
+    @Test
+    void checkoutWithinMaxBooksReachesService() {
+        controller.checkout(ids(5), session(User.Role.USER));
+
+        verify(borrowService).borrowBooks(7L, ids(5));
+    }
+
+    @Test
+    void deskBatchLongerThanLimitIsRejected() {
+        Map<String, Object> result = controller.returnBooks(ids(101), session(User.Role.ADMIN));
+
+        assertThat(result.get("success")).isEqualTo(false);
+        verify(borrowService, never()).returnBooks(anyList(), any());
+    }
+
+    @Test
+    void deskBatchWithinLimitReachesService() {
+        controller.returnBooks(ids(100), session(User.Role.ADMIN));
+
+        verify(borrowService).returnBooks(ids(100), null);
+    }
+
+    private static List<Long> ids(int count) {
+        return LongStream.rangeClosed(1, count).boxed().toList();
+    }
+
+    private static MockHttpSession session(User.Role role) {
+        User user = new User();
+        user.setId(7L);
+        user.setRole(role);
+        MockHttpSession session = new MockHttpSession();
+        session.setAttribute("user", user);
+        return session;
+    }
+}
@@ -0,0 +1,74 @@
+package com.library.controller;
+
+import com.library.entity.User;
+import com.library.service.StatisticsService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 统计接口：部分结果照常返回给调用方，过期的部分结果移出缓存后重新计算
+ */
+class StatisticsControllerTest {
+
+    private StatisticsController controller;
+    private StatisticsService statisticsService;
+    private MockHttpSession session;
+
+    @BeforeEach
+    void setUp() {
+        statisticsService = mock(StatisticsService.class);
+        controller = new StatisticsController();
+        ReflectionTestUtils.setField(controller, "statisticsService", statisticsService);
+
+        User admin = new User();
+        admin.setId(1L);
+        admin.setRole(User.Role.ADMIN);
+        session = new MockHttpSession();
+        session.setAttribute("user", admin);
+    }
+
+    @Test
+    void freshPartialReportIsReturnedFromCache() {
+        Map<String, Object> partial = report(true);
+        when(statisticsService.getFullStatisticsReport()).thenReturn(partial);
+        when(statisticsService.isStalePartial(partial)).thenReturn(false);
+
+        Map<String, Object> result = controller.getStatisticsData(session);
+
+        assertThat(result).isSameAs(partial);
+        verify(statisticsService, never()).evictReport();
+    }
+
+    @Test
+    void stalePartialReportIsEvictedAndRecomputedOnce() {
+        Map<String, Object> stale = report(true);
+        Map<String, Object> fresh = report(false);
+        when(statisticsService.getFullStatisticsReport()).thenReturn(stale).thenReturn(stale).thenReturn(fresh);
+        when(statisticsService.isStalePartial(stale)).thenReturn(true);
+        when(statisticsService.isStalePartial(fresh)).thenReturn(false);
+
+        Map<String, Object> result = controller.getStatisticsData(session);
+
+        assertThat(result).isSameAs(fresh);
+        verify(statisticsService, times(1)).evictReport();
+    }
+
+    private static Map<String, Object> report(boolean partial) {
+        Map<String, Object> report = new HashMap<>();
+        report.put("partial", partial);
+        report.put("generatedAt", System.currentTimeMillis());
+        return report;
+    }
+}
@@ -0,0 +1,29 @@
+package com.library.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 封顶总数：计数到 上限+1 才显示为 "上限+"
+ */
+class CappedPageTest {
+
+    @Test
+    void totalEqualToCapIsExact() {
+        CappedPage<String> page = new CappedPage<>(List.of(), 0, 20, true, 1000, 1000);
+
+        assertThat(page.isTotalCapped()).isFalse();
+        assertThat(page.getTotalLabel()).isEqualTo("1000");
+    }
+
+    @Test
+    void totalAboveCapIsLabelledAsCapped() {
+        CappedPage<String> page = new CappedPage<>(List.of(), 0, 20, true, 1001, 1000);
+
+        assertThat(page.isTotalCapped()).isTrue();
+        assertThat(page.getTotalLabel()).isEqualTo("1000+");
+    }
+}
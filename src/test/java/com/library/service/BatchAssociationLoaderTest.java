@@ -0,0 +1,152 @@
+package com.library.service;
+
+import com.library.entity.Book;
+import com.library.entity.BorrowRecord;
+import com.library.entity.User;
+import com.library.repository.BookRepository;
+import com.library.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 关联对象批量加载的查询次数：每页固定最多两条查询（用户、图书各一次 findAllById），与页大小无关
+ * 每次 findAllById 对应一条 IN 查询，以仓库调用次数计数
+ */
+class BatchAssociationLoaderTest {
+
+    private BatchAssociationLoader loader;
+    private UserRepository userRepository;
+    private BookRepository bookRepository;
+    private final List<Set<Long>> userQueries = new ArrayList<>();
+    private final List<Set<Long>> bookQueries = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        userRepository = mock(UserRepository.class);
+        bookRepository = mock(BookRepository.class);
+        when(userRepository.findAllById(any())).thenAnswer(invocation -> {
+            Set<Long> ids = toSet(invocation.getArgument(0));
+            userQueries.add(ids);
+            return ids.stream().map(BatchAssociationLoaderTest::newUser).toList();
+        });
+        when(bookRepository.findAllById(any())).thenAnswer(invocation -> {
+            Set<Long> ids = toSet(invocation.getArgument(0));
+            bookQueries.add(ids);
+            return ids.stream().map(BatchAssociationLoaderTest::newBook).toList();
+        });
+
+        loader = new BatchAssociationLoader();
+        ReflectionTestUtils.setField(loader, "userRepository", userRepository);
+        ReflectionTestUtils.setField(loader, "bookRepository", bookRepository);
+    }
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void adminPageIsFilledWithTwoQueries() {
+        // /borrow/admin 的最大页：100 条记录，40 位读者、60 本书
+        List<BorrowRecord> page = records(0, 100, 40, 60);
+
+        loader.fillBorrowRecords(page);
+
+        assertThat(userQueries).hasSize(1);
+        assertThat(bookQueries).hasSize(1);
+        assertThat(userQueries.get(0)).hasSize(40);
+        assertThat(bookQueries.get(0)).hasSize(60);
+        verify(userRepository, never()).findById(anyLong());
+        verify(bookRepository, never()).findById(anyLong());
+        assertThat(page).allSatisfy(record -> {
+            assertThat(record.getUser().getId()).isEqualTo(record.getUserId());
+            assertThat(record.getBook().getId()).isEqualTo(record.getBookId());
+        });
+    }
+
+    @Test
+    void queryCountDoesNotGrowWithPageSize() {
+        for (int size : new int[]{1, 10, 50, 100}) {
+            userQueries.clear();
+            bookQueries.clear();
+
+            loader.fillBorrowRecords(records(0, size, size, size));
+
+            assertThat(userQueries).as("page size %d", size).hasSize(1);
+            assertThat(bookQueries).as("page size %d", size).hasSize(1);
+        }
+    }
+
+    @Test
+    void sameRequestOnlyQueriesIdsNotYetLoaded() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+
+        loader.fillBorrowRecords(records(0, 20, 10, 10));
+        loader.fillBorrowRecords(records(0, 20, 10, 10));
+        loader.fillBorrowRecords(records(5, 20, 10, 10));
+
+        assertThat(userQueries).hasSize(2);
+        assertThat(bookQueries).hasSize(2);
+        assertThat(userQueries.get(1)).containsExactlyInAnyOrder(10L, 11L, 12L, 13L, 14L);
+        verify(bookRepository, times(2)).findAllById(any());
+    }
+
+    @Test
+    void emptyPageRunsNoQuery() {
+        loader.fillBorrowRecords(List.of());
+
+        assertThat(userQueries).isEmpty();
+        assertThat(bookQueries).isEmpty();
+    }
+
+    /**
+     * count 条记录，读者ID为 offset..offset+users-1 循环，图书ID为 offset..offset+books-1 循环
+     */
+    private static List<BorrowRecord> records(int offset, int count, int users, int books) {
+        List<BorrowRecord> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            BorrowRecord record = new BorrowRecord();
+            record.setId((long) i + 1);
+            record.setUserId((long) offset + i % users);
+            record.setBookId((long) offset + i % books);
+            records.add(record);
+        }
+        return records;
+    }
+
+    private static Set<Long> toSet(Iterable<Long> ids) {
+        return StreamSupport.stream(ids.spliterator(), false).collect(Collectors.toSet());
+    }
+
+    private static User newUser(Long id) {
+        User user = new User();
+        user.setId(id);
+        return user;
+    }
+
+    private static Book newBook(Long id) {
+        Book book = new Book();
+        book.setId(id);
+        return book;
+    }
+}
@@ -0,0 +1,184 @@
+package com.library.service;
+
+import com.library.event.BookInventoryEvent;
+import com.library.repository.BookRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 可借册数计数的陈旧上界：回填与并发借阅交错时，计数不会停留在已提交变更之前的值
+ * Redis 以加锁的 Map 模拟，两个 Lua 脚本按原语义原子执行；借阅按
+ * “提交前写标记 → 数据库扣减（提交）→ 提交后 INCRBY”的顺序调用
+ */
+class BookAvailabilityServiceTest {
+
+    private static final long BOOK_ID = 9L;
+    private static final String COUNTER = "book:available:" + BOOK_ID;
+    private static final String TOUCHED = "book:available:touched:" + BOOK_ID;
+
+    private BookAvailabilityService service;
+    private BookRepository bookRepository;
+    private final Map<String, String> redis = new ConcurrentHashMap<>();
+    private final AtomicInteger databaseStock = new AtomicInteger();
+    private final AtomicInteger completedBorrows = new AtomicInteger();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        bookRepository = mock(BookRepository.class);
+        when(bookRepository.findAvailableCopiesById(BOOK_ID)).thenAnswer(invocation -> databaseStock.get());
+
+        RedisTemplate<String, String> redisTemplate = mock(RedisTemplate.class);
+        ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.get(anyString())).thenAnswer(invocation -> redis.get(invocation.<String>getArgument(0)));
+        doAnswer(invocation -> redis.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(valueOperations).set(anyString(), anyString(), anyLong(), any());
+        when(redisTemplate.delete(anyString())).thenAnswer(invocation -> redis.remove(invocation.<String>getArgument(0)) != null);
+        when(redisTemplate.execute(any(RedisScript.class), any(List.class), any(Object[].class)))
+                .thenAnswer(invocation -> runScript(invocation.getArgument(0), invocation.getArgument(1),
+                        (Object[]) invocation.getRawArguments()[2]));
+
+        HotInventoryService hotInventoryService = mock(HotInventoryService.class);
+        when(hotInventoryService.getHotAvailable(anyLong())).thenReturn(null);
+        service = new BookAvailabilityService();
+        ReflectionTestUtils.setField(service, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(service, "bookRepository", bookRepository);
+        ReflectionTestUtils.setField(service, "hotInventoryService", hotInventoryService);
+        ReflectionTestUtils.setField(service, "ttlSeconds", 300L);
+    }
+
+    @Test
+    void fillReadBeforeCommitIsDiscarded() {
+        databaseStock.set(5);
+        // 读取数据库之后、回填之前，一笔借阅完成提交并执行了 INCRBY（计数尚不存在，未生效）
+        when(bookRepository.findAvailableCopiesById(BOOK_ID)).thenAnswer(invocation -> {
+            int stale = databaseStock.get();
+            borrow();
+            return stale;
+        });
+
+        assertThat(service.getAvailableCopies(BOOK_ID)).isEqualTo(5);
+
+        // 回填被标记拦下，不会留下比数据库多一册的计数
+        assertThat(redis).doesNotContainKey(COUNTER);
+        doAnswer(invocation -> databaseStock.get()).when(bookRepository).findAvailableCopiesById(BOOK_ID);
+        assertThat(service.getAvailableCopies(BOOK_ID)).isEqualTo(4);
+    }
+
+    @Test
+    void fillBeforeBorrowIsAdjustedAfterCommit() {
+        databaseStock.set(5);
+        assertThat(service.getAvailableCopies(BOOK_ID)).isEqualTo(5);
+        assertThat(redis).containsEntry(COUNTER, "5");
+
+        borrow();
+
+        assertThat(service.getAvailableCopies(BOOK_ID)).isEqualTo(4);
+    }
+
+    @Test
+    void markerWrittenBeforeCommitBlocksFillOfPreCommitRead() {
+        databaseStock.set(5);
+        // 借阅已写标记、尚未提交时读取：读到提交前的值，回填被拦下
+        service.markTouched(new BookInventoryEvent(BOOK_ID, -1));
+        assertThat(service.getAvailableCopies(BOOK_ID)).isEqualTo(5);
+        assertThat(redis).doesNotContainKey(COUNTER);
+
+        databaseStock.decrementAndGet();
+        service.onInventoryChanged(new BookInventoryEvent(BOOK_ID, -1));
+        assertThat(service.getAvailableCopies(BOOK_ID)).isEqualTo(4);
+    }
+
+    @Test
+    void concurrentBorrowsAndReadsConvergeToDatabase() throws Exception {
+        int borrows = 100;
+        databaseStock.set(borrows);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Integer>> reads = new ArrayList<>();
+            List<Future<?>> writes = new ArrayList<>();
+            for (int i = 0; i < borrows; i++) {
+                writes.add(executor.submit(() -> {
+                    start.await();
+                    borrow();
+                    return null;
+                }));
+                reads.add(executor.submit(() -> {
+                    start.await();
+                    int floor = borrows - completedBorrows.get();
+                    Integer value = service.getAvailableCopies(BOOK_ID);
+                    // 读取结果不早于读取开始时已完成的借阅
+                    assertThat(value).isLessThanOrEqualTo(floor);
+                    return value;
+                }));
+            }
+            start.countDown();
+            for (Future<?> write : writes) {
+                write.get();
+            }
+            for (Future<Integer> read : reads) {
+                assertThat(read.get()).isBetween(0, borrows);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(databaseStock.get()).isZero();
+        // 全部借阅提交后，留存的计数必须与数据库一致；标记过期后的回填也读到最终值
+        assertThat(redis.get(COUNTER)).isIn(null, "0");
+        redis.remove(TOUCHED);
+        assertThat(service.getAvailableCopies(BOOK_ID)).isZero();
+        assertThat(redis).containsEntry(COUNTER, "0");
+    }
+
+    private void borrow() {
+        BookInventoryEvent event = new BookInventoryEvent(BOOK_ID, -1);
+        service.markTouched(event);
+        databaseStock.decrementAndGet();
+        service.onInventoryChanged(event);
+        completedBorrows.incrementAndGet();
+    }
+
+    private Object runScript(RedisScript<?> script, List<String> keys, Object[] args) {
+        synchronized (redis) {
+            if (script.getScriptAsString().contains("incrby")) {
+                String current = redis.get(keys.get(0));
+                if (current == null) {
+                    return null;
+                }
+                long next = Long.parseLong(current) + Long.parseLong(args[0].toString());
+                redis.put(keys.get(0), String.valueOf(next));
+                return next;
+            }
+            if (redis.containsKey(keys.get(1))) {
+                return 0L;
+            }
+            redis.putIfAbsent(keys.get(0), args[0].toString());
+            return 1L;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.library.service;
+
+import com.library.repository.BookRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 多节点下的存在性过滤：一个节点登记的键经广播同步到其他节点
+ */
+class BookExistenceFilterTest {
+
+    private BookExistenceFilter nodeA;
+    private BookExistenceFilter nodeB;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        BookRepository bookRepository = mock(BookRepository.class);
+        when(bookRepository.count()).thenReturn(2L);
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[]{1L, "978-0-00-000001-1"});
+        rows.add(new Object[]{2L, "978-0-00-000002-2"});
+        when(bookRepository.findKeyRowsAfter(eq(0L), any())).thenReturn(rows);
+        when(bookRepository.findKeyRowsAfter(eq(2L), any())).thenReturn(new ArrayList<>());
+
+        // 模拟 Redis 频道：发布的消息投递给两个节点（发送方自行忽略）
+        RedisTemplate<String, String> redisTemplate = mock(RedisTemplate.class);
+        nodeA = newFilter(bookRepository, redisTemplate);
+        nodeB = newFilter(bookRepository, redisTemplate);
+        doAnswer(invocation -> {
+            DefaultMessage message = new DefaultMessage(BookExistenceFilter.CHANNEL.getBytes(StandardCharsets.UTF_8),
+                    invocation.<String>getArgument(1).getBytes(StandardCharsets.UTF_8));
+            nodeA.onMessage(message, null);
+            nodeB.onMessage(message, null);
+            return 1L;
+        }).when(redisTemplate).convertAndSend(eq(BookExistenceFilter.CHANNEL), anyString());
+
+        nodeA.rebuild();
+        nodeB.rebuild();
+    }
+
+    @Test
+    void keysAddedOnOneNodeAreVisibleOnOthers() {
+        assertThat(nodeB.mightContainIsbn("978-0-00-000003-3")).isFalse();
+
+        nodeA.add(3L, "978-0-00-000003-3");
+
+        assertThat(nodeB.mightContainId(3L)).isTrue();
+        assertThat(nodeB.mightContainIsbn("978-0-00-000003-3")).isTrue();
+        assertThat(nodeB.getStats().get("maxKnownId")).isEqualTo(3L);
+    }
+
+    @Test
+    void idsAboveHighestKnownIdFallThroughToDatabase() {
+        // 未收到广播时，其他节点新增的图书ID大于本节点已知最大ID，放行查库
+        assertThat(nodeB.mightContainId(100L)).isTrue();
+        assertThat(nodeB.getStats().get("passedAboveMaxId")).isEqualTo(1L);
+        assertThat(nodeB.mightContainId(1L)).isTrue();
+    }
+
+    private static BookExistenceFilter newFilter(BookRepository bookRepository,
+                                                 RedisTemplate<String, String> redisTemplate) {
+        BookExistenceFilter filter = new BookExistenceFilter();
+        ReflectionTestUtils.setField(filter, "bookRepository", bookRepository);
+        ReflectionTestUtils.setField(filter, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(filter, "fpp", 0.01);
+        ReflectionTestUtils.setField(filter, "minCapacity", 1000L);
+        return filter;
+    }
+}
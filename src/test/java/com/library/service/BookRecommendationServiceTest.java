@@ -0,0 +1,112 @@
+package com.library.service;
+
+import com.library.event.BookBorrowedEvent;
+import com.library.repository.BorrowHistoryRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 共现推荐：按余弦相似度排序、截取前 K 个并过滤低支持度；同一读者重复借同一本书（含已移出最近窗口的图书）不重复计数
+ */
+class BookRecommendationServiceTest {
+
+    private static final long A = 1, B = 2, C = 3, D = 4;
+
+    @Test
+    void orderedByCosineRatherThanRawCount() {
+        BookRecommendationService service = service(100, 20, 1);
+        borrowCosineFixture(service);
+
+        // cos(A,B)=2/√(4×2)≈0.707，cos(A,D)=1/√(4×1)=0.5，cos(A,C)=3/√(4×11)≈0.452：C 共现次数最多但排在最后
+        assertThat(service.getAlsoBorrowedIds(A, 10)).containsExactly(B, D, C);
+        // 同一相似度在两个方向上一致：cos(B,A)≈0.707 > cos(B,C)=2/√(2×11)≈0.426
+        assertThat(service.getAlsoBorrowedIds(B, 10)).containsExactly(A, C);
+        assertThat(service.getAlsoBorrowedIds(A, 2)).containsExactly(B, D);
+    }
+
+    @Test
+    void topKAndMinSupportLimitTheCachedRow() {
+        BookRecommendationService topOne = service(100, 1, 1);
+        borrowCosineFixture(topOne);
+        BookRecommendationService supported = service(100, 20, 2);
+        borrowCosineFixture(supported);
+
+        assertThat(topOne.getAlsoBorrowedIds(A, 10)).containsExactly(B);
+        // D 与 A 只共现一次，低于最小支持度
+        assertThat(supported.getAlsoBorrowedIds(A, 10)).containsExactly(B, C);
+    }
+
+    @Test
+    void reborrowAfterLeavingWindowIsNotCountedAgain() {
+        // 最近窗口为 2 本：借 C 后 A 移出窗口，再借 A 不应再次计入借阅人数和共现
+        BookRecommendationService windowed = service(2, 20, 1);
+        borrow(windowed, 10, A, B, C, A, B);
+        borrow(windowed, 11, C, B);
+        BookRecommendationService distinct = service(2, 20, 1);
+        borrow(distinct, 10, A, B, C);
+        borrow(distinct, 11, C, B);
+
+        Map<String, Object> stats = windowed.getStats();
+        assertThat(stats.get("records")).isEqualTo(5L);
+        assertThat(stats.get("coOccurrenceEntries")).isEqualTo(distinct.getStats().get("coOccurrenceEntries"));
+        for (long book : new long[]{A, B, C}) {
+            assertThat(windowed.getAlsoBorrowedIds(book, 10)).as("book %d", book)
+                    .containsExactlyElementsOf(distinct.getAlsoBorrowedIds(book, 10));
+        }
+    }
+
+    @Test
+    void eventsAlreadyInHistoryAreNotCountedAgainAfterRebuild() {
+        BorrowHistoryRepository repository = mock(BorrowHistoryRepository.class);
+        List<long[]> archived = List.of(new long[]{1, 10, A}, new long[]{2, 10, B}, new long[]{3, 10, C});
+        when(repository.findUserBookPairsAfter(anyBoolean(), anyLong(), anyInt())).thenReturn(List.of());
+        when(repository.findUserBookPairsAfter(true, 0L, 10000)).thenReturn(archived);
+        BookRecommendationService service = service(2, 20, 1);
+        ReflectionTestUtils.setField(service, "borrowHistoryRepository", repository);
+
+        service.rebuild();
+        // 已在历史中的借阅再次到达（重放、重复投递）不改变矩阵
+        borrow(service, 10, A, B, C, A);
+
+        assertThat(service.getStats().get("records")).isEqualTo(3L);
+        assertThat(service.getAlsoBorrowedIds(C, 10)).containsExactlyInAnyOrder(A, B);
+    }
+
+    /**
+     * A：读者 1~4；B：读者 1、2；C：读者 1~3 及 5~12；D：读者 4
+     */
+    private static void borrowCosineFixture(BookRecommendationService service) {
+        borrow(service, 1, A, B, C);
+        borrow(service, 2, A, B, C);
+        borrow(service, 3, A, C);
+        borrow(service, 4, A, D);
+        for (long user = 5; user <= 12; user++) {
+            borrow(service, user, C);
+        }
+    }
+
+    private static void borrow(BookRecommendationService service, long userId, long... bookIds) {
+        for (long bookId : bookIds) {
+            service.onBorrowed(new BookBorrowedEvent(userId, bookId));
+        }
+    }
+
+    private static BookRecommendationService service(int maxHistory, int topK, int minSupport) {
+        BookRecommendationService service = new BookRecommendationService();
+        ReflectionTestUtils.setField(service, "maxHistory", maxHistory);
+        ReflectionTestUtils.setField(service, "topK", topK);
+        ReflectionTestUtils.setField(service, "minSupport", minSupport);
+        ReflectionTestUtils.setField(service, "batchAssociationLoader", mock(BatchAssociationLoader.class));
+        return service;
+    }
+}
@@ -0,0 +1,177 @@
+package com.library.service;
+
+import com.library.entity.Book;
+import com.library.repository.BookRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.CacheManager;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 图书写入：索引只在事务提交后更新，回滚不留下条目；存在性过滤器在提交前登记；修改总册数以数据库增量更新完成
+ */
+class BookServiceTest {
+
+    private BookService bookService;
+    private BookRepository bookRepository;
+    private BookSearchIndex bookSearchIndex;
+    private BookSuggestIndex bookSuggestIndex;
+    private CategoryFacetIndex categoryFacetIndex;
+    private BookExistenceFilter bookExistenceFilter;
+
+    @BeforeEach
+    void setUp() {
+        bookRepository = mock(BookRepository.class);
+        bookSearchIndex = mock(BookSearchIndex.class);
+        bookSuggestIndex = mock(BookSuggestIndex.class);
+        categoryFacetIndex = mock(CategoryFacetIndex.class);
+        bookExistenceFilter = mock(BookExistenceFilter.class);
+        when(bookRepository.save(any(Book.class))).thenAnswer(invocation -> {
+            Book book = invocation.getArgument(0);
+            if (book.getId() == null) {
+                book.setId(42L);
+            }
+            return book;
+        });
+
+        bookService = new BookService();
+        ReflectionTestUtils.setField(bookService, "bookRepository", bookRepository);
+        ReflectionTestUtils.setField(bookService, "bookSearchIndex", bookSearchIndex);
+        ReflectionTestUtils.setField(bookService, "bookSuggestIndex", bookSuggestIndex);
+        ReflectionTestUtils.setField(bookService, "categoryFacetIndex", categoryFacetIndex);
+        ReflectionTestUtils.setField(bookService, "bookExistenceFilter", bookExistenceFilter);
+        ReflectionTestUtils.setField(bookService, "cacheManager", mock(CacheManager.class));
+        ReflectionTestUtils.setField(bookService, "bookAvailabilityService", mock(BookAvailabilityService.class));
+        ReflectionTestUtils.setField(bookService, "hotInventoryService", mock(HotInventoryService.class));
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    @Test
+    void rolledBackSaveLeavesIndexesUntouched() {
+        Book book = newBook();
+
+        bookService.save(book);
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        verify(bookExistenceFilter).add(42L, "9787000000001");
+        verify(bookSearchIndex, never()).index(any());
+        verify(bookSuggestIndex, never()).index(any());
+        verify(categoryFacetIndex, never()).index(any());
+    }
+
+    @Test
+    void committedSaveIsIndexedAfterCommit() {
+        Book book = newBook();
+
+        bookService.save(book);
+        verify(bookSearchIndex, never()).index(any());
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        verify(bookSearchIndex).index(book);
+        verify(bookSuggestIndex).index(book);
+        verify(categoryFacetIndex).index(book);
+    }
+
+    @Test
+    void rolledBackDeleteKeepsIndexedEntries() {
+        when(bookRepository.findById(42L)).thenReturn(Optional.of(newBook()));
+
+        bookService.deleteById(42L);
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        verify(bookSearchIndex, never()).remove(anyLong());
+        verify(bookSuggestIndex, never()).remove(anyLong());
+        verify(categoryFacetIndex, never()).remove(anyLong());
+    }
+
+    @Test
+    void committedDeleteRemovesEntries() {
+        when(bookRepository.findById(42L)).thenReturn(Optional.of(newBook()));
+
+        bookService.deleteById(42L);
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        verify(bookSearchIndex).remove(42L);
+        verify(bookSuggestIndex).remove(42L);
+        verify(categoryFacetIndex).remove(42L);
+    }
+
+    @Test
+    void totalCopiesChangeIsAppliedAsDatabaseDelta() {
+        Book existing = newBook();
+        existing.setId(42L);
+        existing.setAvailableCopies(1);
+        Book fresh = newBook();
+        fresh.setId(42L);
+        fresh.setTotalCopies(5);
+        fresh.setAvailableCopies(2);
+        when(bookRepository.findById(42L)).thenReturn(Optional.of(existing)).thenReturn(Optional.of(fresh));
+        Book edit = new Book();
+        edit.setId(42L);
+        edit.setTitle("数据库系统概念（第7版）");
+        edit.setTotalCopies(5);
+
+        Book updated = bookService.update(edit);
+
+        // 可借册数不在内存中计算，由数据库在当前值上加差值
+        verify(bookRepository).updateTotalCopies(eq(42L), eq(5), any());
+        assertThat(existing.getAvailableCopies()).isEqualTo(1);
+        assertThat(existing.getTotalCopies()).isEqualTo(3);
+        assertThat(updated).isSameAs(fresh);
+    }
+
+    @Test
+    void editWithoutTotalCopiesLeavesStockAlone() {
+        Book existing = newBook();
+        existing.setId(42L);
+        when(bookRepository.findById(42L)).thenReturn(Optional.of(existing));
+        Book edit = new Book();
+        edit.setId(42L);
+        edit.setDescription("新版简介");
+        edit.setTotalCopies(null);
+
+        bookService.update(edit);
+
+        verify(bookRepository, never()).updateTotalCopies(anyLong(), anyInt(), any());
+    }
+
+    private static void complete(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        if (status == TransactionSynchronization.STATUS_COMMITTED) {
+            synchronizations.forEach(TransactionSynchronization::afterCommit);
+        }
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+    }
+
+    private static Book newBook() {
+        Book book = new Book();
+        book.setTitle("数据库系统概念");
+        book.setAuthor("Silberschatz");
+        book.setIsbn("9787000000001");
+        book.setCategory("计算机");
+        book.setTotalCopies(3);
+        book.setAvailableCopies(3);
+        return book;
+    }
+}
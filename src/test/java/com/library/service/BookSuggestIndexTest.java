@@ -0,0 +1,117 @@
+package com.library.service;
+
+import com.library.entity.Book;
+import com.library.repository.BookRepository;
+import com.library.repository.BorrowRollupRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 基数树联想：边压缩、边中间的前缀、失效候选的补位与节点回收
+ */
+class BookSuggestIndexTest {
+
+    private BookSuggestIndex index;
+    private final List<Book> books = new ArrayList<>();
+    private final List<Object[]> popularity = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        BookRepository bookRepository = mock(BookRepository.class);
+        BorrowRollupRepository borrowRollupRepository = mock(BorrowRollupRepository.class);
+        when(borrowRollupRepository.findAllBookCounts()).thenReturn(popularity);
+        when(bookRepository.findAllByOrderByIdAsc(any())).thenReturn(books);
+        when(bookRepository.findByIdGreaterThanOrderByIdAsc(anyLong(), any())).thenReturn(new ArrayList<>());
+
+        index = new BookSuggestIndex();
+        ReflectionTestUtils.setField(index, "bookRepository", bookRepository);
+        ReflectionTestUtils.setField(index, "borrowRollupRepository", borrowRollupRepository);
+        ReflectionTestUtils.setField(index, "topPerNode", 2);
+    }
+
+    @Test
+    void singleChildChainsAreCompressed() {
+        book(1L, "abcdef", null, 5);
+        book(2L, "abcxyz", null, 3);
+        index.rebuild();
+
+        // 根 -> "abc" -> {"def", "xyz"}
+        assertThat(index.getStats().get("currentNodes")).isEqualTo(4L);
+        assertThat(texts("ab")).containsExactly("abcdef", "abcxyz");
+        assertThat(texts("abcx")).containsExactly("abcxyz");
+        assertThat(texts("abd")).isEmpty();
+    }
+
+    @Test
+    void incrementalInsertSplitsEdges() {
+        book(1L, "abcdef", null, 5);
+        index.rebuild();
+
+        // 新书没有借阅记录，热度为 0
+        index.index(newBook(2L, "abx"));
+
+        assertThat(texts("ab")).containsExactly("abcdef", "abx");
+        assertThat(texts("abc")).containsExactly("abcdef");
+        assertThat(texts("abx")).containsExactly("abx");
+    }
+
+    @Test
+    void retiredSuggestionIsReplacedByNextInSubtree() {
+        book(1L, "java 入门", null, 30);
+        book(2L, "java 进阶", null, 20);
+        book(3L, "java 实战", null, 10);
+        index.rebuild();
+        assertThat(texts("java")).containsExactly("java 入门", "java 进阶");
+
+        index.remove(1L);
+
+        // 每个节点只保留 2 个候选：删除后由原先排第三的候选补位
+        assertThat(texts("java")).containsExactly("java 进阶", "java 实战");
+        assertThat(texts("java 入")).isEmpty();
+    }
+
+    @Test
+    void renameRetiresOldTitleAndCollapsesNodes() {
+        book(1L, "abcdef", null, 5);
+        book(2L, "abcxyz", null, 3);
+        index.rebuild();
+
+        index.index(newBook(2L, "mno"));
+
+        assertThat(texts("abcx")).isEmpty();
+        assertThat(texts("ab")).containsExactly("abcdef");
+        assertThat(texts("m")).containsExactly("mno");
+        // "abc" 只剩一个子节点，与 "def" 合并为一条边：根 -> {"abcdef", "mno"}
+        assertThat(index.getStats().get("currentNodes")).isEqualTo(3L);
+    }
+
+    private List<String> texts(String prefix) {
+        return index.suggest(prefix, 10).stream()
+                .map(item -> (String) item.get("text"))
+                .toList();
+    }
+
+    private void book(Long id, String title, String author, long borrows) {
+        Book book = newBook(id, title);
+        book.setAuthor(author);
+        books.add(book);
+        popularity.add(new Object[]{id, borrows});
+    }
+
+    private static Book newBook(Long id, String title) {
+        Book book = new Book();
+        book.setId(id);
+        book.setTitle(title);
+        return book;
+    }
+}
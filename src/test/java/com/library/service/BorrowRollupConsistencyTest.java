@@ -0,0 +1,467 @@
+package com.library.service;
+
+import com.library.entity.BorrowRecord;
+import com.library.entity.User;
+import com.library.repository.BookRepository;
+import com.library.repository.BorrowRecordBatchRepository;
+import com.library.repository.BorrowRecordRepository;
+import com.library.repository.BorrowRollupRepository;
+import com.library.repository.UserRepository;
+import com.library.util.RedisLockUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 借阅统计汇总的增量维护与回填一致性
+ * 借阅、归还、批量借还、逾期扫描经由 BorrowService 执行后，增量维护的三张汇总表
+ * （borrow_daily_rollup、book_borrow_counts、user_borrow_counts）应与按原始记录重新回填的结果完全相同；
+ * 汇总出现偏差时 reconcile() 能发现并回填修正。
+ * 没有可用的数据库，借阅记录表和汇总表以内存实现代替，汇总仓库的增减与回填按其 SQL 的语义模拟，
+ * 验证的是业务代码在每条路径上以正确的记录和状态调用汇总维护
+ */
+class BorrowRollupConsistencyTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+
+    private final InMemoryRollup rollup = new InMemoryRollup();
+    private BorrowService borrowService;
+    private BorrowRollupService borrowRollupService;
+    private long nextId = 1;
+
+    @BeforeEach
+    void setUp() {
+        rollup.categories.put(1L, "计算机");
+        rollup.categories.put(2L, "计算机");
+        rollup.categories.put(3L, "文学");
+        // 图书 4 没有分类，汇总到空分类
+
+        BookRepository bookRepository = mock(BookRepository.class);
+        when(bookRepository.decrementAvailableCopies(anyLong(), any())).thenReturn(1);
+        when(bookRepository.incrementAvailableCopies(anyLong(), any())).thenReturn(1);
+        when(bookRepository.incrementAvailableCopiesBy(anyLong(), anyInt(), any())).thenReturn(1);
+        when(bookRepository.findById(anyLong())).thenReturn(Optional.empty());
+        UserRepository userRepository = mock(UserRepository.class);
+        when(userRepository.findById(anyLong())).thenAnswer(invocation -> {
+            User user = new User();
+            user.setId(invocation.getArgument(0));
+            return Optional.of(user);
+        });
+        BorrowRecordBatchRepository batchRepository = mock(BorrowRecordBatchRepository.class);
+        when(batchRepository.batchInsert(anyList())).thenAnswer(invocation -> {
+            List<BorrowRecord> records = invocation.getArgument(0);
+            records.forEach(this::insert);
+            return new int[records.size()];
+        });
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new NoOpTransactionManager());
+        RedisLockUtil redisLockUtil = mock(RedisLockUtil.class);
+        when(redisLockUtil.tryLock(any(), any())).thenReturn("token");
+
+        borrowService = new BorrowService();
+        ReflectionTestUtils.setField(borrowService, "borrowRecordRepository", recordRepository());
+        ReflectionTestUtils.setField(borrowService, "borrowRecordBatchRepository", batchRepository);
+        ReflectionTestUtils.setField(borrowService, "bookRepository", bookRepository);
+        ReflectionTestUtils.setField(borrowService, "userRepository", userRepository);
+        ReflectionTestUtils.setField(borrowService, "hotInventoryService", mock(HotInventoryService.class));
+        ReflectionTestUtils.setField(borrowService, "borrowRollupRepository", rollup);
+        ReflectionTestUtils.setField(borrowService, "transactionTemplate", transactionTemplate);
+        ReflectionTestUtils.setField(borrowService, "eventPublisher", mock(ApplicationEventPublisher.class));
+        ReflectionTestUtils.setField(borrowService, "maxDays", 30);
+        ReflectionTestUtils.setField(borrowService, "maxBooks", 5);
+        ReflectionTestUtils.setField(borrowService, "overdueBatchSize", 2);
+
+        borrowRollupService = new BorrowRollupService();
+        ReflectionTestUtils.setField(borrowRollupService, "borrowRollupRepository", rollup);
+        ReflectionTestUtils.setField(borrowRollupService, "transactionTemplate", transactionTemplate);
+        ReflectionTestUtils.setField(borrowRollupService, "redisLockUtil", redisLockUtil);
+        ReflectionTestUtils.setField(borrowRollupService, "keyBatchSize", 2);
+        ReflectionTestUtils.setField(borrowRollupService, "lockTtlSeconds", 60L);
+        ReflectionTestUtils.setField(borrowRollupService, "reconcileEnabled", true);
+
+        // 已有数据：前几天的热表记录和已归档记录，先回填一次作为起点
+        seed(rollup.hot, 10L, 1L, 3, BorrowRecord.Status.BORROWED);
+        seed(rollup.hot, 11L, 3L, 2, BorrowRecord.Status.RETURNED);
+        seed(rollup.archive, 12L, 4L, 5, BorrowRecord.Status.RETURNED);
+        borrowRollupService.backfill();
+        assertMatchesBackfill();
+    }
+
+    @Test
+    void singleBorrowAndReturnKeepRollupsEqualToBackfill() {
+        borrowService.borrowBook(20L, 1L);
+        borrowService.borrowBook(20L, 4L);
+        borrowService.borrowBook(21L, 3L);
+        assertMatchesBackfill();
+
+        borrowService.returnBook(idOf(20L, 4L), 20L);
+        // 重复归还、归还他人记录不改变汇总
+        borrowService.returnBook(idOf(20L, 4L), 20L);
+        borrowService.returnBook(idOf(21L, 3L), 20L);
+        assertMatchesBackfill();
+        assertThat(rollup.daily.get(List.of(NOW.toLocalDate(), "", "RETURNED"))).isEqualTo(1L);
+    }
+
+    @Test
+    void batchBorrowAndDeskReturnKeepRollupsEqualToBackfill() {
+        borrowService.borrowBooks(30L, List.of(1L, 2L, 3L, 4L));
+        borrowService.borrowBooks(31L, List.of(2L, 3L));
+        assertMatchesBackfill();
+
+        List<Long> ids = new ArrayList<>(rollup.hot.keySet());
+        // 包含前几天的借阅中、已归还记录和不存在的记录
+        ids.add(999L);
+        borrowService.returnBooks(ids, null);
+        assertMatchesBackfill();
+        assertThat(rollup.countRolledByStatus()).containsOnlyKeys("RETURNED");
+    }
+
+    @Test
+    void overdueSweepAndReturningOverdueRecordsKeepRollupsEqualToBackfill() {
+        ReflectionTestUtils.setField(borrowService, "maxDays", -1);
+        borrowService.borrowBooks(40L, List.of(1L, 2L, 3L));
+        borrowService.borrowBook(41L, 4L);
+        ReflectionTestUtils.setField(borrowService, "maxDays", 30);
+        borrowService.borrowBook(41L, 1L);
+
+        // 批大小为 2，共 3 批：前几天借出未还的 1 条，加上本次到期的 4 条
+        int overdue = borrowService.checkOverdueRecords();
+        assertThat(overdue).isEqualTo(5);
+        assertMatchesBackfill();
+        assertThat(rollup.countRolledByStatus().get("OVERDUE")).isEqualTo(5L);
+
+        borrowService.returnBook(idOf(41L, 4L), 41L);
+        // 同一批中既有逾期记录也有借阅中的记录，按各自的原状态移动
+        borrowService.returnBooks(List.of(idOf(40L, 1L), idOf(40L, 2L), idOf(41L, 1L)), null);
+        assertMatchesBackfill();
+        assertThat(rollup.countRolledByStatus().get("OVERDUE")).isEqualTo(2L);
+    }
+
+    @Test
+    void reconcileFindsNoDriftAfterIncrementalUpdates() {
+        borrowService.borrowBooks(50L, List.of(1L, 3L));
+        borrowService.checkOverdueRecords();
+        borrowService.returnBook(idOf(50L, 3L), 50L);
+        int backfillsBefore = rollup.backfilledDays;
+
+        borrowRollupService.reconcile();
+
+        assertThat(borrowRollupService.getLastReconcile().get("consistent")).isEqualTo(true);
+        assertThat(rollup.backfilledDays).isEqualTo(backfillsBefore);
+    }
+
+    @Test
+    void reconcileDetectsDriftAndBackfills() {
+        borrowService.borrowBook(60L, 2L);
+        // 滚动升级期间旧版本节点的写入：新增记录、逾期标记都只改了记录表，没有更新汇总
+        insert(record(61L, 3L, NOW.minusHours(1), BorrowRecord.Status.BORROWED));
+        rollup.hot.get(idOf(10L, 1L)).setStatus(BorrowRecord.Status.OVERDUE);
+
+        borrowRollupService.reconcile();
+
+        Map<String, Object> result = borrowRollupService.getLastReconcile();
+        assertThat(result.get("consistent")).isEqualTo(false);
+        assertThat(result.get("mismatches").toString()).contains("OVERDUE", "图书累计次数合计", "用户累计次数合计");
+        assertThat(result).containsKey("backfill");
+        assertMatchesBackfill();
+
+        borrowRollupService.reconcile();
+        assertThat(borrowRollupService.getLastReconcile().get("consistent")).isEqualTo(true);
+    }
+
+    // ---------------- 辅助 ----------------
+
+    private void assertMatchesBackfill() {
+        assertThat(nonZero(rollup.daily)).as("borrow_daily_rollup").isEqualTo(rollup.expectedDaily());
+        assertThat(nonZero(rollup.bookCounts)).as("book_borrow_counts").isEqualTo(rollup.expectedCounts(BorrowRecord::getBookId));
+        assertThat(nonZero(rollup.userCounts)).as("user_borrow_counts").isEqualTo(rollup.expectedCounts(BorrowRecord::getUserId));
+    }
+
+    private static <K> Map<K, Long> nonZero(Map<K, Long> counts) {
+        Map<K, Long> result = new HashMap<>();
+        counts.forEach((key, count) -> {
+            if (count != 0) {
+                result.put(key, count);
+            }
+        });
+        return result;
+    }
+
+    private long idOf(long userId, long bookId) {
+        return rollup.hot.values().stream()
+                .filter(r -> r.getUserId() == userId && r.getBookId() == bookId)
+                .mapToLong(BorrowRecord::getId)
+                .max()
+                .orElseThrow();
+    }
+
+    private void seed(Map<Long, BorrowRecord> table, long userId, long bookId, int daysAgo, BorrowRecord.Status status) {
+        BorrowRecord record = record(userId, bookId, NOW.minusDays(daysAgo), status);
+        record.setId(nextId++);
+        table.put(record.getId(), record);
+    }
+
+    private BorrowRecord insert(BorrowRecord record) {
+        record.setId(nextId++);
+        rollup.hot.put(record.getId(), record);
+        return record;
+    }
+
+    private static BorrowRecord record(long userId, long bookId, LocalDateTime borrowDate, BorrowRecord.Status status) {
+        BorrowRecord record = new BorrowRecord();
+        record.setUserId(userId);
+        record.setBookId(bookId);
+        record.setBorrowDate(borrowDate);
+        record.setDueDate(borrowDate.plusDays(1));
+        record.setStatus(status);
+        return record;
+    }
+
+    /**
+     * 借阅记录表（热表）：条件更新与加锁查询按对应 SQL 的条件实现
+     */
+    private BorrowRecordRepository recordRepository() {
+        BorrowRecordRepository repository = mock(BorrowRecordRepository.class);
+        when(repository.countBorrowedBooksByUserId(anyLong())).thenReturn(0L);
+        when(repository.findByUserIdAndBookIdAndStatus(anyLong(), anyLong(), any())).thenReturn(Optional.empty());
+        when(repository.findBookIdsByUserIdAndStatus(anyLong(), any())).thenReturn(List.of());
+        when(repository.save(any(BorrowRecord.class))).thenAnswer(invocation -> insert(invocation.getArgument(0)));
+        when(repository.findByIdForUpdate(anyLong()))
+                .thenAnswer(invocation -> Optional.ofNullable(rollup.hot.get(invocation.<Long>getArgument(0))));
+        when(repository.findAllByIdForUpdate(anyList())).thenAnswer(invocation -> {
+            List<Long> ids = invocation.getArgument(0);
+            return ids.stream().map(rollup.hot::get).filter(r -> r != null).toList();
+        });
+        when(repository.markReturned(anyLong(), any(), any(), eq(BorrowRecord.Status.RETURNED), any())).thenAnswer(invocation -> {
+            BorrowRecord record = rollup.hot.get(invocation.<Long>getArgument(0));
+            Long userId = invocation.getArgument(1);
+            BorrowRecord.Status from = invocation.getArgument(2);
+            if (record == null || record.getStatus() != from
+                    || (userId != null && !userId.equals(record.getUserId()))) {
+                return 0;
+            }
+            record.setStatus(BorrowRecord.Status.RETURNED);
+            return 1;
+        });
+        when(repository.markReturnedBatch(anyList(), eq(BorrowRecord.Status.RETURNED), any())).thenAnswer(invocation -> {
+            List<Long> ids = invocation.getArgument(0);
+            int updated = 0;
+            for (Long id : ids) {
+                BorrowRecord record = rollup.hot.get(id);
+                if (record != null && record.getStatus() != BorrowRecord.Status.RETURNED) {
+                    record.setStatus(BorrowRecord.Status.RETURNED);
+                    updated++;
+                }
+            }
+            return updated;
+        });
+        when(repository.findOverdueIdsForUpdate(any(), anyInt())).thenAnswer(invocation -> {
+            LocalDateTime now = invocation.getArgument(0);
+            int limit = invocation.getArgument(1);
+            return rollup.hot.values().stream()
+                    .filter(r -> r.getStatus() == BorrowRecord.Status.BORROWED && r.getDueDate().isBefore(now))
+                    .map(BorrowRecord::getId)
+                    .limit(limit)
+                    .toList();
+        });
+        when(repository.markOverdue(anyList(), any())).thenAnswer(invocation -> {
+            List<Long> ids = invocation.getArgument(0);
+            int updated = 0;
+            for (Long id : ids) {
+                BorrowRecord record = rollup.hot.get(id);
+                if (record.getStatus() == BorrowRecord.Status.BORROWED) {
+                    record.setStatus(BorrowRecord.Status.OVERDUE);
+                    updated++;
+                }
+            }
+            return updated;
+        });
+        return repository;
+    }
+
+    /**
+     * 汇总仓库的内存实现：三张汇总表与两张记录表都在内存中，各方法按 BorrowRollupRepository 中 SQL 的语义计算
+     */
+    private static final class InMemoryRollup extends BorrowRollupRepository {
+
+        final Map<Long, BorrowRecord> hot = new TreeMap<>();
+        final Map<Long, BorrowRecord> archive = new TreeMap<>();
+        final Map<Long, String> categories = new HashMap<>();
+
+        // (日期, 分类, 状态) → 记录数
+        final Map<List<Object>, Long> daily = new HashMap<>();
+        final Map<Long, Long> bookCounts = new HashMap<>();
+        final Map<Long, Long> userCounts = new HashMap<>();
+        int backfilledDays;
+
+        @Override
+        public void addBorrows(List<BorrowRecord> records) {
+            for (BorrowRecord record : records) {
+                daily.merge(cell(record, BorrowRecord.Status.BORROWED), 1L, Long::sum);
+                bookCounts.merge(record.getBookId(), 1L, Long::sum);
+                userCounts.merge(record.getUserId(), 1L, Long::sum);
+            }
+        }
+
+        @Override
+        public void moveStatus(List<Long> recordIds, BorrowRecord.Status from, BorrowRecord.Status to) {
+            if (recordIds.isEmpty() || from == to) {
+                return;
+            }
+            // 只关联热表：状态变更的记录都在热表中
+            for (Long id : recordIds) {
+                BorrowRecord record = hot.get(id);
+                daily.merge(cell(record, from), -1L, Long::sum);
+                daily.merge(cell(record, to), 1L, Long::sum);
+            }
+        }
+
+        @Override
+        public void lockDay(LocalDate day) {
+        }
+
+        @Override
+        public int backfillDay(LocalDate day) {
+            daily.keySet().removeIf(key -> key.get(0).equals(day));
+            Map<List<Object>, Long> rows = new HashMap<>();
+            expectedDaily().forEach((key, count) -> {
+                if (key.get(0).equals(day)) {
+                    rows.put(key, count);
+                }
+            });
+            daily.putAll(rows);
+            backfilledDays++;
+            return rows.size();
+        }
+
+        @Override
+        public void lockKeyRange(String column, long fromId, long toId) {
+        }
+
+        @Override
+        public int backfillCounts(String column, long fromId, long toId) {
+            boolean book = "book_id".equals(column);
+            Map<Long, Long> target = book ? bookCounts : userCounts;
+            int[] rows = {0};
+            expectedCounts(book ? BorrowRecord::getBookId : BorrowRecord::getUserId).forEach((key, count) -> {
+                if (key >= fromId && key <= toId) {
+                    target.put(key, count);
+                    rows[0]++;
+                }
+            });
+            return rows[0];
+        }
+
+        @Override
+        public LocalDate findEarliestBorrowDay() {
+            return records().map(r -> r.getBorrowDate().toLocalDate()).min(LocalDate::compareTo).orElse(null);
+        }
+
+        @Override
+        public long findMaxKey(String column) {
+            return records().mapToLong("book_id".equals(column) ? BorrowRecord::getBookId : BorrowRecord::getUserId)
+                    .max()
+                    .orElse(0);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return bookCounts.isEmpty();
+        }
+
+        @Override
+        public Map<String, Long> countRawByStatus() {
+            Map<String, Long> counts = new HashMap<>();
+            records().forEach(r -> counts.merge(r.getStatus().name(), 1L, Long::sum));
+            return counts;
+        }
+
+        @Override
+        public Map<String, Long> countRolledByStatus() {
+            Map<String, Long> counts = new HashMap<>();
+            daily.forEach((key, count) -> counts.merge((String) key.get(2), count, Long::sum));
+            counts.values().removeIf(count -> count == 0);
+            return counts;
+        }
+
+        @Override
+        public long[] sumCounts() {
+            return new long[]{sum(bookCounts.values()), sum(userCounts.values())};
+        }
+
+        /**
+         * 回填 SQL 的结果：热表与归档表合并后按 (日期, 分类, 状态) 计数
+         */
+        Map<List<Object>, Long> expectedDaily() {
+            Map<List<Object>, Long> expected = new HashMap<>();
+            records().forEach(r -> expected.merge(cell(r, r.getStatus()), 1L, Long::sum));
+            return expected;
+        }
+
+        Map<Long, Long> expectedCounts(Function<BorrowRecord, Long> key) {
+            Map<Long, Long> expected = new HashMap<>();
+            records().forEach(r -> expected.merge(key.apply(r), 1L, Long::sum));
+            return expected;
+        }
+
+        private Stream<BorrowRecord> records() {
+            return Stream.concat(hot.values().stream(), archive.values().stream());
+        }
+
+        private List<Object> cell(BorrowRecord record, BorrowRecord.Status status) {
+            return List.of(record.getBorrowDate().toLocalDate(), categories.getOrDefault(record.getBookId(), ""), status.name());
+        }
+
+        private static long sum(Collection<Long> values) {
+            return values.stream().mapToLong(Long::longValue).sum();
+        }
+    }
+
+    private static final class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.library.service;
+
+import com.library.entity.Book;
+import com.library.entity.BorrowRecord;
+import com.library.entity.User;
+import com.library.event.BookInventoryEvent;
+import com.library.repository.BookRepository;
+import com.library.repository.BorrowRecordRepository;
+import com.library.repository.BorrowRollupRepository;
+import com.library.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 借阅/归还的并发库存测试
+ * 数据库的条件更新以原子计数器模拟：available_copies > 0 时减一并返回 1，否则返回 0
+ */
+class BorrowServiceTest {
+
+    private static final long BOOK_ID = 1L;
+
+    private BorrowService borrowService;
+    private BookRepository bookRepository;
+    private BorrowRecordRepository borrowRecordRepository;
+    private UserRepository userRepository;
+    private ApplicationEventPublisher eventPublisher;
+    private BorrowRollupRepository borrowRollupRepository;
+    private final AtomicInteger stock = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        bookRepository = mock(BookRepository.class);
+        borrowRecordRepository = mock(BorrowRecordRepository.class);
+        userRepository = mock(UserRepository.class);
+        eventPublisher = mock(ApplicationEventPublisher.class);
+        borrowRollupRepository = mock(BorrowRollupRepository.class);
+        HotInventoryService hotInventoryService = mock(HotInventoryService.class);
+
+        when(bookRepository.decrementAvailableCopies(eq(BOOK_ID), any()))
+                .thenAnswer(invocation -> stock.getAndUpdate(v -> v > 0 ? v - 1 : v) > 0 ? 1 : 0);
+        when(bookRepository.incrementAvailableCopies(eq(BOOK_ID), any()))
+                .thenAnswer(invocation -> {
+                    stock.incrementAndGet();
+                    return 1;
+                });
+        when(bookRepository.existsById(BOOK_ID)).thenReturn(true);
+        Book book = new Book();
+        book.setId(BOOK_ID);
+        book.setTitle("并发测试");
+        when(bookRepository.findById(BOOK_ID)).thenReturn(Optional.of(book));
+        when(userRepository.findById(anyLong())).thenAnswer(invocation -> {
+            User user = new User();
+            user.setId(invocation.getArgument(0));
+            return Optional.of(user);
+        });
+        when(borrowRecordRepository.countBorrowedBooksByUserId(anyLong())).thenReturn(0L);
+        when(borrowRecordRepository.findByUserIdAndBookIdAndStatus(anyLong(), anyLong(), any()))
+                .thenReturn(Optional.empty());
+
+        borrowService = new BorrowService();
+        ReflectionTestUtils.setField(borrowService, "bookRepository", bookRepository);
+        ReflectionTestUtils.setField(borrowService, "borrowRecordRepository", borrowRecordRepository);
+        ReflectionTestUtils.setField(borrowService, "userRepository", userRepository);
+        ReflectionTestUtils.setField(borrowService, "hotInventoryService", hotInventoryService);
+        ReflectionTestUtils.setField(borrowService, "borrowRollupRepository", borrowRollupRepository);
+        ReflectionTestUtils.setField(borrowService, "eventPublisher", eventPublisher);
+        ReflectionTestUtils.setField(borrowService, "maxDays", 30);
+        ReflectionTestUtils.setField(borrowService, "maxBooks", 5);
+    }
+
+    @Test
+    void concurrentBorrowsNeverOversell() throws Exception {
+        int copies = 10;
+        int borrowers = 200;
+        stock.set(copies);
+
+        List<Map<String, Object>> results = runConcurrently(borrowers,
+                i -> borrowService.borrowBook((long) i + 1, BOOK_ID));
+
+        long succeeded = results.stream().filter(result -> Boolean.TRUE.equals(result.get("success"))).count();
+        assertThat(succeeded).isEqualTo(copies);
+        assertThat(stock.get()).isZero();
+        assertThat(results).filteredOn(result -> Boolean.FALSE.equals(result.get("success")))
+                .allSatisfy(result -> assertThat(result.get("message")).isEqualTo("图书库存不足"));
+        verify(borrowRecordRepository, times(copies)).save(any(BorrowRecord.class));
+        verify(eventPublisher, times(copies)).publishEvent(new BookInventoryEvent(BOOK_ID, -1));
+    }
+
+    @Test
+    void borrowedRecordCarriesUserAndBook() {
+        stock.set(1);
+
+        Map<String, Object> result = borrowService.borrowBook(7L, BOOK_ID);
+
+        BorrowRecord record = (BorrowRecord) result.get("record");
+        assertThat(record.getUser().getId()).isEqualTo(7L);
+        assertThat(record.getBook().getId()).isEqualTo(BOOK_ID);
+    }
+
+    @Test
+    void unknownUserIsRejectedBeforeTouchingStock() {
+        stock.set(1);
+        when(userRepository.findById(99L)).thenReturn(Optional.empty());
+
+        assertThatThrownBy(() -> borrowService.borrowBook(99L, BOOK_ID))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessage("用户不存在");
+        assertThat(stock.get()).isEqualTo(1);
+    }
+
+    @Test
+    void concurrentDuplicateReturnsRestoreStockOnce() throws Exception {
+        long recordId = 5L;
+        AtomicBoolean returned = new AtomicBoolean();
+        // 锁定读取可能先于另一个请求的提交：条件更新仍只生效一次
+        when(borrowRecordRepository.findByIdForUpdate(recordId)).thenAnswer(invocation -> {
+            BorrowRecord record = new BorrowRecord();
+            record.setId(recordId);
+            record.setUserId(1L);
+            record.setBookId(BOOK_ID);
+            record.setStatus(returned.get() ? BorrowRecord.Status.RETURNED : BorrowRecord.Status.BORROWED);
+            return Optional.of(record);
+        });
+        when(borrowRecordRepository.markReturned(eq(recordId), isNull(), eq(BorrowRecord.Status.BORROWED), any(), any()))
+                .thenAnswer(invocation -> returned.compareAndSet(false, true) ? 1 : 0);
+
+        List<Map<String, Object>> results = runConcurrently(50, i -> borrowService.returnBook(recordId, null));
+
+        assertThat(results).filteredOn(result -> Boolean.TRUE.equals(result.get("success"))).hasSize(1);
+        assertThat(stock.get()).isEqualTo(1);
+        verify(eventPublisher, times(1)).publishEvent(new BookInventoryEvent(BOOK_ID, 1));
+    }
+
+    @Test
+    void overdueReturnUpdatesOnceFromLockedStatus() {
+        long recordId = 6L;
+        when(borrowRecordRepository.findByIdForUpdate(recordId))
+                .thenReturn(Optional.of(lockedRecord(recordId, 1L, BorrowRecord.Status.OVERDUE)));
+        when(borrowRecordRepository.markReturned(eq(recordId), eq(1L), eq(BorrowRecord.Status.OVERDUE), any(), any()))
+                .thenReturn(1);
+
+        Map<String, Object> result = borrowService.returnBook(recordId, 1L);
+
+        assertThat(result.get("success")).isEqualTo(true);
+        assertThat(stock.get()).isEqualTo(1);
+        verify(borrowRecordRepository, times(1)).markReturned(anyLong(), any(), any(), any(), any());
+        verify(borrowRollupRepository).moveStatus(List.of(recordId), BorrowRecord.Status.OVERDUE, BorrowRecord.Status.RETURNED);
+    }
+
+    @Test
+    void returningAnotherUsersRecordIsRejectedWithoutUpdate() {
+        long recordId = 7L;
+        when(borrowRecordRepository.findByIdForUpdate(recordId))
+                .thenReturn(Optional.of(lockedRecord(recordId, 2L, BorrowRecord.Status.BORROWED)));
+
+        Map<String, Object> result = borrowService.returnBook(recordId, 1L);
+
+        assertThat(result.get("message")).isEqualTo("无权限");
+        verify(borrowRecordRepository, never()).markReturned(anyLong(), any(), any(), any(), any());
+        verify(bookRepository, never()).incrementAvailableCopies(anyLong(), any());
+    }
+
+    @Test
+    void returningMissingRecordThrows() {
+        when(borrowRecordRepository.findByIdForUpdate(404L)).thenReturn(Optional.empty());
+
+        assertThatThrownBy(() -> borrowService.returnBook(404L, null))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessage("借阅记录不存在");
+        verify(bookRepository, never()).incrementAvailableCopies(anyLong(), any());
+    }
+
+    private static BorrowRecord lockedRecord(long id, long userId, BorrowRecord.Status status) {
+        BorrowRecord record = new BorrowRecord();
+        record.setId(id);
+        record.setUserId(userId);
+        record.setBookId(BOOK_ID);
+        record.setStatus(status);
+        return record;
+    }
+
+    private interface Task {
+        Map<String, Object> run(int index);
+    }
+
+    private static List<Map<String, Object>> runConcurrently(int threads, Task task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, 32));
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Map<String, Object>>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                int index = i;
+                Callable<Map<String, Object>> callable = () -> {
+                    start.await();
+                    return task.run(index);
+                };
+                futures.add(executor.submit(callable));
+            }
+            start.countDown();
+            List<Map<String, Object>> results = new ArrayList<>();
+            for (Future<Map<String, Object>> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.library.service;
+
+import com.library.event.BookInventoryEvent;
+import com.library.repository.BookRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 重建期间到达的库存事件：已扫描的图书重放一次，未扫描的由扫描读到，均不重复计入
+ */
+class CategoryFacetIndexTest {
+
+    private CategoryFacetIndex index;
+    private BookRepository bookRepository;
+
+    @BeforeEach
+    void setUp() {
+        bookRepository = mock(BookRepository.class);
+        index = new CategoryFacetIndex();
+        ReflectionTestUtils.setField(index, "bookRepository", bookRepository);
+    }
+
+    @Test
+    void eventsDuringRebuildAreCountedOnce() {
+        when(bookRepository.findFacetRowsAfter(eq(0L), any())).thenReturn(rows(
+                new Object[]{1L, "小说", 5, 5},
+                new Object[]{2L, "小说", 3, 3}));
+        when(bookRepository.findFacetRowsAfter(eq(2L), any())).thenAnswer(invocation -> {
+            // 第一批扫描之后提交的借阅：图书 1 已扫描，图书 3 尚未扫描
+            index.onInventoryChanged(new BookInventoryEvent(1L, -1));
+            index.onInventoryChanged(new BookInventoryEvent(3L, -1));
+            // 第二批读到的是图书 3 借出之后的库存
+            return rows(new Object[]{3L, "历史", 4, 3});
+        });
+        when(bookRepository.findFacetRowsAfter(eq(3L), any())).thenReturn(new ArrayList<>());
+
+        index.rebuild();
+
+        assertThat(facet("小说")).containsEntry("titles", 2L)
+                .containsEntry("totalCopies", 8L)
+                .containsEntry("availableCopies", 7L);
+        assertThat(facet("历史")).containsEntry("titles", 1L)
+                .containsEntry("totalCopies", 4L)
+                .containsEntry("availableCopies", 3L);
+    }
+
+    @Test
+    void eventsAfterRebuildApplyDirectly() {
+        when(bookRepository.findFacetRowsAfter(eq(0L), any())).thenReturn(rows(new Object[]{1L, null, 2, 2}));
+        when(bookRepository.findFacetRowsAfter(eq(1L), any())).thenReturn(new ArrayList<>());
+        index.rebuild();
+
+        index.onInventoryChanged(new BookInventoryEvent(1L, -1));
+        index.remove(1L);
+        index.onInventoryChanged(new BookInventoryEvent(1L, 1));
+
+        assertThat(index.getFacets()).isEmpty();
+    }
+
+    private Map<String, Object> facet(String category) {
+        return index.getFacets().stream()
+                .filter(item -> category.equals(item.get("category")))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private static List<Object[]> rows(Object[]... rows) {
+        return new ArrayList<>(List.of(rows));
+    }
+}
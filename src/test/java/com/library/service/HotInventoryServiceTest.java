@@ -0,0 +1,422 @@
+package com.library.service;
+
+import com.library.entity.BorrowRecord;
+import com.library.event.BookBorrowedEvent;
+import com.library.event.BookInventoryEvent;
+import com.library.repository.BookRepository;
+import com.library.repository.BorrowRecordBatchRepository;
+import com.library.repository.BorrowRecordRepository;
+import com.library.repository.BorrowRollupRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 热门库存模式的超借与切换测试
+ * 数据库库存以原子计数器模拟条件更新；事务管理器不连接数据库，但会照常触发事务同步回调
+ */
+class HotInventoryServiceTest {
+
+    private static final long BOOK_ID = 42L;
+
+    private HotInventoryService service;
+    private BookRepository bookRepository;
+    private BorrowRecordRepository borrowRecordRepository;
+    private ApplicationEventPublisher eventPublisher;
+    private TransactionTemplate transactionTemplate;
+
+    // 数据库中的可借册数与已插入的借阅记录
+    private final AtomicInteger databaseStock = new AtomicInteger();
+    private final List<BorrowRecord> inserted = new ArrayList<>();
+    // Redis 日志
+    private final Map<Object, Object> journal = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        bookRepository = mock(BookRepository.class);
+        borrowRecordRepository = mock(BorrowRecordRepository.class);
+        eventPublisher = mock(ApplicationEventPublisher.class);
+        BorrowRecordBatchRepository batchRepository = mock(BorrowRecordBatchRepository.class);
+
+        when(bookRepository.lockAvailableCopiesById(BOOK_ID)).thenAnswer(invocation -> databaseStock.get());
+        when(bookRepository.decrementAvailableCopiesBy(eq(BOOK_ID), anyInt(), any())).thenAnswer(invocation -> {
+            int count = invocation.getArgument(1);
+            return databaseStock.getAndUpdate(v -> v >= count ? v - count : v) >= count ? 1 : 0;
+        });
+        when(bookRepository.decrementAvailableCopies(eq(BOOK_ID), any()))
+                .thenAnswer(invocation -> databaseStock.getAndUpdate(v -> v > 0 ? v - 1 : v) > 0 ? 1 : 0);
+        doAnswer(invocation -> {
+            synchronized (inserted) {
+                inserted.addAll(invocation.getArgument(0));
+            }
+            return null;
+        }).when(batchRepository).batchInsert(any());
+
+        RedisTemplate<String, String> redisTemplate = mock(RedisTemplate.class);
+        HashOperations<String, Object, Object> hashOperations = mock(HashOperations.class);
+        when(redisTemplate.<Object, Object>opsForHash()).thenReturn(hashOperations);
+        doAnswer(invocation -> journal.put(invocation.getArgument(1), invocation.getArgument(2)))
+                .when(hashOperations).put(anyString(), any(), any());
+        doAnswer(invocation -> {
+            Object[] keys = (Object[]) invocation.getRawArguments()[1];
+            Arrays.stream(keys).forEach(journal::remove);
+            return (long) keys.length;
+        }).when(hashOperations).delete(anyString(), any(Object[].class));
+        when(hashOperations.entries(anyString())).thenAnswer(invocation -> Map.copyOf(journal));
+
+        NoOpTransactionManager transactionManager = new NoOpTransactionManager();
+        transactionTemplate = new TransactionTemplate(transactionManager);
+
+        service = new HotInventoryService();
+        ReflectionTestUtils.setField(service, "bookRepository", bookRepository);
+        ReflectionTestUtils.setField(service, "borrowRecordRepository", borrowRecordRepository);
+        ReflectionTestUtils.setField(service, "borrowRecordBatchRepository", batchRepository);
+        ReflectionTestUtils.setField(service, "borrowRollupRepository", mock(BorrowRollupRepository.class));
+        ReflectionTestUtils.setField(service, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(service, "transactionManager", transactionManager);
+        ReflectionTestUtils.setField(service, "eventPublisher", eventPublisher);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "threshold", 1);
+        ReflectionTestUtils.setField(service, "windowMs", 10_000L);
+        ReflectionTestUtils.setField(service, "batchSize", 500);
+        ReflectionTestUtils.setField(service, "transitionWaitMs", 2_000L);
+    }
+
+    @Test
+    void concurrentReservationsNeverExceedStock() throws Exception {
+        databaseStock.set(10);
+        promote();
+
+        List<HotInventoryService.Reservation> outcomes = runConcurrently(200,
+                i -> service.tryReserve(record(i + 1)));
+        service.flush();
+
+        assertThat(outcomes).filteredOn(outcome -> outcome == HotInventoryService.Reservation.RESERVED).hasSize(10);
+        assertThat(outcomes).filteredOn(outcome -> outcome == HotInventoryService.Reservation.SOLD_OUT).hasSize(190);
+        assertThat(inserted).hasSize(10);
+        assertThat(databaseStock.get()).isZero();
+        assertThat(journal).isEmpty();
+        verify(eventPublisher).publishEvent(new BookInventoryEvent(BOOK_ID, -10));
+
+        Map<String, Object> metrics = service.getMetrics();
+        assertThat(metrics.get("totalHotReservations")).isEqualTo(10L);
+        assertThat(metrics.get("flushedRecords")).isEqualTo(10L);
+        assertThat(metrics.get("rejectedRecords")).isEqualTo(0L);
+        assertThat(metrics.get("pendingRecords")).isEqualTo(0);
+    }
+
+    @Test
+    void flushRejectsReservationsTheDatabaseCannotCover() {
+        databaseStock.set(5);
+        promote();
+        for (int user = 1; user <= 5; user++) {
+            assertThat(service.tryReserve(record(user))).isEqualTo(HotInventoryService.Reservation.RESERVED);
+        }
+        // 计数器读取之后数据库库存被其他途径扣减
+        databaseStock.set(3);
+
+        service.flush();
+
+        assertThat(inserted).extracting(BorrowRecord::getUserId).containsExactly(1L, 2L, 3L);
+        assertThat(databaseStock.get()).isZero();
+        verify(eventPublisher).publishEvent(new BookInventoryEvent(BOOK_ID, -3));
+        // 借阅事件只为落库的预占发布
+        for (long user = 1; user <= 3; user++) {
+            verify(eventPublisher).publishEvent(new BookBorrowedEvent(user, BOOK_ID));
+        }
+        verify(eventPublisher, never()).publishEvent(new BookBorrowedEvent(4L, BOOK_ID));
+        verify(eventPublisher, never()).publishEvent(new BookBorrowedEvent(5L, BOOK_ID));
+        assertThat(service.getMetrics().get("rejectedRecords")).isEqualTo(2L);
+        assertThat(service.getMetrics().get("flushedRecords")).isEqualTo(3L);
+        assertThat(service.getHotAvailable(BOOK_ID)).isZero();
+        assertThat(journal).isEmpty();
+
+        // 偏差的计数器在下一个窗口降级
+        service.rotateWindow();
+        assertThat(service.getHotAvailable(BOOK_ID)).isNull();
+    }
+
+    @Test
+    void rolledBackReservationIsReleased() {
+        databaseStock.set(2);
+        promote();
+
+        assertThatThrownBy(() -> transactionTemplate.executeWithoutResult(status -> {
+            assertThat(service.tryReserve(record(1))).isEqualTo(HotInventoryService.Reservation.RESERVED);
+            assertThat(service.pendingCount(1L)).isEqualTo(1);
+            // 提交前不进入落库队列
+            service.flush();
+            assertThat(inserted).isEmpty();
+            throw new IllegalStateException("批量借阅中后续步骤失败");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(service.getHotAvailable(BOOK_ID)).isEqualTo(2);
+        assertThat(service.pendingCount(1L)).isZero();
+        assertThat(journal).isEmpty();
+        service.flush();
+        assertThat(inserted).isEmpty();
+        assertThat(databaseStock.get()).isEqualTo(2);
+        assertThat(service.getMetrics().get("totalHotReservations")).isEqualTo(0L);
+        // 撤销后同一用户可以重新借阅
+        assertThat(service.tryReserve(record(1))).isEqualTo(HotInventoryService.Reservation.RESERVED);
+    }
+
+    @Test
+    void committedReservationIsFlushedAfterCommit() {
+        databaseStock.set(2);
+        promote();
+
+        transactionTemplate.executeWithoutResult(status ->
+                assertThat(service.tryReserve(record(1))).isEqualTo(HotInventoryService.Reservation.RESERVED));
+        // 事务提交后、落库前的日志核对不会补录仍在队列中的预占
+        assertThat(service.reconcileJournal().get("recovered")).isEqualTo(0);
+        service.flush();
+
+        assertThat(inserted).hasSize(1);
+        assertThat(databaseStock.get()).isEqualTo(1);
+        assertThat(service.getHotAvailable(BOOK_ID)).isEqualTo(1);
+        verify(borrowRecordRepository, never()).save(any());
+    }
+
+    @Test
+    void promotionWaitsForDatabasePathBorrowsInFlight() throws Exception {
+        databaseStock.set(5);
+        CountDownLatch decided = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            // 已决定走数据库路径、尚未提交的借阅
+            Future<?> databaseBorrow = executor.submit(() -> transactionTemplate.executeWithoutResult(status -> {
+                assertThat(service.tryReserve(record(1))).isEqualTo(HotInventoryService.Reservation.NOT_HOT);
+                decided.countDown();
+                await(proceed);
+                bookRepository.decrementAvailableCopies(BOOK_ID, LocalDateTime.now());
+            }));
+            assertThat(decided.await(5, TimeUnit.SECONDS)).isTrue();
+
+            Future<?> promotion = executor.submit(this::promote);
+            Thread.sleep(100);
+            // 升级尚未读取库存，期间到达的借阅等待切换完成
+            verify(bookRepository, never()).lockAvailableCopiesById(anyLong());
+            assertThat(service.getHotAvailable(BOOK_ID)).isNull();
+            Future<HotInventoryService.Reservation> waiting = executor.submit(() -> service.tryReserve(record(2)));
+            Thread.sleep(50);
+            assertThat(waiting.isDone()).isFalse();
+
+            proceed.countDown();
+            databaseBorrow.get(5, TimeUnit.SECONDS);
+            promotion.get(5, TimeUnit.SECONDS);
+
+            assertThat(waiting.get(5, TimeUnit.SECONDS)).isEqualTo(HotInventoryService.Reservation.RESERVED);
+            // 初始值读取于数据库路径借阅提交之后：5 - 1（数据库路径）- 1（内存预占）
+            assertThat(service.getHotAvailable(BOOK_ID)).isEqualTo(3);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void demotionPersistsReservationsBeforeReturningToDatabasePath() {
+        databaseStock.set(4);
+        promote();
+        service.tryReserve(record(1));
+        service.tryReserve(record(2));
+
+        ReflectionTestUtils.invokeMethod(service, "demote", BOOK_ID);
+
+        assertThat(inserted).hasSize(2);
+        assertThat(databaseStock.get()).isEqualTo(2);
+        assertThat(service.getHotAvailable(BOOK_ID)).isNull();
+        assertThat(service.tryReserve(record(3))).isEqualTo(HotInventoryService.Reservation.NOT_HOT);
+    }
+
+    @Test
+    void stockEditRetiresCounterAfterCommit() {
+        databaseStock.set(4);
+        promote();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            databaseStock.addAndGet(6);
+            service.onStockChanged(BOOK_ID);
+            // 提交前停止预占
+            assertThat(service.getHotAvailable(BOOK_ID)).isNull();
+        });
+
+        assertThat(service.getMetrics().get("hotBooks")).asList().isEmpty();
+        promote();
+        assertThat(service.getHotAvailable(BOOK_ID)).isEqualTo(10);
+    }
+
+    @Test
+    void returnAfterPromotionIsAddedToCounterOnce() {
+        databaseStock.set(0);
+        promote();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            databaseStock.incrementAndGet();
+            service.onReturn(BOOK_ID);
+            assertThat(service.getHotAvailable(BOOK_ID)).isZero();
+        });
+
+        assertThat(service.getHotAvailable(BOOK_ID)).isEqualTo(1);
+        assertThat(service.tryReserve(record(1))).isEqualTo(HotInventoryService.Reservation.RESERVED);
+        service.flush();
+        assertThat(databaseStock.get()).isZero();
+    }
+
+    @Test
+    void reconcileDoesNotReplayBatchBeingFlushed() throws Exception {
+        databaseStock.set(3);
+        promote();
+        service.tryReserve(record(1));
+
+        CountDownLatch insertStarted = new CountDownLatch(1);
+        CountDownLatch releaseInsert = new CountDownLatch(1);
+        BorrowRecordBatchRepository slowRepository = mock(BorrowRecordBatchRepository.class);
+        doAnswer(invocation -> {
+            insertStarted.countDown();
+            await(releaseInsert);
+            inserted.addAll(invocation.getArgument(0));
+            return null;
+        }).when(slowRepository).batchInsert(any());
+        ReflectionTestUtils.setField(service, "borrowRecordBatchRepository", slowRepository);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> flush = executor.submit(service::flush);
+            assertThat(insertStarted.await(5, TimeUnit.SECONDS)).isTrue();
+            Future<Map<String, Object>> reconcile = executor.submit(service::reconcileJournal);
+            Thread.sleep(100);
+            assertThat(reconcile.isDone()).isFalse();
+
+            releaseInsert.countDown();
+            flush.get(5, TimeUnit.SECONDS);
+            Map<String, Object> result = reconcile.get(5, TimeUnit.SECONDS);
+
+            assertThat(result.get("recovered")).isEqualTo(0);
+            assertThat(inserted).hasSize(1);
+            assertThat(databaseStock.get()).isEqualTo(2);
+            verify(borrowRecordRepository, never()).save(any());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void promote() {
+        ReflectionTestUtils.invokeMethod(service, "promote", BOOK_ID, 1);
+    }
+
+    private static BorrowRecord record(long userId) {
+        BorrowRecord record = new BorrowRecord();
+        record.setUserId(userId);
+        record.setBookId(BOOK_ID);
+        record.setBorrowDate(LocalDateTime.of(2026, 1, 1, 10, 0).plusSeconds(userId));
+        record.setDueDate(LocalDateTime.of(2026, 2, 1, 10, 0));
+        record.setStatus(BorrowRecord.Status.BORROWED);
+        return record;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private interface Task<T> {
+        T run(int index);
+    }
+
+    private static <T> List<T> runConcurrently(int threads, Task<T> task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(32);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<T>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                int index = i;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return task.run(index);
+                }));
+            }
+            start.countDown();
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 不连接数据库的事务管理器：每次都开启新事务，提交/回滚时照常执行事务同步回调
+     */
+    private static final class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected Object doSuspend(Object transaction) {
+            return null;
+        }
+
+        @Override
+        protected void doResume(Object transaction, Object suspendedResources) {
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.library.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.library.entity.Book;
+import com.library.entity.BorrowRecord;
+import com.library.entity.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 幂等结果的保存与回放：只保存简单值和ID，不把实体（含用户密码哈希）写入 Redis
+ */
+class IdempotencyServiceTest {
+
+    private IdempotencyService idempotencyService;
+    private final Map<String, String> redis = new HashMap<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        RedisTemplate<String, String> redisTemplate = mock(RedisTemplate.class);
+        ValueOperations<String, String> ops = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(ops);
+        when(ops.setIfAbsent(anyString(), anyString(), anyLong(), any(TimeUnit.class))).thenReturn(true);
+        when(ops.get(anyString())).thenAnswer(invocation -> redis.get(invocation.<String>getArgument(0)));
+        doAnswer(invocation -> redis.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(ops).set(anyString(), anyString(), anyLong(), eq(TimeUnit.SECONDS));
+
+        idempotencyService = new IdempotencyService();
+        ReflectionTestUtils.setField(idempotencyService, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(idempotencyService, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(idempotencyService, "ttlSeconds", 600L);
+        ReflectionTestUtils.setField(idempotencyService, "waitTimeoutMillis", 1000L);
+        idempotencyService.init();
+    }
+
+    @Test
+    void storedResultHoldsIdsButNoEntities() {
+        AtomicInteger calls = new AtomicInteger();
+
+        Map<String, Object> first = idempotencyService.execute("borrow:7:3", "key-1", () -> {
+            calls.incrementAndGet();
+            return borrowResult();
+        });
+        Map<String, Object> replay = idempotencyService.execute("borrow:7:3", "key-1", () -> {
+            calls.incrementAndGet();
+            return borrowResult();
+        });
+
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(redis).hasSize(1);
+        String json = redis.values().iterator().next();
+        assertThat(json).doesNotContain("password").doesNotContain("secret-hash").doesNotContain("\"record\"");
+        assertThat(first).containsEntry("success", true).containsEntry("recordId", 11L)
+                .containsEntry("bookId", 3L).doesNotContainKey("record");
+        assertThat(replay).containsEntry("success", true).containsEntry("message", "借阅成功")
+                .containsEntry("replayed", true).doesNotContainKey("record");
+        assertThat(((Number) replay.get("recordId")).longValue()).isEqualTo(11L);
+        assertThat(((Number) replay.get("bookId")).longValue()).isEqualTo(3L);
+    }
+
+    @Test
+    void requestsWithoutKeyAreNotStored() {
+        Map<String, Object> result = idempotencyService.execute("borrow:7:3", null, this::borrowResult);
+
+        assertThat(result).containsKey("record");
+        assertThat(redis).isEmpty();
+    }
+
+    private Map<String, Object> borrowResult() {
+        User user = new User();
+        user.setId(7L);
+        user.setPassword("secret-hash");
+        Book book = new Book();
+        book.setId(3L);
+        BorrowRecord record = new BorrowRecord();
+        record.setId(11L);
+        record.setUserId(7L);
+        record.setBookId(3L);
+        record.setUser(user);
+        record.setBook(book);
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("message", "借阅成功");
+        result.put("record", record);
+        return result;
+    }
+}
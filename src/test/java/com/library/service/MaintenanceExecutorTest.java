@@ -0,0 +1,83 @@
+package com.library.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 后台任务线程：不在调用线程上执行，同名任务未完成时不重复提交，失败不影响后续任务
+ */
+class MaintenanceExecutorTest {
+
+    private final MaintenanceExecutor executor = new MaintenanceExecutor();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void runsOffTheCallingThreadAndSkipsDuplicates() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<String> threadName = new AtomicReference<>();
+        AtomicInteger runs = new AtomicInteger();
+
+        boolean first = executor.submit("archive", () -> {
+            threadName.set(Thread.currentThread().getName());
+            runs.incrementAndGet();
+            await(release);
+            done.countDown();
+        });
+        boolean duplicate = executor.submit("archive", runs::incrementAndGet);
+        release.countDown();
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(first).isTrue();
+        assertThat(duplicate).isFalse();
+        assertThat(threadName.get()).isEqualTo("maintenance");
+
+        CountDownLatch again = new CountDownLatch(1);
+        assertThat(waitUntilAccepted("archive", again)).isTrue();
+        assertThat(again.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(runs.get()).isEqualTo(1);
+    }
+
+    @Test
+    void failedTaskDoesNotStopLaterTasks() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+
+        executor.submit("rebuild", () -> {
+            throw new IllegalStateException("boom");
+        });
+        assertThat(waitUntilAccepted("rebuild", done)).isTrue();
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    // 前一个同名任务在 finally 中移除标记，提交可能短暂被拒绝
+    private boolean waitUntilAccepted(String name, CountDownLatch latch) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            if (executor.submit(name, latch::countDown)) {
+                return true;
+            }
+            Thread.sleep(5);
+        }
+        return false;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
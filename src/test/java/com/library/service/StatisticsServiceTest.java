@@ -0,0 +1,154 @@
+package com.library.service;
+
+import com.library.repository.BorrowRollupRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 统计报表的部分结果：某一部分查询失败或超过 section-timeout 时，其余部分照常返回，
+ * 失败部分以空结果代替并列入 failedSections；sectionTimings 记录每一部分的耗时；状态汇总只查询一次
+ */
+class StatisticsServiceTest {
+
+    private static final Duration SECTION_TIMEOUT = Duration.ofMillis(300);
+
+    private StatisticsService statisticsService;
+    private BorrowRollupRepository borrowRollupRepository;
+
+    @BeforeEach
+    void setUp() {
+        borrowRollupRepository = mock(BorrowRollupRepository.class);
+        when(borrowRollupRepository.countByStatus()).thenReturn(Map.of("BORROWED", 3L, "RETURNED", 6L, "OVERDUE", 1L));
+        when(borrowRollupRepository.findTopBooks(anyInt())).thenReturn(List.of());
+        when(borrowRollupRepository.findTopUsers(anyInt())).thenReturn(List.of());
+        when(borrowRollupRepository.countByCategory()).thenReturn(List.<Object[]>of(new Object[]{"计算机", 7L}));
+        when(borrowRollupRepository.countByDay(any(LocalDate.class))).thenReturn(List.of());
+        when(borrowRollupRepository.countByMonth(any(LocalDate.class))).thenReturn(List.of());
+        BatchAssociationLoader batchAssociationLoader = mock(BatchAssociationLoader.class);
+        when(batchAssociationLoader.loadBooks(anyCollection())).thenReturn(Map.of());
+        when(batchAssociationLoader.loadUsers(anyCollection())).thenReturn(Map.of());
+        TrendingService trendingService = mock(TrendingService.class);
+        when(trendingService.getAllTrending()).thenReturn(Map.of());
+
+        statisticsService = new StatisticsService();
+        ReflectionTestUtils.setField(statisticsService, "borrowRollupRepository", borrowRollupRepository);
+        ReflectionTestUtils.setField(statisticsService, "batchAssociationLoader", batchAssociationLoader);
+        ReflectionTestUtils.setField(statisticsService, "trendingService", trendingService);
+        ReflectionTestUtils.setField(statisticsService, "sectionTimeout", SECTION_TIMEOUT);
+        ReflectionTestUtils.setField(statisticsService, "partialTtl", Duration.ofSeconds(30));
+    }
+
+    @AfterEach
+    void tearDown() {
+        statisticsService.shutdown();
+    }
+
+    @Test
+    void completeReportQueriesStatusOnceAndRecordsTimings() {
+        Map<String, Object> report = statisticsService.getFullStatisticsReport();
+
+        assertThat(report.get("partial")).isEqualTo(false);
+        assertThat(report.get("failedSections")).asList().isEmpty();
+        Map<String, Object> overall = section(report, "overall");
+        assertThat(overall).containsEntry("totalBorrows", 10L).containsEntry("returnRate", 60.0);
+        // 总体统计由按状态统计推导，不再单独查询
+        verify(borrowRollupRepository, times(1)).countByStatus();
+        Map<String, Long> timings = section(report, "sectionTimings");
+        assertThat(timings).containsOnlyKeys("byStatus", "topBooks", "topUsers", "trending", "byCategory", "byDate", "byMonth");
+        assertThat(timings.values()).doesNotContainNull();
+    }
+
+    @Test
+    void failingSectionIsReplacedByEmptyResult() {
+        when(borrowRollupRepository.countByCategory()).thenThrow(new QueryTimeoutException("statement timeout"));
+
+        Map<String, Object> report = statisticsService.getFullStatisticsReport();
+
+        assertThat(report.get("partial")).isEqualTo(true);
+        assertThat(report.get("failedSections")).asList().containsExactly("byCategory");
+        assertThat(report.get("byCategory")).asList().isEmpty();
+        assertThat(report.get("overall")).isNotNull();
+        Map<String, Long> timings = section(report, "sectionTimings");
+        assertThat(timings.get("byCategory")).isNotNull();
+    }
+
+    @Test
+    void hangingSectionTimesOutWithoutHoldingTheReport() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        when(borrowRollupRepository.findTopUsers(anyInt())).thenAnswer(invocation -> {
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            return List.of();
+        });
+
+        long start = System.nanoTime();
+        Map<String, Object> report = statisticsService.getFullStatisticsReport();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertThat(elapsedMillis).isLessThan(SECTION_TIMEOUT.toMillis() + 2000);
+        assertThat(report.get("partial")).isEqualTo(true);
+        assertThat(report.get("failedSections")).asList().containsExactly("topUsers");
+        assertThat(report.get("topUsers")).asList().isEmpty();
+        assertThat(report.get("topBooks")).isNotNull();
+        Map<String, Long> timings = section(report, "sectionTimings");
+        assertThat(timings.get("topUsers")).isGreaterThan(0L);
+        // 放弃等待的查询被中断，不会继续占用线程
+        assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void failedStatusSectionHidesOverallWithoutSecondQuery() {
+        when(borrowRollupRepository.countByStatus()).thenThrow(new QueryTimeoutException("statement timeout"));
+
+        Map<String, Object> report = statisticsService.getFullStatisticsReport();
+
+        assertThat(report.get("failedSections")).asList().containsExactly("byStatus");
+        assertThat(report.get("overall")).isNull();
+        assertThat(report.get("byStatus")).isEqualTo(Map.of());
+        verify(borrowRollupRepository, times(1)).countByStatus();
+    }
+
+    @Test
+    void partialReportIsStaleOnlyAfterPartialTtl() {
+        when(borrowRollupRepository.countByCategory()).thenThrow(new QueryTimeoutException("statement timeout"));
+        Map<String, Object> partial = statisticsService.getFullStatisticsReport();
+        doReturn(List.of()).when(borrowRollupRepository).countByCategory();
+        Map<String, Object> complete = statisticsService.getFullStatisticsReport();
+
+        assertThat(statisticsService.isStalePartial(partial)).isFalse();
+        assertThat(statisticsService.isStalePartial(complete)).isFalse();
+        partial.put("generatedAt", System.currentTimeMillis() - Duration.ofSeconds(31).toMillis());
+        complete.put("generatedAt", System.currentTimeMillis() - Duration.ofHours(1).toMillis());
+        assertThat(statisticsService.isStalePartial(partial)).isTrue();
+        assertThat(statisticsService.isStalePartial(complete)).isFalse();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T section(Map<String, Object> report, String name) {
+        return (T) report.get(name);
+    }
+}
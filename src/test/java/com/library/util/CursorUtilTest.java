@@ -0,0 +1,48 @@
+package com.library.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 游标解码：无法解析的游标一律返回 null，由调用方回到首页
+ */
+class CursorUtilTest {
+
+    @Test
+    void roundTripsSortKeys() {
+        LocalDateTime borrowDate = LocalDateTime.of(2026, 3, 1, 9, 30, 15);
+        String cursor = CursorUtil.encode(borrowDate, 42L);
+
+        assertThat(decodeRecord(cursor)).containsExactly(borrowDate, 42L);
+    }
+
+    @Test
+    void malformedCursorsDecodeToNull() {
+        assertThat(decodeId(null)).isNull();
+        assertThat(decodeId("")).isNull();
+        assertThat(decodeId("不是Base64!")).isNull();
+        assertThat(decodeId(CursorUtil.encode(1L, 2L))).isNull();
+        assertThat(decodeId(CursorUtil.encode("abc"))).isNull();
+        assertThat(decodeRecord(raw("2026-13-45T99:00|7"))).isNull();
+        assertThat(decodeRecord(raw("2026-03-01T09:30|"))).isNull();
+        assertThat(decodeRecord(raw("2026-03-01T09:30|7"))).containsExactly(LocalDateTime.of(2026, 3, 1, 9, 30), 7L);
+    }
+
+    private static Long decodeId(String cursor) {
+        return CursorUtil.decode(cursor, 1, parts -> Long.parseLong(parts[0]));
+    }
+
+    private static Object[] decodeRecord(String cursor) {
+        return CursorUtil.decode(cursor, 2,
+                parts -> new Object[]{LocalDateTime.parse(parts[0]), Long.parseLong(parts[1])});
+    }
+
+    private static String raw(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,161 @@
+package com.library.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 与精确计数对照的准确性测试：合成 Zipf 分布的借阅流，单个草图与多桶合并后都应满足误差保证
+ */
+class SpaceSavingSketchTest {
+
+    private static final int CAPACITY = 64;
+    private static final int DISTINCT = 5000;
+
+    @Test
+    void singleSketchBoundsHoldAgainstExactCounts() {
+        long[] stream = zipfStream(new Random(42), 200_000);
+        SpaceSavingSketch sketch = new SpaceSavingSketch(CAPACITY);
+        Map<Long, Long> exact = new HashMap<>();
+        for (long item : stream) {
+            sketch.offer(item);
+            exact.merge(item, 1L, Long::sum);
+        }
+
+        assertBounds(sketch, exact, stream.length);
+    }
+
+    @Test
+    void mergedBucketsBoundsHoldAgainstExactCounts() {
+        Random random = new Random(7);
+        SpaceSavingSketch merged = new SpaceSavingSketch(CAPACITY);
+        Map<Long, Long> exact = new HashMap<>();
+        long total = 0;
+        // 各桶的热门元素不同（模拟热度随时间漂移），单桶内未记录的元素在合并时须按最小计数补足
+        for (int bucket = 0; bucket < 12; bucket++) {
+            SpaceSavingSketch sketch = new SpaceSavingSketch(CAPACITY);
+            long shift = (bucket % 3) * 37L;
+            for (long item : zipfStream(random, 20_000)) {
+                long shifted = (item + shift) % DISTINCT;
+                sketch.offer(shifted);
+                exact.merge(shifted, 1L, Long::sum);
+                total++;
+            }
+            merged.merge(sketch);
+        }
+
+        assertThat(merged.getTotal()).isEqualTo(total);
+        assertBounds(merged, exact, total);
+    }
+
+    @Test
+    void mergeAddsMissingItemsMinimumCount() {
+        SpaceSavingSketch a = new SpaceSavingSketch(2);
+        SpaceSavingSketch b = new SpaceSavingSketch(2);
+        // a: 1 x5, 2 x3；b: 1 x1, 3 x4, 4 x2（4 替换 1，继承计数 1）
+        offer(a, 1, 5);
+        offer(a, 2, 3);
+        offer(b, 1, 1);
+        offer(b, 3, 4);
+        offer(b, 4, 2);
+
+        a.merge(b);
+
+        Map<Long, SpaceSavingSketch.Entry> entries = a.top(2).stream()
+                .collect(Collectors.toMap(SpaceSavingSketch.Entry::item, entry -> entry));
+        // 元素 1：a 中 5 次，b 中已被替换，补入 b 的最小计数 3
+        assertThat(entries.get(1L).count()).isEqualTo(8);
+        assertThat(entries.get(1L).error()).isEqualTo(3);
+        // 元素 3：b 中 4 次，a 中未记录，补入 a 的最小计数 3
+        assertThat(entries.get(3L).count()).isEqualTo(7);
+        assertThat(entries.get(3L).error()).isEqualTo(3);
+        assertThat(a.getTotal()).isEqualTo(15);
+    }
+
+    @Test
+    void topItemsMatchExactTopItems() {
+        long[] stream = zipfStream(new Random(3), 100_000);
+        SpaceSavingSketch sketch = new SpaceSavingSketch(CAPACITY);
+        Map<Long, Long> exact = new HashMap<>();
+        for (long item : stream) {
+            sketch.offer(item);
+            exact.merge(item, 1L, Long::sum);
+        }
+
+        Set<Long> expected = exact.entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue(), a.getValue()))
+                .limit(10)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toSet());
+        Set<Long> actual = sketch.top(10).stream()
+                .map(SpaceSavingSketch.Entry::item)
+                .collect(Collectors.toSet());
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    private static void assertBounds(SpaceSavingSketch sketch, Map<Long, Long> exact, long total) {
+        long maxError = total / CAPACITY;
+        List<SpaceSavingSketch.Entry> entries = sketch.top(CAPACITY);
+        Set<Long> tracked = new HashSet<>();
+        for (SpaceSavingSketch.Entry entry : entries) {
+            long actual = exact.getOrDefault(entry.item(), 0L);
+            tracked.add(entry.item());
+            assertThat(entry.count()).as("元素 %d 的估计值不低于真实值", entry.item()).isGreaterThanOrEqualTo(actual);
+            assertThat(entry.count() - entry.error()).as("元素 %d 的下界不高于真实值", entry.item())
+                    .isLessThanOrEqualTo(actual);
+            assertThat(entry.count() - actual).as("元素 %d 的高估不超过 总数/容量", entry.item())
+                    .isLessThanOrEqualTo(maxError);
+        }
+        List<Long> frequent = new ArrayList<>();
+        exact.forEach((item, count) -> {
+            if (count > maxError) {
+                frequent.add(item);
+            }
+        });
+        assertThat(frequent).isNotEmpty();
+        assertThat(tracked).as("真实次数超过 总数/容量 的元素都被记录").containsAll(frequent);
+    }
+
+    private static void offer(SpaceSavingSketch sketch, long item, int times) {
+        for (int i = 0; i < times; i++) {
+            sketch.offer(item);
+        }
+    }
+
+    /**
+     * 指数为 1.1 的 Zipf 分布，元素为 0..DISTINCT-1
+     */
+    private static long[] zipfStream(Random random, int length) {
+        double[] cumulative = new double[DISTINCT];
+        double sum = 0;
+        for (int i = 0; i < DISTINCT; i++) {
+            sum += 1.0 / Math.pow(i + 1, 1.1);
+            cumulative[i] = sum;
+        }
+        long[] stream = new long[length];
+        for (int i = 0; i < length; i++) {
+            double target = random.nextDouble() * sum;
+            int low = 0;
+            int high = DISTINCT - 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (cumulative[mid] < target) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            stream[i] = low;
+        }
+        return stream;
+    }
+}